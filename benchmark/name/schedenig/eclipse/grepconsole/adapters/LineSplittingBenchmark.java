@@ -0,0 +1,256 @@
+/*******************************************************************************
+ * Copyright (c) 2008 - 2014 Marian Schedenig
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marian Schedenig - initial API and implementation
+ *******************************************************************************/
+
+package name.schedenig.eclipse.grepconsole.adapters;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+
+import name.schedenig.eclipse.grepconsole.benchmark.Benchmark;
+import name.schedenig.eclipse.grepconsole.benchmark.BenchmarkRunner;
+import name.schedenig.eclipse.grepconsole.benchmark.LogCorpus;
+import name.schedenig.eclipse.grepconsole.engine.ExpressionProfiler;
+import name.schedenig.eclipse.grepconsole.engine.LineMatcher;
+import name.schedenig.eclipse.grepconsole.engine.MatchGuard;
+import name.schedenig.eclipse.grepconsole.model.GrepExpressionItem;
+
+/**
+ * Measures the time and memory allocated for splitting appended console text
+ * into lines and preparing them for matching, before and after the splitter
+ * was changed to work on character sequence views.
+ *
+ * The text is passed in chunks, as console output arrives, so that some lines
+ * span several chunks. "views" is a {@link FilterProcessor} without any
+ * expressions, so it only splits lines and prepares the full and shortened
+ * line views. "substring" is the previous implementation, kept here as the
+ * reference, which built every line from the buffered text and a substring
+ * and then cut the full and shortened lines with further substrings. Units
+ * are lines.
+ *
+ * Usage: LineSplittingBenchmark
+ *
+ * @author msched
+ */
+public class LineSplittingBenchmark
+{
+	/**
+	 * Previous line splitter.
+	 *
+	 * @author msched
+	 */
+	private static class SubstringSplitter
+	{
+		/** Line delimiter. */
+		private String delimiter;
+
+		/** Maximum number of characters to match per line. */
+		private int matchLength;
+
+		/** Text of the current, unfinished line. */
+		private StringBuilder bufferedText = new StringBuilder();
+
+		/** Number of delimiter characters already found. */
+		private int bufferedDelimiterIndex;
+
+		/** Sum of the lengths of the prepared lines. */
+		private long result;
+
+		/**
+		 * Creates a new instance.
+		 *
+		 * @param delimiter Line delimiter.
+		 * @param matchLength Maximum number of characters to match per line.
+		 */
+		public SubstringSplitter(String delimiter, int matchLength)
+		{
+			this.delimiter = delimiter;
+			this.matchLength = matchLength;
+		}
+
+		/**
+		 * Splits appended text into lines.
+		 *
+		 * @param s Appended text.
+		 */
+		public void process(String s)
+		{
+			int startIndex = 0;
+
+			for(int i = 0; i < s.length(); i++)
+			{
+				char c = s.charAt(i);
+
+				if(delimiter.charAt(bufferedDelimiterIndex) == c)
+				{
+					if(bufferedDelimiterIndex < delimiter.length() - 1)
+					{
+						bufferedDelimiterIndex++;
+					}
+					else
+					{
+						String line = bufferedText.toString() + s.substring(startIndex, i + 1);
+						line = line.substring(0, line.length() - delimiter.length());
+
+						handleNewLine(line);
+
+						bufferedText = new StringBuilder();
+						bufferedDelimiterIndex = 0;
+						startIndex = i + 1;
+					}
+				}
+				else
+				{
+					bufferedDelimiterIndex = 0;
+				}
+			}
+
+			if(startIndex < s.length())
+			{
+				bufferedText.append(s.substring(startIndex));
+			}
+		}
+
+		/**
+		 * Prepares a line for matching.
+		 *
+		 * @param line Line without delimiter.
+		 */
+		private void handleNewLine(String line)
+		{
+			int cutoff = line.length();
+
+			while(cutoff > 0)
+			{
+				char c = line.charAt(cutoff - 1);
+
+				if(c == '\n' || c == '\r')
+				{
+					cutoff--;
+				}
+				else
+				{
+					break;
+				}
+			}
+
+			line = line.substring(0, cutoff);
+			String shortLine = (matchLength <= 0 || line.length() <= matchLength) ? line : line.substring(0, matchLength);
+
+			result += line.length() + shortLine.length();
+		}
+	}
+
+	/** Number of lines of the stack trace corpus. */
+	private static final int CORPUS_LINES = 20000;
+
+	/** Number of lines of the long line corpus. */
+	private static final int LONG_CORPUS_LINES = 100;
+
+	/** Number of characters per appended chunk. */
+	private static final int CHUNK_LENGTH = 4096;
+
+	/** Random seed. */
+	private static final long SEED = 42;
+
+	/**
+	 * Runs the benchmarks.
+	 *
+	 * @param args Not used.
+	 *
+	 * @throws Exception If a benchmark fails.
+	 */
+	public static void main(String[] args) throws Exception
+	{
+		BenchmarkRunner runner = new BenchmarkRunner(System.out);
+		runner.printHeader("Splitting appended text into lines (units: lines)"); //$NON-NLS-1$
+
+		run(runner, "stack", LogCorpus.create(LogCorpus.Kind.STACK_TRACES, CORPUS_LINES, SEED)); //$NON-NLS-1$
+		run(runner, "long", LogCorpus.create(LogCorpus.Kind.LONG_LINES, LONG_CORPUS_LINES, SEED)); //$NON-NLS-1$
+
+		System.out.println();
+		System.out.println("(" + runner.getBlackhole() + ")"); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	/**
+	 * Runs both splitters on a corpus.
+	 *
+	 * @param runner Benchmark runner.
+	 * @param name Corpus name.
+	 * @param text Corpus text.
+	 *
+	 * @throws Exception If a benchmark fails.
+	 */
+	private static void run(BenchmarkRunner runner, String name, String text) throws Exception
+	{
+		final String[] chunks = createChunks(text);
+		int lines = LogCorpus.splitLines(text).length;
+
+		runner.run(new Benchmark("substring " + name, lines) //$NON-NLS-1$
+		{
+			@Override
+			public long run()
+			{
+				SubstringSplitter splitter = new SubstringSplitter(LogCorpus.DELIMITER, LineMatcher.DEFAULT_FILTER_MATCH_LENGTH);
+
+				for(String chunk: chunks)
+				{
+					splitter.process(chunk);
+				}
+
+				return splitter.result;
+			}
+		});
+
+		final MatchGuard guard = new MatchGuard(MatchGuard.DEFAULT_TIME_LIMIT);
+		final ExpressionProfiler profiler = new ExpressionProfiler();
+
+		runner.run(new Benchmark("views " + name, lines) //$NON-NLS-1$
+		{
+			@Override
+			public long run()
+			{
+				FilterProcessor processor = new FilterProcessor(LogCorpus.DELIMITER,
+						LineMatcher.DEFAULT_FILTER_MATCH_LENGTH, new LinkedList<GrepExpressionItem>(),
+						new LinkedHashSet<GrepExpressionItem>(), new LinkedHashSet<GrepExpressionItem>(),
+						null, guard, profiler);
+				FilterBatch batch = new FilterBatch(0);
+
+				for(String chunk: chunks)
+				{
+					processor.process(chunk, false, true, batch);
+				}
+
+				return batch.getLineCount();
+			}
+		});
+	}
+
+	/**
+	 * Cuts text into chunks of fixed length.
+	 *
+	 * @param text Text.
+	 *
+	 * @return Chunks.
+	 */
+	private static String[] createChunks(String text)
+	{
+		List<String> chunks = new ArrayList<String>();
+
+		for(int start = 0; start < text.length(); start += CHUNK_LENGTH)
+		{
+			chunks.add(text.substring(start, Math.min(start + CHUNK_LENGTH, text.length())));
+		}
+
+		return chunks.toArray(new String[chunks.size()]);
+	}
+}
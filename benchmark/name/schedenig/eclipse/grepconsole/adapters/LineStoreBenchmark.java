@@ -0,0 +1,407 @@
+/*******************************************************************************
+ * Copyright (c) 2008 - 2014 Marian Schedenig
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marian Schedenig - initial API and implementation
+ *******************************************************************************/
+
+package name.schedenig.eclipse.grepconsole.adapters;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Random;
+
+import name.schedenig.eclipse.grepconsole.adapters.TextFilter.Line;
+import name.schedenig.eclipse.grepconsole.benchmark.Benchmark;
+import name.schedenig.eclipse.grepconsole.benchmark.BenchmarkRunner;
+import name.schedenig.eclipse.grepconsole.benchmark.LogCorpus;
+
+/**
+ * Measures the latency of painting the Grep View, i.e. the content accesses
+ * StyledText makes to draw one screen of filtered lines, for 10k, 100k and 1M
+ * lines.
+ *
+ * The accesses are made once against a {@link LineStore}, the same way the
+ * text filter's StyledTextContent methods use it, and once against the linked
+ * lists the text filter used before, kept here as the reference. One
+ * operation paints one screen at a random scroll position: the offsets and
+ * texts of all visible lines, the line at a random caret offset and a text
+ * range. Units are painted lines.
+ *
+ * Usage: LineStoreBenchmark
+ *
+ * @author msched
+ */
+public class LineStoreBenchmark
+{
+	/**
+	 * Content accesses made when painting.
+	 *
+	 * @author msched
+	 */
+	private static interface Content
+	{
+		/**
+		 * Returns the number of lines.
+		 *
+		 * @return Line count.
+		 */
+		public int getLineCount();
+
+		/**
+		 * Returns the number of characters.
+		 *
+		 * @return Character count.
+		 */
+		public int getCharCount();
+
+		/**
+		 * Returns a line's text.
+		 *
+		 * @param lineIndex Line index.
+		 *
+		 * @return Line text.
+		 */
+		public String getLine(int lineIndex);
+
+		/**
+		 * Returns the offset of a line's first character.
+		 *
+		 * @param lineIndex Line index.
+		 *
+		 * @return Character offset.
+		 */
+		public int getOffsetAtLine(int lineIndex);
+
+		/**
+		 * Returns the index of the line containing a character offset.
+		 *
+		 * @param offset Character offset.
+		 *
+		 * @return Line index.
+		 */
+		public int getLineAtOffset(int offset);
+
+		/**
+		 * Returns a range of text.
+		 *
+		 * @param start Offset of the first character.
+		 * @param length Number of characters.
+		 *
+		 * @return Text.
+		 */
+		public String getTextRange(int start, int length);
+	}
+
+	/**
+	 * Content backed by a line store, as in the text filter.
+	 *
+	 * @author msched
+	 */
+	private static class StoreContent implements Content
+	{
+		/** Lines. */
+		private LineStore lines = new LineStore();
+
+		/** Number of characters. */
+		private int charCount;
+
+		/**
+		 * Adds a line.
+		 *
+		 * @param line Line.
+		 */
+		public void add(Line line)
+		{
+			lines.add(line, charCount, charCount);
+			charCount += line.getText().length() + LogCorpus.DELIMITER.length();
+		}
+
+		@Override
+		public int getLineCount()
+		{
+			return lines.size();
+		}
+
+		@Override
+		public int getCharCount()
+		{
+			return charCount;
+		}
+
+		@Override
+		public String getLine(int lineIndex)
+		{
+			if(lineIndex < 0 || lineIndex >= lines.size())
+			{
+				return ""; //$NON-NLS-1$
+			}
+
+			return lines.get(lineIndex).getText();
+		}
+
+		@Override
+		public int getOffsetAtLine(int lineIndex)
+		{
+			if(lineIndex < 0)
+			{
+				return 0;
+			}
+			else if(lineIndex >= lines.size())
+			{
+				return charCount;
+			}
+
+			return lines.getOffset(lineIndex);
+		}
+
+		@Override
+		public int getLineAtOffset(int offset)
+		{
+			if(offset >= charCount)
+			{
+				return lines.size();
+			}
+
+			return lines.indexOfOffset(offset);
+		}
+
+		@Override
+		public String getTextRange(int start, int length)
+		{
+			int lineIndex = getLineAtOffset(start);
+			return appendLines(this, lineIndex, start - lines.getOffset(lineIndex), length);
+		}
+	}
+
+	/**
+	 * Content backed by linked lists, as in the text filter before the line
+	 * store was introduced.
+	 *
+	 * @author msched
+	 */
+	private static class LinkedListContent implements Content
+	{
+		/** Lines. */
+		private LinkedList<Line> lines = new LinkedList<Line>();
+
+		/** Line offsets. */
+		private LinkedList<Integer> lineOffsets = new LinkedList<Integer>();
+
+		/** Number of characters. */
+		private int charCount;
+
+		/**
+		 * Adds a line.
+		 *
+		 * @param line Line.
+		 */
+		public void add(Line line)
+		{
+			lines.add(line);
+			lineOffsets.add(charCount);
+			charCount += line.getText().length() + LogCorpus.DELIMITER.length();
+		}
+
+		@Override
+		public int getLineCount()
+		{
+			return lines.size();
+		}
+
+		@Override
+		public int getCharCount()
+		{
+			return charCount;
+		}
+
+		@Override
+		public String getLine(int lineIndex)
+		{
+			if(lineIndex < 0 || lineIndex >= lines.size())
+			{
+				return ""; //$NON-NLS-1$
+			}
+
+			return lines.get(lineIndex).getText();
+		}
+
+		@Override
+		public int getOffsetAtLine(int lineIndex)
+		{
+			if(lineIndex < 0)
+			{
+				return 0;
+			}
+			else if(lineIndex >= lines.size())
+			{
+				return charCount;
+			}
+
+			return lineOffsets.get(lineIndex);
+		}
+
+		@Override
+		public int getLineAtOffset(int offset)
+		{
+			if(offset >= charCount)
+			{
+				return lines.size();
+			}
+
+			int i = lineOffsets.size() - 1;
+			Iterator<Integer> itr = lineOffsets.descendingIterator();
+
+			while(itr.hasNext())
+			{
+				int lineOffset = itr.next();
+
+				if(lineOffset <= offset)
+				{
+					break;
+				}
+
+				i--;
+			}
+
+			return i;
+		}
+
+		@Override
+		public String getTextRange(int start, int length)
+		{
+			int lineIndex = getLineAtOffset(start);
+			return appendLines(this, lineIndex, start - lineOffsets.get(lineIndex), length);
+		}
+	}
+
+	/** Line counts to measure. */
+	private static final int[] SIZES = {10000, 100000, 1000000};
+
+	/** Number of lines visible on one screen. */
+	private static final int VISIBLE_LINES = 50;
+
+	/** Length of the text range read per screen. */
+	private static final int TEXT_RANGE_LENGTH = 500;
+
+	/** Number of precalculated scroll positions. */
+	private static final int POSITIONS = 64;
+
+	/** Number of distinct line texts. Texts are shared between lines to keep
+	 *  the memory needed for a million lines low. */
+	private static final int DISTINCT_LINES = 4096;
+
+	/** Random seed. */
+	private static final long SEED = 42;
+
+	/**
+	 * Runs the benchmarks.
+	 *
+	 * @param args Not used.
+	 *
+	 * @throws Exception If a benchmark fails.
+	 */
+	public static void main(String[] args) throws Exception
+	{
+		String[] texts = LogCorpus.splitLines(LogCorpus.create(LogCorpus.Kind.STACK_TRACES, DISTINCT_LINES, SEED));
+		BenchmarkRunner runner = new BenchmarkRunner(System.out);
+		runner.printHeader("Painting one screen of filtered lines (units: painted lines)"); //$NON-NLS-1$
+
+		for(int size: SIZES)
+		{
+			StoreContent store = new StoreContent();
+			LinkedListContent list = new LinkedListContent();
+
+			for(int i = 0; i < size; i++)
+			{
+				Line line = new Line(texts[i % texts.length], false, null);
+				store.add(line);
+				list.add(line);
+			}
+
+			runner.run(createPaintBenchmark("LineStore " + size, store)); //$NON-NLS-1$
+			runner.run(createPaintBenchmark("LinkedList " + size, list)); //$NON-NLS-1$
+		}
+
+		System.out.println();
+		System.out.println("(" + runner.getBlackhole() + ")"); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	/**
+	 * Creates a benchmark painting one screen at a time, cycling through a
+	 * fixed sequence of random scroll positions.
+	 *
+	 * @param name Benchmark name.
+	 * @param content Content.
+	 *
+	 * @return Benchmark.
+	 */
+	private static Benchmark createPaintBenchmark(String name, final Content content)
+	{
+		Random random = new Random(SEED);
+		final int[] topIndexes = new int[POSITIONS];
+		final int[] caretOffsets = new int[POSITIONS];
+
+		for(int i = 0; i < POSITIONS; i++)
+		{
+			topIndexes[i] = random.nextInt(content.getLineCount() - VISIBLE_LINES);
+			caretOffsets[i] = random.nextInt(content.getCharCount());
+		}
+
+		return new Benchmark(name, VISIBLE_LINES)
+		{
+			/** Index of the next scroll position. */
+			private int position;
+
+			@Override
+			public long run()
+			{
+				int topIndex = topIndexes[position];
+				long result = content.getLineAtOffset(caretOffsets[position]);
+				position = (position + 1) % POSITIONS;
+
+				for(int i = topIndex; i < topIndex + VISIBLE_LINES; i++)
+				{
+					result += content.getOffsetAtLine(i);
+					result += content.getLine(i).length();
+				}
+
+				result += content.getTextRange(content.getOffsetAtLine(topIndex) + 1, TEXT_RANGE_LENGTH).length();
+
+				return result;
+			}
+		};
+	}
+
+	/**
+	 * Concatenates lines for a text range, as the text filter's
+	 * <code>getTextRange()</code> does.
+	 *
+	 * @param content Content.
+	 * @param lineIndex Index of the first line.
+	 * @param startInLine Offset of the first character within the first line.
+	 * @param length Number of characters.
+	 *
+	 * @return Text.
+	 */
+	private static String appendLines(Content content, int lineIndex, int startInLine, int length)
+	{
+		StringBuilder sb = new StringBuilder();
+		String s = content.getLine(lineIndex).substring(startInLine);
+		sb.append(s).append(LogCorpus.DELIMITER);
+		int remaining = length - s.length() - LogCorpus.DELIMITER.length();
+
+		while(remaining > 0 && ++lineIndex < content.getLineCount())
+		{
+			s = content.getLine(lineIndex);
+			sb.append(s).append(LogCorpus.DELIMITER);
+			remaining -= s.length() + LogCorpus.DELIMITER.length();
+		}
+
+		return sb.length() > length ? sb.substring(0, length) : sb.toString();
+	}
+}
@@ -0,0 +1,266 @@
+/*******************************************************************************
+ * Copyright (c) 2008 - 2014 Marian Schedenig
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marian Schedenig - initial API and implementation
+ *******************************************************************************/
+
+package name.schedenig.eclipse.grepconsole.adapters;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import name.schedenig.eclipse.grepconsole.benchmark.Benchmark;
+import name.schedenig.eclipse.grepconsole.benchmark.BenchmarkRules;
+import name.schedenig.eclipse.grepconsole.benchmark.BenchmarkRunner;
+import name.schedenig.eclipse.grepconsole.benchmark.LogCorpus;
+import name.schedenig.eclipse.grepconsole.engine.ExpressionProfiler;
+import name.schedenig.eclipse.grepconsole.engine.LineMatcher;
+import name.schedenig.eclipse.grepconsole.engine.MatchGuard;
+import name.schedenig.eclipse.grepconsole.engine.MatchSnapshot;
+import name.schedenig.eclipse.grepconsole.model.AbstractGrepModelElement;
+import name.schedenig.eclipse.grepconsole.util.GrepConsoleUtil;
+import name.schedenig.eclipse.grepconsole.view.colors.ColorRegistry;
+
+import org.eclipse.swt.custom.StyleRange;
+import org.eclipse.swt.graphics.Color;
+import org.eclipse.swt.graphics.RGB;
+
+/**
+ * Benchmarks the matching and styling hot paths without a workbench:
+ *
+ * <ul>
+ * <li>Filtering console output for the Grep View, including statistics and
+ * 		rewriting, through the same {@link FilterProcessor} the text filter and
+ * 		the batch filter use.</li>
+ * <li>Styling lines through {@link LineStyler} and
+ * 		{@link GrepLineStyleListener#convertStyles(int, String, StyleRange[], LinkedList)},
+ * 		as done when painting the console.</li>
+ * <li>Replacing parameters in rewrite patterns with
+ * 		{@link GrepConsoleUtil#replaceParams(String, java.util.regex.MatchResult, String, int, List, org.eclipse.core.resources.IProject, name.schedenig.eclipse.grepconsole.util.GrepConsoleUtil.IVariableResolver)}.</li>
+ * </ul>
+ *
+ * Each benchmark is run for a small rule set resembling a typical setup (or
+ * the expressions read from the file passed as the first argument) and a
+ * synthetic set of 500 expressions, on generated stack trace, JSON and very
+ * long line corpora. Units are lines.
+ *
+ * As there is no display, colours are not created. Styles are still resolved
+ * and cached the same way as in the console.
+ *
+ * Usage: MatchingBenchmark [expressions.xml]
+ *
+ * @author msched
+ */
+public class MatchingBenchmark
+{
+	/** Style match length, same as the plug-in's default. */
+	private static final int STYLE_MATCH_LENGTH = 150;
+
+	/** Number of expressions in the synthetic rule set. */
+	private static final int SYNTHETIC_RULES = 500;
+
+	/** Number of lines of the stack trace and JSON corpora. */
+	private static final int CORPUS_LINES = 5000;
+
+	/** Number of lines of the long line corpus. */
+	private static final int LONG_CORPUS_LINES = 50;
+
+	/** Random seed for the generated corpora and rules. */
+	private static final long SEED = 42;
+
+	/** Rewrite pattern used for the parameter replacement benchmark. */
+	private static final String REWRITE_PATTERN = "{1}.{2} ({3}:{4}) in {0}"; //$NON-NLS-1$
+
+	/** Expression used for the parameter replacement benchmark. */
+	private static final Pattern FRAME_PATTERN = Pattern.compile("^\\s+at ([\\w$.]+)\\.([\\w$<>]+)\\(([\\w$]+\\.java):(\\d+)\\)"); //$NON-NLS-1$
+
+	/**
+	 * Runs the benchmarks.
+	 *
+	 * @param args Optional expressions file.
+	 *
+	 * @throws Exception If a benchmark fails.
+	 */
+	public static void main(String[] args) throws Exception
+	{
+		Map<String, AbstractGrepModelElement> ruleSets = new LinkedHashMap<String, AbstractGrepModelElement>();
+		ruleSets.put(args.length > 0 ? "file" : "default", //$NON-NLS-1$ //$NON-NLS-2$
+				args.length > 0 ? BenchmarkRules.read(args[0]) : BenchmarkRules.createDefaultRules());
+		ruleSets.put("synthetic" + SYNTHETIC_RULES, BenchmarkRules.createSyntheticRules(SYNTHETIC_RULES, SEED)); //$NON-NLS-1$
+
+		Map<String, String> corpora = new LinkedHashMap<String, String>();
+		corpora.put("stack", LogCorpus.create(LogCorpus.Kind.STACK_TRACES, CORPUS_LINES, SEED)); //$NON-NLS-1$
+		corpora.put("json", LogCorpus.create(LogCorpus.Kind.JSON_LINES, CORPUS_LINES, SEED)); //$NON-NLS-1$
+		corpora.put("long", LogCorpus.create(LogCorpus.Kind.LONG_LINES, LONG_CORPUS_LINES, SEED)); //$NON-NLS-1$
+
+		BenchmarkRunner runner = new BenchmarkRunner(System.out);
+
+		runner.printHeader("Filtering (FilterProcessor.process)"); //$NON-NLS-1$
+
+		for(Map.Entry<String, AbstractGrepModelElement> ruleSet: ruleSets.entrySet())
+		{
+			CompiledRuleSet rules = new CompiledRuleSet(ruleSet.getValue(), null, null, null, null);
+
+			for(Map.Entry<String, String> corpus: corpora.entrySet())
+			{
+				runner.run(createFilterBenchmark(ruleSet.getKey() + "/" + corpus.getKey(), rules, corpus.getValue())); //$NON-NLS-1$
+			}
+		}
+
+		runner.printHeader("Styling (LineStyler.getStyleRanges + convertStyles)"); //$NON-NLS-1$
+
+		for(Map.Entry<String, AbstractGrepModelElement> ruleSet: ruleSets.entrySet())
+		{
+			CompiledRuleSet rules = new CompiledRuleSet(ruleSet.getValue(), null, null, null, null);
+
+			for(Map.Entry<String, String> corpus: corpora.entrySet())
+			{
+				runner.run(createStyleBenchmark(ruleSet.getKey() + "/" + corpus.getKey(), rules, corpus.getValue())); //$NON-NLS-1$
+			}
+		}
+
+		runner.printHeader("Parameter replacement (GrepConsoleUtil.replaceParams)"); //$NON-NLS-1$
+		runner.run(createReplaceParamsBenchmark("frames", corpora.get("stack"))); //$NON-NLS-1$ //$NON-NLS-2$
+
+		System.out.println();
+		System.out.println("(" + runner.getBlackhole() + ")"); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	/**
+	 * Creates a benchmark filtering a corpus as the Grep View does.
+	 *
+	 * @param name Benchmark name.
+	 * @param rules Compiled rules.
+	 * @param text Corpus text.
+	 *
+	 * @return Benchmark.
+	 */
+	private static Benchmark createFilterBenchmark(String name, final CompiledRuleSet rules, final String text)
+	{
+		final MatchGuard guard = new MatchGuard(MatchGuard.DEFAULT_TIME_LIMIT);
+		final ExpressionProfiler profiler = new ExpressionProfiler();
+
+		return new Benchmark(name, LogCorpus.splitLines(text).length)
+		{
+			@Override
+			public long run()
+			{
+				FilterProcessor processor = new FilterProcessor(LogCorpus.DELIMITER,
+						LineMatcher.DEFAULT_FILTER_MATCH_LENGTH, rules.createFilterRules(),
+						rules.createFilterPrefilter(), rules.getStatisticsItems(),
+						rules.getNotificationItems(), null, guard, profiler);
+				FilterBatch batch = new FilterBatch(0);
+				processor.process(text, false, true, batch);
+
+				return batch.getLineCount() + batch.getStatisticsUpdates().size();
+			}
+		};
+	}
+
+	/**
+	 * Creates a benchmark styling all lines of a corpus as the console does
+	 * when painting them.
+	 *
+	 * @param name Benchmark name.
+	 * @param rules Compiled rules.
+	 * @param text Corpus text.
+	 *
+	 * @return Benchmark.
+	 */
+	private static Benchmark createStyleBenchmark(String name, CompiledRuleSet rules, String text)
+	{
+		final String[] lines = LogCorpus.splitLines(text);
+		final LineStyler styler = new LineStyler(new MatchGuard(MatchGuard.DEFAULT_TIME_LIMIT), new ExpressionProfiler(), null);
+		styler.setItems(rules.getEnabledItems(), rules.createStylePrefilter());
+		styler.setMatchLength(STYLE_MATCH_LENGTH);
+
+		final GrepLineStyleListener listener = new GrepLineStyleListener(styler, null, null);
+		listener.setColorRegistry(new ColorRegistry(null)
+		{
+			@Override
+			public synchronized Color get(RGB rgb)
+			{
+				return null;
+			}
+		});
+
+		return new Benchmark(name, lines.length)
+		{
+			@Override
+			public long run()
+			{
+				long count = 0;
+				int offset = 0;
+
+				for(String line: lines)
+				{
+					LinkedList<GrepStyleRange> ranges = styler.getStyleRanges(line, true, true);
+					StyleRange[] styles = listener.convertStyles(offset, line, null, ranges);
+
+					if(styles != null)
+					{
+						count += styles.length;
+					}
+
+					offset += line.length() + 1;
+				}
+
+				return count;
+			}
+		};
+	}
+
+	/**
+	 * Creates a benchmark replacing the parameters of a rewrite pattern for all
+	 * stack frame lines of a corpus.
+	 *
+	 * @param name Benchmark name.
+	 * @param text Corpus text.
+	 *
+	 * @return Benchmark.
+	 */
+	private static Benchmark createReplaceParamsBenchmark(String name, String text)
+	{
+		final List<String> lines = new ArrayList<String>();
+		final List<MatchSnapshot> matches = new ArrayList<MatchSnapshot>();
+
+		for(String line: LogCorpus.splitLines(text))
+		{
+			Matcher matcher = FRAME_PATTERN.matcher(line);
+
+			if(matcher.find())
+			{
+				lines.add(line);
+				matches.add(new MatchSnapshot(matcher, line));
+			}
+		}
+
+		return new Benchmark(name, lines.size())
+		{
+			@Override
+			public long run()
+			{
+				long length = 0;
+				List<int[]> rangeIndices = new ArrayList<int[]>();
+
+				for(int i = 0; i < lines.size(); i++)
+				{
+					rangeIndices.clear();
+					length += GrepConsoleUtil.replaceParams(REWRITE_PATTERN, matches.get(i), lines.get(i), -1, rangeIndices, null, null).length();
+				}
+
+				return length;
+			}
+		};
+	}
+}
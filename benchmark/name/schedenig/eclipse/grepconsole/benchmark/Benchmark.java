@@ -0,0 +1,72 @@
+/*******************************************************************************
+ * Copyright (c) 2008 - 2014 Marian Schedenig
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marian Schedenig - initial API and implementation
+ *******************************************************************************/
+
+package name.schedenig.eclipse.grepconsole.benchmark;
+
+/**
+ * A single benchmark, run by a {@link BenchmarkRunner}.
+ *
+ * An operation usually processes a number of units (e.g. all lines of a log
+ * corpus), so results can be compared per unit between benchmarks with
+ * different operation sizes.
+ *
+ * @author msched
+ */
+public abstract class Benchmark
+{
+	/** Benchmark name. */
+	private String name;
+
+	/** Number of units processed by one operation. */
+	private int units;
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param name Benchmark name.
+	 * @param units Number of units processed by one operation.
+	 */
+	public Benchmark(String name, int units)
+	{
+		this.name = name;
+		this.units = units;
+	}
+
+	/**
+	 * Returns the benchmark name.
+	 *
+	 * @return Name.
+	 */
+	public String getName()
+	{
+		return name;
+	}
+
+	/**
+	 * Returns the number of units processed by one operation.
+	 *
+	 * @return Number of units.
+	 */
+	public int getUnits()
+	{
+		return units;
+	}
+
+	/**
+	 * Performs a single operation.
+	 *
+	 * @return A value depending on the operation's results, so that the work
+	 * 		cannot be optimised away.
+	 *
+	 * @throws Exception If the operation fails.
+	 */
+	public abstract long run() throws Exception;
+}
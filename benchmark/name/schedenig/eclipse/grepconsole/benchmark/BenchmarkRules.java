@@ -0,0 +1,268 @@
+/*******************************************************************************
+ * Copyright (c) 2008 - 2014 Marian Schedenig
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marian Schedenig - initial API and implementation
+ *******************************************************************************/
+
+package name.schedenig.eclipse.grepconsole.benchmark;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+import name.schedenig.eclipse.grepconsole.model.GrepExpressionFolder;
+import name.schedenig.eclipse.grepconsole.model.GrepExpressionItem;
+import name.schedenig.eclipse.grepconsole.model.GrepExpressionRootFolder;
+import name.schedenig.eclipse.grepconsole.model.GrepGroup;
+import name.schedenig.eclipse.grepconsole.model.GrepStyle;
+import name.schedenig.eclipse.grepconsole.model.links.IGrepLink;
+import name.schedenig.eclipse.grepconsole.model.links.JavaLink;
+import name.schedenig.eclipse.grepconsole.model.links.UrlLink;
+import name.schedenig.eclipse.grepconsole.model.xml.XmlHandler;
+import name.schedenig.eclipse.grepconsole.model.xml.XmlHandlerException;
+
+import org.eclipse.swt.graphics.RGB;
+
+/**
+ * Creates expression trees for benchmarks.
+ *
+ * @author msched
+ */
+public class BenchmarkRules
+{
+	/** Words used for the synthetic expressions. Some of them occur in the
+	 *  generated log corpora, most of them do not. */
+	private static final String[] WORDS = {"request", "order", "timeout", "failed", "invoice", "payment", "shipment", "customer", "ledger", "account", "audit", "token", "quota", "tenant", "backup", "index"}; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$ //$NON-NLS-8$ //$NON-NLS-9$ //$NON-NLS-10$ //$NON-NLS-11$ //$NON-NLS-12$ //$NON-NLS-13$ //$NON-NLS-14$ //$NON-NLS-15$ //$NON-NLS-16$
+
+	/**
+	 * Reads an expression tree from a file, as exported from the expression
+	 * management dialog.
+	 *
+	 * @param fileName File name.
+	 *
+	 * @return Root folder.
+	 *
+	 * @throws IOException If the file cannot be read.
+	 * @throws XmlHandlerException If the file is not valid.
+	 */
+	public static GrepExpressionRootFolder read(String fileName) throws IOException, XmlHandlerException
+	{
+		InputStream in = new FileInputStream(fileName);
+
+		try
+		{
+			return new XmlHandler().readExpressions(in);
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	/**
+	 * Creates a small expression tree resembling a typical setup: log level
+	 * styles, exception and stack trace highlighting with links, URLs, and a
+	 * few filter (one of them rewriting its lines) and statistics expressions.
+	 *
+	 * @return Root folder.
+	 */
+	public static GrepExpressionRootFolder createDefaultRules()
+	{
+		GrepExpressionRootFolder root = new GrepExpressionRootFolder();
+		GrepExpressionFolder levels = new GrepExpressionFolder("levels"); //$NON-NLS-1$
+		GrepExpressionFolder java = new GrepExpressionFolder("java"); //$NON-NLS-1$
+		GrepExpressionFolder misc = new GrepExpressionFolder("misc"); //$NON-NLS-1$
+		root.add(levels);
+		root.add(java);
+		root.add(misc);
+
+		GrepStyle error = createStyle(root, new RGB(255, 0, 0), true);
+		GrepStyle warn = createStyle(root, new RGB(200, 120, 0), false);
+		GrepStyle debug = createStyle(root, new RGB(128, 128, 128), false);
+		GrepStyle link = createStyle(root, new RGB(0, 0, 255), false);
+		link.setUnderline(true);
+
+		GrepExpressionItem item = createItem(levels, "error", "\\bERROR\\b", error); //$NON-NLS-1$ //$NON-NLS-2$
+		item.setDefaultFilter(true);
+		item.setDefaultStatistics(true);
+		item.setStatisticsCountLabel("Errors"); //$NON-NLS-1$
+
+		item = createItem(levels, "warn", "\\bWARN\\b", warn); //$NON-NLS-1$ //$NON-NLS-2$
+		item.setDefaultStatistics(true);
+		item.setStatisticsCountLabel("Warnings"); //$NON-NLS-1$
+
+		createItem(levels, "debug", "\\bDEBUG\\b", debug); //$NON-NLS-1$ //$NON-NLS-2$
+
+		item = createItem(java, "exception", "^([\\w$.]+(?:Exception|Error))(?::\\s*(.*))?$", error); //$NON-NLS-1$ //$NON-NLS-2$
+		item.setQuickGrepExpression("Exception|Error"); //$NON-NLS-1$
+		item.setDefaultFilter(true);
+
+		JavaLink javaLink = new JavaLink();
+		javaLink.setTypePattern("{1}"); //$NON-NLS-1$
+		javaLink.setLineNumberPattern("{4}"); //$NON-NLS-1$
+		item = createItem(java, "frame", "^\\s+at ([\\w$.]+)\\.([\\w$<>]+)\\(([\\w$]+\\.java):(\\d+)\\)", null); //$NON-NLS-1$ //$NON-NLS-2$
+		item.setQuickGrepExpression("at "); //$NON-NLS-1$
+		item.setGroups(new GrepGroup[]{createGroup(null, javaLink), createGroup(link, null), createGroup(null, null), createGroup(null, null), createGroup(null, null)});
+		item.setRewriteExpression("    {1}.{2} ({3}:{4})"); //$NON-NLS-1$
+		item.setDefaultFilter(true);
+
+		UrlLink urlLink = new UrlLink();
+		urlLink.setUrlPattern("{0}"); //$NON-NLS-1$
+		item = createItem(misc, "url", "https?://[^\\s\"]+", null); //$NON-NLS-1$ //$NON-NLS-2$
+		item.setGroups(new GrepGroup[]{createGroup(link, urlLink)});
+
+		item = createItem(misc, "duration", "\"durationMs\":(\\d+)", null); //$NON-NLS-1$ //$NON-NLS-2$
+		item.setDefaultStatistics(true);
+		item.setStatisticsValueLabel("Last duration"); //$NON-NLS-1$
+		item.setStatisticsValuePattern("{1} ms"); //$NON-NLS-1$
+
+		item = createItem(misc, "timeout", "(?i)time(?:d )?out", warn); //$NON-NLS-1$ //$NON-NLS-2$
+		item.setDefaultFilter(true);
+
+		return root;
+	}
+
+	/**
+	 * Creates a large synthetic expression tree. Expressions search for
+	 * combinations of words, some with capture groups, styles and links. Every
+	 * tenth expression is a filter expression and every twentieth a statistics
+	 * expression.
+	 *
+	 * @param count Number of expressions.
+	 * @param seed Random seed.
+	 *
+	 * @return Root folder.
+	 */
+	public static GrepExpressionRootFolder createSyntheticRules(int count, long seed)
+	{
+		Random random = new Random(seed);
+		GrepExpressionRootFolder root = new GrepExpressionRootFolder();
+		GrepStyle[] styles = new GrepStyle[8];
+
+		for(int i = 0; i < styles.length; i++)
+		{
+			styles[i] = createStyle(root, new RGB(random.nextInt(256), random.nextInt(256), random.nextInt(256)), i % 3 == 0);
+		}
+
+		UrlLink link = new UrlLink();
+		link.setUrlPattern("http://tracker.example.com/{1}"); //$NON-NLS-1$
+
+		GrepExpressionFolder folder = null;
+
+		for(int i = 0; i < count; i++)
+		{
+			if(i % 50 == 0)
+			{
+				folder = new GrepExpressionFolder("folder" + i); //$NON-NLS-1$
+				root.add(folder);
+			}
+
+			String first = WORDS[random.nextInt(WORDS.length)];
+			String second = WORDS[random.nextInt(WORDS.length)];
+			String expression;
+
+			switch(i % 4)
+			{
+				case 0:
+					expression = "\\b" + first + i + "\\b"; //$NON-NLS-1$ //$NON-NLS-2$
+					break;
+
+				case 1:
+					expression = first + "\\s+(" + second + "|" + i + ")"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+					break;
+
+				case 2:
+					expression = "(?i)" + first + "[ =:]+(\\d+)"; //$NON-NLS-1$ //$NON-NLS-2$
+					break;
+
+				default:
+					expression = first + ".*" + second + "-" + i; //$NON-NLS-1$ //$NON-NLS-2$
+			}
+
+			GrepExpressionItem item = createItem(folder, "rule" + i, expression, //$NON-NLS-1$
+					styles[random.nextInt(styles.length)]);
+
+			if(i % 4 == 1 || i % 4 == 2)
+			{
+				item.setGroups(new GrepGroup[]{createGroup(null, null),
+						createGroup(styles[random.nextInt(styles.length)], i % 8 == 1 ? link : null)});
+			}
+
+			if(i % 10 == 0)
+			{
+				item.setDefaultFilter(true);
+			}
+
+			if(i % 20 == 0)
+			{
+				item.setDefaultStatistics(true);
+				item.setStatisticsCountLabel("Rule " + i); //$NON-NLS-1$
+			}
+		}
+
+		return root;
+	}
+
+	/**
+	 * Creates a style and adds it to the root folder.
+	 *
+	 * @param root Root folder.
+	 * @param foreground Foreground colour.
+	 * @param bold Whether the style is bold.
+	 *
+	 * @return Style.
+	 */
+	private static GrepStyle createStyle(GrepExpressionRootFolder root, RGB foreground, boolean bold)
+	{
+		GrepStyle style = new GrepStyle();
+		style.setForeground(foreground);
+		style.setBold(bold);
+		root.addStyle(style);
+
+		return style;
+	}
+
+	/**
+	 * Creates an expression item and adds it to a folder.
+	 *
+	 * @param folder Folder.
+	 * @param id Item ID.
+	 * @param expression Grep expression.
+	 * @param style Optional style for the whole match.
+	 *
+	 * @return Item.
+	 */
+	private static GrepExpressionItem createItem(GrepExpressionFolder folder, String id,
+			String expression, GrepStyle style)
+	{
+		GrepExpressionItem item = new GrepExpressionItem(id);
+		item.setGrepExpression(expression);
+		item.setGroups(new GrepGroup[]{createGroup(style, null)});
+		folder.add(item);
+
+		return item;
+	}
+
+	/**
+	 * Creates a capture group configuration.
+	 *
+	 * @param style Optional style.
+	 * @param link Optional link.
+	 *
+	 * @return Group.
+	 */
+	private static GrepGroup createGroup(GrepStyle style, IGrepLink link)
+	{
+		GrepGroup group = new GrepGroup();
+		group.setStyle(style);
+		group.setLink(link);
+
+		return group;
+	}
+}
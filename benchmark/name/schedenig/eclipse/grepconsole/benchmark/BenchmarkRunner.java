@@ -0,0 +1,247 @@
+/*******************************************************************************
+ * Copyright (c) 2008 - 2014 Marian Schedenig
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marian Schedenig - initial API and implementation
+ *******************************************************************************/
+
+package name.schedenig.eclipse.grepconsole.benchmark;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+
+/**
+ * Runs benchmarks and prints their results.
+ *
+ * Each benchmark is first run repeatedly for the warm-up time, but at least
+ * {@link #MIN_WARMUP_OPERATIONS} times, then for the measurement time.
+ * Reported are the time per operation, the time per unit and, if the JVM
+ * supports counting the bytes allocated by a thread, the bytes allocated per
+ * unit.
+ *
+ * The times can be set with the system properties
+ * <code>benchmark.warmup</code> and <code>benchmark.time</code>, both in
+ * milliseconds.
+ *
+ * @author msched
+ */
+public class BenchmarkRunner
+{
+	/**
+	 * Results of a benchmark run.
+	 *
+	 * @author msched
+	 */
+	public static class Result
+	{
+		/** Average time per operation, in nanoseconds. */
+		private double nanosPerOperation;
+
+		/** Average number of bytes allocated per operation, or -1 if
+		 *  unknown. */
+		private double bytesPerOperation;
+
+		/**
+		 * Creates a new instance.
+		 *
+		 * @param nanosPerOperation Average time per operation, in nanoseconds.
+		 * @param bytesPerOperation Average number of bytes allocated per
+		 * 		operation, or -1 if unknown.
+		 */
+		public Result(double nanosPerOperation, double bytesPerOperation)
+		{
+			this.nanosPerOperation = nanosPerOperation;
+			this.bytesPerOperation = bytesPerOperation;
+		}
+
+		/**
+		 * Returns the average time per operation.
+		 *
+		 * @return Time in nanoseconds.
+		 */
+		public double getNanosPerOperation()
+		{
+			return nanosPerOperation;
+		}
+
+		/**
+		 * Returns the average number of bytes allocated per operation.
+		 *
+		 * @return Number of bytes, or -1 if unknown.
+		 */
+		public double getBytesPerOperation()
+		{
+			return bytesPerOperation;
+		}
+	}
+
+	/** Default warm-up time, in milliseconds. */
+	public static final int DEFAULT_WARMUP_TIME = 1000;
+
+	/** Default measurement time, in milliseconds. */
+	public static final int DEFAULT_MEASUREMENT_TIME = 2000;
+
+	/** Minimum number of warm-up operations, so that benchmarks with long
+	 *  operations are compiled before they are measured. */
+	public static final int MIN_WARMUP_OPERATIONS = 3;
+
+	/** Output stream. */
+	private PrintStream out;
+
+	/** Warm-up time, in milliseconds. */
+	private int warmupTime = Integer.getInteger("benchmark.warmup", DEFAULT_WARMUP_TIME); //$NON-NLS-1$
+
+	/** Measurement time, in milliseconds. */
+	private int measurementTime = Integer.getInteger("benchmark.time", DEFAULT_MEASUREMENT_TIME); //$NON-NLS-1$
+
+	/** Thread bean, if it can count allocated bytes. */
+	private ThreadMXBean threadBean;
+
+	/** Method returning the bytes allocated by a thread, or <code>null</code>
+	 *  if not supported. Accessed via reflection as it is not part of the
+	 *  standard API. */
+	private Method allocatedBytesMethod;
+
+	/** Accumulates the benchmark return values. */
+	private long blackhole;
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param out Output stream.
+	 */
+	public BenchmarkRunner(PrintStream out)
+	{
+		this.out = out;
+
+		threadBean = ManagementFactory.getThreadMXBean();
+
+		try
+		{
+			Class<?> beanClass = Class.forName("com.sun.management.ThreadMXBean"); //$NON-NLS-1$
+
+			if(beanClass.isInstance(threadBean))
+			{
+				allocatedBytesMethod = beanClass.getMethod("getThreadAllocatedBytes", long.class); //$NON-NLS-1$
+			}
+		}
+		catch(ClassNotFoundException ex)
+		{
+			allocatedBytesMethod = null;
+		}
+		catch(NoSuchMethodException ex)
+		{
+			allocatedBytesMethod = null;
+		}
+	}
+
+	/**
+	 * Prints a header line.
+	 *
+	 * @param title Title.
+	 */
+	public void printHeader(String title)
+	{
+		out.println();
+		out.println(title);
+		out.println(String.format("%-48s %14s %12s %12s", "", "us/op", "ns/unit", "bytes/unit")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+	}
+
+	/**
+	 * Runs a benchmark and prints its results.
+	 *
+	 * @param benchmark Benchmark.
+	 *
+	 * @return Results.
+	 *
+	 * @throws Exception If the benchmark fails.
+	 */
+	public Result run(Benchmark benchmark) throws Exception
+	{
+		runFor(benchmark, warmupTime, MIN_WARMUP_OPERATIONS);
+
+		long bytesBefore = getAllocatedBytes();
+		long start = System.nanoTime();
+		long operations = runFor(benchmark, measurementTime, 1);
+		long nanos = System.nanoTime() - start;
+		long bytesAfter = getAllocatedBytes();
+
+		double nanosPerOperation = (double) nanos / operations;
+		double bytesPerOperation = bytesBefore < 0 ? -1 : (double) (bytesAfter - bytesBefore) / operations;
+		int units = Math.max(1, benchmark.getUnits());
+
+		out.println(String.format("%-48s %14.1f %12.1f %12s", benchmark.getName(), //$NON-NLS-1$
+				nanosPerOperation / 1000, nanosPerOperation / units,
+				bytesPerOperation < 0 ? "n/a" : String.format("%.1f", bytesPerOperation / units))); //$NON-NLS-1$ //$NON-NLS-2$
+
+		return new Result(nanosPerOperation, bytesPerOperation);
+	}
+
+	/**
+	 * Runs a benchmark repeatedly until the specified time has passed and the
+	 * specified minimum number of operations has been performed.
+	 *
+	 * @param benchmark Benchmark.
+	 * @param millis Time in milliseconds.
+	 * @param minOperations Minimum number of operations.
+	 *
+	 * @return Number of operations.
+	 *
+	 * @throws Exception If the benchmark fails.
+	 */
+	private long runFor(Benchmark benchmark, int millis, int minOperations) throws Exception
+	{
+		long end = System.nanoTime() + millis * 1000000L;
+		long operations = 0;
+
+		do
+		{
+			blackhole += benchmark.run();
+			operations++;
+		}
+		while(operations < minOperations || System.nanoTime() < end);
+
+		return operations;
+	}
+
+	/**
+	 * Returns the number of bytes allocated by the current thread so far.
+	 *
+	 * @return Number of bytes, or -1 if not supported.
+	 */
+	private long getAllocatedBytes()
+	{
+		if(allocatedBytesMethod == null)
+		{
+			return -1;
+		}
+
+		try
+		{
+			return (Long) allocatedBytesMethod.invoke(threadBean, Thread.currentThread().getId());
+		}
+		catch(Exception ex)
+		{
+			allocatedBytesMethod = null;
+			return -1;
+		}
+	}
+
+	/**
+	 * Returns the accumulated benchmark return values. Printing this at the
+	 * end of a benchmark program makes sure that no benchmark results are
+	 * discarded as unused.
+	 *
+	 * @return Accumulated value.
+	 */
+	public long getBlackhole()
+	{
+		return blackhole;
+	}
+}
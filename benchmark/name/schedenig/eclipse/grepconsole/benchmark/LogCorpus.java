@@ -0,0 +1,254 @@
+/*******************************************************************************
+ * Copyright (c) 2008 - 2014 Marian Schedenig
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marian Schedenig - initial API and implementation
+ *******************************************************************************/
+
+package name.schedenig.eclipse.grepconsole.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates synthetic console output for benchmarks. The same kind, size and
+ * seed always produce the same text.
+ *
+ * @author msched
+ */
+public class LogCorpus
+{
+	/**
+	 * Kinds of console output.
+	 *
+	 * @author msched
+	 */
+	public static enum Kind
+	{
+		/** Typical application log with levels, loggers and occasional
+		 *  exceptions with stack traces. */
+		STACK_TRACES,
+
+		/** Structured logging, one JSON object per line. */
+		JSON_LINES,
+
+		/** Very long lines, e.g. dumped data or minified output. */
+		LONG_LINES
+	}
+
+	/** Line delimiter used for all generated text. */
+	public static final String DELIMITER = "\n"; //$NON-NLS-1$
+
+	/** Log levels. */
+	private static final String[] LEVELS = {"DEBUG", "INFO", "INFO", "INFO", "WARN", "ERROR"}; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$
+
+	/** Package names. */
+	private static final String[] PACKAGES = {"com.example.app", "com.example.app.service", "org.example.persistence", "org.example.web.servlet"}; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+
+	/** Class names. */
+	private static final String[] CLASSES = {"OrderService", "UserRepository", "RequestDispatcher", "CacheManager", "SessionFilter", "ReportJob"}; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$
+
+	/** Method names. */
+	private static final String[] METHODS = {"execute", "load", "doFilter", "invoke", "handleRequest", "run"}; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$
+
+	/** Exception names. */
+	private static final String[] EXCEPTIONS = {"java.lang.IllegalStateException", "java.lang.NullPointerException", "java.io.IOException", "java.sql.SQLException"}; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+
+	/** Words used for messages. */
+	private static final String[] WORDS = {"request", "user", "order", "cache", "session", "timeout", "connection", "query", "started", "finished", "failed", "retrying", "loaded", "entries", "from", "for", "with", "after", "the", "in"}; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$ //$NON-NLS-8$ //$NON-NLS-9$ //$NON-NLS-10$ //$NON-NLS-11$ //$NON-NLS-12$ //$NON-NLS-13$ //$NON-NLS-14$ //$NON-NLS-15$ //$NON-NLS-16$ //$NON-NLS-17$ //$NON-NLS-18$ //$NON-NLS-19$ //$NON-NLS-20$
+
+	/** Random number generator. */
+	private Random random;
+
+	/** Generated text. */
+	private StringBuilder sb = new StringBuilder();
+
+	/** Number of generated lines. */
+	private int lineCount;
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param seed Random seed.
+	 */
+	private LogCorpus(long seed)
+	{
+		random = new Random(seed);
+	}
+
+	/**
+	 * Generates console output.
+	 *
+	 * @param kind Kind of output.
+	 * @param lines Number of lines.
+	 * @param seed Random seed.
+	 *
+	 * @return Generated text. Every line, including the last one, is
+	 * 		terminated by {@link #DELIMITER}.
+	 */
+	public static String create(Kind kind, int lines, long seed)
+	{
+		LogCorpus corpus = new LogCorpus(seed);
+
+		while(corpus.lineCount < lines)
+		{
+			switch(kind)
+			{
+				case STACK_TRACES:
+					corpus.appendLogEntry(lines);
+					break;
+
+				case JSON_LINES:
+					corpus.appendJsonLine();
+					break;
+
+				case LONG_LINES:
+					corpus.appendLongLine();
+					break;
+			}
+		}
+
+		return corpus.sb.toString();
+	}
+
+	/**
+	 * Splits generated text into lines.
+	 *
+	 * @param text Text, as created by {@link #create(Kind, int, long)}.
+	 *
+	 * @return Lines, without delimiters.
+	 */
+	public static String[] splitLines(String text)
+	{
+		List<String> lines = new ArrayList<String>();
+		int start = 0;
+
+		for(int index = text.indexOf(DELIMITER); index >= 0; index = text.indexOf(DELIMITER, start))
+		{
+			lines.add(text.substring(start, index));
+			start = index + DELIMITER.length();
+		}
+
+		return lines.toArray(new String[lines.size()]);
+	}
+
+	/**
+	 * Appends a log line, occasionally followed by a stack trace.
+	 *
+	 * @param maxLines Maximum total number of lines.
+	 */
+	private void appendLogEntry(int maxLines)
+	{
+		String level = pick(LEVELS);
+		appendTimestamp();
+		sb.append(' ').append(level).append(" [thread-").append(random.nextInt(8)).append("] "); //$NON-NLS-1$ //$NON-NLS-2$
+		sb.append(pick(PACKAGES)).append('.').append(pick(CLASSES)).append(" - "); //$NON-NLS-1$
+		appendWords(4 + random.nextInt(10));
+		endLine();
+
+		if(level.equals("ERROR") && random.nextInt(3) == 0) //$NON-NLS-1$
+		{
+			sb.append(pick(EXCEPTIONS)).append(": "); //$NON-NLS-1$
+			appendWords(3 + random.nextInt(5));
+			endLine();
+
+			int frames = 5 + random.nextInt(25);
+
+			for(int i = 0; i < frames && lineCount < maxLines; i++)
+			{
+				String className = pick(CLASSES);
+				sb.append("\tat ").append(pick(PACKAGES)).append('.').append(className).append('.').append(pick(METHODS)); //$NON-NLS-1$
+				sb.append('(').append(className).append(".java:").append(1 + random.nextInt(800)).append(')'); //$NON-NLS-1$
+				endLine();
+			}
+		}
+	}
+
+	/**
+	 * Appends a JSON log line.
+	 */
+	private void appendJsonLine()
+	{
+		sb.append("{\"timestamp\":\""); //$NON-NLS-1$
+		appendTimestamp();
+		sb.append("\",\"level\":\"").append(pick(LEVELS)); //$NON-NLS-1$
+		sb.append("\",\"logger\":\"").append(pick(PACKAGES)).append('.').append(pick(CLASSES)); //$NON-NLS-1$
+		sb.append("\",\"message\":\""); //$NON-NLS-1$
+		appendWords(4 + random.nextInt(12));
+		sb.append("\",\"userId\":").append(random.nextInt(100000)); //$NON-NLS-1$
+		sb.append(",\"durationMs\":").append(random.nextInt(5000)); //$NON-NLS-1$
+		sb.append(",\"url\":\"http://www.example.com/").append(pick(WORDS)).append('/').append(random.nextInt(1000)).append("\"}"); //$NON-NLS-1$
+		endLine();
+	}
+
+	/**
+	 * Appends a very long line.
+	 */
+	private void appendLongLine()
+	{
+		int length = 10000 + random.nextInt(40000);
+		int start = sb.length();
+		appendTimestamp();
+		sb.append(" INFO dump: "); //$NON-NLS-1$
+
+		while(sb.length() - start < length)
+		{
+			sb.append(pick(WORDS)).append('=').append(random.nextInt(100000)).append(';');
+		}
+
+		endLine();
+	}
+
+	/**
+	 * Appends a timestamp.
+	 */
+	private void appendTimestamp()
+	{
+		sb.append(String.format("2014-03-%02d %02d:%02d:%02d,%03d", 1 + random.nextInt(28), //$NON-NLS-1$
+				random.nextInt(24), random.nextInt(60), random.nextInt(60), random.nextInt(1000)));
+	}
+
+	/**
+	 * Appends random words, separated by blanks.
+	 *
+	 * @param count Number of words.
+	 */
+	private void appendWords(int count)
+	{
+		for(int i = 0; i < count; i++)
+		{
+			if(i > 0)
+			{
+				sb.append(' ');
+			}
+
+			sb.append(pick(WORDS));
+		}
+	}
+
+	/**
+	 * Terminates the current line.
+	 */
+	private void endLine()
+	{
+		sb.append(DELIMITER);
+		lineCount++;
+	}
+
+	/**
+	 * Picks a random element from an array.
+	 *
+	 * @param values Array.
+	 *
+	 * @return Random element.
+	 */
+	private String pick(String[] values)
+	{
+		return values[random.nextInt(values.length)];
+	}
+}
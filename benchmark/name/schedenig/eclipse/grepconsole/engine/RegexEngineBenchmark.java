@@ -0,0 +1,478 @@
+/*******************************************************************************
+ * Copyright (c) 2008 - 2014 Marian Schedenig
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marian Schedenig - initial API and implementation
+ *******************************************************************************/
+
+package name.schedenig.eclipse.grepconsole.engine;
+
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import name.schedenig.eclipse.grepconsole.benchmark.Benchmark;
+import name.schedenig.eclipse.grepconsole.benchmark.BenchmarkRunner;
+import name.schedenig.eclipse.grepconsole.benchmark.LogCorpus;
+
+/**
+ * Compares the linear time engine with the JDK's engine.
+ *
+ * First, the semantics are compared on randomly generated expressions using
+ * the supported syntax, matched against random texts: every successive match
+ * must have the same bounds for all groups. The only accepted difference
+ * concerns capturing groups inside repeated groups, for which the JDK's engine
+ * may report captures left over from attempts it has abandoned, while the
+ * linear time engine only reports those of the successful path. Such
+ * differences are counted separately if the whole match is the same and the
+ * linear time engine's captures lie within it.
+ *
+ * Then both engines are timed on typical expressions over a stack trace
+ * corpus and on expressions prone to catastrophic backtracking. Units are
+ * lines.
+ *
+ * Usage: RegexEngineBenchmark [expressions [seed]]
+ *
+ * Exits with status 1 if the engines match differently.
+ *
+ * @author msched
+ */
+public class RegexEngineBenchmark
+{
+	/** Default number of random expressions compared. */
+	private static final int DEFAULT_EXPRESSIONS = 20000;
+
+	/** Number of random texts per expression. */
+	private static final int TEXTS_PER_EXPRESSION = 10;
+
+	/** Maximum number of successive matches compared per text. */
+	private static final int MAX_FINDS = 20;
+
+	/** Maximum number of mismatches that are printed. */
+	private static final int MAX_REPORTED = 10;
+
+	/** Returned when only the captures of groups in repetitions differ. */
+	private static final String REPEATED_CAPTURE_DIFFERENCE = "repeated capture"; //$NON-NLS-1$
+
+	/** Characters used for random texts and literals. */
+	private static final String ALPHABET = "abcAB 1-"; //$NON-NLS-1$
+
+	/** Character classes used in random expressions. */
+	private static final String[] CLASSES = {".", "[ab]", "[^a]", "[a-c1]", "\\d", "\\w", "\\W", "\\s"}; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$ //$NON-NLS-8$
+
+	/** Anchors used in random expressions. */
+	private static final String[] ANCHORS = {"^", "$", "\\b", "\\B"}; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+
+	/** Quantifiers used in random expressions. */
+	private static final String[] QUANTIFIERS = {"*", "+", "?", "{2}", "{1,3}", "{0,2}", "*?", "+?", "??", "{1,2}?"}; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$ //$NON-NLS-8$ //$NON-NLS-9$ //$NON-NLS-10$
+
+	/** Typical expressions timed on the stack trace corpus. */
+	private static final String[] TYPICAL_EXPRESSIONS = {
+		"\\bERROR\\b", //$NON-NLS-1$
+		"^\\s+at ([\\w$.]+)\\.([\\w$<>]+)\\(([\\w$]+\\.java):(\\d+)\\)", //$NON-NLS-1$
+		"(\\w+)Exception: (.*)", //$NON-NLS-1$
+		"(?i)time(?:d )?out|failed", //$NON-NLS-1$
+	};
+
+	/** Expressions prone to catastrophic backtracking. */
+	private static final String[] RISKY_EXPRESSIONS = {
+		"(x+x+)+y", //$NON-NLS-1$
+		"^(\\w+\\s?)*$", //$NON-NLS-1$
+	};
+
+	/** Length of the lines the risky expressions are matched against. The
+	 *  JDK's engine needs exponential time, so this is kept short. */
+	private static final int RISKY_LINE_LENGTH = 20;
+
+	/** Number of stack trace lines. */
+	private static final int CORPUS_LINES = 5000;
+
+	/** Random number generator. */
+	private Random random;
+
+	/** Number of capturing groups in the expression being generated. */
+	private int captureCount;
+
+	/** Whether the expression being generated has a capturing group inside a
+	 *  repeated group, or a repeated capturing group. */
+	private boolean repeatedCapture;
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param seed Random seed.
+	 */
+	public RegexEngineBenchmark(long seed)
+	{
+		random = new Random(seed);
+	}
+
+	/**
+	 * Runs the comparison and the benchmarks.
+	 *
+	 * @param args Optional number of random expressions and random seed.
+	 *
+	 * @throws Exception If a benchmark fails.
+	 */
+	public static void main(String[] args) throws Exception
+	{
+		int expressions = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_EXPRESSIONS;
+		long seed = args.length > 1 ? Long.parseLong(args[1]) : 42;
+
+		int mismatches = new RegexEngineBenchmark(seed).compare(expressions);
+
+		BenchmarkRunner runner = new BenchmarkRunner(System.out);
+		String[] lines = LogCorpus.splitLines(LogCorpus.create(LogCorpus.Kind.STACK_TRACES, CORPUS_LINES, seed));
+		runner.printHeader("Typical expressions on stack traces (units: lines)"); //$NON-NLS-1$
+
+		for(String expression: TYPICAL_EXPRESSIONS)
+		{
+			runBoth(runner, expression, lines);
+		}
+
+		StringBuilder sb = new StringBuilder();
+
+		for(int i = 0; i < RISKY_LINE_LENGTH; i++)
+		{
+			sb.append('x');
+		}
+
+		String[] riskyLines = {sb.toString() + "!"}; //$NON-NLS-1$
+		runner.printHeader("Expressions prone to backtracking, " + riskyLines[0].length() + " characters (units: lines)"); //$NON-NLS-1$ //$NON-NLS-2$
+
+		for(String expression: RISKY_EXPRESSIONS)
+		{
+			runBoth(runner, expression, riskyLines);
+		}
+
+		System.out.println();
+		System.out.println("(" + runner.getBlackhole() + ")"); //$NON-NLS-1$ //$NON-NLS-2$
+
+		if(mismatches > 0)
+		{
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Times an expression with both engines.
+	 *
+	 * @param runner Benchmark runner.
+	 * @param expression Expression.
+	 * @param lines Lines to match.
+	 *
+	 * @throws Exception If a benchmark fails.
+	 */
+	private static void runBoth(BenchmarkRunner runner, String expression, String[] lines) throws Exception
+	{
+		Pattern pattern = Pattern.compile(expression);
+		LinearPattern linearPattern = LinearPattern.compile(pattern);
+
+		runner.run(createFindBenchmark("jdk    " + expression, new BacktrackingMatcher(pattern, ""), lines)); //$NON-NLS-1$ //$NON-NLS-2$
+
+		if(linearPattern == null)
+		{
+			System.out.println("linear " + expression + ": not supported"); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		else
+		{
+			runner.run(createFindBenchmark("linear " + expression, linearPattern.matcher(""), lines)); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+	}
+
+	/**
+	 * Creates a benchmark finding all matches in a number of lines.
+	 *
+	 * @param name Benchmark name.
+	 * @param matcher Matcher, reset for every line.
+	 * @param lines Lines.
+	 *
+	 * @return Benchmark.
+	 */
+	private static Benchmark createFindBenchmark(String name, final ExpressionMatcher matcher, final String[] lines)
+	{
+		return new Benchmark(name, lines.length)
+		{
+			@Override
+			public long run()
+			{
+				long result = 0;
+
+				for(String line: lines)
+				{
+					matcher.reset(line);
+
+					while(matcher.find())
+					{
+						result += matcher.end();
+					}
+				}
+
+				return result;
+			}
+		};
+	}
+
+	/**
+	 * Compares both engines on random expressions and texts.
+	 *
+	 * @param expressions Number of expressions.
+	 *
+	 * @return Number of texts matched differently.
+	 */
+	public int compare(int expressions)
+	{
+		int supported = 0;
+		int texts = 0;
+		int mismatches = 0;
+		int repeatedCaptureDifferences = 0;
+
+		for(int i = 0; i < expressions; i++)
+		{
+			captureCount = 0;
+			repeatedCapture = false;
+			String expression = createAlternation(3);
+			boolean caseInsensitive = random.nextInt(4) == 0;
+			Pattern pattern;
+
+			try
+			{
+				pattern = Pattern.compile(expression, caseInsensitive ? Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE : 0);
+			}
+			catch(RuntimeException ex)
+			{
+				continue;
+			}
+
+			LinearPattern linearPattern = LinearPattern.compile(pattern);
+
+			if(linearPattern == null)
+			{
+				continue;
+			}
+
+			supported++;
+
+			for(int j = 0; j < TEXTS_PER_EXPRESSION; j++)
+			{
+				String text = createText();
+				String difference = compare(pattern, linearPattern, text, repeatedCapture);
+				texts++;
+
+				if(difference == REPEATED_CAPTURE_DIFFERENCE)
+				{
+					repeatedCaptureDifferences++;
+				}
+				else if(difference != null)
+				{
+					if(mismatches < MAX_REPORTED)
+					{
+						System.out.println("/" + pattern + "/" + (caseInsensitive ? "i" : "") //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+								+ " on \"" + text + "\": " + difference); //$NON-NLS-1$ //$NON-NLS-2$
+					}
+
+					mismatches++;
+				}
+			}
+		}
+
+		System.out.println(expressions + " expressions, " + supported + " supported, " //$NON-NLS-1$ //$NON-NLS-2$
+				+ texts + " texts, " + mismatches + " mismatches, " //$NON-NLS-1$ //$NON-NLS-2$
+				+ repeatedCaptureDifferences + " captures in repetitions differing"); //$NON-NLS-1$
+
+		return mismatches;
+	}
+
+	/**
+	 * Compares the successive matches of both engines on a text.
+	 *
+	 * @param pattern JDK pattern.
+	 * @param linearPattern Linear time pattern.
+	 * @param text Text.
+	 * @param repeatedCapture Whether the expression has capturing groups
+	 * 		inside repeated groups.
+	 *
+	 * @return Description of the first difference,
+	 * 		{@link #REPEATED_CAPTURE_DIFFERENCE} if only the captures of groups in
+	 * 		repetitions differ, or <code>null</code>.
+	 */
+	private static String compare(Pattern pattern, LinearPattern linearPattern,
+			String text, boolean repeatedCapture)
+	{
+		Matcher expected = pattern.matcher(text);
+		LinearMatcher actual = linearPattern.matcher(text);
+
+		for(int i = 0; i < MAX_FINDS; i++)
+		{
+			boolean found = expected.find();
+
+			if(found != actual.find())
+			{
+				return "match " + i + ": jdk " + (found ? describe(expected) : "none") //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+						+ ", linear " + (found ? "none" : describe(actual)); //$NON-NLS-1$ //$NON-NLS-2$
+			}
+
+			if(!found)
+			{
+				return null;
+			}
+
+			String expectedBounds = describe(expected);
+			String actualBounds = describe(actual);
+
+			if(!expectedBounds.equals(actualBounds))
+			{
+				if(repeatedCapture && expected.start() == actual.start()
+						&& expected.end() == actual.end() && isWithinMatch(actual))
+				{
+					return REPEATED_CAPTURE_DIFFERENCE;
+				}
+
+				return "match " + i + ": jdk " + expectedBounds + ", linear " + actualBounds; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Checks whether all captured groups of a match lie within the whole match.
+	 *
+	 * @param match Match.
+	 *
+	 * @return <code>true</code> if all groups lie within the match.
+	 */
+	private static boolean isWithinMatch(java.util.regex.MatchResult match)
+	{
+		for(int group = 1; group <= match.groupCount(); group++)
+		{
+			if(match.start(group) >= 0
+					&& (match.start(group) < match.start() || match.end(group) > match.end()))
+			{
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Describes the bounds of all groups of a match.
+	 *
+	 * @param match Match.
+	 *
+	 * @return Description.
+	 */
+	private static String describe(java.util.regex.MatchResult match)
+	{
+		StringBuilder sb = new StringBuilder();
+
+		for(int group = 0; group <= match.groupCount(); group++)
+		{
+			sb.append('[').append(match.start(group)).append(',').append(match.end(group)).append(']');
+		}
+
+		return sb.toString();
+	}
+
+	/**
+	 * Creates a random alternation.
+	 *
+	 * @param depth Maximum group nesting depth.
+	 *
+	 * @return Expression.
+	 */
+	private String createAlternation(int depth)
+	{
+		StringBuilder sb = new StringBuilder(createSequence(depth));
+
+		while(random.nextInt(4) == 0)
+		{
+			sb.append('|').append(createSequence(depth));
+		}
+
+		return sb.toString();
+	}
+
+	/**
+	 * Creates a random sequence of atoms.
+	 *
+	 * @param depth Maximum group nesting depth.
+	 *
+	 * @return Expression.
+	 */
+	private String createSequence(int depth)
+	{
+		StringBuilder sb = new StringBuilder();
+		int count = 1 + random.nextInt(3);
+
+		for(int i = 0; i < count; i++)
+		{
+			int kind = random.nextInt(10);
+
+			if(kind == 0)
+			{
+				sb.append(ANCHORS[random.nextInt(ANCHORS.length)]);
+				continue;
+			}
+
+			boolean hasCapture = false;
+
+			if(kind < 4 && depth > 0)
+			{
+				int captures = captureCount;
+
+				if(random.nextBoolean())
+				{
+					sb.append('(');
+					captureCount++;
+				}
+				else
+				{
+					sb.append("(?:"); //$NON-NLS-1$
+				}
+
+				sb.append(createAlternation(depth - 1)).append(')');
+				hasCapture = captureCount > captures;
+			}
+			else if(kind < 6)
+			{
+				sb.append(CLASSES[random.nextInt(CLASSES.length)]);
+			}
+			else
+			{
+				sb.append(Pattern.quote(String.valueOf(ALPHABET.charAt(random.nextInt(ALPHABET.length())))));
+			}
+
+			if(random.nextInt(3) == 0)
+			{
+				sb.append(QUANTIFIERS[random.nextInt(QUANTIFIERS.length)]);
+				repeatedCapture |= hasCapture;
+			}
+		}
+
+		return sb.toString();
+	}
+
+	/**
+	 * Creates a random text.
+	 *
+	 * @return Text.
+	 */
+	private String createText()
+	{
+		int length = random.nextInt(13);
+		StringBuilder sb = new StringBuilder(length);
+
+		for(int i = 0; i < length; i++)
+		{
+			sb.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+		}
+
+		return sb.toString();
+	}
+}
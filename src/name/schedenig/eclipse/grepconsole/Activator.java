@@ -23,8 +23,15 @@ import java.util.Set;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.transform.TransformerException;
 
+import name.schedenig.eclipse.grepconsole.adapters.CompiledRuleSetCache;
 import name.schedenig.eclipse.grepconsole.adapters.GrepPageParticipant;
+import name.schedenig.eclipse.grepconsole.adapters.links.AutostartQueue;
+import name.schedenig.eclipse.grepconsole.engine.ExpressionProfiler;
+import name.schedenig.eclipse.grepconsole.engine.LineMatcher;
+import name.schedenig.eclipse.grepconsole.engine.MatchGuard;
+import name.schedenig.eclipse.grepconsole.engine.MatchGuard.IMatchGuardListener;
 import name.schedenig.eclipse.grepconsole.i18n.Messages;
+import name.schedenig.eclipse.grepconsole.model.GrepExpressionItem;
 import name.schedenig.eclipse.grepconsole.model.GrepExpressionRootFolder;
 import name.schedenig.eclipse.grepconsole.model.xml.LegacyXmlReader;
 import name.schedenig.eclipse.grepconsole.model.xml.XmlHandler;
@@ -48,6 +55,7 @@ import org.eclipse.jface.resource.ImageRegistry;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.graphics.Cursor;
 import org.eclipse.swt.widgets.Shell;
+import org.eclipse.ui.PlatformUI;
 import org.eclipse.ui.console.IConsole;
 import org.eclipse.ui.plugin.AbstractUIPlugin;
 import org.osgi.framework.Bundle;
@@ -110,12 +118,21 @@ public class Activator extends AbstractUIPlugin
 	public static final String PREFS_FILTER_MATCH_LENGTH = "filterMatchLength"; //$NON-NLS-1$
 	public static final String PREFS_GREP_VIEW_FOREGROUND_COLOR = "grepViewForegroundColor"; //$NON-NLS-1$
 	public static final String PREFS_GREP_VIEW_BACKGROUND_COLOR = "grepViewBackgroundColor"; //$NON-NLS-1$
+	public static final String PREFS_GREP_VIEW_MAX_LINES = "grepViewMaxLines"; //$NON-NLS-1$
+	public static final String PREFS_GREP_VIEW_MAX_CHARS = "grepViewMaxChars"; //$NON-NLS-1$
+	public static final String PREFS_GREP_VIEW_UPDATE_INTERVAL = "grepViewUpdateInterval"; //$NON-NLS-1$
+	public static final String PREFS_REFRESH_THREADS = "refreshThreads"; //$NON-NLS-1$
+	public static final String PREFS_MATCH_TIME_LIMIT = "matchTimeLimit"; //$NON-NLS-1$
 	public static final String PREFS_LINK_MODIFIER_KEY = "linkModifierKey"; //$NON-NLS-1$
 	public static final String PREFS_LEGACY_SETTINGS = "settings"; //$NON-NLS-1$
 	public static final String PREFS_NOTIFICATION_FOREGROUND_COLOR = "notificationForegroundColor"; //$NON-NLS-1$
 	public static final String PREFS_NOTIFICATION_BACKGROUND_COLOR = "notificationBackgroundColor"; //$NON-NLS-1$
 	public static final String PREFS_NOTIFICATION_TITLE_FONT = "notificationTitleFont"; //$NON-NLS-1$
 	public static final String PREFS_NOTIFICATION_MESSAGE_FONT = "notificationMessageFont"; //$NON-NLS-1$
+	public static final String PREFS_NOTIFICATION_WINDOW = "notificationWindow"; //$NON-NLS-1$
+	public static final String PREFS_STYLE_CACHE_SIZE = "styleCacheSize"; //$NON-NLS-1$
+	public static final String PREFS_PRECOMPUTE_STYLES = "precomputeStyles"; //$NON-NLS-1$
+	public static final String PREFS_STYLING_BUDGET = "stylingBudget"; //$NON-NLS-1$
 	
 	/** Image ID constants. */
 	public static final String IMG_LOGO_SMALL = "logo_small"; //$NON-NLS-1$
@@ -164,7 +181,40 @@ public class Activator extends AbstractUIPlugin
 	public static final int DEFAULT_STYLE_MATCH_LENGTH = 150;
 	
 	/** Default filter match length. */
-	public static final int DEFAULT_FILTER_MATCH_LENGTH = 100;
+	public static final int DEFAULT_FILTER_MATCH_LENGTH = LineMatcher.DEFAULT_FILTER_MATCH_LENGTH;
+
+	/** Default maximum number of lines kept in the Grep View (0 = no limit). */
+	public static final int DEFAULT_GREP_VIEW_MAX_LINES = 0;
+
+	/** Default maximum number of characters kept in the Grep View
+	 *  (0 = no limit). */
+	public static final int DEFAULT_GREP_VIEW_MAX_CHARS = 0;
+
+	/** Default maximum interval between Grep View updates, in milliseconds. */
+	public static final int DEFAULT_GREP_VIEW_UPDATE_INTERVAL = 40;
+
+	/** Default number of threads used for refreshing filtered content
+	 *  (0 = one per available processor). */
+	public static final int DEFAULT_REFRESH_THREADS = 0;
+
+	/** Default time limit for matching an expression against a line, in
+	 *  milliseconds (0 = no limit). */
+	public static final int DEFAULT_MATCH_TIME_LIMIT = MatchGuard.DEFAULT_TIME_LIMIT;
+
+	/** Default length of the window during which further notifications of an
+	 *  expression are coalesced, in milliseconds (0 = no coalescing). */
+	public static final int DEFAULT_NOTIFICATION_WINDOW = 5000;
+
+	/** Default memory budget for caching the styles of console lines, in
+	 *  kilobytes (0 = no caching). */
+	public static final int DEFAULT_STYLE_CACHE_SIZE = 1024;
+
+	/** Whether console styles are precomputed in the background by default. */
+	public static final boolean DEFAULT_PRECOMPUTE_STYLES = false;
+
+	/** Default time spent on styling lines per console repaint before the
+	 *  remaining lines are styled in the background (milliseconds). */
+	public static final int DEFAULT_STYLING_BUDGET = 30;
 
 	/** Number of sound samples to keep cached in memory. */
 	private static final int SOUND_CACHE_SIZE = 3;
@@ -204,6 +254,18 @@ public class Activator extends AbstractUIPlugin
 	/** Sound manager. Created on demand. */
 	private SoundManager soundManager;
 
+	/** Match guard. Created on demand. */
+	private MatchGuard matchGuard;
+
+	/** Expression profiler. Created on demand. */
+	private ExpressionProfiler expressionProfiler;
+
+	/** Compiled rule sets shared by the consoles. Created on demand. */
+	private CompiledRuleSetCache ruleSetCache;
+
+	/** Autostart link queue. Created on demand. */
+	private AutostartQueue autostartQueue;
+
 	private GrepConsoleNotificationStyle notificationStyle;
 
 	/**
@@ -681,6 +743,10 @@ public class Activator extends AbstractUIPlugin
 	 */
 	public void doSettingsChanged()
 	{
+		getMatchGuard().setTimeLimit(getMatchTimeLimit());
+		getMatchGuard().liftEditedSuspensions(getExpressions());
+		getRuleSetCache().invalidate();
+		
 		for(IGrepConsoleListener listener: new ArrayList<IGrepConsoleListener>(listeners))
 		{
 			listener.settingsChanged();
@@ -735,6 +801,118 @@ public class Activator extends AbstractUIPlugin
 		return scope.getInt(PREFS_FILTER_MATCH_LENGTH, DEFAULT_FILTER_MATCH_LENGTH);
 	}
 
+	/**
+	 * Returns the maximum number of lines kept in the Grep View history. If more
+	 * lines are filtered, the oldest lines are discarded.
+	 * 
+	 * @return Maximum number of lines, or 0 for no limit.
+	 */
+	public int getGrepViewMaxLines()
+	{
+		IEclipsePreferences scope = InstanceScope.INSTANCE.getNode(PLUGIN_ID);
+		return scope.getInt(PREFS_GREP_VIEW_MAX_LINES, DEFAULT_GREP_VIEW_MAX_LINES);
+	}
+	
+	/**
+	 * Returns the maximum number of characters kept in the Grep View history.
+	 * If more text is filtered, the oldest lines are discarded.
+	 * 
+	 * @return Maximum number of characters, or 0 for no limit.
+	 */
+	public int getGrepViewMaxChars()
+	{
+		IEclipsePreferences scope = InstanceScope.INSTANCE.getNode(PLUGIN_ID);
+		return scope.getInt(PREFS_GREP_VIEW_MAX_CHARS, DEFAULT_GREP_VIEW_MAX_CHARS);
+	}
+	
+	/**
+	 * Returns the maximum interval between Grep View updates. Lines filtered
+	 * within this interval are added to the Grep View in a single update.
+	 * 
+	 * @return Interval in milliseconds, or 0 to add lines immediately.
+	 */
+	public int getGrepViewUpdateInterval()
+	{
+		IEclipsePreferences scope = InstanceScope.INSTANCE.getNode(PLUGIN_ID);
+		return scope.getInt(PREFS_GREP_VIEW_UPDATE_INTERVAL, DEFAULT_GREP_VIEW_UPDATE_INTERVAL);
+	}
+
+	/**
+	 * Returns the number of threads used for filtering the complete console
+	 * content, e.g. after expressions have been changed.
+	 * 
+	 * @return Number of threads. Always at least 1.
+	 */
+	public int getRefreshThreads()
+	{
+		IEclipsePreferences scope = InstanceScope.INSTANCE.getNode(PLUGIN_ID);
+		int threads = scope.getInt(PREFS_REFRESH_THREADS, DEFAULT_REFRESH_THREADS);
+		
+		return threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+	}
+
+	/**
+	 * Returns the maximum time matching a single expression against a single
+	 * line may take.
+	 * 
+	 * @return Time limit in milliseconds, or 0 for no limit.
+	 */
+	public int getMatchTimeLimit()
+	{
+		IEclipsePreferences scope = InstanceScope.INSTANCE.getNode(PLUGIN_ID);
+		return scope.getInt(PREFS_MATCH_TIME_LIMIT, DEFAULT_MATCH_TIME_LIMIT);
+	}
+
+	/**
+	 * Returns the length of the window during which further notifications of
+	 * an expression are coalesced.
+	 * 
+	 * @return Window length in milliseconds, or 0 for no coalescing.
+	 */
+	public int getNotificationWindow()
+	{
+		IEclipsePreferences scope = InstanceScope.INSTANCE.getNode(PLUGIN_ID);
+		return scope.getInt(PREFS_NOTIFICATION_WINDOW, DEFAULT_NOTIFICATION_WINDOW);
+	}
+
+	/**
+	 * Returns the memory budget for caching the styles calculated for console
+	 * lines.
+	 * 
+	 * @return Budget in kilobytes, or 0 for no caching.
+	 */
+	public int getStyleCacheSize()
+	{
+		IEclipsePreferences scope = InstanceScope.INSTANCE.getNode(PLUGIN_ID);
+		return scope.getInt(PREFS_STYLE_CACHE_SIZE, DEFAULT_STYLE_CACHE_SIZE);
+	}
+
+	/**
+	 * Returns whether the styles of console lines are precomputed in the
+	 * background as the lines are added, instead of when they are painted.
+	 * 
+	 * @return <code>true</code> if styles are precomputed.
+	 */
+	public boolean isPrecomputeStyles()
+	{
+		IEclipsePreferences scope = InstanceScope.INSTANCE.getNode(PLUGIN_ID);
+		return scope.getBoolean(PREFS_PRECOMPUTE_STYLES, DEFAULT_PRECOMPUTE_STYLES);
+	}
+
+	/**
+	 * Returns the time which may be spent on styling lines while a console is
+	 * repainted. Lines which cannot be styled in time are painted without
+	 * styles, styled in the background and redrawn.
+	 * 
+	 * @return Styling budget in milliseconds, or 0 to always style lines while
+	 * 		painting.
+	 */
+	public int getStylingBudget()
+	{
+		IEclipsePreferences scope = InstanceScope.INSTANCE.getNode(PLUGIN_ID);
+		return scope.getInt(PREFS_STYLING_BUDGET, DEFAULT_STYLING_BUDGET);
+	}
+
 	/**
 	 * Returns the link mouse cursor (creates it if necessary).
 	 * 
@@ -811,6 +989,79 @@ public class Activator extends AbstractUIPlugin
 		return soundManager;
 	}
 
+	/**
+	 * Returns the match guard, which keeps track of expressions exceeding the
+	 * match time limit. Creates it if necessary.
+	 * 
+	 * @return Match guard.
+	 */
+	public synchronized MatchGuard getMatchGuard()
+	{
+		if(matchGuard == null)
+		{
+			matchGuard = new MatchGuard(getMatchTimeLimit());
+			matchGuard.addListener(new IMatchGuardListener()
+			{
+				@Override
+				public void expressionSuspended(GrepExpressionItem item)
+				{
+					String name = item.getName() == null ? item.getGrepExpression() : item.getName();
+					log(IStatus.WARNING, MessageFormat.format(Messages.MatchGuard_expression_suspended, name, matchGuard.getTimeLimit(), MatchGuard.MAX_TIMEOUTS), null);
+				}
+			});
+		}
+		
+		return matchGuard;
+	}
+
+	/**
+	 * Returns the expression profiler, which collects per expression profiling
+	 * counters while it is enabled. Creates it if necessary.
+	 * 
+	 * @return Expression profiler.
+	 */
+	public synchronized ExpressionProfiler getExpressionProfiler()
+	{
+		if(expressionProfiler == null)
+		{
+			expressionProfiler = new ExpressionProfiler();
+		}
+		
+		return expressionProfiler;
+	}
+
+	/**
+	 * Returns the cache of compiled rule sets, which are shared by all consoles
+	 * with identical item flags. Creates it if necessary.
+	 * 
+	 * @return Rule set cache.
+	 */
+	public synchronized CompiledRuleSetCache getRuleSetCache()
+	{
+		if(ruleSetCache == null)
+		{
+			ruleSetCache = new CompiledRuleSetCache();
+		}
+		
+		return ruleSetCache;
+	}
+
+	/**
+	 * Returns the queue through which autostart links are executed. Creates it
+	 * if necessary. Must be called on the UI thread.
+	 * 
+	 * @return Autostart queue.
+	 */
+	public synchronized AutostartQueue getAutostartQueue()
+	{
+		if(autostartQueue == null)
+		{
+			autostartQueue = new AutostartQueue(PlatformUI.getWorkbench().getDisplay());
+		}
+		
+		return autostartQueue;
+	}
+
 	/**
 	 * @return
 	 */
@@ -0,0 +1,198 @@
+/*******************************************************************************
+ * Copyright (c) 2008 - 2014 Marian Schedenig
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marian Schedenig - initial API and implementation
+ *******************************************************************************/
+
+package name.schedenig.eclipse.grepconsole.adapters;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import name.schedenig.eclipse.grepconsole.engine.FilterRuleSet;
+import name.schedenig.eclipse.grepconsole.engine.LiteralPrefilter;
+import name.schedenig.eclipse.grepconsole.model.AbstractGrepModelElement;
+import name.schedenig.eclipse.grepconsole.model.GrepExpressionItem;
+import name.schedenig.eclipse.grepconsole.model.InheritedFlagResolver;
+
+/**
+ * Immutable snapshot of the expression items a console uses for styling,
+ * filtering, statistics and notifications, resolved from the expression tree
+ * and the console's flag maps.
+ *
+ * The items' patterns, the combined filter pattern and the literal
+ * prefilters for styling and for filtering are built when the snapshot is
+ * created, so consoles using the snapshot do not need to do this themselves.
+ * Snapshots are shared by all consoles with identical flag maps through a
+ * {@link CompiledRuleSetCache}. Since the filter rule set and the prefilters
+ * store per line state, consoles only ever get copies of them.
+ *
+ * @author msched
+ */
+public class CompiledRuleSet
+{
+	/** Items used for styling, in evaluation order. */
+	private final List<GrepExpressionItem> enabledItems;
+
+	/** Items used for filtering. */
+	private final List<GrepExpressionItem> filterItems;
+
+	/** Items used for statistics. */
+	private final Set<GrepExpressionItem> statisticsItems;
+
+	/** Items used for notifications. */
+	private final Set<GrepExpressionItem> notificationItems;
+
+	/** Literal prefilter for the styling items. Only used as a template for
+	 *  copies, which carry their own scan results. */
+	private final LiteralPrefilter stylePrefilter;
+
+	/** Compiled filter items. Only used as a template for copies, which use
+	 *  their own matchers. */
+	private final FilterRuleSet filterRules;
+
+	/** Literal prefilter for the filter, statistics and notification items.
+	 *  Only used as a template for copies. */
+	private final LiteralPrefilter filterPrefilter;
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param root Root of the expression tree.
+	 * @param enablementMap Map of item enablement states, or <code>null</code>.
+	 * @param filterMap Map of item filter states, or <code>null</code>.
+	 * @param statisticsMap Map of item statistics states, or <code>null</code>.
+	 * @param notificationsMap Map of item notifications states, or
+	 * 		<code>null</code>.
+	 */
+	public CompiledRuleSet(AbstractGrepModelElement root,
+			Map<String, Boolean> enablementMap, Map<String, Boolean> filterMap,
+			Map<String, Boolean> statisticsMap, Map<String, Boolean> notificationsMap)
+	{
+		LinkedList<GrepExpressionItem> enabled = new LinkedList<GrepExpressionItem>();
+		LinkedList<GrepExpressionItem> filter = new LinkedList<GrepExpressionItem>();
+		LinkedHashSet<GrepExpressionItem> statistics = new LinkedHashSet<GrepExpressionItem>();
+		LinkedHashSet<GrepExpressionItem> notifications = new LinkedHashSet<GrepExpressionItem>();
+
+		if(root != null)
+		{
+			InheritedFlagResolver.ENABLED_RESOLVER.collectItems(enabled, root, enablementMap);
+			InheritedFlagResolver.FILTER_RESOLVER.collectItems(filter, root, filterMap);
+			InheritedFlagResolver.STATISTICS_RESOLVER.collectItems(statistics, root, statisticsMap);
+			InheritedFlagResolver.NOTIFICATIONS_RESOLVER.collectItems(notifications, root, notificationsMap);
+		}
+
+		enabledItems = Collections.unmodifiableList(enabled);
+		filterItems = Collections.unmodifiableList(filter);
+		statisticsItems = Collections.unmodifiableSet(statistics);
+		notificationItems = Collections.unmodifiableSet(notifications);
+
+		compilePatterns(enabled);
+		compilePatterns(filter);
+		compilePatterns(statistics);
+		compilePatterns(notifications);
+
+		stylePrefilter = new LiteralPrefilter(enabled);
+		filterRules = new FilterRuleSet(filter);
+		filterPrefilter = FilterProcessor.createPrefilter(filter, statistics, notifications);
+	}
+
+	/**
+	 * Compiles the patterns of the specified items, so they are not compiled
+	 * while the first line is styled or filtered.
+	 *
+	 * @param items Items.
+	 */
+	private static void compilePatterns(Iterable<GrepExpressionItem> items)
+	{
+		for(GrepExpressionItem item: items)
+		{
+			item.getPattern();
+			item.getUnlessPattern();
+			item.getQuickPattern();
+		}
+	}
+
+	/**
+	 * Returns the items used for styling.
+	 *
+	 * @return Unmodifiable list of items, in evaluation order.
+	 */
+	public List<GrepExpressionItem> getEnabledItems()
+	{
+		return enabledItems;
+	}
+
+	/**
+	 * Returns the items used for filtering.
+	 *
+	 * @return Unmodifiable list of items.
+	 */
+	public List<GrepExpressionItem> getFilterItems()
+	{
+		return filterItems;
+	}
+
+	/**
+	 * Returns the items used for statistics.
+	 *
+	 * @return Unmodifiable set of items.
+	 */
+	public Set<GrepExpressionItem> getStatisticsItems()
+	{
+		return statisticsItems;
+	}
+
+	/**
+	 * Returns the items used for notifications.
+	 *
+	 * @return Unmodifiable set of items.
+	 */
+	public Set<GrepExpressionItem> getNotificationItems()
+	{
+		return notificationItems;
+	}
+
+	/**
+	 * Returns a literal prefilter for the styling items. Every call returns a
+	 * new instance sharing the precompiled automaton.
+	 *
+	 * @return Literal prefilter.
+	 */
+	public LiteralPrefilter createStylePrefilter()
+	{
+		return stylePrefilter.copy();
+	}
+
+	/**
+	 * Returns the compiled filter items. Every call returns a new instance
+	 * sharing the precompiled combined pattern.
+	 *
+	 * @return Filter rule set.
+	 */
+	public FilterRuleSet createFilterRules()
+	{
+		return filterRules.copy();
+	}
+
+	/**
+	 * Returns a literal prefilter for the filter, statistics and notification
+	 * items, as used by a {@link FilterProcessor}. Every call returns a new
+	 * instance sharing the precompiled automaton.
+	 *
+	 * @return Literal prefilter.
+	 */
+	public LiteralPrefilter createFilterPrefilter()
+	{
+		return filterPrefilter.copy();
+	}
+}
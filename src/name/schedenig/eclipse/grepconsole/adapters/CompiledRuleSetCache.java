@@ -0,0 +1,96 @@
+/*******************************************************************************
+ * Copyright (c) 2008 - 2014 Marian Schedenig
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marian Schedenig - initial API and implementation
+ *******************************************************************************/
+
+package name.schedenig.eclipse.grepconsole.adapters;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import name.schedenig.eclipse.grepconsole.model.AbstractGrepModelElement;
+
+/**
+ * Shares compiled rule sets between consoles. A rule set is created once for
+ * every distinct combination of flag maps and reused by all consoles with
+ * identical flags, until the expressions change or the expression tree is
+ * replaced.
+ *
+ * Thread safe.
+ *
+ * @author msched
+ */
+public class CompiledRuleSetCache
+{
+	/** Rule sets by flag maps. */
+	private Map<List<Map<String, Boolean>>, CompiledRuleSet> ruleSets = new HashMap<List<Map<String, Boolean>>, CompiledRuleSet>();
+
+	/** Root of the expression tree the rule sets have been created for. */
+	private AbstractGrepModelElement root;
+
+	/**
+	 * Returns the rule set for the specified flag maps, creating it if
+	 * necessary.
+	 *
+	 * @param root Root of the expression tree.
+	 * @param enablementMap Map of item enablement states, or <code>null</code>.
+	 * @param filterMap Map of item filter states, or <code>null</code>.
+	 * @param statisticsMap Map of item statistics states, or <code>null</code>.
+	 * @param notificationsMap Map of item notifications states, or
+	 * 		<code>null</code>.
+	 *
+	 * @return Rule set.
+	 */
+	@SuppressWarnings("unchecked")
+	public synchronized CompiledRuleSet get(AbstractGrepModelElement root,
+			Map<String, Boolean> enablementMap, Map<String, Boolean> filterMap,
+			Map<String, Boolean> statisticsMap, Map<String, Boolean> notificationsMap)
+	{
+		if(root != this.root)
+		{
+			invalidate();
+			this.root = root;
+		}
+
+		List<Map<String, Boolean>> key = Arrays.asList(copy(enablementMap),
+				copy(filterMap), copy(statisticsMap), copy(notificationsMap));
+		CompiledRuleSet ruleSet = ruleSets.get(key);
+
+		if(ruleSet == null)
+		{
+			ruleSet = new CompiledRuleSet(root, key.get(0), key.get(1), key.get(2), key.get(3));
+			ruleSets.put(key, ruleSet);
+		}
+
+		return ruleSet;
+	}
+
+	/**
+	 * Discards all rule sets. Must be called whenever the expressions change.
+	 */
+	public synchronized void invalidate()
+	{
+		ruleSets.clear();
+	}
+
+	/**
+	 * Copies a flag map, so the key is not affected by later changes to the
+	 * original map.
+	 *
+	 * @param map Flag map, or <code>null</code>.
+	 *
+	 * @return Copy. Never <code>null</code>.
+	 */
+	private static Map<String, Boolean> copy(Map<String, Boolean> map)
+	{
+		return map == null ? new HashMap<String, Boolean>() : new HashMap<String, Boolean>(map);
+	}
+}
@@ -0,0 +1,251 @@
+/*******************************************************************************
+ * Copyright (c) 2008 - 2014 Marian Schedenig
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marian Schedenig - initial API and implementation
+ *******************************************************************************/
+
+package name.schedenig.eclipse.grepconsole.adapters;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import name.schedenig.eclipse.grepconsole.adapters.TextFilter.Line;
+import name.schedenig.eclipse.grepconsole.adapters.links.LinkMatch;
+
+/**
+ * Collects the results of filtering a chunk of console text: the lines to be
+ * added to the filtered text, statistics updates and notifications. Batches
+ * are filled by a filter processor on a background thread and then applied to
+ * the text filter on the UI thread.
+ *
+ * @author msched
+ */
+public class FilterBatch
+{
+	/**
+	 * A single update of a statistics entry.
+	 *
+	 * @author msched
+	 */
+	public static class StatisticsUpdate
+	{
+		/** Entry type. */
+		private StatisticsEntry.Type type;
+
+		/** Entry label. */
+		private String label;
+
+		/** New value for label entries. Not used for count entries. */
+		private String value;
+
+		/**
+		 * Creates a new instance.
+		 *
+		 * @param type Entry type.
+		 * @param label Entry label.
+		 * @param value New value for label entries. Not used for count entries.
+		 */
+		public StatisticsUpdate(StatisticsEntry.Type type, String label, String value)
+		{
+			this.type = type;
+			this.label = label;
+			this.value = value;
+		}
+
+		/**
+		 * Returns the entry type.
+		 *
+		 * @return Type.
+		 */
+		public StatisticsEntry.Type getType()
+		{
+			return type;
+		}
+
+		/**
+		 * Returns the entry label.
+		 *
+		 * @return Label.
+		 */
+		public String getLabel()
+		{
+			return label;
+		}
+
+		/**
+		 * Returns the new value for label entries.
+		 *
+		 * @return Value. <code>null</code> for count entries.
+		 */
+		public String getValue()
+		{
+			return value;
+		}
+	}
+
+	/** Generation of the text filter content the batch belongs to. */
+	private int generation;
+
+	/** Lines to be added to the filtered text. */
+	private ArrayList<Line> lines = new ArrayList<Line>();
+
+	/** Original content offsets of the lines. */
+	private int[] originalOffsets = new int[16];
+
+	/** Statistics updates, in the order in which they occurred. */
+	private ArrayList<StatisticsUpdate> statisticsUpdates = new ArrayList<StatisticsUpdate>();
+
+	/** Matches for which notifications should be triggered. */
+	private ArrayList<LinkMatch> notifications = new ArrayList<LinkMatch>();
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param generation Generation of the text filter content the batch
+	 * 		belongs to.
+	 */
+	public FilterBatch(int generation)
+	{
+		this.generation = generation;
+	}
+
+	/**
+	 * Returns the generation of the text filter content the batch belongs to.
+	 *
+	 * @return Generation.
+	 */
+	public int getGeneration()
+	{
+		return generation;
+	}
+
+	/**
+	 * Adds a filtered line.
+	 *
+	 * @param line Line.
+	 * @param originalOffset Offset of the line in the original content.
+	 */
+	public void addLine(Line line, int originalOffset)
+	{
+		int index = lines.size();
+
+		if(index == originalOffsets.length)
+		{
+			int[] newOffsets = new int[index * 2];
+			System.arraycopy(originalOffsets, 0, newOffsets, 0, index);
+			originalOffsets = newOffsets;
+		}
+
+		lines.add(line);
+		originalOffsets[index] = originalOffset;
+	}
+
+	/**
+	 * Returns the number of filtered lines.
+	 *
+	 * @return Line count.
+	 */
+	public int getLineCount()
+	{
+		return lines.size();
+	}
+
+	/**
+	 * Returns a filtered line.
+	 *
+	 * @param index Line index.
+	 *
+	 * @return Line.
+	 */
+	public Line getLine(int index)
+	{
+		return lines.get(index);
+	}
+
+	/**
+	 * Returns the original content offset of a filtered line.
+	 *
+	 * @param index Line index.
+	 *
+	 * @return Original offset.
+	 */
+	public int getOriginalOffset(int index)
+	{
+		return originalOffsets[index];
+	}
+
+	/**
+	 * Adds a statistics update.
+	 *
+	 * @param update Update.
+	 */
+	public void addStatisticsUpdate(StatisticsUpdate update)
+	{
+		statisticsUpdates.add(update);
+	}
+
+	/**
+	 * Returns the statistics updates in the order in which they occurred.
+	 *
+	 * @return Statistics updates.
+	 */
+	public List<StatisticsUpdate> getStatisticsUpdates()
+	{
+		return statisticsUpdates;
+	}
+
+	/**
+	 * Adds a match for which notifications should be triggered.
+	 *
+	 * @param linkMatch Match.
+	 */
+	public void addNotification(LinkMatch linkMatch)
+	{
+		notifications.add(linkMatch);
+	}
+
+	/**
+	 * Returns the matches for which notifications should be triggered.
+	 *
+	 * @return Matches.
+	 */
+	public List<LinkMatch> getNotifications()
+	{
+		return notifications;
+	}
+
+	/**
+	 * Appends all results of another batch, which must have been created for
+	 * text following the text of this batch. As the results are kept in order,
+	 * applying the merged batch has the same effect as applying both batches one
+	 * after the other: statistics counts add up and the last statistics value
+	 * wins.
+	 *
+	 * @param batch Batch to append.
+	 */
+	public void addAll(FilterBatch batch)
+	{
+		for(int i = 0; i < batch.lines.size(); i++)
+		{
+			addLine(batch.lines.get(i), batch.originalOffsets[i]);
+		}
+
+		statisticsUpdates.addAll(batch.statisticsUpdates);
+		notifications.addAll(batch.notifications);
+	}
+
+	/**
+	 * Returns whether the batch contains no results at all.
+	 *
+	 * @return <code>true</code> iff the batch is empty.
+	 */
+	public boolean isEmpty()
+	{
+		return lines.isEmpty() && statisticsUpdates.isEmpty() && notifications.isEmpty();
+	}
+}
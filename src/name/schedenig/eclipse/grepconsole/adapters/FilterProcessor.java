@@ -0,0 +1,632 @@
+/*******************************************************************************
+ * Copyright (c) 2008 - 2014 Marian Schedenig
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marian Schedenig - initial API and implementation
+ *******************************************************************************/
+
+package name.schedenig.eclipse.grepconsole.adapters;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+import name.schedenig.eclipse.grepconsole.adapters.FilterBatch.StatisticsUpdate;
+import name.schedenig.eclipse.grepconsole.adapters.TextFilter.Line;
+import name.schedenig.eclipse.grepconsole.adapters.links.LinkMatch;
+import name.schedenig.eclipse.grepconsole.engine.CharSequenceView;
+import name.schedenig.eclipse.grepconsole.engine.ExpressionMatcher;
+import name.schedenig.eclipse.grepconsole.engine.ExpressionProfiler;
+import name.schedenig.eclipse.grepconsole.engine.FilterRuleSet;
+import name.schedenig.eclipse.grepconsole.engine.LineMatcher;
+import name.schedenig.eclipse.grepconsole.engine.LiteralPrefilter;
+import name.schedenig.eclipse.grepconsole.engine.MatchGuard;
+import name.schedenig.eclipse.grepconsole.engine.MatchSnapshot;
+import name.schedenig.eclipse.grepconsole.model.GrepExpressionItem;
+import name.schedenig.eclipse.grepconsole.model.GrepGroup;
+import name.schedenig.eclipse.grepconsole.util.GrepConsoleUtil;
+
+import org.eclipse.core.resources.IProject;
+
+/**
+ * Splits console text into lines and matches them against the filter,
+ * statistics and notification expressions of a text filter. The results are
+ * collected in filter batches.
+ *
+ * A processor keeps the state of the text processed so far (e.g. an unfinished
+ * line at the end of the text) and is not thread safe. It does not access any
+ * UI resources or the plug-in instance, so it can be used on a background
+ * thread as long as only one thread uses it at a time, and outside of a
+ * running workbench. Items are tested by a {@link LineMatcher}.
+ *
+ * @author msched
+ */
+public class FilterProcessor
+{
+	/** Line delimiter. */
+	private String delimiter;
+
+	/** Maximum number of characters to match per line. */
+	private int matchLength;
+
+	/** Compiled filter expressions. */
+	private FilterRuleSet filterRules;
+
+	/** Prefilter for the filter, statistics and notification expressions. */
+	private LiteralPrefilter prefilter;
+
+	/** Set of statistics expressions. */
+	private Set<GrepExpressionItem> statisticsExpressions;
+
+	/** Set of expression items which have active notifications. */
+	private Set<GrepExpressionItem> notificationExpressions;
+
+	/** Optional project for links. */
+	private IProject project;
+
+	/** Guard which keeps track of expressions exceeding the time limit. */
+	private MatchGuard guard;
+
+	/** Profiler which collects per expression counters while enabled. */
+	private ExpressionProfiler profiler;
+
+	/** Set of expression items which have autostart links. Created on demand. */
+	private Set<GrepExpressionItem> actionItems;
+
+	/** Text that has been added to the original content but could not yet be
+	 *  filtered because the line has not yet been completed. Reused. */
+	private StringBuilder bufferedText = new StringBuilder();
+
+	/** Tests items against the current line. */
+	private LineMatcher lineMatcher;
+
+	/** Reused view of the line currently being processed, without the line
+	 *  delimiter. */
+	private CharSequenceView lineView = new CharSequenceView();
+
+	/** Reused view of the part of the current line that is matched, which may
+	 *  be shorter than the line. */
+	private CharSequenceView shortLineView = new CharSequenceView();
+
+	/** Index in the parsing of the line delimiter string of the buffered text.
+	 *  If this is greater than 0, the beginning of the delimiter string has been
+	 *  found at the end of the buffered text. */
+	private int bufferedDelimiterIndex;
+
+	/** Keeps track of the current offset in the original text content. */
+	private int originalOffset;
+
+	/** Highest line offset of already processed lines. Prevents autostart links
+	 *  from earlier lines to be re-executed when refreshing the content. */
+	private int maxProcessedLineOffset = -1;
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param delimiter Line delimiter.
+	 * @param matchLength Maximum number of characters to match per line.
+	 * @param filterExpressions List of expressions to use for filtering.
+	 * @param statisticsExpressions Set of statistics expressions.
+	 * @param notificationExpressions Set of notification expressions.
+	 * @param project Optional project for links.
+	 * @param guard Match guard.
+	 * @param profiler Expression profiler.
+	 */
+	public FilterProcessor(String delimiter, int matchLength,
+			List<GrepExpressionItem> filterExpressions,
+			Set<GrepExpressionItem> statisticsExpressions,
+			Set<GrepExpressionItem> notificationExpressions, IProject project,
+			MatchGuard guard, ExpressionProfiler profiler)
+	{
+		this(delimiter, matchLength, new FilterRuleSet(filterExpressions),
+				createPrefilter(filterExpressions, statisticsExpressions, notificationExpressions),
+				statisticsExpressions, notificationExpressions, project, guard, profiler);
+	}
+
+	/**
+	 * Creates a new instance using an already compiled filter rule set and
+	 * prefilter, e.g. copies of those of another processor.
+	 *
+	 * @param delimiter Line delimiter.
+	 * @param matchLength Maximum number of characters to match per line.
+	 * @param filterRules Compiled filter expressions. Must not be used by
+	 * 		other processors.
+	 * @param prefilter Prefilter for the filter, statistics and notification
+	 * 		expressions, as created by
+	 * 		{@link #createPrefilter(List, Set, Set)}. Must not be used by other
+	 * 		processors.
+	 * @param statisticsExpressions Set of statistics expressions.
+	 * @param notificationExpressions Set of notification expressions.
+	 * @param project Optional project for links.
+	 * @param guard Match guard.
+	 * @param profiler Expression profiler.
+	 */
+	public FilterProcessor(String delimiter, int matchLength,
+			FilterRuleSet filterRules, LiteralPrefilter prefilter,
+			Set<GrepExpressionItem> statisticsExpressions,
+			Set<GrepExpressionItem> notificationExpressions, IProject project,
+			MatchGuard guard, ExpressionProfiler profiler)
+	{
+		this.delimiter = delimiter;
+		this.matchLength = matchLength;
+		this.filterRules = filterRules;
+		this.prefilter = prefilter;
+		this.statisticsExpressions = statisticsExpressions;
+		this.notificationExpressions = notificationExpressions;
+		this.project = project;
+		this.guard = guard;
+		this.profiler = profiler;
+		this.lineMatcher = new LineMatcher(guard, profiler);
+	}
+
+	/**
+	 * Creates the prefilter a processor uses for its filter, statistics and
+	 * notification expressions.
+	 *
+	 * @param filterExpressions List of expressions to use for filtering.
+	 * @param statisticsExpressions Set of statistics expressions.
+	 * @param notificationExpressions Set of notification expressions.
+	 *
+	 * @return Prefilter.
+	 */
+	public static LiteralPrefilter createPrefilter(
+			List<GrepExpressionItem> filterExpressions,
+			Set<GrepExpressionItem> statisticsExpressions,
+			Set<GrepExpressionItem> notificationExpressions)
+	{
+		List<GrepExpressionItem> prefilterItems = new ArrayList<GrepExpressionItem>(filterExpressions);
+		prefilterItems.addAll(statisticsExpressions);
+		prefilterItems.addAll(notificationExpressions);
+
+		return new LiteralPrefilter(prefilterItems);
+	}
+
+	/**
+	 * Returns the highest original offset of a line that has been added to the
+	 * filtered text.
+	 *
+	 * @return Offset, or -1.
+	 */
+	public int getMaxProcessedLineOffset()
+	{
+		return maxProcessedLineOffset;
+	}
+
+	/**
+	 * Sets the highest original offset of a line that has been added to the
+	 * filtered text. Used to carry the value over from a previous processor, so
+	 * notifications for already processed lines are not triggered again.
+	 *
+	 * @param maxProcessedLineOffset Offset, or -1.
+	 */
+	public void setMaxProcessedLineOffset(int maxProcessedLineOffset)
+	{
+		this.maxProcessedLineOffset = maxProcessedLineOffset;
+	}
+
+	/**
+	 * Creates a new processor with the same expressions and settings, for
+	 * processing a chunk of text independently of this processor. The chunk
+	 * must start at the beginning of a line. The new processor shares this
+	 * processor's compiled filter expressions and prefilter automaton, so it
+	 * can be created for every chunk without compiling them again.
+	 *
+	 * @param offset Offset of the chunk, relative to the current position of
+	 * 		this processor. Any buffered partial line is ignored.
+	 *
+	 * @return New processor.
+	 */
+	public FilterProcessor createChunkProcessor(int offset)
+	{
+		FilterProcessor processor = new FilterProcessor(delimiter, matchLength, filterRules.copy(), prefilter.copy(), statisticsExpressions, notificationExpressions, project, guard, profiler);
+		processor.originalOffset = originalOffset + offset;
+		processor.maxProcessedLineOffset = maxProcessedLineOffset;
+
+		return processor;
+	}
+
+	/**
+	 * Finds the end of the last complete line in a text, using the same
+	 * delimiter detection as {@link #process(String, boolean, boolean, FilterBatch)}.
+	 *
+	 * @param s Text. Must start at the beginning of a line.
+	 *
+	 * @return Index following the delimiter of the last complete line, or 0 if
+	 * 		the text contains no complete line.
+	 */
+	public int findLastLineEnd(CharSequence s)
+	{
+		int delimiterIndex = 0;
+		int end = 0;
+
+		for(int i = 0; i < s.length(); i++)
+		{
+			if(delimiter.charAt(delimiterIndex) == s.charAt(i))
+			{
+				if(delimiterIndex < delimiter.length() - 1)
+				{
+					delimiterIndex++;
+				}
+				else
+				{
+					delimiterIndex = 0;
+					end = i + 1;
+				}
+			}
+			else
+			{
+				delimiterIndex = 0;
+			}
+		}
+
+		return end;
+	}
+
+	/**
+	 * Handles new text. Checks every complete line of text against the filter
+	 * expressions and adds the results to the batch. Keeps unfinished lines in
+	 * the buffer for later completion.
+	 *
+	 * @param s Newly added text. All text is assumed to be added at the end of
+	 * 		the existing text.
+	 * @param notifications Whether to use create notifications for items that
+	 * 		have notifications configured.
+	 * @param filter Whether lines should be filtered for display. If this is
+	 * 		<code>false</code>, only statistics and notifications are processed.
+	 * @param batch Batch to which results are added.
+	 */
+	public void process(String s, boolean notifications, boolean filter,
+			FilterBatch batch)
+	{
+		int startIndex = 0;
+
+		for(int i = 0; i < s.length(); i++)
+		{
+			char c = s.charAt(i);
+
+			if(delimiter.charAt(bufferedDelimiterIndex) == c)
+			{
+				if(bufferedDelimiterIndex < delimiter.length() - 1)
+				{
+					bufferedDelimiterIndex++;
+				}
+				else
+				{
+					// Only complete lines spanning several chunks are copied
+					if(bufferedText.length() == 0)
+					{
+						lineView.set(s, startIndex, i + 1 - delimiter.length());
+					}
+					else
+					{
+						bufferedText.append(s, startIndex, i + 1);
+						lineView.set(bufferedText, 0, bufferedText.length() - delimiter.length());
+					}
+
+					int lineLength = lineView.length();
+					handleNewLine(lineView, notifications, filter, batch);
+
+					originalOffset += lineLength + delimiter.length();
+					bufferedText.setLength(0);
+					bufferedDelimiterIndex = 0;
+					startIndex = i + 1;
+				}
+			}
+			else
+			{
+				bufferedDelimiterIndex = 0;
+			}
+		}
+
+		if(startIndex < s.length())
+		{
+			bufferedText.append(s, startIndex, s.length());
+		}
+	}
+
+	/**
+	 * Skips text which has not been passed to the processor, e.g. because it
+	 * has been removed from the original content before it could be read. The
+	 * currently buffered partial line is discarded, and original offsets of
+	 * subsequent lines are adjusted accordingly.
+	 *
+	 * @param length Number of skipped characters.
+	 */
+	public void skip(int length)
+	{
+		originalOffset += bufferedText.length() + length;
+		bufferedText.setLength(0);
+		bufferedDelimiterIndex = 0;
+	}
+
+	/**
+	 * Tests a newly added line against the filter expressions and adds it to the
+	 * batch if at least one filter expression matches.
+	 *
+	 * @param line New line of text. A view which is only valid during this
+	 * 		call; it is modified to exclude trailing line break characters.
+	 * @param notifications Whether notifications may be created.
+	 * @param filter Whether lines should be filtered for display.
+	 * @param batch Batch to which results are added.
+	 *
+	 * @return <code>true</code> iff the line was added to the filtered text.
+	 */
+	private boolean handleNewLine(CharSequenceView line, boolean notifications,
+			boolean filter, FilterBatch batch)
+	{
+		int cutoff = line.length();
+
+		while(cutoff > 0)
+		{
+			char c = line.charAt(cutoff - 1);
+
+			if(c == '\n' || c == '\r')
+			{
+				cutoff--;
+			}
+			else
+			{
+				break;
+			}
+		}
+
+		boolean result = false;
+		LinkedHashSet<GrepExpressionItem> remainingActionItems = null;
+
+		boolean notYetProcessed = originalOffset >= maxProcessedLineOffset;
+
+		if(!statisticsExpressions.isEmpty() || (notifications && notYetProcessed))
+		{
+			remainingActionItems = new LinkedHashSet<GrepExpressionItem>(getActionItems(notYetProcessed));
+		}
+
+		line.setPrefix(line, cutoff);
+		CharSequenceView shortLine = shortLineView;
+		shortLine.setPrefix(line, (matchLength <= 0 || cutoff <= matchLength) ? cutoff : matchLength);
+
+		int filterCount = filter ? filterRules.size() : 0;
+
+		if(filterCount > 0 || remainingActionItems != null)
+		{
+			prefilter.scan(shortLine);
+		}
+
+		lineMatcher.setLine(line, shortLine);
+
+		// The combined pattern is only evaluated once an item passes the prefilter
+		Boolean combinedMatch = null;
+
+		for(int index = 0; index < filterCount; index++)
+		{
+			GrepExpressionItem item = filterRules.get(index);
+
+			if(remainingActionItems != null)
+			{
+				remainingActionItems.remove(item);
+			}
+
+			if(!prefilter.mayMatch(item))
+			{
+				continue;
+			}
+
+			if(filterRules.isCombined(index))
+			{
+				if(combinedMatch == null)
+				{
+					combinedMatch = lineMatcher.matchesCombined(filterRules);
+				}
+
+				if(!combinedMatch)
+				{
+					continue;
+				}
+			}
+
+			ExpressionMatcher matcher = lineMatcher.find(item, true);
+
+			if(matcher == null)
+			{
+				continue;
+			}
+
+			CharSequence matchLine = LineMatcher.getMainText(item, line, shortLine);
+
+			if(remainingActionItems != null)
+			{
+				if(statisticsExpressions.contains(item))
+				{
+					handleMatchedStatisticsItem(item, matchLine, matcher, batch);
+				}
+
+				if(notYetProcessed && notificationExpressions.contains(item))
+				{
+					handleMatchedNotificationsItem(item, matchLine, matcher, batch);
+				}
+			}
+
+			if(item.getRewriteExpression() == null)
+			{
+				addLine(line.toString(), false, null, batch);
+			}
+			else
+			{
+				List<int[]> rangeIndices = new LinkedList<int[]>();
+				MatchSnapshot match = new MatchSnapshot(matcher, line);
+				LinkMatch linkMatch = new LinkMatch(item, item.getAutostartLink(), match, matcher.start(), line.toString(), 0, project);
+				String rewritten = GrepConsoleUtil.replaceParams(item.getRewriteExpression(), match, line.toString(), -1, rangeIndices, project, new GroupParameterResolver(linkMatch));
+
+				GrepGroup[] groups = item.getRewriteGroups();
+				GrepStyleRange[] ranges;
+
+				if(groups == null || groups.length == 0)
+				{
+					ranges = null;
+				}
+				else
+				{
+					LinkedList<GrepStyleRange> rangeList = new LinkedList<GrepStyleRange>();
+
+					if(groups[0] != null && (groups[0].getStyle() != null || groups[0].getLink() != null))
+					{
+						rangeList.add(new GrepStyleRange(item, 0, true, 0, rewritten.length() - 1, groups[0].getStyle(), groups[0].getLink(), matcher, line, rewritten, 0, project));
+					}
+
+					int i = 0;
+
+					for(int[] indices: rangeIndices)
+					{
+						i++;
+
+						if(groups[i] != null && (groups[i].getStyle() != null || groups[i].getLink() != null))
+						{
+							GrepStyleRange range = new GrepStyleRange(item, 0, false, indices[0], indices[1], groups[i].getStyle(), groups[i].getLink(), matcher, line, rewritten, -1, project);
+							rangeList.add(range);
+						}
+					}
+
+					if(rangeList.isEmpty())
+					{
+						ranges = null;
+					}
+					else
+					{
+						ranges = rangeList.toArray(new GrepStyleRange[rangeList.size()]);
+					}
+				}
+
+				addLine(rewritten, true, ranges, batch);
+			}
+
+			result = true;
+			break;
+		}
+
+		// Here we handle all items remaining after we have already decided that the
+		// line should be shown in Grep View
+		if(remainingActionItems != null && !remainingActionItems.isEmpty())
+		{
+			for(GrepExpressionItem item: remainingActionItems)
+			{
+				if((statisticsExpressions.contains(item) || notificationExpressions.contains(item)) && prefilter.mayMatch(item))
+				{
+					// As before the filter decision, matching is limited to the match
+					// length here, even for items with a quick expression
+					ExpressionMatcher matcher = lineMatcher.findInMatchText(item);
+
+					if(matcher != null)
+					{
+						if(statisticsExpressions.contains(item))
+						{
+							handleMatchedStatisticsItem(item, line, matcher, batch);
+						}
+
+						if(notYetProcessed && notificationExpressions.contains(item))
+						{
+							handleMatchedNotificationsItem(item, line, matcher, batch);
+						}
+					}
+				}
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Records a notification for a matched notification item.
+	 *
+	 * @param item Matched item.
+	 * @param line Line text. Only converted to a string if necessary.
+	 * @param matcher Matcher.
+	 * @param batch Batch to which the notification is added.
+	 */
+	private void handleMatchedNotificationsItem(GrepExpressionItem item,
+			CharSequence line, ExpressionMatcher matcher, FilterBatch batch)
+	{
+		batch.addNotification(new LinkMatch(item, item.getAutostartLink(), new MatchSnapshot(matcher, line), matcher.start(), line.toString(), 0, project));
+	}
+
+	/**
+	 * Records statistics updates for a matched statistics item.
+	 *
+	 * @param item Matched item.
+	 * @param line Line text. Only converted to a string if necessary.
+	 * @param matcher Matcher.
+	 * @param batch Batch to which the updates are added.
+	 */
+	private void handleMatchedStatisticsItem(GrepExpressionItem item, CharSequence line,
+			ExpressionMatcher matcher, FilterBatch batch)
+	{
+		if(item.getStatisticsCountLabel() != null)
+		{
+			batch.addStatisticsUpdate(new StatisticsUpdate(StatisticsEntry.Type.COUNT, item.getStatisticsCountLabel(), null));
+		}
+
+		if(item.getStatisticsValueLabel() != null)
+		{
+			String value;
+
+			if(item.getStatisticsValuePattern() == null)
+			{
+				value = matcher.group(0);
+			}
+			else
+			{
+				List<int[]> rangeIndices = new LinkedList<int[]>();
+				MatchSnapshot match = new MatchSnapshot(matcher, line);
+				LinkMatch linkMatch = new LinkMatch(item, item.getAutostartLink(), match, matcher.start(), line.toString(), 0, project);
+				value = GrepConsoleUtil.replaceParams(item.getStatisticsValuePattern(), match, line.toString(), -1, rangeIndices, project, new GroupParameterResolver(linkMatch));
+			}
+
+			batch.addStatisticsUpdate(new StatisticsUpdate(StatisticsEntry.Type.LABEL, item.getStatisticsValueLabel(), value));
+		}
+	}
+
+	/**
+	 * Returns the set of expression items with notifications or autostart links.
+	 * Creates it if necessary.
+	 *
+	 * @return Expression items with notifications or autostart links.
+	 */
+	private Set<GrepExpressionItem> getActionItems(boolean includeNotifications)
+	{
+		if(actionItems == null)
+		{
+			actionItems = new LinkedHashSet<GrepExpressionItem>();
+
+			if(statisticsExpressions != null)
+			{
+				actionItems.addAll(statisticsExpressions);
+			}
+
+			if(includeNotifications && notificationExpressions != null)
+			{
+				actionItems.addAll(notificationExpressions);
+			}
+		}
+
+		return actionItems;
+	}
+
+	/**
+	 * Adds a line to the batch.
+	 *
+	 * @param text New line of text.
+	 * @param rewritten Whether the line has been rewritten.
+	 * @param ranges Optional array of styles assigned to the line.
+	 * @param batch Batch.
+	 */
+	private void addLine(String text, boolean rewritten, GrepStyleRange[] ranges,
+			FilterBatch batch)
+	{
+		batch.addLine(new Line(text, rewritten, ranges), originalOffset);
+		maxProcessedLineOffset = Math.max(maxProcessedLineOffset, originalOffset);
+	}
+}
@@ -0,0 +1,223 @@
+/*******************************************************************************
+ * Copyright (c) 2008 - 2014 Marian Schedenig
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marian Schedenig - initial API and implementation
+ *******************************************************************************/
+
+package name.schedenig.eclipse.grepconsole.adapters;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import name.schedenig.eclipse.grepconsole.Activator;
+
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.swt.widgets.Display;
+
+/**
+ * Background thread which filters the text added to a console. Text chunks are
+ * queued by the text filter on the UI thread and processed in order. The
+ * results of all chunks available at a time are collected in a single batch,
+ * which is then handed back to the text filter on the UI thread.
+ *
+ * Every batch is tagged with the generation of the text filter content it was
+ * created for, so the text filter can discard results which have become
+ * obsolete because the content has been cleared or refreshed in the meantime.
+ *
+ * @author msched
+ */
+public class FilterWorker extends Thread
+{
+	/**
+	 * A queued unit of work.
+	 *
+	 * @author msched
+	 */
+	private static class Task
+	{
+		/** Text to be processed. <code>null</code> for resets. */
+		private String text;
+
+		/** Whether notifications may be created for the text. */
+		private boolean notifications;
+
+		/** Whether lines should be filtered for display. */
+		private boolean filter;
+
+		/** New processor for resets. <code>null</code> for text chunks. */
+		private FilterProcessor processor;
+
+		/** New generation for resets. */
+		private int generation;
+	}
+
+	/** Text filter that receives the results. */
+	private TextFilter textFilter;
+
+	/** Display used for handing results back to the UI thread. */
+	private Display display;
+
+	/** Queued tasks. */
+	private BlockingQueue<Task> queue = new LinkedBlockingQueue<Task>();
+
+	/** Current processor. Only accessed by the worker thread. */
+	private FilterProcessor processor;
+
+	/** Current generation. Only accessed by the worker thread. */
+	private int generation;
+
+	/** Whether the worker has been disposed. */
+	private volatile boolean disposed;
+
+	/**
+	 * Creates a new instance. The thread has to be started by the caller.
+	 *
+	 * @param textFilter Text filter that receives the results.
+	 * @param display Display used for handing results back to the UI thread.
+	 */
+	public FilterWorker(TextFilter textFilter, Display display)
+	{
+		super("Grep Console filter"); //$NON-NLS-1$
+
+		this.textFilter = textFilter;
+		this.display = display;
+
+		setDaemon(true);
+	}
+
+	/**
+	 * Queues a chunk of text for processing.
+	 *
+	 * @param text Text added to the original content.
+	 * @param notifications Whether notifications may be created for the text.
+	 * @param filter Whether lines should be filtered for display.
+	 */
+	public void enqueue(String text, boolean notifications, boolean filter)
+	{
+		Task task = new Task();
+		task.text = text;
+		task.notifications = notifications;
+		task.filter = filter;
+
+		queue.add(task);
+	}
+
+	/**
+	 * Replaces the processor. All text queued afterwards is processed by the new
+	 * processor and the results are tagged with the new generation. The state
+	 * which prevents notifications from being triggered again for already
+	 * processed lines is carried over to the new processor.
+	 *
+	 * @param processor New processor.
+	 * @param generation New generation.
+	 */
+	public void reset(FilterProcessor processor, int generation)
+	{
+		Task task = new Task();
+		task.processor = processor;
+		task.generation = generation;
+
+		queue.add(task);
+	}
+
+	/**
+	 * Stops the worker. Queued tasks are discarded.
+	 */
+	public void dispose()
+	{
+		disposed = true;
+		queue.clear();
+		interrupt();
+	}
+
+	/**
+	 * @see java.lang.Thread#run()
+	 */
+	@Override
+	public void run()
+	{
+		try
+		{
+			while(!disposed)
+			{
+				Task task = queue.take();
+				FilterBatch batch = null;
+
+				while(task != null)
+				{
+					if(task.processor != null)
+					{
+						publish(batch);
+						batch = null;
+
+						if(processor != null)
+						{
+							task.processor.setMaxProcessedLineOffset(Math.max(task.processor.getMaxProcessedLineOffset(), processor.getMaxProcessedLineOffset()));
+						}
+
+						processor = task.processor;
+						generation = task.generation;
+					}
+					else if(processor != null)
+					{
+						if(batch == null)
+						{
+							batch = new FilterBatch(generation);
+						}
+
+						try
+						{
+							processor.process(task.text, task.notifications, task.filter, batch);
+						}
+						catch(RuntimeException ex)
+						{
+							Activator.getDefault().log(IStatus.ERROR, "Error filtering console text.", ex); //$NON-NLS-1$
+						}
+					}
+
+					task = queue.poll();
+				}
+
+				publish(batch);
+			}
+		}
+		catch(InterruptedException ex)
+		{
+			// Disposed
+		}
+	}
+
+	/**
+	 * Hands a batch over to the text filter on the UI thread.
+	 *
+	 * @param batch Batch. May be <code>null</code>.
+	 */
+	private void publish(final FilterBatch batch)
+	{
+		if(batch == null || batch.isEmpty() || disposed || display.isDisposed())
+		{
+			return;
+		}
+
+		try
+		{
+			display.asyncExec(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					textFilter.applyBatch(batch);
+				}
+			});
+		}
+		catch(RuntimeException ex)
+		{
+			// Display has been disposed in the meantime
+		}
+	}
+}
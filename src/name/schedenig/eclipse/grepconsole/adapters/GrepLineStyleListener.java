@@ -11,14 +11,12 @@
 
 package name.schedenig.eclipse.grepconsole.adapters;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.Comparator;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.TreeSet;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import name.schedenig.eclipse.grepconsole.Activator;
 import name.schedenig.eclipse.grepconsole.Activator.IGrepConsoleListener;
@@ -26,11 +24,12 @@ import name.schedenig.eclipse.grepconsole.adapters.links.CommandLinkAdapter;
 import name.schedenig.eclipse.grepconsole.adapters.links.FileLinkAdapter;
 import name.schedenig.eclipse.grepconsole.adapters.links.GrepLinkAdapter;
 import name.schedenig.eclipse.grepconsole.adapters.links.JavaLinkAdapter;
+import name.schedenig.eclipse.grepconsole.adapters.links.LinkDescriptor;
 import name.schedenig.eclipse.grepconsole.adapters.links.LinkMatch;
 import name.schedenig.eclipse.grepconsole.adapters.links.ScriptLinkAdapter;
 import name.schedenig.eclipse.grepconsole.adapters.links.UrlLinkAdapter;
+import name.schedenig.eclipse.grepconsole.engine.LiteralPrefilter;
 import name.schedenig.eclipse.grepconsole.model.GrepExpressionItem;
-import name.schedenig.eclipse.grepconsole.model.GrepGroup;
 import name.schedenig.eclipse.grepconsole.model.GrepStyle;
 import name.schedenig.eclipse.grepconsole.model.links.CommandLink;
 import name.schedenig.eclipse.grepconsole.model.links.FileLink;
@@ -41,7 +40,6 @@ import name.schedenig.eclipse.grepconsole.model.links.UrlLink;
 import name.schedenig.eclipse.grepconsole.view.colors.ColorRegistry;
 
 import org.eclipse.core.resources.IProject;
-import org.eclipse.swt.SWT;
 import org.eclipse.swt.custom.LineStyleEvent;
 import org.eclipse.swt.custom.LineStyleListener;
 import org.eclipse.swt.custom.StyleRange;
@@ -98,42 +96,37 @@ public class GrepLineStyleListener implements LineStyleListener, IGrepConsoleLis
 		}
 	};
 
-	/**
-	 * Sorts grep style ranges only by putting whole line styles after sub group
-	 * styles. This is used to re-sort the list of currently active styles at
-	 * a certain index in a line so that sub group styles always take precedence
-	 * over whole line styles.
-	 */
-	private static final Comparator<GrepStyleRange> STYLE_RANGE_COMPARATOR_SUB_BEFORE_WHOLE = new Comparator<GrepStyleRange>()
-	{
-		@Override
-		public int compare(GrepStyleRange a, GrepStyleRange b)
-		{
-			if(a.isWholeLine() != b.isWholeLine())
-			{
-				return a.isWholeLine() ? +1 : -1;
-			}
-			
-			return 0;
-		}
-	};
-	
 	/** Collection of grep expression items to be used for determining the line
 	 *  styles. Expressions are evaluated in the order provided. */
 	private Collection<GrepExpressionItem> items;
 	
+	/** Calculates the style ranges of lines. Only used on the UI thread. */
+	private LineStyler styler;
+	
 	/** Colour registry for creating line style colours. */
 	private ColorRegistry colorRegistry;
 
-	/** Maximum number of characters to match per line. */
-	private int matchLength;
-
 	/** Shell (used when opening dialogs). */
 	private Shell shell;
 
 	/** Optional project associated with the originating console. */
 	private IProject project;
 	
+	/** Optional cache of the styles calculated for console lines. */
+	private LineStyleCache styleCache;
+	
+	/** Optional index of the styles precomputed for console lines. */
+	private StyleIndex styleIndex;
+	
+	/** Optional background styler used when painting takes too long. */
+	private StylePrefetcher stylePrefetcher;
+	
+	/** Caches the style ranges resolved for style combinations. */
+	private StyleTemplateCache styleTemplates = new StyleTemplateCache();
+	
+	/** Reused for collecting the styles of a segment. */
+	private GrepStyle[] segmentStyles = new GrepStyle[16];
+	
 	/**
 	 * Creates a new instance.
 	 */
@@ -141,10 +134,28 @@ public class GrepLineStyleListener implements LineStyleListener, IGrepConsoleLis
 	{
 		Activator activator = Activator.getDefault();
 		activator.addListener(this);
-		this.matchLength = activator.getStyleMatchLength();
+		this.styler = new LineStyler(activator.getMatchGuard(), activator.getExpressionProfiler(), project);
+		this.styler.setMatchLength(activator.getStyleMatchLength());
+		this.shell = shell;
+		this.project = project;
+	}
+
+	/**
+	 * Creates a new instance which is not registered with the plug-in. Used by
+	 * benchmarks and test programs running outside of Eclipse.
+	 *
+	 * @param styler Line styler. May be <code>null</code> if only the style
+	 * 		conversion methods are used.
+	 * @param shell Shell.
+	 * @param project Optional project.
+	 */
+	GrepLineStyleListener(LineStyler styler, Shell shell, IProject project)
+	{
+		this.styler = styler;
 		this.shell = shell;
 		this.project = project;
 	}
+
 	
 	/**
 	 * Returns the colour registry.
@@ -164,6 +175,7 @@ public class GrepLineStyleListener implements LineStyleListener, IGrepConsoleLis
 	public void setColorRegistry(ColorRegistry colorRegistry)
 	{
 		this.colorRegistry = colorRegistry;
+		styleTemplates.setColorRegistry(colorRegistry);
 	}
 
 	/**
@@ -184,8 +196,110 @@ public class GrepLineStyleListener implements LineStyleListener, IGrepConsoleLis
 	 * @param items Items.
 	 */
 	public void setItems(Collection<GrepExpressionItem> items)
+	{
+		setItems(items, null);
+	}
+	
+	/**
+	 * Sets the collection of grep expression items together with a literal
+	 * prefilter which has already been built for them.
+	 * 
+	 * @param items Items.
+	 * @param prefilter Literal prefilter for the items. Must not be shared with
+	 * 		other listeners. If <code>null</code>, a prefilter is built on
+	 * 		demand.
+	 */
+	public void setItems(Collection<GrepExpressionItem> items, LiteralPrefilter prefilter)
 	{
 		this.items = items;
+		styler.setItems(items, prefilter);
+		styleTemplates.clear();
+		invalidateStyleCache();
+		
+		if(stylePrefetcher != null)
+		{
+			stylePrefetcher.reset(items, styler.getMatchLength());
+		}
+	}
+
+	/**
+	 * Returns the cache of the styles calculated for lines.
+	 * 
+	 * @return Style cache, or <code>null</code> if styles are not cached.
+	 */
+	public LineStyleCache getStyleCache()
+	{
+		return styleCache;
+	}
+
+	/**
+	 * Sets the cache of the styles calculated for lines. The cache must be
+	 * invalidated whenever text is removed from the styled text, as lines are
+	 * identified by their offsets.
+	 * 
+	 * @param styleCache Style cache, or <code>null</code> to disable caching.
+	 */
+	public void setStyleCache(LineStyleCache styleCache)
+	{
+		this.styleCache = styleCache;
+	}
+
+	/**
+	 * Returns the index of the styles precomputed for lines.
+	 * 
+	 * @return Style index, or <code>null</code> if styles are not precomputed.
+	 */
+	public StyleIndex getStyleIndex()
+	{
+		return styleIndex;
+	}
+
+	/**
+	 * Sets the index of the styles precomputed for lines. Lines not found in
+	 * the index are styled on demand.
+	 * 
+	 * @param styleIndex Style index, or <code>null</code>.
+	 */
+	public void setStyleIndex(StyleIndex styleIndex)
+	{
+		this.styleIndex = styleIndex;
+	}
+	
+	/**
+	 * Returns the style prefetcher.
+	 * 
+	 * @return Style prefetcher. May be <code>null</code>.
+	 */
+	public StylePrefetcher getStylePrefetcher()
+	{
+		return stylePrefetcher;
+	}
+	
+	/**
+	 * Sets the style prefetcher, which styles console lines in the background
+	 * when painting them would take too long.
+	 * 
+	 * @param stylePrefetcher Style prefetcher. May be <code>null</code>.
+	 */
+	public void setStylePrefetcher(StylePrefetcher stylePrefetcher)
+	{
+		this.stylePrefetcher = stylePrefetcher;
+		
+		if(stylePrefetcher != null)
+		{
+			stylePrefetcher.reset(items, styler.getMatchLength());
+		}
+	}
+
+	/**
+	 * Discards all cached line styles.
+	 */
+	public void invalidateStyleCache()
+	{
+		if(styleCache != null)
+		{
+			styleCache.invalidate();
+		}
 	}
 
 	/**
@@ -241,6 +355,8 @@ public class GrepLineStyleListener implements LineStyleListener, IGrepConsoleLis
 		}
 
 		LinkedList<GrepStyleRange> grepStyles = null;
+		StyleRange[] originalStyles = event.styles == null || event.styles.length == 0 ? null : event.styles;
+		boolean cacheable = false;
 		
 		if(event.getSource() instanceof StyledText && ((StyledText) event.getSource()).getContent() instanceof TextFilter)
 		{
@@ -260,12 +376,64 @@ public class GrepLineStyleListener implements LineStyleListener, IGrepConsoleLis
 		
 		if(grepStyles == null)
 		{
-			grepStyles = lineGetStyle(event.lineOffset, event.lineText, true, false,
-					event.styles == null || event.styles.length == 0 ? null : event.styles);
+			// Only console lines are cached; the Grep View's styles are already
+			// stored by the text filter
+			cacheable = styleCache != null;
+			
+			if(cacheable)
+			{
+				StyleRange[] cachedStyles = styleCache.get(event.lineOffset, event.lineText, originalStyles);
+				
+				if(cachedStyles != null)
+				{
+					if(cachedStyles.length > 0)
+					{
+						event.styles = cachedStyles;
+					}
+					
+					return;
+				}
+			}
+			
+			GrepStyleRange[] indexedStyles = styleIndex == null ? null : styleIndex.getStyleRanges(event.lineOffset, event.lineText);
+			
+			if(indexedStyles != null)
+			{
+				grepStyles = indexedStyles.length == 0 ? null : new LinkedList<GrepStyleRange>(Arrays.asList(indexedStyles));
+			}
+			else
+			{
+				GrepStyleRange[] prefetchedStyles = stylePrefetcher == null ? null : stylePrefetcher.getStyleRanges(event.lineText);
+				
+				if(prefetchedStyles != null)
+				{
+					grepStyles = prefetchedStyles.length == 0 ? null : new LinkedList<GrepStyleRange>(Arrays.asList(prefetchedStyles));
+				}
+				else if(stylePrefetcher != null && stylePrefetcher.defer(event.lineOffset, event.lineText))
+				{
+					// Painted without styles for now, redrawn once styled
+					return;
+				}
+				else
+				{
+					long start = System.nanoTime();
+					grepStyles = lineGetStyle(event.lineOffset, event.lineText, true, false, originalStyles);
+					
+					if(stylePrefetcher != null)
+					{
+						stylePrefetcher.addStylingTime(System.nanoTime() - start);
+					}
+				}
+			}
 		}
 		
 		StyleRange[] styles = convertStyles(event.lineOffset, event.lineText,
-				event.styles == null || event.styles.length == 0 ? null : event.styles, grepStyles);
+				originalStyles, grepStyles);
+		
+		if(cacheable)
+		{
+			styleCache.put(event.lineOffset, event.lineText, originalStyles, styles);
+		}
 		
 		if(styles != null)
 		{
@@ -288,8 +456,79 @@ public class GrepLineStyleListener implements LineStyleListener, IGrepConsoleLis
 			int charOffset, boolean styles, boolean links)
 	{
 		LinkedList<GrepStyleRange> grepStyleRanges = lineGetStyle(lineOffset, lineText, styles, links, null);
-		StyleRange[] ranges = convertStyles(lineOffset, lineText, null, grepStyleRanges);
+		return findStyleAt(convertStyles(lineOffset, lineText, null, grepStyleRanges), charOffset);
+	}
+	
+	/**
+	 * Returns the link at a specific character offset. The link adapter is
+	 * created on demand. The line's links are indexed once and kept in the
+	 * style cache, so repeated queries for the same line (e.g. while the mouse
+	 * is moved with the link modifier held down) do not match the line again.
+	 * 
+	 * @param lineOffset Offset of the first character in the line.
+	 * @param lineText Full line text.
+	 * @param charOffset Character offset.
+	 * 
+	 * @return Link adapter. <code>null</code> if there is no link at the
+	 * 		specified offset.
+	 */
+	public GrepLinkAdapter getLinkAt(int lineOffset, String lineText, int charOffset)
+	{
+		LineLinkIndex linkIndex = styleCache == null ? null : styleCache.getLinkIndex(lineOffset, lineText);
+		
+		if(linkIndex == null)
+		{
+			LinkedList<GrepStyleRange> grepStyleRanges = lineGetStyle(lineOffset, lineText, false, true, null);
+			linkIndex = new LineLinkIndex(convertStyles(lineOffset, lineText, null, grepStyleRanges), grepStyleRanges);
+			
+			if(styleCache != null)
+			{
+				styleCache.putLinkIndex(lineOffset, lineText, linkIndex);
+			}
+		}
+		
+		return linkIndex.getLinkAt(charOffset, shell, project);
+	}
+	
+	/**
+	 * Creates the link adapter for a style range created by this listener.
+	 * 
+	 * @param style Style range. May be <code>null</code>.
+	 * @param grepStyleRanges Grep style ranges from which the style range has
+	 * 		been created. Must include links.
+	 * 
+	 * @return Link adapter. <code>null</code> if the style range has no link.
+	 */
+	public GrepLinkAdapter resolveLink(StyleRange style, Collection<GrepStyleRange> grepStyleRanges)
+	{
+		if(style == null || !(style.data instanceof LinkDescriptor))
+		{
+			return null;
+		}
+		
+		LinkDescriptor descriptor = (LinkDescriptor) style.data;
+		
+		for(GrepStyleRange range: grepStyleRanges)
+		{
+			if(descriptor.matches(range))
+			{
+				return createLinkAdapter(range.getLinkMatch(), shell, project);
+			}
+		}
 		
+		return null;
+	}
+	
+	/**
+	 * Finds the style range at a specific character offset.
+	 * 
+	 * @param ranges Ordered style ranges. May be <code>null</code>.
+	 * @param charOffset Character offset.
+	 * 
+	 * @return Style range. <code>null</code> if none is found.
+	 */
+	private static StyleRange findStyleAt(StyleRange[] ranges, int charOffset)
+	{
 		if(ranges == null)
 		{
 			return null;
@@ -340,7 +579,21 @@ public class GrepLineStyleListener implements LineStyleListener, IGrepConsoleLis
 	@Override
 	public void settingsChanged()
 	{
-		this.matchLength = Activator.getDefault().getStyleMatchLength();
+		Activator activator = Activator.getDefault();
+		styler.setMatchLength(activator.getStyleMatchLength());
+		
+		if(styleCache != null)
+		{
+			styleCache.setBudget(activator.getStyleCacheSize() * 1024L);
+			styleCache.invalidate();
+		}
+		
+		styleTemplates.clear();
+		
+		if(stylePrefetcher != null)
+		{
+			stylePrefetcher.reset(items, styler.getMatchLength());
+		}
 	}
 
 	/**
@@ -358,23 +611,7 @@ public class GrepLineStyleListener implements LineStyleListener, IGrepConsoleLis
 	public LinkedList<GrepStyleRange> lineGetStyle(int lineOffset, String lineText,
 			boolean styles, boolean links, StyleRange[] originalStyleRanges)
 	{
-		String matchText = (matchLength <= 0 || lineText.length() <= matchLength) ? lineText : lineText.substring(0, matchLength);
-		LinkedList<GrepStyleRange> grepStyleRanges = new LinkedList<GrepStyleRange>();
-		
-		int index = 0;
-		
-		for(GrepExpressionItem item: items)
-		{
-			calculateStyleRanges(index, lineText, matchText, lineOffset, item, grepStyleRanges, styles, links);
-			index++;
-		}
-
-		if(grepStyleRanges.isEmpty())
-		{
-			return null;
-		}
-		
-		return grepStyleRanges;
+		return styler.getStyleRanges(lineText, styles, links);
 	}
 	
 	/**
@@ -429,64 +666,100 @@ public class GrepLineStyleListener implements LineStyleListener, IGrepConsoleLis
 			}
 		}
 		
-		Collections.sort(grepStyleRanges, STYLE_RANGE_COMPARATOR);
-
-		TreeSet<Integer> indexes = new TreeSet<Integer>();
-
-		for(GrepStyleRange range: grepStyleRanges)
+		GrepStyleRange[] ranges = grepStyleRanges.toArray(new GrepStyleRange[grepStyleRanges.size()]);
+		Arrays.sort(ranges, STYLE_RANGE_COMPARATOR);
+		
+		int[] indexes = new int[ranges.length * 2];
+		
+		for(int i = 0; i < ranges.length; i++)
 		{
-			indexes.add(range.getFirstIndex());
-			indexes.add(range.getLastIndex() + 1);
+			indexes[i * 2] = ranges[i].getFirstIndex();
+			indexes[i * 2 + 1] = ranges[i].getLastIndex() + 1;
 		}
-
-		List<StyleRange> styleRanges = new LinkedList<StyleRange>();
-		List<GrepStyleRange> activeGrepStyleRanges = new LinkedList<GrepStyleRange>();
 		
-		int currentIndex = indexes.pollFirst();
+		Arrays.sort(indexes);
 		
-		while(!indexes.isEmpty())
+		// Active ranges are kept in sort order. Sub group styles always take
+		// precedence over whole line styles, so they are kept separately
+		GrepStyleRange[] activeSubRanges = new GrepStyleRange[ranges.length];
+		GrepStyleRange[] activeWholeRanges = new GrepStyleRange[ranges.length];
+		int subCount = 0;
+		int wholeCount = 0;
+		int nextRange = 0;
+		
+		List<StyleRange> styleRanges = new ArrayList<StyleRange>();
+		int currentIndex = indexes[0];
+		
+		for(int i = 1; i < indexes.length; i++)
 		{
-			boolean activeStylesChanged = false;
+			int nextIndex = indexes[i];
 			
-			Integer nextIndex = indexes.pollFirst();
-			LinkedList<GrepStyleRange> removeActive = new LinkedList<GrepStyleRange>();
-			
-			for(GrepStyleRange range: activeGrepStyleRanges)
+			if(nextIndex == currentIndex)
 			{
-				if(range.getLastIndex() < currentIndex)
-				{
-					removeActive.add(range);
-					activeStylesChanged = true;
-				}
+				continue;
 			}
 			
-			activeGrepStyleRanges.removeAll(removeActive);
+			subCount = removeEndedRanges(activeSubRanges, subCount, currentIndex);
+			wholeCount = removeEndedRanges(activeWholeRanges, wholeCount, currentIndex);
 			
-			while(!grepStyleRanges.isEmpty() && grepStyleRanges.getFirst().getFirstIndex() == currentIndex)
+			while(nextRange < ranges.length && ranges[nextRange].getFirstIndex() == currentIndex)
 			{
-				activeGrepStyleRanges.add(grepStyleRanges.removeFirst());
-				activeStylesChanged = true;
-			}
-
-			if(activeStylesChanged)
-			{
-				Collections.sort(activeGrepStyleRanges, STYLE_RANGE_COMPARATOR_SUB_BEFORE_WHOLE);
+				GrepStyleRange range = ranges[nextRange++];
+				
+				if(range.isWholeLine())
+				{
+					activeWholeRanges[wholeCount++] = range;
+				}
+				else
+				{
+					activeSubRanges[subCount++] = range;
+				}
 			}
 			
-			StyleRange styleRange = new StyleRange();
-			styleRange.start = lineOffset + currentIndex;
-			styleRange.length = nextIndex - currentIndex;
-			
-			if(!activeGrepStyleRanges.isEmpty())
+			if(subCount + wholeCount > 0)
 			{
-				collapseStyles(activeGrepStyleRanges, styleRange);
+				StyleRange styleRange = new StyleRange();
+				styleRange.start = lineOffset + currentIndex;
+				styleRange.length = nextIndex - currentIndex;
+				
+				collapseStyles(activeSubRanges, subCount, activeWholeRanges, wholeCount, styleRange);
 				styleRanges.add(styleRange);
 			}
 			
 			currentIndex = nextIndex;
 		}
 		
-		return styleRanges.isEmpty() ? null : styleRanges.toArray(new StyleRange[]{});
+		return styleRanges.isEmpty() ? null : styleRanges.toArray(new StyleRange[styleRanges.size()]);
+	}
+	
+	/**
+	 * Removes the grep style ranges which end before the specified index from
+	 * an array of active style ranges, keeping the order of the remaining ones.
+	 * 
+	 * @param activeRanges Active style ranges.
+	 * @param count Number of active style ranges.
+	 * @param index Current index in the line.
+	 * 
+	 * @return New number of active style ranges.
+	 */
+	private static int removeEndedRanges(GrepStyleRange[] activeRanges, int count, int index)
+	{
+		int newCount = 0;
+		
+		for(int i = 0; i < count; i++)
+		{
+			if(activeRanges[i].getLastIndex() >= index)
+			{
+				activeRanges[newCount++] = activeRanges[i];
+			}
+		}
+		
+		for(int i = newCount; i < count; i++)
+		{
+			activeRanges[i] = null;
+		}
+		
+		return newCount;
 	}
 	
 	/**
@@ -498,60 +771,69 @@ public class GrepLineStyleListener implements LineStyleListener, IGrepConsoleLis
 	 * @param styleRange Collapsed Eclipse style range.
 	 */
 	public void collapseStyles(List<GrepStyleRange> grepStyleRanges, StyleRange styleRange)
+	{
+		GrepStyleRange[] ranges = grepStyleRanges.toArray(new GrepStyleRange[grepStyleRanges.size()]);
+		collapseStyles(ranges, ranges.length, null, 0, styleRange);
+	}
+	
+	/**
+	 * Collapses the active sub group and whole line grep style ranges of a line
+	 * segment into a single Eclipse style range. Sub group ranges take priority
+	 * over whole line ranges, otherwise the same rules as in
+	 * {@link #collapseStyles(List, StyleRange)} apply.
+	 * 
+	 * The styles are not merged for every segment. Instead, a template for the
+	 * segment's combination of styles is taken from the style template cache.
+	 * 
+	 * @param subRanges Ordered sub group ranges.
+	 * @param subCount Number of sub group ranges.
+	 * @param wholeRanges Ordered whole line ranges.
+	 * @param wholeCount Number of whole line ranges.
+	 * @param styleRange Collapsed Eclipse style range.
+	 */
+	private void collapseStyles(GrepStyleRange[] subRanges, int subCount,
+			GrepStyleRange[] wholeRanges, int wholeCount, StyleRange styleRange)
 	{
 		StyleRange originalRange = null;
+		GrepStyleRange linkRange = null;
+		int styleCount = 0;
+		
+		if(segmentStyles.length < subCount + wholeCount)
+		{
+			segmentStyles = new GrepStyle[(subCount + wholeCount) * 2];
+		}
 		
-		for(GrepStyleRange grepStyleRange: grepStyleRanges)
+		for(int i = 0; i < subCount + wholeCount; i++)
 		{
+			GrepStyleRange grepStyleRange = i < subCount ? subRanges[i] : wholeRanges[i - subCount];
+			
 			if(originalRange == null)
 			{
 				originalRange = grepStyleRange.getStyleRange();
 			}
 			
-			GrepStyle style = grepStyleRange.getStyle();
-		
-			if(style != null)
+			if(grepStyleRange.getStyle() != null)
 			{
-				if(styleRange.foreground == null && style.getForeground() != null)
-				{
-					styleRange.foreground = colorRegistry.get(style.getForeground());
-				}
-				
-				if(styleRange.background == null && style.getBackground() != null)
-				{
-					styleRange.background = colorRegistry.get(style.getBackground());
-				}
-				
-				styleRange.fontStyle |= (style.isBold() ? SWT.BOLD : 0) | (style.isItalic() ? SWT.ITALIC : 0);
-				styleRange.underline |= style.isUnderline();
-				
-				if(styleRange.underlineColor == null && style.getUnderlineColor() != null)
-				{
-					styleRange.underlineColor = colorRegistry.get(style.getUnderlineColor());
-				}
-				
-				styleRange.strikeout |= style.isStrikeout();
-				
-				if(styleRange.strikeoutColor == null && style.getStrikeoutColor() != null)
-				{
-					styleRange.strikeoutColor = colorRegistry.get(style.getStrikeoutColor());
-				}
-				
-				styleRange.borderStyle |= style.isBorder() ? SWT.BORDER_SOLID : SWT.NONE;
-				
-				if(styleRange.borderColor == null && style.getBorderColor() != null)
-				{
-					styleRange.borderColor = colorRegistry.get(style.getBorderColor());
-				}
+				segmentStyles[styleCount++] = grepStyleRange.getStyle();
 			}
 			
-			if(styleRange.data == null && grepStyleRange.getLinkMatch() != null)
+			if(linkRange == null && grepStyleRange.getLinkMatch() != null)
 			{
-				styleRange.data = createLinkAdapter(grepStyleRange.getLinkMatch(), 
-						shell, project);
+				linkRange = grepStyleRange;
 			}
 		}
 		
+		if(styleCount > 0)
+		{
+			copyStyleRangeFields(styleTemplates.get(segmentStyles, styleCount), styleRange);
+			Arrays.fill(segmentStyles, 0, styleCount, null);
+		}
+		
+		if(styleRange.data == null && linkRange != null)
+		{
+			styleRange.data = new LinkDescriptor(linkRange);
+		}
+		
 		if(originalRange != null)
 		{
 			copyStyleRangeFields(originalRange, styleRange);
@@ -622,96 +904,4 @@ public class GrepLineStyleListener implements LineStyleListener, IGrepConsoleLis
 		
 		dest.underlineStyle |= src.underlineStyle;
 	}
-
-	/**
-	 * Tests the specified grep expression item against a line of text and
-	 * creates the corresponding grep style ranges, if necessary.
-	 *  
-	 * @param expressionIndex Grep expression index. Used to keep the order of
-	 * 		matched expressions when sorting the matches later.
-	 * @param text Full line text.
-	 * @param matchText Text for grep testing. May be shortened from the full
-	 * 		line for performance reasons. 
-	 * @param lineOffset Offset of the first character in the line.
-	 * @param item Grep expression item to test.
-	 * @param styleRanges List of style ranges to which any new style ranges will
-	 * 		be added.
-	 * @param styles Whether to assign styles.
-	 * @param links Whether to assign links.
-	 */
-	protected void calculateStyleRanges(int expressionIndex, String text, 
-			String matchText, int lineOffset, GrepExpressionItem item, 
-			List<GrepStyleRange> styleRanges, boolean styles, boolean links)
-	{
-		Pattern pattern = item.getPattern();
-		
-		if(pattern == null)
-		{
-			return;
-		}
-		
-		Pattern quickPattern = item.getQuickPattern();
-		
-		if(quickPattern != null 
-				&& !quickPattern.matcher(matchText).find())
-		{
-			return;
-		}
-		
-		Matcher matcher = pattern.matcher(quickPattern == null ? matchText : text);
-		boolean first = true;
-		
-		while(matcher.find())
-		{
-			if(first)
-			{
-				first = false;
-				Pattern unlessPattern = item.getUnlessPattern();
-				
-				if(unlessPattern != null)
-				{
-					Matcher unlessMatcher = unlessPattern.matcher(quickPattern == null ? matchText : text);
-					
-					if(unlessMatcher.find())
-					{
-						return;
-					}
-				}
-				
-				GrepStyle style = styles ? item.getGroups()[0].getStyle() : null;
-				IGrepLink link = links ? item.getGroups()[0].getLink() : null;
-				
-				if(style != null || link != null)
-				{
-					styleRanges.add(new GrepStyleRange(item, expressionIndex, true, 0, text.length(), style, link, matcher, text, 0, project));
-				}
-			}
-
-			GrepGroup[] groups = item.getGroups();
-			
-			for(int i = 1; i <= matcher.groupCount(); i++)
-			{
-				GrepGroup group = i < groups.length ? groups[i] : null;
-				
-				if(group == null)
-				{
-					continue;
-				}
-
-				int start = matcher.start(i);
-				
-				if(start < 0)
-				{
-					continue;
-				}
-				
-				int length = matcher.group(i).length();
-				
-				GrepStyle groupStyle = styles ? group.getStyle() : null;
-				IGrepLink groupLink = links ? group.getLink() : null;
-			
-				styleRanges.add(new GrepStyleRange(item, expressionIndex, false, start, start + length - 1, groupStyle, groupLink, matcher, text, i, project));
-			}
-		}
-	}
 }
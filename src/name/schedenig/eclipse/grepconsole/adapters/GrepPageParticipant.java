@@ -23,9 +23,8 @@ import name.schedenig.eclipse.grepconsole.Activator.IGrepConsoleListener;
 import name.schedenig.eclipse.grepconsole.adapters.links.LinkListener;
 import name.schedenig.eclipse.grepconsole.i18n.Messages;
 import name.schedenig.eclipse.grepconsole.model.AbstractGrepModelElement;
-import name.schedenig.eclipse.grepconsole.model.GrepExpressionFolder;
 import name.schedenig.eclipse.grepconsole.model.GrepExpressionItem;
-import name.schedenig.eclipse.grepconsole.model.GrepExpressionRootFolder;
+import name.schedenig.eclipse.grepconsole.model.InheritedFlagResolver;
 import name.schedenig.eclipse.grepconsole.util.GrepConsoleUtil;
 import name.schedenig.eclipse.grepconsole.view.colors.ColorRegistry;
 
@@ -38,6 +37,10 @@ import org.eclipse.debug.core.ILaunch;
 import org.eclipse.debug.core.ILaunchConfiguration;
 import org.eclipse.debug.core.ILaunchConfigurationWorkingCopy;
 import org.eclipse.swt.custom.StyledText;
+import org.eclipse.swt.custom.StyledTextContent;
+import org.eclipse.swt.custom.TextChangeListener;
+import org.eclipse.swt.custom.TextChangedEvent;
+import org.eclipse.swt.custom.TextChangingEvent;
 import org.eclipse.swt.events.PaintEvent;
 import org.eclipse.swt.events.PaintListener;
 import org.eclipse.ui.console.ConsolePlugin;
@@ -101,6 +104,80 @@ public class GrepPageParticipant implements IConsolePageParticipant, IGrepConsol
 	/** Console link adapter. */
 	private LinkListener linkAdapter;
 
+	/** Index of the precomputed line styles. <code>null</code> unless styles
+	 *  are precomputed. */
+	private StyleIndex styleIndex;
+	
+	/** Background thread precomputing the line styles. <code>null</code>
+	 *  unless styles are precomputed. */
+	private StyleIndexer styleIndexer;
+	
+	/** Background styler used when painting takes too long. <code>null</code>
+	 *  if lines are always styled while painting. */
+	private StylePrefetcher stylePrefetcher;
+	
+	/** Whether the console text has been modified in a way that requires the
+	 *  style index to be rebuilt once the modification is complete. */
+	private boolean styleIndexRebuildPending;
+
+	/** Compiled rule set currently used by this console. Shared with other
+	 *  consoles using the same flags. */
+	private volatile CompiledRuleSet ruleSet;
+	
+	/** Keeps the line style cache and the style index in sync with the console
+	 *  text. The cache is invalidated when text is removed from the console,
+	 *  i.e. when the console is cleared or its buffer is trimmed. Appended text
+	 *  does not affect cached lines, but is queued for style indexing. */
+	private TextChangeListener contentListener = new TextChangeListener()
+	{
+		@Override
+		public void textChanging(TextChangingEvent event)
+		{
+			if(event.replaceCharCount > 0)
+			{
+				grepLineStyleListener.invalidateStyleCache();
+			}
+			
+			if(styleIndexer == null)
+			{
+				return;
+			}
+			
+			int charCount = styledText.getContent().getCharCount();
+			
+			if(event.start == charCount && event.replaceCharCount == 0)
+			{
+				styleIndexer.enqueue(event.newText);
+			}
+			else if(event.start == 0 && event.newCharCount == 0 && event.replaceCharCount < charCount)
+			{
+				styleIndex.removeFromStart(event.replaceCharCount);
+			}
+			else
+			{
+				styleIndexRebuildPending = true;
+			}
+		}
+		
+		@Override
+		public void textChanged(TextChangedEvent event)
+		{
+			if(styleIndexRebuildPending)
+			{
+				styleIndexRebuildPending = false;
+				rebuildStyleIndex();
+			}
+		}
+		
+		@Override
+		public void textSet(TextChangedEvent event)
+		{
+			grepLineStyleListener.invalidateStyleCache();
+			styleIndexRebuildPending = false;
+			rebuildStyleIndex();
+		}
+	};
+
 	/** Text filter used for Grep View output and notifications. An instance is
 	 *  always created, but only active (hooked as a listener) when Grep View or
 	 *  notifications are enabled. */
@@ -195,10 +272,14 @@ public class GrepPageParticipant implements IConsolePageParticipant, IGrepConsol
 			
 			grepLineStyleListener = new GrepLineStyleListener(styledText.getShell(), getProject());
 			grepLineStyleListener.setColorRegistry(colorRegistry);
+			grepLineStyleListener.setStyleCache(new LineStyleCache(activator.getStyleCacheSize() * 1024L));
 			
+			updateStyleIndexer();
+			updateStylePrefetcher();
 			refreshLineStyleListener();
 			
 			styledText.addLineStyleListener(grepLineStyleListener);
+			styledText.getContent().addTextChangeListener(contentListener);
 			
 			linkAdapter = new LinkListener(styledText, grepLineStyleListener);
 			linkAdapter.attach();
@@ -294,90 +375,177 @@ public class GrepPageParticipant implements IConsolePageParticipant, IGrepConsol
 	 * Updates the line style listener according to the current elements.
 	 */
 	public void refreshLineStyleListener()
+	{
+		refreshLineStyleListener(updateRuleSet());
+	}
+	
+	/**
+	 * Updates the line style listener according to a compiled rule set.
+	 * 
+	 * @param ruleSet Rule set.
+	 */
+	private void refreshLineStyleListener(CompiledRuleSet ruleSet)
 	{
 		if(grepLineStyleListener == null)
 		{
 			return;
 		}
 		
-		Activator activator = Activator.getDefault();
-		LinkedList<GrepExpressionItem> items = new LinkedList<GrepExpressionItem>();
-		addAllEnabledItems(items, activator.getExpressions(), enablementMap);
-		
-		grepLineStyleListener.setItems(items);
+		grepLineStyleListener.setItems(ruleSet.getEnabledItems(), ruleSet.createStylePrefilter());
+		rebuildStyleIndex();
 		
 		if(!styledText.isDisposed())
 		{
 			styledText.redraw();
 		}
 	}
-
+	
 	/**
-	 * Recursively collects all enabled items in a list.
-	 * 
-	 * @param items List of items. Found items are added to this list.
-	 * @param element Element to search.
-	 * @param enablementMap Map of enablement states, or <code>null</code>.
+	 * Starts or stops the background style indexer according to the current
+	 * settings.
 	 */
-	private void addAllEnabledItems(LinkedList<GrepExpressionItem> items, AbstractGrepModelElement element, Map<String, Boolean> enablementMap)
+	private void updateStyleIndexer()
 	{
-		Boolean enablement = enablementMap.get(element.getId());
+		boolean precompute = Activator.getDefault().isPrecomputeStyles();
 		
-		if(enablement == null)
+		if(precompute && styleIndexer == null && !styledText.isDisposed())
 		{
-			enablement = element.isDefaultEnabled();
+			styleIndex = new StyleIndex();
+			styleIndexer = new StyleIndexer(styleIndex, styledText.getDisplay());
+			styleIndexer.start();
+			grepLineStyleListener.setStyleIndex(styleIndex);
 		}
-		
-		if(!(element instanceof GrepExpressionRootFolder) && !enablement)
+		else if(!precompute && styleIndexer != null)
 		{
-			return;
+			disposeStyleIndexer();
 		}
+	}
+	
+	/**
+	 * Starts or stops the background style prefetcher according to the current
+	 * settings.
+	 */
+	private void updateStylePrefetcher()
+	{
+		int budget = Activator.getDefault().getStylingBudget();
 		
-		if(element instanceof GrepExpressionItem)
-		{
-			items.add((GrepExpressionItem) element);
-		}
-		else if(element instanceof GrepExpressionFolder)
+		if(budget > 0 && !styledText.isDisposed())
 		{
-			for(AbstractGrepModelElement child: ((GrepExpressionFolder) element).getChildren())
+			if(stylePrefetcher == null)
+			{
+				stylePrefetcher = new StylePrefetcher(styledText, budget);
+				stylePrefetcher.start();
+				grepLineStyleListener.setStylePrefetcher(stylePrefetcher);
+			}
+			else
 			{
-				addAllEnabledItems(items, child, enablementMap);
+				stylePrefetcher.setBudget(budget);
 			}
 		}
+		else if(budget <= 0 && stylePrefetcher != null)
+		{
+			disposeStylePrefetcher();
+		}
 	}
-
+	
 	/**
-	 * Recursively collects all filtered items in a list.
-	 * 
-	 * @param items List of items. Found items are added to this list.
-	 * @param element Element to search.
-	 * @param filterMap Map of filter states, or <code>null</code>.
+	 * Stops the background style prefetcher.
 	 */
-	public void addAllFilterItems(LinkedList<GrepExpressionItem> items, AbstractGrepModelElement element, Map<String, Boolean> filterMap)
+	private void disposeStylePrefetcher()
 	{
-		Boolean filter = filterMap.get(element.getId());
-		
-		if(filter == null)
+		if(stylePrefetcher != null)
 		{
-			filter = element.isDefaultFilter();
+			stylePrefetcher.dispose();
+			stylePrefetcher = null;
 		}
 		
-		if(!(element instanceof GrepExpressionRootFolder) && !filter)
+		if(grepLineStyleListener != null)
 		{
-			return;
+			grepLineStyleListener.setStylePrefetcher(null);
 		}
+	}
+	
+	/**
+	 * Stops the background style indexer and discards the style index.
+	 */
+	private void disposeStyleIndexer()
+	{
+		if(styleIndexer != null)
+		{
+			styleIndexer.dispose();
+			styleIndexer = null;
+		}
+		
+		styleIndex = null;
 		
-		if(element instanceof GrepExpressionItem)
+		if(grepLineStyleListener != null)
+		{
+			grepLineStyleListener.setStyleIndex(null);
+		}
+	}
+	
+	/**
+	 * Discards the style index and queues the whole console text for indexing
+	 * with the line style listener's current items. Does nothing unless styles
+	 * are precomputed.
+	 */
+	private void rebuildStyleIndex()
+	{
+		if(styleIndexer == null || styledText.isDisposed())
 		{
-			items.add((GrepExpressionItem) element);
+			return;
 		}
-		else if(element instanceof GrepExpressionFolder)
+		
+		Collection<GrepExpressionItem> items = grepLineStyleListener.getItems();
+		
+		if(items == null)
 		{
-			for(AbstractGrepModelElement child: ((GrepExpressionFolder) element).getChildren())
-			{
-				addAllFilterItems(items, child, filterMap);
-			}
+			return;
 		}
+		
+		int generation = styleIndex.reset(items);
+		styleIndexer.reset(items, Activator.getDefault().getStyleMatchLength(), generation, styleIndex.getRemovedChars());
+		
+		StyledTextContent content = styledText.getContent();
+		styleIndexer.enqueue(content.getTextRange(0, content.getCharCount()));
+	}
+
+	/**
+	 * Fetches the compiled rule set for the current expressions and flag maps
+	 * from the shared cache and makes it the console's current rule set.
+	 * 
+	 * @return Rule set.
+	 */
+	private CompiledRuleSet updateRuleSet()
+	{
+		Activator activator = Activator.getDefault();
+		CompiledRuleSet newRuleSet = activator.getRuleSetCache().get(activator.getExpressions(), enablementMap, filterMap, statisticsMap, notificationsMap);
+		ruleSet = newRuleSet;
+		
+		return newRuleSet;
+	}
+	
+	/**
+	 * Returns the compiled rule set currently used by this console.
+	 * 
+	 * @return Rule set. <code>null</code> if the console has not been
+	 * 		initialised yet.
+	 */
+	public CompiledRuleSet getRuleSet()
+	{
+		return ruleSet;
+	}
+
+	/**
+	 * Recursively collects all filtered items in a list.
+	 * 
+	 * @param items List of items. Found items are added to this list.
+	 * @param element Element to search.
+	 * @param filterMap Map of filter states, or <code>null</code>.
+	 */
+	public void addAllFilterItems(LinkedList<GrepExpressionItem> items, AbstractGrepModelElement element, Map<String, Boolean> filterMap)
+	{
+		InheritedFlagResolver.FILTER_RESOLVER.collectItems(items, element, filterMap);
 	}
 
 	/**
@@ -389,29 +557,7 @@ public class GrepPageParticipant implements IConsolePageParticipant, IGrepConsol
 	 */
 	public void addAllStatisticsItems(LinkedHashSet<GrepExpressionItem> items, AbstractGrepModelElement element, Map<String, Boolean> statisticsMap)
 	{
-		Boolean statistics = statisticsMap.get(element.getId());
-		
-		if(statistics == null)
-		{
-			statistics = element.isDefaultStatistics();
-		}
-		
-		if(!(element instanceof GrepExpressionRootFolder) && !statistics)
-		{
-			return;
-		}
-		
-		if(element instanceof GrepExpressionItem)
-		{
-			items.add((GrepExpressionItem) element);
-		}
-		else if(element instanceof GrepExpressionFolder)
-		{
-			for(AbstractGrepModelElement child: ((GrepExpressionFolder) element).getChildren())
-			{
-				addAllStatisticsItems(items, child, statisticsMap);
-			}
-		}
+		InheritedFlagResolver.STATISTICS_RESOLVER.collectItems(items, element, statisticsMap);
 	}
 	
 	/**
@@ -423,29 +569,7 @@ public class GrepPageParticipant implements IConsolePageParticipant, IGrepConsol
 	 */
 	public void addAllNotificationsItems(Collection<GrepExpressionItem> items, AbstractGrepModelElement element, Map<String, Boolean> notificationsMap)
 	{
-		Boolean notifications = notificationsMap.get(element.getId());
-		
-		if(notifications == null)
-		{
-			notifications = element.isDefaultNotifications();
-		}
-		
-		if(!(element instanceof GrepExpressionRootFolder) && !notifications)
-		{
-			return;
-		}
-		
-		if(element instanceof GrepExpressionItem)
-		{
-			items.add((GrepExpressionItem) element);
-		}
-		else if(element instanceof GrepExpressionFolder)
-		{
-			for(AbstractGrepModelElement child: ((GrepExpressionFolder) element).getChildren())
-			{
-				addAllNotificationsItems(items, child, notificationsMap);
-			}
-		}
+		InheritedFlagResolver.NOTIFICATIONS_RESOLVER.collectItems(items, element, notificationsMap);
 	}
 	
 	/**
@@ -468,6 +592,14 @@ public class GrepPageParticipant implements IConsolePageParticipant, IGrepConsol
 			linkAdapter = null;
 		}
 		
+		disposeStyleIndexer();
+		disposeStylePrefetcher();
+		
+		if(styledText != null && !styledText.isDisposed())
+		{
+			styledText.getContent().removeTextChangeListener(contentListener);
+		}
+		
 		if(colorRegistry != null)
 		{
 			colorRegistry.disposeColors();
@@ -562,17 +694,7 @@ public class GrepPageParticipant implements IConsolePageParticipant, IGrepConsol
 	 */
 	private TextFilter createTextFilter()
 	{
-		Activator activator = Activator.getDefault();
-		LinkedList<GrepExpressionItem> filterExpressions = new LinkedList<GrepExpressionItem>();
-		addAllFilterItems(filterExpressions, activator.getExpressions(), filterMap);
-		
-		LinkedHashSet<GrepExpressionItem> statisticsExpressions = new LinkedHashSet<GrepExpressionItem>();
-		addAllStatisticsItems(statisticsExpressions, activator.getExpressions(), statisticsMap);
-		
-		LinkedHashSet<GrepExpressionItem> notificationExpressions = new LinkedHashSet<GrepExpressionItem>();
-		addAllNotificationsItems(notificationExpressions, activator.getExpressions(), notificationsMap);
-		
-		TextFilter textFilter = new TextFilter(styledText.getContent(), filterExpressions, statisticsExpressions, notificationExpressions, styledText.getShell(), getProject());
+		TextFilter textFilter = new TextFilter(styledText.getContent(), updateRuleSet(), styledText.getShell(), getProject());
 		textFilter.refresh();
 
 		return textFilter;
@@ -631,21 +753,17 @@ public class GrepPageParticipant implements IConsolePageParticipant, IGrepConsol
 	@Override
 	public void settingsChanged()
 	{
-		refreshLineStyleListener();
+		if(grepLineStyleListener != null)
+		{
+			updateStyleIndexer();
+			updateStylePrefetcher();
+		}
+		
+		CompiledRuleSet ruleSet = updateRuleSet();
+		refreshLineStyleListener(ruleSet);
 
 		// experimental...
-		Activator activator = Activator.getDefault();
-		LinkedList<GrepExpressionItem> filterExpressions = new LinkedList<GrepExpressionItem>();
-		addAllFilterItems(filterExpressions, activator.getExpressions(), filterMap);
-		textFilter.setFilterExpressions(filterExpressions);
-		
-		LinkedHashSet<GrepExpressionItem> statisticsExpressions = new LinkedHashSet<GrepExpressionItem>();
-		addAllStatisticsItems(statisticsExpressions, activator.getExpressions(), statisticsMap);
-		textFilter.setStatisticsExpressions(statisticsExpressions);
-		
-		LinkedHashSet<GrepExpressionItem> notificationExpressions = new LinkedHashSet<GrepExpressionItem>();
-		addAllNotificationsItems(notificationExpressions, activator.getExpressions(), notificationsMap);
-		textFilter.setNotificationExpressions(notificationExpressions);
+		textFilter.setRuleSet(ruleSet);
 
 	
 		textFilter.refresh();
@@ -11,9 +11,9 @@
 
 package name.schedenig.eclipse.grepconsole.adapters;
 
-import java.util.regex.Matcher;
-
 import name.schedenig.eclipse.grepconsole.adapters.links.LinkMatch;
+import name.schedenig.eclipse.grepconsole.engine.ExpressionMatcher;
+import name.schedenig.eclipse.grepconsole.engine.MatchSnapshot;
 import name.schedenig.eclipse.grepconsole.model.GrepExpressionItem;
 import name.schedenig.eclipse.grepconsole.model.GrepStyle;
 import name.schedenig.eclipse.grepconsole.model.links.IGrepLink;
@@ -45,6 +45,9 @@ public class GrepStyleRange
 	/** Index of the last matched character. */
 	private int lastIndex;
 	
+	/** Index of the matched group. */
+	private int group;
+	
 	/** Style (if any). */
 	private GrepStyle style;
 	
@@ -82,14 +85,18 @@ public class GrepStyleRange
 	 * @param lastIndex Index of the last matched character.
 	 * @param style Style (if any).
 	 * @param link Link (if any).
-	 * @param matcher Matcher.
+	 * @param matcher Matcher. Only valid during this call; a snapshot is
+	 * 		taken if the range has a link.
+	 * @param matchedText The text the matcher has been applied to, or a longer
+	 * 		text starting with it.
 	 * @param wholeLineText Text of the whole line.
 	 * @param group Index of the matched group.
 	 * @param project Optional Eclipse project.
 	 */
 	public GrepStyleRange(GrepExpressionItem expressionItem, int expressionIndex, boolean wholeLine,
 			int firstIndex, int lastIndex, GrepStyle style, IGrepLink link,
-			Matcher matcher, String wholeLineText, int group, IProject project)
+			ExpressionMatcher matcher, CharSequence matchedText, String wholeLineText,
+			int group, IProject project)
 	{
 		this.expressionItem = expressionItem;
 		this.expressionIndex = expressionIndex;
@@ -97,8 +104,9 @@ public class GrepStyleRange
 		this.firstIndex = firstIndex;
 		this.lastIndex = lastIndex;
 		this.style = style;
+		this.group = group;
 
-		linkMatch = link == null ? null : new LinkMatch(expressionItem, link, matcher.toMatchResult(), matcher.start(), wholeLineText, group, project);
+		linkMatch = link == null ? null : new LinkMatch(expressionItem, link, new MatchSnapshot(matcher, matchedText), matcher.start(), wholeLineText, group, project);
 	}
 
 	/**
@@ -141,6 +149,16 @@ public class GrepStyleRange
 		return lastIndex;
 	}
 
+	/**
+	 * Returns the index of the matched group.
+	 * 
+	 * @return Group index. 0 for the whole line.
+	 */
+	public int getGroup()
+	{
+		return group;
+	}
+
 	/**
 	 * Returns the style.
 	 * 
@@ -0,0 +1,161 @@
+/*******************************************************************************
+ * Copyright (c) 2008 - 2014 Marian Schedenig
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marian Schedenig - initial API and implementation
+ *******************************************************************************/
+
+package name.schedenig.eclipse.grepconsole.adapters;
+
+import java.util.Collection;
+
+import name.schedenig.eclipse.grepconsole.adapters.links.GrepLinkAdapter;
+import name.schedenig.eclipse.grepconsole.adapters.links.LinkDescriptor;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.swt.custom.StyleRange;
+import org.eclipse.swt.widgets.Shell;
+
+/**
+ * Hit-test index of the styled segments of a single line and the links
+ * assigned to them. Built once per line, so finding the link under the mouse
+ * cursor is a binary search instead of matching all expressions against the
+ * line again. Link adapters are created on first use and then reused.
+ *
+ * Not thread safe. Only used on the UI thread.
+ *
+ * @author msched
+ */
+public class LineLinkIndex
+{
+	/** Offsets of the first characters of the segments. */
+	private int[] starts;
+
+	/** Offsets following the last characters of the segments. */
+	private int[] ends;
+
+	/** Index of each segment's link in linkRanges, or -1. */
+	private int[] links;
+
+	/** Grep style ranges carrying the links. */
+	private GrepStyleRange[] linkRanges;
+
+	/** Link adapters, created on demand. */
+	private GrepLinkAdapter[] adapters;
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param styles Ordered style ranges of the line, as returned by the line
+	 * 		style listener. May be <code>null</code>.
+	 * @param grepStyleRanges Grep style ranges from which the style ranges have
+	 * 		been created. Must include links. May be <code>null</code>.
+	 */
+	public LineLinkIndex(StyleRange[] styles, Collection<GrepStyleRange> grepStyleRanges)
+	{
+		int count = styles == null ? 0 : styles.length;
+
+		starts = new int[count];
+		ends = new int[count];
+		links = new int[count];
+		linkRanges = new GrepStyleRange[count];
+		int linkCount = 0;
+
+		for(int i = 0; i < count; i++)
+		{
+			StyleRange style = styles[i];
+			starts[i] = style.start;
+			ends[i] = style.start + style.length;
+			links[i] = -1;
+
+			if(style.data instanceof LinkDescriptor && grepStyleRanges != null)
+			{
+				LinkDescriptor descriptor = (LinkDescriptor) style.data;
+
+				for(GrepStyleRange range: grepStyleRanges)
+				{
+					if(descriptor.matches(range))
+					{
+						linkRanges[linkCount] = range;
+						links[i] = linkCount++;
+						break;
+					}
+				}
+			}
+		}
+
+		if(linkCount < count)
+		{
+			GrepStyleRange[] newLinkRanges = new GrepStyleRange[linkCount];
+			System.arraycopy(linkRanges, 0, newLinkRanges, 0, linkCount);
+			linkRanges = newLinkRanges;
+		}
+
+		adapters = new GrepLinkAdapter[linkCount];
+	}
+
+	/**
+	 * Returns the number of links in the line.
+	 *
+	 * @return Number of links.
+	 */
+	public int getLinkCount()
+	{
+		return linkRanges.length;
+	}
+
+	/**
+	 * Returns the link at a specific character offset. If the offset is at the
+	 * boundary of two segments, the earlier one takes precedence.
+	 *
+	 * @param charOffset Character offset.
+	 * @param shell Shell used by the link adapter.
+	 * @param project Optional project used by the link adapter.
+	 *
+	 * @return Link adapter. <code>null</code> if there is no link at the
+	 * 		specified offset.
+	 */
+	public GrepLinkAdapter getLinkAt(int charOffset, Shell shell, IProject project)
+	{
+		if(linkRanges.length == 0)
+		{
+			return null;
+		}
+
+		// Find the first segment not ending before the offset
+		int low = 0;
+		int high = ends.length;
+
+		while(low < high)
+		{
+			int mid = (low + high) >>> 1;
+
+			if(ends[mid] < charOffset)
+			{
+				low = mid + 1;
+			}
+			else
+			{
+				high = mid;
+			}
+		}
+
+		if(low == ends.length || starts[low] > charOffset || links[low] < 0)
+		{
+			return null;
+		}
+
+		int link = links[low];
+
+		if(adapters[link] == null)
+		{
+			adapters[link] = GrepLineStyleListener.createLinkAdapter(linkRanges[link].getLinkMatch(), shell, project);
+		}
+
+		return adapters[link];
+	}
+}
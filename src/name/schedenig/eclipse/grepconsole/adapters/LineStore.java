@@ -0,0 +1,291 @@
+/*******************************************************************************
+ * Copyright (c) 2008 - 2014 Marian Schedenig
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marian Schedenig - initial API and implementation
+ *******************************************************************************/
+
+package name.schedenig.eclipse.grepconsole.adapters;
+
+import name.schedenig.eclipse.grepconsole.adapters.TextFilter.Line;
+
+/**
+ * Stores the filtered lines of a text filter together with their character
+ * offsets in the filtered and in the original text.
+ *
+ * Lines and offsets are kept in fixed size chunks of plain arrays, so the
+ * store can grow without copying existing data and every line can be accessed
+ * by index in constant time. Offsets are stored as primitive ints in ascending
+ * order, which allows looking up the line at a character offset by binary
+ * search.
+ *
+ * Lines can be evicted from the start of the store, so it can also be used as
+ * a ring buffer with a bounded number of lines. Evicted lines are released
+ * chunk by chunk, and the offsets of the remaining lines are rebased so that
+ * the first line always starts at offset 0.
+ *
+ * @author msched
+ */
+public class LineStore
+{
+	/** Number of bits used for the index within a chunk. */
+	private static final int CHUNK_SHIFT = 12;
+
+	/** Number of lines per chunk. */
+	private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+
+	/** Mask for calculating the index within a chunk. */
+	private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+	/** Initial number of chunk slots. */
+	private static final int INITIAL_CHUNK_SLOTS = 4;
+
+	/** Line chunks. */
+	private Line[][] lines;
+
+	/** Chunks of character offsets of the lines in the filtered text. */
+	private int[][] offsets;
+
+	/** Chunks of character offsets of the lines in the original text. */
+	private int[][] originalOffsets;
+
+	/** Physical index of the first line within the chunks. Lower indexes
+	 *  belong to already evicted lines. */
+	private int head;
+
+	/** Number of lines. */
+	private int size;
+
+	/** Value to subtract from stored filtered text offsets. Stored offsets are
+	 *  never rewritten, so this grows with every eviction. Calculations rely on
+	 *  int overflow being well defined, so offsets remain correct even if
+	 *  stored values wrap around. */
+	private int offsetShift;
+
+	/**
+	 * Creates a new, empty instance.
+	 */
+	public LineStore()
+	{
+		clear();
+	}
+
+	/**
+	 * Removes all lines and releases the allocated chunks.
+	 */
+	public void clear()
+	{
+		lines = new Line[INITIAL_CHUNK_SLOTS][];
+		offsets = new int[INITIAL_CHUNK_SLOTS][];
+		originalOffsets = new int[INITIAL_CHUNK_SLOTS][];
+		head = 0;
+		size = 0;
+		offsetShift = 0;
+	}
+
+	/**
+	 * Returns the number of lines.
+	 *
+	 * @return Number of lines.
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Returns whether the store contains no lines.
+	 *
+	 * @return <code>true</code> iff the store is empty.
+	 */
+	public boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	/**
+	 * Appends a line.
+	 *
+	 * @param line Line.
+	 * @param offset Character offset of the line in the filtered text. Must not
+	 * 		be lower than the offset of the previously added line.
+	 * @param originalOffset Character offset of the line in the original text.
+	 */
+	public void add(Line line, int offset, int originalOffset)
+	{
+		int physical = head + size;
+		int chunk = physical >>> CHUNK_SHIFT;
+		int index = physical & CHUNK_MASK;
+
+		if(index == 0 || lines[chunk] == null)
+		{
+			allocateChunk(chunk);
+		}
+
+		lines[chunk][index] = line;
+		offsets[chunk][index] = offset + offsetShift;
+		originalOffsets[chunk][index] = originalOffset;
+		size++;
+	}
+
+	/**
+	 * Removes lines from the start of the store. The offsets of the remaining
+	 * lines are decreased so that the new first line starts at offset 0.
+	 *
+	 * @param count Number of lines to remove. Must not exceed the number of
+	 * 		lines in the store.
+	 */
+	public void removeFirst(int count)
+	{
+		if(count <= 0)
+		{
+			return;
+		}
+
+		for(int i = 0; i < count; i++)
+		{
+			int physical = head + i;
+			lines[physical >>> CHUNK_SHIFT][physical & CHUNK_MASK] = null;
+		}
+
+		head += count;
+		size -= count;
+
+		if(size > 0)
+		{
+			offsetShift = offsets[head >>> CHUNK_SHIFT][head & CHUNK_MASK];
+		}
+
+		int evictedChunks = head >>> CHUNK_SHIFT;
+
+		if(evictedChunks > 0)
+		{
+			dropChunks(lines, evictedChunks);
+			dropChunks(offsets, evictedChunks);
+			dropChunks(originalOffsets, evictedChunks);
+			head &= CHUNK_MASK;
+		}
+	}
+
+	/**
+	 * Removes the specified number of chunks from the start of a chunk slot
+	 * array, moving the remaining chunks to the front.
+	 *
+	 * @param chunks Chunk slot array.
+	 * @param count Number of chunks to remove.
+	 */
+	private static void dropChunks(Object[] chunks, int count)
+	{
+		System.arraycopy(chunks, count, chunks, 0, chunks.length - count);
+
+		for(int i = chunks.length - count; i < chunks.length; i++)
+		{
+			chunks[i] = null;
+		}
+	}
+
+	/**
+	 * Allocates a new chunk, growing the chunk slot arrays if necessary.
+	 *
+	 * @param chunk Index of the new chunk.
+	 */
+	private void allocateChunk(int chunk)
+	{
+		if(chunk >= lines.length)
+		{
+			int slots = lines.length * 2;
+
+			Line[][] newLines = new Line[slots][];
+			System.arraycopy(lines, 0, newLines, 0, lines.length);
+			lines = newLines;
+
+			int[][] newOffsets = new int[slots][];
+			System.arraycopy(offsets, 0, newOffsets, 0, offsets.length);
+			offsets = newOffsets;
+
+			int[][] newOriginalOffsets = new int[slots][];
+			System.arraycopy(originalOffsets, 0, newOriginalOffsets, 0, originalOffsets.length);
+			originalOffsets = newOriginalOffsets;
+		}
+
+		lines[chunk] = new Line[CHUNK_SIZE];
+		offsets[chunk] = new int[CHUNK_SIZE];
+		originalOffsets[chunk] = new int[CHUNK_SIZE];
+	}
+
+	/**
+	 * Returns the line at the specified index.
+	 *
+	 * @param index Line index. Must be within bounds.
+	 *
+	 * @return Line.
+	 */
+	public Line get(int index)
+	{
+		int physical = head + index;
+		return lines[physical >>> CHUNK_SHIFT][physical & CHUNK_MASK];
+	}
+
+	/**
+	 * Returns the character offset, in the filtered text, of the line at the
+	 * specified index.
+	 *
+	 * @param index Line index. Must be within bounds.
+	 *
+	 * @return Character offset.
+	 */
+	public int getOffset(int index)
+	{
+		int physical = head + index;
+		return offsets[physical >>> CHUNK_SHIFT][physical & CHUNK_MASK] - offsetShift;
+	}
+
+	/**
+	 * Returns the character offset, in the original text, of the line at the
+	 * specified index.
+	 *
+	 * @param index Line index. Must be within bounds.
+	 *
+	 * @return Original character offset.
+	 */
+	public int getOriginalOffset(int index)
+	{
+		int physical = head + index;
+		return originalOffsets[physical >>> CHUNK_SHIFT][physical & CHUNK_MASK];
+	}
+
+	/**
+	 * Returns the index of the line containing the specified character offset
+	 * in the filtered text, i.e. the last line whose offset is not greater than
+	 * the specified offset.
+	 *
+	 * @param offset Character offset.
+	 *
+	 * @return Line index, or -1 if the offset lies before the first line.
+	 */
+	public int indexOfOffset(int offset)
+	{
+		int low = 0;
+		int high = size - 1;
+
+		while(low <= high)
+		{
+			int mid = (low + high) >>> 1;
+
+			if(getOffset(mid) <= offset)
+			{
+				low = mid + 1;
+			}
+			else
+			{
+				high = mid - 1;
+			}
+		}
+
+		return high;
+	}
+}
@@ -0,0 +1,339 @@
+/*******************************************************************************
+ * Copyright (c) 2008 - 2014 Marian Schedenig
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marian Schedenig - initial API and implementation
+ *******************************************************************************/
+
+package name.schedenig.eclipse.grepconsole.adapters;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.swt.custom.StyleRange;
+
+/**
+ * Least recently used cache of the style ranges calculated for console lines,
+ * so repainting a line (e.g. when scrolling back and forth or when the caret
+ * blinks) does not test all expressions against it again.
+ *
+ * Lines are identified by their offset, their text and the style ranges
+ * already present on them. Entries also carry the version of the rule set
+ * they have been calculated for. The version is increased whenever the cache
+ * is invalidated, so results calculated for previous expressions or settings
+ * are never returned.
+ *
+ * The cache is limited to an estimated memory budget. Least recently used
+ * lines are discarded when the budget is exceeded.
+ *
+ * The cache also holds the link hit-test indexes of the lines most recently
+ * queried for links. They share the line identification and invalidation
+ * with the style ranges, but are kept separately and limited to a fixed
+ * number of lines, since they are only built for lines the user interacts
+ * with.
+ *
+ * Not thread safe. Only used on the UI thread.
+ *
+ * @author msched
+ */
+public class LineStyleCache
+{
+	/** Estimated memory use of an entry without its text and style ranges, in
+	 *  bytes. */
+	private static final int ENTRY_SIZE = 96;
+
+	/** Estimated memory use of a style range, in bytes. */
+	private static final int STYLE_RANGE_SIZE = 96;
+
+	/** Maximum number of lines for which link indexes are cached. */
+	private static final int MAX_LINK_LINES = 64;
+
+	/** Cached for lines without styles. */
+	private static final StyleRange[] NO_STYLES = new StyleRange[0];
+
+	/**
+	 * Identifies a line.
+	 *
+	 * @author msched
+	 */
+	private static class Key
+	{
+		/** Offset of the line's first character. */
+		private int lineOffset;
+
+		/** Line text. */
+		private String lineText;
+
+		/** Style ranges already present on the line. May be <code>null</code>. */
+		private StyleRange[] originalStyles;
+
+		/** Rule set version. */
+		private int version;
+
+		/** Hash code. */
+		private int hash;
+
+		/**
+		 * Creates a new instance.
+		 *
+		 * @param lineOffset Offset of the line's first character.
+		 * @param lineText Line text.
+		 * @param originalStyles Style ranges already present on the line. May be
+		 * 		<code>null</code>.
+		 * @param version Rule set version.
+		 */
+		private Key(int lineOffset, String lineText, StyleRange[] originalStyles, int version)
+		{
+			this.lineOffset = lineOffset;
+			this.lineText = lineText;
+			this.originalStyles = originalStyles;
+			this.version = version;
+
+			hash = ((lineOffset * 31 + lineText.hashCode()) * 31 + Arrays.hashCode(originalStyles)) * 31 + version;
+		}
+
+		/**
+		 * @see java.lang.Object#hashCode()
+		 */
+		@Override
+		public int hashCode()
+		{
+			return hash;
+		}
+
+		/**
+		 * @see java.lang.Object#equals(java.lang.Object)
+		 */
+		@Override
+		public boolean equals(Object obj)
+		{
+			if(!(obj instanceof Key))
+			{
+				return false;
+			}
+
+			Key other = (Key) obj;
+
+			return hash == other.hash && lineOffset == other.lineOffset
+					&& version == other.version && lineText.equals(other.lineText)
+					&& Arrays.equals(originalStyles, other.originalStyles);
+		}
+
+		/**
+		 * Returns the estimated memory use of an entry for this key.
+		 *
+		 * @param styles Cached style ranges.
+		 *
+		 * @return Size in bytes.
+		 */
+		private long getEntrySize(StyleRange[] styles)
+		{
+			int rangeCount = styles.length + (originalStyles == null ? 0 : originalStyles.length);
+			return ENTRY_SIZE + 2L * lineText.length() + (long) STYLE_RANGE_SIZE * rangeCount;
+		}
+	}
+
+	/** Cached style ranges by line, in access order. */
+	private LinkedHashMap<Key, StyleRange[]> entries = new LinkedHashMap<Key, StyleRange[]>(16, 0.75f, true);
+
+	/** Cached link indexes by line, in access order. */
+	private LinkedHashMap<Key, LineLinkIndex> linkIndexes = new LinkedHashMap<Key, LineLinkIndex>(16, 0.75f, true)
+	{
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Key, LineLinkIndex> eldest)
+		{
+			return size() > MAX_LINK_LINES;
+		}
+	};
+
+	/** Memory budget in bytes. */
+	private long budget;
+
+	/** Estimated memory use of all entries, in bytes. */
+	private long size;
+
+	/** Current rule set version. */
+	private int version;
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param budget Memory budget in bytes. 0 disables the cache.
+	 */
+	public LineStyleCache(long budget)
+	{
+		this.budget = budget;
+	}
+
+	/**
+	 * Returns the memory budget.
+	 *
+	 * @return Memory budget in bytes.
+	 */
+	public long getBudget()
+	{
+		return budget;
+	}
+
+	/**
+	 * Sets the memory budget. Discards least recently used lines if the new
+	 * budget is exceeded.
+	 *
+	 * @param budget Memory budget in bytes. 0 disables the cache.
+	 */
+	public void setBudget(long budget)
+	{
+		this.budget = budget;
+		trim();
+	}
+
+	/**
+	 * Returns the cached style ranges for a line.
+	 *
+	 * @param lineOffset Offset of the line's first character.
+	 * @param lineText Line text.
+	 * @param originalStyles Style ranges already present on the line. May be
+	 * 		<code>null</code>.
+	 *
+	 * @return Style ranges, an empty array if the line is known to have no
+	 * 		styles, or <code>null</code> if the line is not cached.
+	 */
+	public StyleRange[] get(int lineOffset, String lineText, StyleRange[] originalStyles)
+	{
+		if(budget <= 0)
+		{
+			return null;
+		}
+
+		return entries.get(new Key(lineOffset, lineText, originalStyles, version));
+	}
+
+	/**
+	 * Caches the style ranges calculated for a line.
+	 *
+	 * @param lineOffset Offset of the line's first character.
+	 * @param lineText Line text.
+	 * @param originalStyles Style ranges already present on the line. May be
+	 * 		<code>null</code>.
+	 * @param styles Style ranges, or <code>null</code> if the line has no
+	 * 		styles.
+	 */
+	public void put(int lineOffset, String lineText, StyleRange[] originalStyles,
+			StyleRange[] styles)
+	{
+		if(budget <= 0)
+		{
+			return;
+		}
+
+		Key key = new Key(lineOffset, lineText, originalStyles == null ? null : originalStyles.clone(), version);
+		StyleRange[] value = styles == null ? NO_STYLES : styles;
+		long entrySize = key.getEntrySize(value);
+
+		if(entrySize > budget)
+		{
+			return;
+		}
+
+		StyleRange[] old = entries.put(key, value);
+
+		if(old != null)
+		{
+			size -= key.getEntrySize(old);
+		}
+
+		size += entrySize;
+		trim();
+	}
+
+	/**
+	 * Returns the cached link index for a line.
+	 *
+	 * @param lineOffset Offset of the line's first character.
+	 * @param lineText Line text.
+	 *
+	 * @return Link index, or <code>null</code> if the line is not cached.
+	 */
+	public LineLinkIndex getLinkIndex(int lineOffset, String lineText)
+	{
+		if(budget <= 0)
+		{
+			return null;
+		}
+
+		return linkIndexes.get(new Key(lineOffset, lineText, null, version));
+	}
+
+	/**
+	 * Caches the link index built for a line.
+	 *
+	 * @param lineOffset Offset of the line's first character.
+	 * @param lineText Line text.
+	 * @param linkIndex Link index.
+	 */
+	public void putLinkIndex(int lineOffset, String lineText, LineLinkIndex linkIndex)
+	{
+		if(budget <= 0)
+		{
+			return;
+		}
+
+		linkIndexes.put(new Key(lineOffset, lineText, null, version), linkIndex);
+	}
+
+	/**
+	 * Discards all cached lines and increases the rule set version. Must be
+	 * called whenever the expressions or settings affecting line styles change,
+	 * and when text is removed from the console.
+	 */
+	public void invalidate()
+	{
+		entries.clear();
+		linkIndexes.clear();
+		size = 0;
+		version++;
+	}
+
+	/**
+	 * Returns the number of cached lines.
+	 *
+	 * @return Number of lines.
+	 */
+	public int getLineCount()
+	{
+		return entries.size();
+	}
+
+	/**
+	 * Returns the estimated memory use of the cached lines.
+	 *
+	 * @return Size in bytes.
+	 */
+	public long getSize()
+	{
+		return size;
+	}
+
+	/**
+	 * Discards least recently used lines until the memory budget is met.
+	 */
+	private void trim()
+	{
+		Iterator<Map.Entry<Key, StyleRange[]>> it = entries.entrySet().iterator();
+
+		while(size > budget && it.hasNext())
+		{
+			Map.Entry<Key, StyleRange[]> entry = it.next();
+			size -= entry.getKey().getEntrySize(entry.getValue());
+			it.remove();
+		}
+	}
+}
@@ -0,0 +1,255 @@
+/*******************************************************************************
+ * Copyright (c) 2008 - 2014 Marian Schedenig
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marian Schedenig - initial API and implementation
+ *******************************************************************************/
+
+package name.schedenig.eclipse.grepconsole.adapters;
+
+import java.util.Collection;
+import java.util.LinkedList;
+import java.util.List;
+
+import name.schedenig.eclipse.grepconsole.engine.ExpressionMatcher;
+import name.schedenig.eclipse.grepconsole.engine.ExpressionProfiler;
+import name.schedenig.eclipse.grepconsole.engine.LineMatcher;
+import name.schedenig.eclipse.grepconsole.engine.LiteralPrefilter;
+import name.schedenig.eclipse.grepconsole.engine.MatchGuard;
+import name.schedenig.eclipse.grepconsole.engine.MatchTimeoutException;
+import name.schedenig.eclipse.grepconsole.model.GrepExpressionItem;
+import name.schedenig.eclipse.grepconsole.model.GrepGroup;
+import name.schedenig.eclipse.grepconsole.model.GrepStyle;
+import name.schedenig.eclipse.grepconsole.model.links.IGrepLink;
+
+import org.eclipse.core.resources.IProject;
+
+/**
+ * Tests expression items against a line of text and creates the grep style
+ * ranges for the matched expressions and groups.
+ *
+ * A styler does not access any UI resources, so it can be used on a
+ * background thread. It is not thread safe; every thread needs its own
+ * instance.
+ *
+ * @author msched
+ */
+public class LineStyler
+{
+	/** Collection of grep expression items. Expressions are evaluated in the
+	 *  order provided. */
+	private Collection<GrepExpressionItem> items;
+
+	/** Tests items against lines. */
+	private LineMatcher lineMatcher;
+
+	/** Literal prefilter for the items. Created on demand. */
+	private LiteralPrefilter prefilter;
+
+	/** Maximum number of characters to match per line. */
+	private int matchLength;
+
+	/** Optional project for links. */
+	private IProject project;
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param guard Match guard.
+	 * @param profiler Expression profiler.
+	 * @param project Optional project for links.
+	 */
+	public LineStyler(MatchGuard guard, ExpressionProfiler profiler, IProject project)
+	{
+		this.lineMatcher = new LineMatcher(guard, profiler);
+		this.project = project;
+	}
+
+	/**
+	 * Returns the collection of grep expression items.
+	 *
+	 * @return Items.
+	 */
+	public Collection<GrepExpressionItem> getItems()
+	{
+		return items;
+	}
+
+	/**
+	 * Sets the collection of grep expression items. Expressions are evaluated
+	 * in the order provided.
+	 *
+	 * @param items Items.
+	 */
+	public void setItems(Collection<GrepExpressionItem> items)
+	{
+		setItems(items, null);
+	}
+
+	/**
+	 * Sets the collection of grep expression items together with a literal
+	 * prefilter which has already been built for them.
+	 *
+	 * @param items Items.
+	 * @param prefilter Literal prefilter for the items. Must not be shared with
+	 * 		other stylers. If <code>null</code>, a prefilter is built on demand.
+	 */
+	public void setItems(Collection<GrepExpressionItem> items, LiteralPrefilter prefilter)
+	{
+		this.items = items;
+		this.prefilter = prefilter;
+	}
+
+	/**
+	 * Returns the maximum number of characters to match per line.
+	 *
+	 * @return Match length, or 0 for no limit.
+	 */
+	public int getMatchLength()
+	{
+		return matchLength;
+	}
+
+	/**
+	 * Sets the maximum number of characters to match per line.
+	 *
+	 * @param matchLength Match length, or 0 for no limit.
+	 */
+	public void setMatchLength(int matchLength)
+	{
+		this.matchLength = matchLength;
+	}
+
+	/**
+	 * Gets the style ranges for a specific line.
+	 *
+	 * @param lineText Full line text.
+	 * @param styles Whether to assign styles.
+	 * @param links Whether to assign links.
+	 *
+	 * @return List of style ranges, or <code>null</code> if no expression
+	 * 		matches.
+	 */
+	public LinkedList<GrepStyleRange> getStyleRanges(String lineText, boolean styles,
+			boolean links)
+	{
+		if(items == null || items.isEmpty())
+		{
+			return null;
+		}
+
+		String matchText = (matchLength <= 0 || lineText.length() <= matchLength) ? lineText : lineText.substring(0, matchLength);
+		LinkedList<GrepStyleRange> grepStyleRanges = new LinkedList<GrepStyleRange>();
+
+		int index = 0;
+
+		if(prefilter == null)
+		{
+			prefilter = new LiteralPrefilter(items);
+		}
+
+		prefilter.scan(matchText);
+
+		for(GrepExpressionItem item: items)
+		{
+			if(prefilter.mayMatch(item))
+			{
+				calculateStyleRanges(index, lineText, matchText, item, grepStyleRanges, styles, links);
+			}
+
+			index++;
+		}
+
+		if(grepStyleRanges.isEmpty())
+		{
+			return null;
+		}
+
+		return grepStyleRanges;
+	}
+
+	/**
+	 * Tests the specified grep expression item against a line of text and
+	 * creates the corresponding grep style ranges, if necessary.
+	 *
+	 * @param expressionIndex Grep expression index. Used to keep the order of
+	 * 		matched expressions when sorting the matches later.
+	 * @param text Full line text.
+	 * @param matchText Text for grep testing. May be shortened from the full
+	 * 		line for performance reasons.
+	 * @param item Grep expression item to test.
+	 * @param styleRanges List of style ranges to which any new style ranges will
+	 * 		be added.
+	 * @param styles Whether to assign styles.
+	 * @param links Whether to assign links.
+	 */
+	protected void calculateStyleRanges(int expressionIndex, String text,
+			String matchText, GrepExpressionItem item,
+			List<GrepStyleRange> styleRanges, boolean styles, boolean links)
+	{
+		lineMatcher.setLine(text, matchText);
+		ExpressionMatcher matcher = lineMatcher.find(item, true);
+
+		if(matcher == null)
+		{
+			return;
+		}
+
+		int rangeCount = styleRanges.size();
+
+		try
+		{
+			GrepStyle style = styles ? item.getGroups()[0].getStyle() : null;
+			IGrepLink link = links ? item.getGroups()[0].getLink() : null;
+
+			if(style != null || link != null)
+			{
+				styleRanges.add(new GrepStyleRange(item, expressionIndex, true, 0, text.length(), style, link, matcher, text, text, 0, project));
+			}
+
+			GrepGroup[] groups = item.getGroups();
+
+			do
+			{
+				for(int i = 1; i <= matcher.groupCount(); i++)
+				{
+					GrepGroup group = i < groups.length ? groups[i] : null;
+
+					if(group == null)
+					{
+						continue;
+					}
+
+					int start = matcher.start(i);
+
+					if(start < 0)
+					{
+						continue;
+					}
+
+					int length = matcher.end(i) - start;
+
+					GrepStyle groupStyle = styles ? group.getStyle() : null;
+					IGrepLink groupLink = links ? group.getLink() : null;
+
+					styleRanges.add(new GrepStyleRange(item, expressionIndex, false, start, start + length - 1, groupStyle, groupLink, matcher, text, text, i, project));
+				}
+			}
+			while(matcher.find());
+		}
+		catch(MatchTimeoutException ex)
+		{
+			// Discard partial results, as if the item had not matched
+			while(styleRanges.size() > rangeCount)
+			{
+				styleRanges.remove(styleRanges.size() - 1);
+			}
+
+			lineMatcher.reportTimeout(item);
+		}
+	}
+}
@@ -0,0 +1,579 @@
+/*******************************************************************************
+ * Copyright (c) 2008 - 2014 Marian Schedenig
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marian Schedenig - initial API and implementation
+ *******************************************************************************/
+
+package name.schedenig.eclipse.grepconsole.adapters;
+
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import name.schedenig.eclipse.grepconsole.i18n.Messages;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.swt.SWTException;
+import org.eclipse.swt.widgets.Display;
+
+/**
+ * Background job which filters the complete content of a console, e.g. after
+ * the expressions have been changed.
+ *
+ * The content is read in slices on the UI thread and filtered on the job's
+ * thread, so the content never has to be copied into a single string. The
+ * results are collected separately and handed to the text filter once the
+ * job has completed, so the previous filter results remain visible until
+ * they can be replaced at once.
+ *
+ * If more than one thread is available, the content is split into chunks of
+ * complete lines, which are filtered in parallel by separate processors. The
+ * chunk results are merged in their original order, so the outcome is the
+ * same as for sequential filtering.
+ *
+ * @author msched
+ */
+public class RefreshJob extends Job
+{
+	/**
+	 * Text read from the original content.
+	 *
+	 * @author msched
+	 */
+	private static class Slice
+	{
+		/** Text. */
+		private String text;
+
+		/** Number of characters at the start of the requested range which had
+		 *  already been removed from the original content. */
+		private int skipped;
+	}
+
+	/**
+	 * Filters a chunk of complete lines with its own processor.
+	 *
+	 * @author msched
+	 */
+	private static class ChunkTask implements Callable<FilterBatch>
+	{
+		/** Processor for the chunk. */
+		private FilterProcessor processor;
+
+		/** Chunk text. */
+		private String text;
+
+		/** Whether lines should be filtered for display. */
+		private boolean filter;
+
+		/**
+		 * Creates a new instance.
+		 *
+		 * @param processor Processor for the chunk.
+		 * @param text Chunk text.
+		 * @param filter Whether lines should be filtered for display.
+		 */
+		public ChunkTask(FilterProcessor processor, String text, boolean filter)
+		{
+			this.processor = processor;
+			this.text = text;
+			this.filter = filter;
+		}
+
+		/**
+		 * @see java.util.concurrent.Callable#call()
+		 */
+		@Override
+		public FilterBatch call()
+		{
+			FilterBatch batch = new FilterBatch(0);
+			processor.process(text, false, filter, batch);
+
+			return batch;
+		}
+	}
+
+	/** Maximum number of characters read from the original content at once. */
+	private static final int SLICE_LENGTH = 64 * 1024;
+
+	/** Minimum number of characters filtered as one chunk in parallel mode. */
+	private static final int CHUNK_LENGTH = 1024 * 1024;
+
+	/** Maximum number of queued chunks per thread in parallel mode. Limits the
+	 *  amount of content copied ahead of the filtering threads. */
+	private static final int CHUNKS_PER_THREAD = 2;
+
+	/** Interval in which a thread waiting for a chunk checks for cancellation,
+	 *  in milliseconds. */
+	private static final int CANCEL_POLL_INTERVAL = 100;
+
+	/** Text filter that receives the results. */
+	private TextFilter textFilter;
+
+	/** Display used for accessing the original content. */
+	private Display display;
+
+	/** Processor used for filtering the content. */
+	private FilterProcessor processor;
+
+	/** Whether lines should be filtered for display. */
+	private boolean filter;
+
+	/** Number of characters to filter. Text added after the job has been
+	 *  created is not processed by the job. */
+	private int length;
+
+	/** Original offset delta of the text filter when the job was created. Used
+	 *  to detect text removed from the start of the original content while the
+	 *  job is running. */
+	private int startDelta;
+
+	/** Number of threads used for filtering. */
+	private int threads;
+
+	/** Filter results. */
+	private FilterBatch result;
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param textFilter Text filter that receives the results.
+	 * @param display Display used for accessing the original content.
+	 * @param processor New processor used for filtering the content.
+	 * @param filter Whether lines should be filtered for display.
+	 * @param length Number of characters to filter.
+	 * @param startDelta Current original offset delta of the text filter.
+	 * @param threads Number of threads used for filtering. 1 to filter the
+	 * 		content sequentially on the job's thread.
+	 */
+	public RefreshJob(TextFilter textFilter, Display display,
+			FilterProcessor processor, boolean filter, int length, int startDelta,
+			int threads)
+	{
+		super(Messages.RefreshJob_name);
+
+		this.textFilter = textFilter;
+		this.display = display;
+		this.processor = processor;
+		this.filter = filter;
+		this.length = length;
+		this.startDelta = startDelta;
+		this.threads = threads;
+
+		result = new FilterBatch(0);
+	}
+
+	/**
+	 * Returns the processor. After the job has completed, the processor can be
+	 * used to continue filtering text added to the original content.
+	 *
+	 * @return Processor.
+	 */
+	public FilterProcessor getProcessor()
+	{
+		return processor;
+	}
+
+	/**
+	 * Returns the filter results. Only complete once the job has finished.
+	 *
+	 * @return Filter results.
+	 */
+	public FilterBatch getFilterResult()
+	{
+		return result;
+	}
+
+	/**
+	 * Returns the original offset delta of the text filter at the time the job
+	 * was created.
+	 *
+	 * @return Original offset delta.
+	 */
+	public int getStartDelta()
+	{
+		return startDelta;
+	}
+
+	/**
+	 * @see org.eclipse.core.runtime.jobs.Job#run(org.eclipse.core.runtime.IProgressMonitor)
+	 */
+	@Override
+	protected IStatus run(IProgressMonitor monitor)
+	{
+		monitor.beginTask(getName(), length);
+		ExecutorService executor = (threads > 1 && length > CHUNK_LENGTH) ? createExecutor() : null;
+
+		try
+		{
+			boolean completed = executor == null ? filterSequentially(monitor) : filterInParallel(monitor, executor);
+
+			if(!completed)
+			{
+				return Status.CANCEL_STATUS;
+			}
+
+			if(monitor.isCanceled())
+			{
+				notifyCancelled();
+				return Status.CANCEL_STATUS;
+			}
+
+			asyncExec(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					textFilter.applyRefresh(RefreshJob.this);
+				}
+			});
+
+			return Status.OK_STATUS;
+		}
+		catch(RuntimeException ex)
+		{
+			notifyCancelled();
+			throw ex;
+		}
+		finally
+		{
+			if(executor != null)
+			{
+				executor.shutdownNow();
+			}
+
+			monitor.done();
+		}
+	}
+
+	/**
+	 * Filters the content slice by slice on the job's thread.
+	 *
+	 * @param monitor Progress monitor.
+	 *
+	 * @return <code>true</code> if the content has been filtered completely,
+	 * 		<code>false</code> if the job has been cancelled or has become
+	 * 		obsolete.
+	 */
+	private boolean filterSequentially(IProgressMonitor monitor)
+	{
+		int offset = 0;
+
+		while(offset < length)
+		{
+			if(monitor.isCanceled())
+			{
+				notifyCancelled();
+				return false;
+			}
+
+			int sliceLength = Math.min(SLICE_LENGTH, length - offset);
+			Slice slice = readSlice(offset, sliceLength);
+
+			if(slice == null)
+			{
+				return false;
+			}
+
+			if(slice.skipped > 0)
+			{
+				processor.skip(slice.skipped);
+			}
+
+			processor.process(slice.text, false, filter, result);
+
+			offset += sliceLength;
+			monitor.worked(sliceLength);
+		}
+
+		return true;
+	}
+
+	/**
+	 * Reads the content slice by slice and filters chunks of complete lines in
+	 * parallel. The chunk results are merged into the result in their original
+	 * order. The text following the last complete chunk is filtered by the
+	 * job's processor, which is then left in the same state as after sequential
+	 * filtering.
+	 *
+	 * @param monitor Progress monitor.
+	 * @param executor Executor used for filtering chunks.
+	 *
+	 * @return <code>true</code> if the content has been filtered completely,
+	 * 		<code>false</code> if the job has been cancelled or has become
+	 * 		obsolete.
+	 */
+	private boolean filterInParallel(IProgressMonitor monitor,
+			ExecutorService executor)
+	{
+		LinkedList<Future<FilterBatch>> chunks = new LinkedList<Future<FilterBatch>>();
+		StringBuilder pending = new StringBuilder();
+		int pendingOffset = 0;
+		int nextCut = CHUNK_LENGTH;
+		int maxProcessedLineOffset = processor.getMaxProcessedLineOffset();
+		int offset = 0;
+
+		while(offset < length)
+		{
+			if(monitor.isCanceled())
+			{
+				notifyCancelled();
+				return false;
+			}
+
+			int sliceLength = Math.min(SLICE_LENGTH, length - offset);
+			Slice slice = readSlice(offset, sliceLength);
+
+			if(slice == null)
+			{
+				return false;
+			}
+
+			if(slice.skipped > 0)
+			{
+				// The partial line at the start has been removed
+				pendingOffset += pending.length() + slice.skipped;
+				pending.setLength(0);
+				nextCut = CHUNK_LENGTH;
+			}
+
+			pending.append(slice.text);
+			offset += sliceLength;
+
+			if(pending.length() >= nextCut)
+			{
+				int end = processor.findLastLineEnd(pending);
+
+				if(end == 0)
+				{
+					// Very long line; try again once more text has been read
+					nextCut = pending.length() * 2;
+				}
+				else
+				{
+					ChunkTask task = new ChunkTask(processor.createChunkProcessor(pendingOffset), pending.substring(0, end), filter);
+					chunks.add(executor.submit(task));
+
+					pendingOffset += end;
+					pending.delete(0, end);
+					nextCut = CHUNK_LENGTH;
+
+					while(chunks.size() > threads * CHUNKS_PER_THREAD)
+					{
+						maxProcessedLineOffset = merge(chunks.removeFirst(), maxProcessedLineOffset, monitor);
+
+						if(maxProcessedLineOffset == Integer.MIN_VALUE)
+						{
+							notifyCancelled();
+							return false;
+						}
+					}
+				}
+			}
+
+			monitor.worked(sliceLength);
+		}
+
+		while(!chunks.isEmpty())
+		{
+			maxProcessedLineOffset = merge(chunks.removeFirst(), maxProcessedLineOffset, monitor);
+
+			if(maxProcessedLineOffset == Integer.MIN_VALUE)
+			{
+				notifyCancelled();
+				return false;
+			}
+		}
+
+		processor.skip(pendingOffset);
+		processor.setMaxProcessedLineOffset(maxProcessedLineOffset);
+		processor.process(pending.toString(), false, filter, result);
+
+		return true;
+	}
+
+	/**
+	 * Waits for a chunk to be filtered and appends its results to the result.
+	 *
+	 * @param chunk Chunk.
+	 * @param maxProcessedLineOffset Highest original offset of a line processed
+	 * 		so far.
+	 * @param monitor Progress monitor, checked for cancellation while waiting.
+	 *
+	 * @return New highest original offset of a processed line, or
+	 * 		<code>Integer.MIN_VALUE</code> if the job has been cancelled.
+	 */
+	private int merge(Future<FilterBatch> chunk, int maxProcessedLineOffset,
+			IProgressMonitor monitor)
+	{
+		FilterBatch batch = null;
+
+		while(batch == null)
+		{
+			if(monitor.isCanceled())
+			{
+				return Integer.MIN_VALUE;
+			}
+
+			try
+			{
+				batch = chunk.get(CANCEL_POLL_INTERVAL, TimeUnit.MILLISECONDS);
+			}
+			catch(TimeoutException ex)
+			{
+				// Check for cancellation and keep waiting
+			}
+			catch(InterruptedException ex)
+			{
+				Thread.currentThread().interrupt();
+				return Integer.MIN_VALUE;
+			}
+			catch(ExecutionException ex)
+			{
+				if(ex.getCause() instanceof RuntimeException)
+				{
+					throw (RuntimeException) ex.getCause();
+				}
+
+				throw new IllegalStateException(ex.getCause());
+			}
+		}
+
+		result.addAll(batch);
+		int lineCount = batch.getLineCount();
+
+		return lineCount == 0 ? maxProcessedLineOffset : Math.max(maxProcessedLineOffset, batch.getOriginalOffset(lineCount - 1));
+	}
+
+	/**
+	 * Creates the executor used for filtering chunks in parallel.
+	 *
+	 * @return Executor.
+	 */
+	private ExecutorService createExecutor()
+	{
+		return Executors.newFixedThreadPool(threads, new ThreadFactory()
+		{
+			@Override
+			public Thread newThread(Runnable runnable)
+			{
+				Thread thread = new Thread(runnable, "Grep Console refresh"); //$NON-NLS-1$
+				thread.setDaemon(true);
+
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Reads a slice of the original content on the UI thread.
+	 *
+	 * @param offset Offset of the slice, relative to the content at the time
+	 * 		the job was created.
+	 * @param sliceLength Slice length.
+	 *
+	 * @return Slice, or <code>null</code> if the job has become obsolete.
+	 */
+	private Slice readSlice(final int offset, final int sliceLength)
+	{
+		final Slice[] slice = new Slice[1];
+
+		Runnable runnable = new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				if(!textFilter.isCurrentRefresh(RefreshJob.this))
+				{
+					return;
+				}
+
+				// Text removed from the start of the content since the job started
+				int removed = textFilter.getOriginalOffsetDelta() - startDelta;
+				int start = offset - removed;
+				int readLength = sliceLength;
+
+				Slice s = new Slice();
+
+				if(start < 0)
+				{
+					s.skipped = Math.min(-start, sliceLength);
+					readLength -= s.skipped;
+					start = 0;
+				}
+
+				s.text = readLength > 0 ? textFilter.getOriginalContent().getTextRange(start, readLength) : ""; //$NON-NLS-1$
+				slice[0] = s;
+			}
+		};
+
+		if(display.isDisposed())
+		{
+			return null;
+		}
+
+		try
+		{
+			display.syncExec(runnable);
+		}
+		catch(SWTException ex)
+		{
+			// Display has been disposed in the meantime
+			return null;
+		}
+
+		return slice[0];
+	}
+
+	/**
+	 * Informs the text filter that the job has been cancelled.
+	 */
+	private void notifyCancelled()
+	{
+		asyncExec(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				textFilter.refreshCancelled(RefreshJob.this);
+			}
+		});
+	}
+
+	/**
+	 * Executes a runnable asynchronously on the UI thread, unless the display
+	 * has been disposed.
+	 *
+	 * @param runnable Runnable.
+	 */
+	private void asyncExec(Runnable runnable)
+	{
+		if(display.isDisposed())
+		{
+			return;
+		}
+
+		try
+		{
+			display.asyncExec(runnable);
+		}
+		catch(SWTException ex)
+		{
+			// Display has been disposed in the meantime
+		}
+	}
+}
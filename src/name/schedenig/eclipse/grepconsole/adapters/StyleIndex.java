@@ -0,0 +1,379 @@
+/*******************************************************************************
+ * Copyright (c) 2008 - 2014 Marian Schedenig
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marian Schedenig - initial API and implementation
+ *******************************************************************************/
+
+package name.schedenig.eclipse.grepconsole.adapters;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import name.schedenig.eclipse.grepconsole.model.GrepExpressionItem;
+import name.schedenig.eclipse.grepconsole.model.GrepGroup;
+
+/**
+ * Compact index of the style spans precomputed for console lines.
+ *
+ * Lines are stored in parallel arrays, ordered by their absolute offsets,
+ * i.e. their offsets in the console including all text which has been removed
+ * from the start of the console since indexing started. The spans of all lines
+ * are stored in a second set of parallel arrays (start index, end index and
+ * style ID). A style ID identifies an expression and one of its groups, whose
+ * style is looked up when the spans are converted back to grep style ranges.
+ * Every line also stores its length and hash code, so a line is only found if
+ * its text has not changed since it was indexed.
+ *
+ * Instances are also used by the background indexer to collect the spans of
+ * newly indexed lines, which are then appended to the console's index on the
+ * UI thread. Results for a previous set of expressions are discarded by
+ * comparing generations.
+ *
+ * Not thread safe.
+ *
+ * @author msched
+ */
+public class StyleIndex
+{
+	/** Initial capacity of the arrays. */
+	private static final int INITIAL_CAPACITY = 64;
+
+	/** Number of bits used for the group index in a style ID. */
+	private static final int GROUP_BITS = 16;
+
+	/** Highest group index which can be stored in a style ID. */
+	private static final int MAX_GROUP = (1 << GROUP_BITS) - 1;
+
+	/** Highest expression index which can be stored in a style ID. */
+	private static final int MAX_EXPRESSION = (1 << (31 - GROUP_BITS)) - 1;
+
+	/** Generation of the expressions the spans have been calculated for. */
+	private int generation;
+
+	/** Expression items, in the order used for calculating the spans. */
+	private GrepExpressionItem[] items = new GrepExpressionItem[0];
+
+	/** Number of characters removed from the start of the console. */
+	private long removedChars;
+
+	/** Absolute offsets of the lines. */
+	private long[] lineOffsets = new long[INITIAL_CAPACITY];
+
+	/** Lengths of the lines. */
+	private int[] lineLengths = new int[INITIAL_CAPACITY];
+
+	/** Hash codes of the line texts. */
+	private int[] lineHashes = new int[INITIAL_CAPACITY];
+
+	/** Index of the first span of each line. */
+	private int[] lineSpans = new int[INITIAL_CAPACITY];
+
+	/** Index of the first line which has not been discarded. */
+	private int firstLine;
+
+	/** Index following the last line. */
+	private int lineEnd;
+
+	/** Indexes of the first characters of the spans. */
+	private int[] spanStarts = new int[INITIAL_CAPACITY];
+
+	/** Indexes of the last characters of the spans. */
+	private int[] spanEnds = new int[INITIAL_CAPACITY];
+
+	/** Style IDs of the spans. */
+	private int[] spanIds = new int[INITIAL_CAPACITY];
+
+	/** Index following the last span. */
+	private int spanEnd;
+
+	/**
+	 * Creates a new, empty index.
+	 */
+	public StyleIndex()
+	{
+	}
+
+	/**
+	 * Creates a new instance for collecting newly indexed lines.
+	 *
+	 * @param generation Generation of the expressions the spans are
+	 * 		calculated for.
+	 */
+	public StyleIndex(int generation)
+	{
+		this.generation = generation;
+	}
+
+	/**
+	 * Discards all lines and starts a new generation for the specified
+	 * expressions.
+	 *
+	 * @param items Expression items, in the order used for calculating the
+	 * 		spans.
+	 *
+	 * @return New generation.
+	 */
+	public int reset(Collection<GrepExpressionItem> items)
+	{
+		this.items = items.toArray(new GrepExpressionItem[items.size()]);
+		firstLine = lineEnd = spanEnd = 0;
+
+		return ++generation;
+	}
+
+	/**
+	 * Returns the generation of the expressions the spans have been
+	 * calculated for.
+	 *
+	 * @return Generation.
+	 */
+	public int getGeneration()
+	{
+		return generation;
+	}
+
+	/**
+	 * Returns the number of characters removed from the start of the console.
+	 * Adding this to a console offset results in an absolute offset.
+	 *
+	 * @return Number of characters.
+	 */
+	public long getRemovedChars()
+	{
+		return removedChars;
+	}
+
+	/**
+	 * Called when text has been removed from the start of the console. Discards
+	 * the lines which have been removed, completely or in part.
+	 *
+	 * @param count Number of removed characters.
+	 */
+	public void removeFromStart(int count)
+	{
+		removedChars += count;
+
+		while(firstLine < lineEnd && lineOffsets[firstLine] < removedChars)
+		{
+			firstLine++;
+		}
+
+		if(firstLine == lineEnd)
+		{
+			firstLine = lineEnd = spanEnd = 0;
+		}
+		else if(firstLine > lineEnd / 2)
+		{
+			compact();
+		}
+	}
+
+	/**
+	 * Returns the number of indexed lines.
+	 *
+	 * @return Number of lines.
+	 */
+	public int getLineCount()
+	{
+		return lineEnd - firstLine;
+	}
+
+	/**
+	 * Adds a line. Lines must be added in the order of their offsets.
+	 *
+	 * @param offset Absolute offset of the line.
+	 * @param lineText Line text, without the line delimiter.
+	 * @param ranges Style ranges calculated for the line. May be
+	 * 		<code>null</code>.
+	 */
+	public void addLine(long offset, String lineText, List<GrepStyleRange> ranges)
+	{
+		if(ranges != null)
+		{
+			for(GrepStyleRange range: ranges)
+			{
+				if(range.getGroup() > MAX_GROUP || range.getExpressionIndex() > MAX_EXPRESSION)
+				{
+					// Cannot be represented; the line will be styled on demand
+					return;
+				}
+			}
+		}
+
+		addLine(offset, lineText.length(), lineText.hashCode());
+
+		if(ranges != null)
+		{
+			for(GrepStyleRange range: ranges)
+			{
+				addSpan(range.getFirstIndex(), range.getLastIndex(), (range.getExpressionIndex() << GROUP_BITS) | range.getGroup());
+			}
+		}
+	}
+
+	/**
+	 * Appends the lines collected by another instance. Ignored if the lines
+	 * have been calculated for a different generation. Lines which have been
+	 * removed from the console in the meantime are skipped.
+	 *
+	 * @param batch Collected lines.
+	 */
+	public void append(StyleIndex batch)
+	{
+		if(batch.generation != generation)
+		{
+			return;
+		}
+
+		for(int line = batch.firstLine; line < batch.lineEnd; line++)
+		{
+			long offset = batch.lineOffsets[line];
+
+			if(offset < removedChars || (lineEnd > firstLine && offset <= lineOffsets[lineEnd - 1]))
+			{
+				continue;
+			}
+
+			addLine(offset, batch.lineLengths[line], batch.lineHashes[line]);
+
+			for(int span = batch.lineSpans[line], end = batch.getSpanEnd(line); span < end; span++)
+			{
+				addSpan(batch.spanStarts[span], batch.spanEnds[span], batch.spanIds[span]);
+			}
+		}
+	}
+
+	/**
+	 * Returns the grep style ranges of an indexed line.
+	 *
+	 * @param lineOffset Console offset of the line.
+	 * @param lineText Current line text.
+	 *
+	 * @return Style ranges, an empty array if the line has no styles, or
+	 * 		<code>null</code> if the line has not been indexed or its text has
+	 * 		changed.
+	 */
+	public GrepStyleRange[] getStyleRanges(int lineOffset, String lineText)
+	{
+		int line = Arrays.binarySearch(lineOffsets, firstLine, lineEnd, lineOffset + removedChars);
+
+		if(line < 0 || lineLengths[line] != lineText.length() || lineHashes[line] != lineText.hashCode())
+		{
+			return null;
+		}
+
+		int start = lineSpans[line];
+		GrepStyleRange[] ranges = new GrepStyleRange[getSpanEnd(line) - start];
+
+		for(int i = 0; i < ranges.length; i++)
+		{
+			int id = spanIds[start + i];
+			int expressionIndex = id >>> GROUP_BITS;
+			int group = id & MAX_GROUP;
+
+			GrepExpressionItem item = items[expressionIndex];
+			GrepGroup[] groups = item.getGroups();
+
+			ranges[i] = new GrepStyleRange(item, expressionIndex, group == 0,
+					spanStarts[start + i], spanEnds[start + i],
+					group < groups.length ? groups[group].getStyle() : null, null,
+					null, null, null, group, null);
+		}
+
+		return ranges;
+	}
+
+	/**
+	 * Returns the index following the last span of a line.
+	 *
+	 * @param line Line index.
+	 *
+	 * @return Span index.
+	 */
+	private int getSpanEnd(int line)
+	{
+		return line + 1 < lineEnd ? lineSpans[line + 1] : spanEnd;
+	}
+
+	/**
+	 * Adds a line without spans.
+	 *
+	 * @param offset Absolute offset.
+	 * @param length Line length.
+	 * @param hash Hash code of the line text.
+	 */
+	private void addLine(long offset, int length, int hash)
+	{
+		if(lineEnd == lineOffsets.length)
+		{
+			int capacity = lineOffsets.length * 2;
+			lineOffsets = Arrays.copyOf(lineOffsets, capacity);
+			lineLengths = Arrays.copyOf(lineLengths, capacity);
+			lineHashes = Arrays.copyOf(lineHashes, capacity);
+			lineSpans = Arrays.copyOf(lineSpans, capacity);
+		}
+
+		lineOffsets[lineEnd] = offset;
+		lineLengths[lineEnd] = length;
+		lineHashes[lineEnd] = hash;
+		lineSpans[lineEnd] = spanEnd;
+		lineEnd++;
+	}
+
+	/**
+	 * Adds a span to the last line.
+	 *
+	 * @param start Index of the first character.
+	 * @param end Index of the last character.
+	 * @param id Style ID.
+	 */
+	private void addSpan(int start, int end, int id)
+	{
+		if(spanEnd == spanStarts.length)
+		{
+			int capacity = spanStarts.length * 2;
+			spanStarts = Arrays.copyOf(spanStarts, capacity);
+			spanEnds = Arrays.copyOf(spanEnds, capacity);
+			spanIds = Arrays.copyOf(spanIds, capacity);
+		}
+
+		spanStarts[spanEnd] = start;
+		spanEnds[spanEnd] = end;
+		spanIds[spanEnd] = id;
+		spanEnd++;
+	}
+
+	/**
+	 * Moves the remaining lines and spans to the start of the arrays.
+	 */
+	private void compact()
+	{
+		int lineCount = lineEnd - firstLine;
+		int firstSpan = lineSpans[firstLine];
+		int spanCount = spanEnd - firstSpan;
+
+		System.arraycopy(lineOffsets, firstLine, lineOffsets, 0, lineCount);
+		System.arraycopy(lineLengths, firstLine, lineLengths, 0, lineCount);
+		System.arraycopy(lineHashes, firstLine, lineHashes, 0, lineCount);
+		System.arraycopy(lineSpans, firstLine, lineSpans, 0, lineCount);
+
+		for(int i = 0; i < lineCount; i++)
+		{
+			lineSpans[i] -= firstSpan;
+		}
+
+		System.arraycopy(spanStarts, firstSpan, spanStarts, 0, spanCount);
+		System.arraycopy(spanEnds, firstSpan, spanEnds, 0, spanCount);
+		System.arraycopy(spanIds, firstSpan, spanIds, 0, spanCount);
+
+		firstLine = 0;
+		lineEnd = lineCount;
+		spanEnd = spanCount;
+	}
+}
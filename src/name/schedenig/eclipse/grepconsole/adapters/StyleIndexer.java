@@ -0,0 +1,296 @@
+/*******************************************************************************
+ * Copyright (c) 2008 - 2014 Marian Schedenig
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marian Schedenig - initial API and implementation
+ *******************************************************************************/
+
+package name.schedenig.eclipse.grepconsole.adapters;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import name.schedenig.eclipse.grepconsole.Activator;
+import name.schedenig.eclipse.grepconsole.model.GrepExpressionItem;
+
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.swt.widgets.Display;
+
+/**
+ * Background thread which precomputes the styles of the lines added to a
+ * console. Text chunks are queued on the UI thread and processed in order.
+ * The spans of every complete line are collected and appended to the
+ * console's style index on the UI thread, so painting a line only needs to
+ * look up its spans.
+ *
+ * Like the filter worker, results are tagged with the generation of the
+ * expressions they have been calculated for, and the index discards results
+ * which have become obsolete in the meantime.
+ *
+ * @author msched
+ */
+public class StyleIndexer extends Thread
+{
+	/** Maximum number of lines collected before they are handed over to the
+	 *  UI thread, so a long text becomes available in parts. */
+	private static final int MAX_BATCH_LINES = 1000;
+
+	/**
+	 * A queued unit of work.
+	 *
+	 * @author msched
+	 */
+	private static class Task
+	{
+		/** Text to be processed. <code>null</code> for resets. */
+		private String text;
+
+		/** New expression items for resets. */
+		private Collection<GrepExpressionItem> items;
+
+		/** New match length for resets. */
+		private int matchLength;
+
+		/** New generation for resets. */
+		private int generation;
+
+		/** Absolute offset of the text following a reset. */
+		private long offset;
+	}
+
+	/** Index that receives the results. Only accessed on the UI thread. */
+	private StyleIndex index;
+
+	/** Display used for handing results back to the UI thread. */
+	private Display display;
+
+	/** Queued tasks. */
+	private BlockingQueue<Task> queue = new LinkedBlockingQueue<Task>();
+
+	/** Calculates the styles. Only accessed by the worker thread. */
+	private LineStyler styler;
+
+	/** Current generation. Only accessed by the worker thread. */
+	private int generation;
+
+	/** Absolute offset of the current line. Only accessed by the worker
+	 *  thread. */
+	private long offset;
+
+	/** Text of the current line which has not yet been completed. Only
+	 *  accessed by the worker thread. */
+	private StringBuilder bufferedText = new StringBuilder();
+
+	/** Whether the indexer has been disposed. */
+	private volatile boolean disposed;
+
+	/**
+	 * Creates a new instance. The thread has to be started by the caller.
+	 *
+	 * @param index Index that receives the results.
+	 * @param display Display used for handing results back to the UI thread.
+	 */
+	public StyleIndexer(StyleIndex index, Display display)
+	{
+		super("Grep Console style indexer"); //$NON-NLS-1$
+
+		this.index = index;
+		this.display = display;
+
+		Activator activator = Activator.getDefault();
+		styler = new LineStyler(activator.getMatchGuard(), activator.getExpressionProfiler(), null);
+
+		setDaemon(true);
+	}
+
+	/**
+	 * Queues a chunk of text for processing.
+	 *
+	 * @param text Text added to the console.
+	 */
+	public void enqueue(String text)
+	{
+		Task task = new Task();
+		task.text = text;
+
+		queue.add(task);
+	}
+
+	/**
+	 * Replaces the expressions. All text queued afterwards is processed with the
+	 * new expressions, starting with a new line at the specified offset, and
+	 * the results are tagged with the new generation.
+	 *
+	 * @param items Expression items, in the same order as used by the index.
+	 * @param matchLength Maximum number of characters to match per line.
+	 * @param generation New generation.
+	 * @param offset Absolute offset of the text queued next.
+	 */
+	public void reset(Collection<GrepExpressionItem> items, int matchLength,
+			int generation, long offset)
+	{
+		Task task = new Task();
+		task.items = new ArrayList<GrepExpressionItem>(items);
+		task.matchLength = matchLength;
+		task.generation = generation;
+		task.offset = offset;
+
+		queue.add(task);
+	}
+
+	/**
+	 * Stops the indexer. Queued tasks are discarded.
+	 */
+	public void dispose()
+	{
+		disposed = true;
+		queue.clear();
+		interrupt();
+	}
+
+	/**
+	 * @see java.lang.Thread#run()
+	 */
+	@Override
+	public void run()
+	{
+		try
+		{
+			while(!disposed)
+			{
+				Task task = queue.take();
+				StyleIndex batch = null;
+
+				while(task != null && !disposed)
+				{
+					if(task.items != null)
+					{
+						publish(batch);
+						batch = null;
+
+						styler.setItems(task.items);
+						styler.setMatchLength(task.matchLength);
+						generation = task.generation;
+						offset = task.offset;
+						bufferedText.setLength(0);
+					}
+					else if(styler.getItems() != null)
+					{
+						if(batch == null)
+						{
+							batch = new StyleIndex(generation);
+						}
+
+						try
+						{
+							batch = process(task.text, batch);
+						}
+						catch(RuntimeException ex)
+						{
+							Activator.getDefault().log(IStatus.ERROR, "Error indexing console styles.", ex); //$NON-NLS-1$
+						}
+					}
+
+					task = queue.poll();
+				}
+
+				publish(batch);
+			}
+		}
+		catch(InterruptedException ex)
+		{
+			// Disposed
+		}
+	}
+
+	/**
+	 * Calculates the styles of all lines completed by a chunk of text. Keeps
+	 * the unfinished line at the end of the text for later completion.
+	 *
+	 * @param s Newly added text.
+	 * @param batch Batch to which the lines are added.
+	 *
+	 * @return Batch to which further lines should be added. A new batch is
+	 * 		started whenever a full batch has been handed over.
+	 */
+	private StyleIndex process(String s, StyleIndex batch)
+	{
+		int startIndex = 0;
+
+		for(int i = s.indexOf('\n'); i >= 0; i = s.indexOf('\n', startIndex))
+		{
+			String line;
+
+			if(bufferedText.length() == 0)
+			{
+				line = s.substring(startIndex, i + 1);
+			}
+			else
+			{
+				bufferedText.append(s, startIndex, i + 1);
+				line = bufferedText.toString();
+				bufferedText.setLength(0);
+			}
+
+			int cutoff = line.length() - 1;
+
+			if(cutoff > 0 && line.charAt(cutoff - 1) == '\r')
+			{
+				cutoff--;
+			}
+
+			String lineText = line.substring(0, cutoff);
+			batch.addLine(offset, lineText, styler.getStyleRanges(lineText, true, false));
+			offset += line.length();
+			startIndex = i + 1;
+
+			if(batch.getLineCount() >= MAX_BATCH_LINES)
+			{
+				publish(batch);
+				batch = new StyleIndex(generation);
+			}
+		}
+
+		bufferedText.append(s, startIndex, s.length());
+
+		return batch;
+	}
+
+	/**
+	 * Hands a batch over to the index on the UI thread.
+	 *
+	 * @param batch Batch. May be <code>null</code>.
+	 */
+	private void publish(final StyleIndex batch)
+	{
+		if(batch == null || batch.getLineCount() == 0 || disposed || display.isDisposed())
+		{
+			return;
+		}
+
+		try
+		{
+			display.asyncExec(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					if(!disposed)
+					{
+						index.append(batch);
+					}
+				}
+			});
+		}
+		catch(RuntimeException ex)
+		{
+			// Display has been disposed in the meantime
+		}
+	}
+}
@@ -0,0 +1,505 @@
+/*******************************************************************************
+ * Copyright (c) 2008 - 2014 Marian Schedenig
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marian Schedenig - initial API and implementation
+ *******************************************************************************/
+
+package name.schedenig.eclipse.grepconsole.adapters;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import name.schedenig.eclipse.grepconsole.Activator;
+import name.schedenig.eclipse.grepconsole.model.GrepExpressionItem;
+
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.swt.custom.StyledText;
+import org.eclipse.swt.events.PaintEvent;
+import org.eclipse.swt.events.PaintListener;
+
+/**
+ * Keeps scrolling through a console fluid by calculating line styles on a
+ * background thread.
+ *
+ * The time spent on calculating styles on the UI thread is measured for each
+ * repaint. Once it exceeds the styling budget, the remaining lines are painted
+ * without styles and handed to the background thread, and are redrawn as soon
+ * as their styles are available. In addition, whenever the visible part of the
+ * console changes, the lines of the viewport and a margin of one screen above
+ * and below are styled in the background, so they are usually ready before
+ * they are painted.
+ *
+ * Styles only depend on the line text and the expressions, so results are
+ * stored by line text. Results calculated for previous expressions are
+ * discarded by comparing generations.
+ *
+ * @author msched
+ */
+public class StylePrefetcher extends Thread
+{
+	/** Maximum number of lines for which results are kept. */
+	private static final int MAX_RESULTS = 4096;
+
+	/** Maximum number of lines handed over to the UI thread at once. */
+	private static final int MAX_BATCH_LINES = 200;
+
+	/** Stored for lines without styles. */
+	private static final GrepStyleRange[] NO_STYLES = new GrepStyleRange[0];
+
+	/**
+	 * A queued unit of work.
+	 *
+	 * @author msched
+	 */
+	private static class Task
+	{
+		/** Generation the task has been queued for. */
+		private int generation;
+
+		/** New expression items for resets. <code>null</code> otherwise. */
+		private Collection<GrepExpressionItem> items;
+
+		/** New match length for resets. */
+		private int matchLength;
+
+		/** Offsets of the lines to be styled. */
+		private int[] offsets;
+
+		/** Texts of the lines to be styled. */
+		private String[] texts;
+
+		/** Whether the lines have been painted without styles and need to be
+		 *  redrawn. */
+		private boolean redraw;
+	}
+
+	/** Styled text whose lines are styled. */
+	private StyledText styledText;
+
+	/** Queued tasks. */
+	private BlockingQueue<Task> queue = new LinkedBlockingQueue<Task>();
+
+	/** Calculates the styles. Only accessed by the worker thread. */
+	private LineStyler styler;
+
+	/** Current generation. Only accessed on the UI thread. */
+	private int generation;
+
+	/** Styling budget per repaint, in nanoseconds. */
+	private long budget;
+
+	/** Time spent on styling lines on the UI thread during the current
+	 *  repaint, in nanoseconds. */
+	private long stylingTime;
+
+	/** Whether the end of the current repaint has been scheduled. */
+	private boolean repaintPending;
+
+	/** Offsets of lines painted without styles during the current repaint. */
+	private ArrayList<Integer> deferredOffsets = new ArrayList<Integer>();
+
+	/** Texts of lines painted without styles during the current repaint. */
+	private ArrayList<String> deferredTexts = new ArrayList<String>();
+
+	/** Calculated style ranges by line text, in access order. */
+	private LinkedHashMap<String, GrepStyleRange[]> results = new LinkedHashMap<String, GrepStyleRange[]>(16, 0.75f, true)
+	{
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, GrepStyleRange[]> eldest)
+		{
+			return size() > MAX_RESULTS;
+		}
+	};
+
+	/** Texts of lines which have been queued but not yet styled. */
+	private Set<String> requested = new HashSet<String>();
+
+	/** Index of the first line of the viewport for which lines have last been
+	 *  prefetched. */
+	private int prefetchedTopIndex = -1;
+
+	/** Number of lines in the console when lines have last been prefetched. */
+	private int prefetchedLineCount = -1;
+
+	/** Prefetches the lines around the viewport whenever it changes. */
+	private PaintListener paintListener = new PaintListener()
+	{
+		@Override
+		public void paintControl(PaintEvent e)
+		{
+			prefetchViewport();
+		}
+	};
+
+	/** Whether the prefetcher has been disposed. */
+	private volatile boolean disposed;
+
+	/**
+	 * Creates a new instance and attaches it to the styled text. The thread has
+	 * to be started by the caller.
+	 *
+	 * @param styledText Styled text whose lines are styled.
+	 * @param budget Styling budget per repaint, in milliseconds.
+	 */
+	public StylePrefetcher(StyledText styledText, int budget)
+	{
+		super("Grep Console style prefetcher"); //$NON-NLS-1$
+
+		this.styledText = styledText;
+		this.budget = budget * 1000000L;
+
+		Activator activator = Activator.getDefault();
+		styler = new LineStyler(activator.getMatchGuard(), activator.getExpressionProfiler(), null);
+
+		styledText.addPaintListener(paintListener);
+		setDaemon(true);
+	}
+
+	/**
+	 * Sets the styling budget.
+	 *
+	 * @param budget Styling budget per repaint, in milliseconds.
+	 */
+	public void setBudget(int budget)
+	{
+		this.budget = budget * 1000000L;
+	}
+
+	/**
+	 * Replaces the expressions. Discards all results.
+	 *
+	 * @param items Expression items.
+	 * @param matchLength Maximum number of characters to match per line.
+	 */
+	public void reset(Collection<GrepExpressionItem> items, int matchLength)
+	{
+		generation++;
+		results.clear();
+		requested.clear();
+		deferredOffsets.clear();
+		deferredTexts.clear();
+		prefetchedTopIndex = -1;
+
+		Task task = new Task();
+		task.generation = generation;
+		task.items = items == null ? null : new ArrayList<GrepExpressionItem>(items);
+		task.matchLength = matchLength;
+
+		queue.clear();
+		queue.add(task);
+	}
+
+	/**
+	 * Returns the styles calculated for a line.
+	 *
+	 * @param lineText Line text.
+	 *
+	 * @return Style ranges, an empty array if the line has no styles, or
+	 * 		<code>null</code> if the line has not been styled.
+	 */
+	public GrepStyleRange[] getStyleRanges(String lineText)
+	{
+		return results.get(lineText);
+	}
+
+	/**
+	 * Adds time spent on styling a line on the UI thread to the current
+	 * repaint.
+	 *
+	 * @param nanos Time in nanoseconds.
+	 */
+	public void addStylingTime(long nanos)
+	{
+		stylingTime += nanos;
+		scheduleRepaintEnd();
+	}
+
+	/**
+	 * Checks whether the styling budget of the current repaint has been used
+	 * up. If so, the line is queued for styling in the background and redrawn
+	 * once its styles are available.
+	 *
+	 * @param lineOffset Offset of the line's first character.
+	 * @param lineText Line text.
+	 *
+	 * @return <code>true</code> if the line should be painted without styles.
+	 */
+	public boolean defer(int lineOffset, String lineText)
+	{
+		if(budget <= 0 || stylingTime < budget)
+		{
+			return false;
+		}
+
+		deferredOffsets.add(lineOffset);
+		deferredTexts.add(lineText);
+		scheduleRepaintEnd();
+
+		return true;
+	}
+
+	/**
+	 * Detaches the prefetcher and stops the thread. Queued tasks are discarded.
+	 */
+	public void dispose()
+	{
+		disposed = true;
+		queue.clear();
+		interrupt();
+
+		if(!styledText.isDisposed())
+		{
+			styledText.removePaintListener(paintListener);
+		}
+	}
+
+	/**
+	 * Schedules the end of the current repaint, which is reached once the UI
+	 * thread has processed all pending paint events.
+	 */
+	private void scheduleRepaintEnd()
+	{
+		if(repaintPending || styledText.isDisposed())
+		{
+			return;
+		}
+
+		repaintPending = true;
+
+		styledText.getDisplay().asyncExec(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				repaintPending = false;
+				stylingTime = 0;
+
+				if(!deferredOffsets.isEmpty() && !disposed)
+				{
+					int[] offsets = new int[deferredOffsets.size()];
+
+					for(int i = 0; i < offsets.length; i++)
+					{
+						offsets[i] = deferredOffsets.get(i);
+					}
+
+					enqueue(offsets, deferredTexts.toArray(new String[deferredTexts.size()]), true);
+				}
+
+				deferredOffsets.clear();
+				deferredTexts.clear();
+			}
+		});
+	}
+
+	/**
+	 * Queues the lines of the viewport and a margin of one screen above and
+	 * below for styling, unless the viewport has not changed since the last
+	 * call.
+	 */
+	private void prefetchViewport()
+	{
+		if(disposed || styledText.isDisposed() || generation == 0)
+		{
+			return;
+		}
+
+		int topIndex = styledText.getTopIndex();
+		int lineCount = styledText.getLineCount();
+
+		if(topIndex == prefetchedTopIndex && lineCount == prefetchedLineCount)
+		{
+			return;
+		}
+
+		prefetchedTopIndex = topIndex;
+		prefetchedLineCount = lineCount;
+
+		int visibleLines = Math.max(1, styledText.getClientArea().height / Math.max(1, styledText.getLineHeight()));
+		int firstLine = Math.max(0, topIndex - visibleLines);
+		int lastLine = Math.min(lineCount - 1, topIndex + visibleLines * 2);
+
+		LinkedList<Integer> offsets = new LinkedList<Integer>();
+		LinkedList<String> texts = new LinkedList<String>();
+
+		for(int line = firstLine; line <= lastLine; line++)
+		{
+			String lineText = styledText.getLine(line);
+
+			if(lineText.length() > 0 && !results.containsKey(lineText) && !requested.contains(lineText))
+			{
+				offsets.add(styledText.getOffsetAtLine(line));
+				texts.add(lineText);
+			}
+		}
+
+		if(!texts.isEmpty())
+		{
+			int[] offsetArray = new int[offsets.size()];
+			int i = 0;
+
+			for(Integer offset: offsets)
+			{
+				offsetArray[i++] = offset;
+			}
+
+			enqueue(offsetArray, texts.toArray(new String[texts.size()]), false);
+		}
+	}
+
+	/**
+	 * Queues lines for styling.
+	 *
+	 * @param offsets Line offsets.
+	 * @param texts Line texts.
+	 * @param redraw Whether the lines need to be redrawn once styled.
+	 */
+	private void enqueue(int[] offsets, String[] texts, boolean redraw)
+	{
+		for(String text: texts)
+		{
+			requested.add(text);
+		}
+
+		Task task = new Task();
+		task.generation = generation;
+		task.offsets = offsets;
+		task.texts = texts;
+		task.redraw = redraw;
+
+		queue.add(task);
+	}
+
+	/**
+	 * @see java.lang.Thread#run()
+	 */
+	@Override
+	public void run()
+	{
+		int currentGeneration = -1;
+
+		try
+		{
+			while(!disposed)
+			{
+				Task task = queue.take();
+
+				if(task.offsets == null)
+				{
+					styler.setItems(task.items);
+					styler.setMatchLength(task.matchLength);
+					currentGeneration = task.generation;
+					continue;
+				}
+
+				if(task.generation != currentGeneration)
+				{
+					continue;
+				}
+
+				try
+				{
+					process(task);
+				}
+				catch(RuntimeException ex)
+				{
+					Activator.getDefault().log(IStatus.ERROR, "Error calculating console styles.", ex); //$NON-NLS-1$
+				}
+			}
+		}
+		catch(InterruptedException ex)
+		{
+			// Disposed
+		}
+	}
+
+	/**
+	 * Styles the lines of a task and hands the results over to the UI thread
+	 * in batches.
+	 *
+	 * @param task Task.
+	 */
+	private void process(Task task)
+	{
+		int count = task.texts.length;
+
+		for(int start = 0; start < count && !disposed; start += MAX_BATCH_LINES)
+		{
+			int end = Math.min(count, start + MAX_BATCH_LINES);
+			GrepStyleRange[][] styles = new GrepStyleRange[end - start][];
+
+			for(int i = start; i < end; i++)
+			{
+				LinkedList<GrepStyleRange> ranges = styler.getStyleRanges(task.texts[i], true, false);
+				styles[i - start] = ranges == null ? NO_STYLES : ranges.toArray(new GrepStyleRange[ranges.size()]);
+			}
+
+			publish(task, start, styles);
+		}
+	}
+
+	/**
+	 * Hands styled lines over to the UI thread, which stores them and redraws
+	 * them if necessary.
+	 *
+	 * @param task Task the lines belong to.
+	 * @param start Index of the first line within the task.
+	 * @param styles Style ranges of the lines.
+	 */
+	private void publish(final Task task, final int start, final GrepStyleRange[][] styles)
+	{
+		if(disposed || styledText.isDisposed())
+		{
+			return;
+		}
+
+		try
+		{
+			styledText.getDisplay().asyncExec(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					if(disposed || styledText.isDisposed() || task.generation != generation)
+					{
+						return;
+					}
+
+					int charCount = styledText.getCharCount();
+
+					for(int i = 0; i < styles.length; i++)
+					{
+						String text = task.texts[start + i];
+						results.put(text, styles[i]);
+						requested.remove(text);
+
+						int offset = task.offsets[start + i];
+
+						if(task.redraw && styles[i].length > 0 && offset + text.length() <= charCount)
+						{
+							styledText.redrawRange(offset, text.length(), false);
+						}
+					}
+				}
+			});
+		}
+		catch(RuntimeException ex)
+		{
+			// Display has been disposed in the meantime
+		}
+	}
+}
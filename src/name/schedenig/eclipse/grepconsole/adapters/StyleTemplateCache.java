@@ -0,0 +1,248 @@
+/*******************************************************************************
+ * Copyright (c) 2008 - 2014 Marian Schedenig
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marian Schedenig - initial API and implementation
+ *******************************************************************************/
+
+package name.schedenig.eclipse.grepconsole.adapters;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+import name.schedenig.eclipse.grepconsole.model.GrepStyle;
+import name.schedenig.eclipse.grepconsole.view.colors.ColorRegistry;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.custom.StyleRange;
+
+/**
+ * Caches the result of collapsing an ordered combination of grep styles into
+ * a style range, with all colours already resolved. Most console lines use
+ * the same few style combinations, so segments can simply copy a template
+ * instead of merging the styles and querying the colour registry again.
+ *
+ * Combinations are identified by the grep style instances. Since styles are
+ * modified in place when they are edited, the cache must be cleared whenever
+ * the expressions or settings change.
+ *
+ * Not thread safe. Only used on the UI thread.
+ *
+ * @author msched
+ */
+public class StyleTemplateCache
+{
+	/** Maximum number of cached templates. The cache is cleared when this
+	 *  number is exceeded. */
+	private static final int MAX_TEMPLATES = 1024;
+
+	/**
+	 * Identifies an ordered combination of grep styles.
+	 *
+	 * @author msched
+	 */
+	private static class Key
+	{
+		/** Styles. Only the first <code>count</code> elements are used. */
+		private GrepStyle[] styles;
+
+		/** Number of styles. */
+		private int count;
+
+		/** Hash code. */
+		private int hash;
+
+		/**
+		 * Assigns the styles identified by this key.
+		 *
+		 * @param styles Styles.
+		 * @param count Number of styles.
+		 */
+		private void set(GrepStyle[] styles, int count)
+		{
+			this.styles = styles;
+			this.count = count;
+
+			hash = count;
+
+			for(int i = 0; i < count; i++)
+			{
+				hash = hash * 31 + System.identityHashCode(styles[i]);
+			}
+		}
+
+		/**
+		 * @see java.lang.Object#hashCode()
+		 */
+		@Override
+		public int hashCode()
+		{
+			return hash;
+		}
+
+		/**
+		 * @see java.lang.Object#equals(java.lang.Object)
+		 */
+		@Override
+		public boolean equals(Object obj)
+		{
+			if(!(obj instanceof Key))
+			{
+				return false;
+			}
+
+			Key other = (Key) obj;
+
+			if(hash != other.hash || count != other.count)
+			{
+				return false;
+			}
+
+			for(int i = 0; i < count; i++)
+			{
+				if(styles[i] != other.styles[i])
+				{
+					return false;
+				}
+			}
+
+			return true;
+		}
+	}
+
+	/** Cached templates. */
+	private HashMap<Key, StyleRange> templates = new HashMap<Key, StyleRange>();
+
+	/** Reused for lookups, so finding a cached template does not allocate a
+	 *  key. */
+	private Key lookupKey = new Key();
+
+	/** Colour registry used for resolving colours. */
+	private ColorRegistry colorRegistry;
+
+	/**
+	 * Returns the colour registry.
+	 *
+	 * @return Colour registry.
+	 */
+	public ColorRegistry getColorRegistry()
+	{
+		return colorRegistry;
+	}
+
+	/**
+	 * Sets the colour registry. Clears the cache.
+	 *
+	 * @param colorRegistry Colour registry.
+	 */
+	public void setColorRegistry(ColorRegistry colorRegistry)
+	{
+		this.colorRegistry = colorRegistry;
+		clear();
+	}
+
+	/**
+	 * Returns the template for a combination of styles. Earlier styles take
+	 * priority, with later styles only setting those fields that have not been
+	 * assigned by earlier ones.
+	 *
+	 * The returned instance is shared and must not be modified.
+	 *
+	 * @param styles Styles in order of priority. The array is not retained.
+	 * @param count Number of styles.
+	 *
+	 * @return Template style range. Only colour and font style fields are set.
+	 */
+	public StyleRange get(GrepStyle[] styles, int count)
+	{
+		lookupKey.set(styles, count);
+		StyleRange template = templates.get(lookupKey);
+
+		if(template == null)
+		{
+			template = new StyleRange();
+
+			for(int i = 0; i < count; i++)
+			{
+				applyStyle(styles[i], template);
+			}
+
+			if(templates.size() >= MAX_TEMPLATES)
+			{
+				templates.clear();
+			}
+
+			Key key = new Key();
+			key.set(Arrays.copyOf(styles, count), count);
+			templates.put(key, template);
+		}
+
+		lookupKey.set(null, 0);
+
+		return template;
+	}
+
+	/**
+	 * Discards all templates.
+	 */
+	public void clear()
+	{
+		templates.clear();
+	}
+
+	/**
+	 * Returns the number of cached templates.
+	 *
+	 * @return Number of templates.
+	 */
+	public int getSize()
+	{
+		return templates.size();
+	}
+
+	/**
+	 * Applies a grep style to a style range. Only those fields not already set
+	 * in the target range are assigned.
+	 *
+	 * @param style Grep style.
+	 * @param styleRange Target range.
+	 */
+	private void applyStyle(GrepStyle style, StyleRange styleRange)
+	{
+		if(styleRange.foreground == null && style.getForeground() != null)
+		{
+			styleRange.foreground = colorRegistry.get(style.getForeground());
+		}
+
+		if(styleRange.background == null && style.getBackground() != null)
+		{
+			styleRange.background = colorRegistry.get(style.getBackground());
+		}
+
+		styleRange.fontStyle |= (style.isBold() ? SWT.BOLD : 0) | (style.isItalic() ? SWT.ITALIC : 0);
+		styleRange.underline |= style.isUnderline();
+
+		if(styleRange.underlineColor == null && style.getUnderlineColor() != null)
+		{
+			styleRange.underlineColor = colorRegistry.get(style.getUnderlineColor());
+		}
+
+		styleRange.strikeout |= style.isStrikeout();
+
+		if(styleRange.strikeoutColor == null && style.getStrikeoutColor() != null)
+		{
+			styleRange.strikeoutColor = colorRegistry.get(style.getStrikeoutColor());
+		}
+
+		styleRange.borderStyle |= style.isBorder() ? SWT.BORDER_SOLID : SWT.NONE;
+
+		if(styleRange.borderColor == null && style.getBorderColor() != null)
+		{
+			styleRange.borderColor = colorRegistry.get(style.getBorderColor());
+		}
+	}
+}
@@ -12,27 +12,25 @@
 package name.schedenig.eclipse.grepconsole.adapters;
 
 import java.io.IOException;
+import java.text.MessageFormat;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
-import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import javax.sound.sampled.LineUnavailableException;
 import javax.sound.sampled.UnsupportedAudioFileException;
 
 import name.schedenig.eclipse.grepconsole.Activator;
 import name.schedenig.eclipse.grepconsole.Activator.IGrepConsoleListener;
+import name.schedenig.eclipse.grepconsole.adapters.FilterBatch.StatisticsUpdate;
 import name.schedenig.eclipse.grepconsole.adapters.links.GrepLinkAdapter;
 import name.schedenig.eclipse.grepconsole.adapters.links.LinkMatch;
+import name.schedenig.eclipse.grepconsole.engine.NotificationThrottle;
+import name.schedenig.eclipse.grepconsole.engine.NotificationThrottle.Summary;
+import name.schedenig.eclipse.grepconsole.i18n.Messages;
 import name.schedenig.eclipse.grepconsole.model.GrepExpressionItem;
-import name.schedenig.eclipse.grepconsole.model.GrepGroup;
 import name.schedenig.eclipse.grepconsole.util.GrepConsoleUtil;
 import name.schedenig.eclipse.grepconsole.view.notifications.GrepConsoleNotification;
 import name.schedenig.eclipse.popupnotifications.INotificationListener;
@@ -50,6 +48,10 @@ import org.eclipse.swt.widgets.Shell;
 /**
  * A text change listener that presents a subset of the original content's lines
  * depending on a list of filter expressions.
+ * 
+ * Text added to the original content is filtered by a background worker. The
+ * filter results are applied to the filtered text on the UI thread, so the
+ * filtered text may lag slightly behind the original content.
  *  
  * @author msched
  */
@@ -125,14 +127,13 @@ public class TextFilter implements TextChangeListener, StyledTextContent, IGrepC
 	/** List of statistics expressions. */
 	private LinkedHashSet<GrepExpressionItem> statisticsExpressions;
 	
-	/** Filtered lines. */
-	private LinkedList<Line> lines = new LinkedList<Line>();
+	/** Compiled rule set the expressions have been taken from, or
+	 *  <code>null</code> if they have been set individually. */
+	private CompiledRuleSet ruleSet;
 	
-	/** Character offsets of the filtered lines. */
-	private LinkedList<Integer> lineOffsets = new LinkedList<Integer>();
-	
-	/** Character offsets, in the original text content, of the filtered lines. */
-	private LinkedList<Integer> originalOffsets = new LinkedList<Integer>();
+	/** Filtered lines, together with their offsets in the filtered and in the
+	 *  original text content. */
+	private LineStore lines = new LineStore();
 	
 	/** Number of characters in the filtered text. */
 	private int charCount;
@@ -140,18 +141,45 @@ public class TextFilter implements TextChangeListener, StyledTextContent, IGrepC
 	/** Line delimiter. */
 	private String delimiter;
 	
-	/** Text that has been added to the original content but could not yet be
-	 *  filtered because the line has not yet been completed. */
-	private StringBuilder bufferedText;
+	/** Background worker which filters text added to the original content. */
+	private FilterWorker worker;
+	
+	/** Generation of the filtered content. Incremented whenever the content is
+	 *  cleared, so results for previous content can be recognised and ignored. */
+	private int generation;
+	
+	/** Whether the text filter has been disposed. */
+	private boolean disposed;
+	
+	/** Filtered lines which have not yet been added to the filtered text. */
+	private FilterBatch pendingLines;
+	
+	/** Whether a flush of the pending lines has been scheduled. */
+	private boolean flushScheduled;
+	
+	/** Adds the pending lines to the filtered text. */
+	private Runnable flushRunnable = new Runnable()
+	{
+		@Override
+		public void run()
+		{
+			flush();
+		}
+	};
 	
-	/** Index in the parsing of the line delimiter string of the buffered text.
-	 *  If this is greater than 0, the beginning of the delimiter string has been
-	 *  found at the end of the buffered text. */
-	private int bufferedDelimiterIndex;
+	/** Maximum interval between updates of the filtered text, in
+	 *  milliseconds. 0 to add lines immediately. */
+	private int updateInterval;
 	
-	/** Whether a textChanging event was sent after the last call to
-	 *  textChanged(). */
-	private boolean sentChanging;
+	/** Number of threads used by refresh jobs. */
+	private int refreshThreads;
+	
+	/** Currently running refresh job, if any. */
+	private RefreshJob refreshJob;
+	
+	/** Text added to the original content while the refresh job is running.
+	 *  Queued for filtering once the job's results have been applied. */
+	private StringBuilder refreshBuffer;
 	
 	/** Set of listeners. */
 	private LinkedHashSet<TextChangeListener> listeners = new LinkedHashSet<TextChangeListener>();
@@ -159,30 +187,44 @@ public class TextFilter implements TextChangeListener, StyledTextContent, IGrepC
 	/** Maximum number of characters to match per line. */
 	private int matchLength;
 
-	/** Keeps track of the current offset in the original text content. */
-	private int originalOffset;
-	
+	/** Maximum number of filtered lines to keep. Older lines are evicted when
+	 *  this is exceeded. 0 for no limit. */
+	private int maxLines;
+
+	/** Maximum number of filtered characters (including delimiters) to keep.
+	 *  Older lines are evicted when this is exceeded. 0 for no limit. */
+	private int maxChars;
+
 	/** Keeps track of deleted characters that have to be subtracted from the
 	 *  original offset when the length of the original content exceeds the
 	 *  console buffer size. */
 	private int originalOffsetDelta;
 
-	/** Highest line offset of already processed lines. Prevents autostart links
-	 *  from earlier lines to be re-executed when refreshing the content. */
-	private int maxProcessedLineOffset = -1;
-
 	/** Shell for executing links. */
 	private Shell shell;
 
 	/** Optional project for executing links. */
 	private IProject project;
 
-	/** Set of expression items which have autostart links. Created on demand. */
-	private Set<GrepExpressionItem> actionItems;
-
 	/** Set of expression items which have active notifications. */
 	private LinkedHashSet<GrepExpressionItem> notificationExpressions;
 
+	/** Coalesces notifications of expressions matching in quick succession. */
+	private NotificationThrottle<LinkMatch> notificationThrottle;
+
+	/** Whether the end of the next coalescing window has been scheduled. */
+	private boolean throttleScheduled;
+
+	/** Triggers the notifications for coalescing windows which have ended. */
+	private Runnable throttleRunnable = new Runnable()
+	{
+		@Override
+		public void run()
+		{
+			triggerCoalescedNotifications();
+		}
+	};
+
 	private Map<String, StatisticsEntry> statisticEntries;
 
 	private LinkedHashSet<IStatisticsListener> statisticsListeners = new LinkedHashSet<IStatisticsListener>();
@@ -209,7 +251,36 @@ public class TextFilter implements TextChangeListener, StyledTextContent, IGrepC
 		Activator activator = Activator.getDefault();
 		activator.addListener(this);
 		this.matchLength = activator.getFilterMatchLength();
+		this.maxLines = activator.getGrepViewMaxLines();
+		this.maxChars = activator.getGrepViewMaxChars();
+		this.updateInterval = activator.getGrepViewUpdateInterval();
+		this.refreshThreads = activator.getRefreshThreads();
+		this.notificationThrottle = new NotificationThrottle<LinkMatch>(activator.getNotificationWindow());
 		statisticEntries = new HashMap<String, StatisticsEntry>();
+		
+		worker = new FilterWorker(this, shell.getDisplay());
+		worker.start();
+	}
+
+	/**
+	 * Creates a new instance using the filter, statistics and notification
+	 * items of a compiled rule set. Processors reuse the rule set's compiled
+	 * filter pattern and prefilter.
+	 * 
+	 * @param originalContent Original text content.
+	 * @param ruleSet Compiled rule set.
+	 * @param shell Shell.
+	 * @param project Optional project for executing links.
+	 */
+	public TextFilter(StyledTextContent originalContent, CompiledRuleSet ruleSet,
+			Shell shell, IProject project)
+	{
+		this(originalContent, new LinkedList<GrepExpressionItem>(ruleSet.getFilterItems()),
+				new LinkedHashSet<GrepExpressionItem>(ruleSet.getStatisticsItems()),
+				new LinkedHashSet<GrepExpressionItem>(ruleSet.getNotificationItems()),
+				shell, project);
+		
+		this.ruleSet = ruleSet;
 	}
 
 	/**
@@ -217,7 +288,11 @@ public class TextFilter implements TextChangeListener, StyledTextContent, IGrepC
 	 */
 	public void dispose()
 	{
+		disposed = true;
 		unhookListener();
+		cancelRefresh();
+		worker.dispose();
+		notificationThrottle.clear();
 		
 		Activator.getDefault().removeListener(this);
 	}
@@ -234,16 +309,26 @@ public class TextFilter implements TextChangeListener, StyledTextContent, IGrepC
 	
 	/**
 	 * Recalculates the filtered text.
+	 * 
+	 * The original content is filtered by a background job. The current filter
+	 * results remain in place until the job has completed and are then replaced
+	 * at once. A refresh job which is still running is cancelled.
 	 */
 	public void refresh()
 	{
-//		statisticCountEntries = new HashMap<String, StatisticsEntry>();
-//		statisticValueEntries = new HashMap<String, StatisticsEntry>();
-		clearStatistics();
 		delimiter = originalContent.getLineDelimiter();
+		cancelRefresh();
 		
-		String text = filterExpressions.isEmpty() ? "" : originalContent.getTextRange(0, originalContent.getCharCount()); //$NON-NLS-1$
-		setText(text);
+		if(filterExpressions.isEmpty() || originalContent.getCharCount() == 0)
+		{
+			setText(""); //$NON-NLS-1$
+		}
+		else
+		{
+			refreshBuffer = new StringBuilder();
+			refreshJob = new RefreshJob(this, shell.getDisplay(), createProcessor(), !listeners.isEmpty(), originalContent.getCharCount(), originalOffsetDelta, refreshThreads);
+			refreshJob.schedule();
+		}
 		
 		if(filterExpressions.isEmpty() && statisticsExpressions.isEmpty() && notificationExpressions.isEmpty()) // experimental
 		{
@@ -256,8 +341,9 @@ public class TextFilter implements TextChangeListener, StyledTextContent, IGrepC
 	}
 	
 	/**
-	 * Clears the previous text and filters the new text when new text content
-	 * is set.
+	 * Clears the previous text and queues the new text for filtering when new
+	 * text content is set. The filtered lines are added as soon as the
+	 * background worker has processed the text.
 	 * 
 	 * @see org.eclipse.swt.custom.StyledTextContent#setText(java.lang.String)
 	 */
@@ -265,12 +351,10 @@ public class TextFilter implements TextChangeListener, StyledTextContent, IGrepC
 	public void setText(String s)
 	{
 		clear();
-		bufferedText = new StringBuilder();
-		bufferedDelimiterIndex = 0;
 
 		if(s.length() > 0)
 		{
-			handleNewText(s, false);
+			worker.enqueue(s, false, !listeners.isEmpty());
 		}
 		
 		TextChangedEvent event = new TextChangedEvent(this);
@@ -282,18 +366,160 @@ public class TextFilter implements TextChangeListener, StyledTextContent, IGrepC
 	}
 
 	/**
-	 * Clears the existing filtered text.
+	 * Clears the existing filtered text and resets the background worker, so
+	 * all text queued afterwards is filtered from scratch using the current
+	 * expressions.
 	 */
 	private void clear()
 	{
+		cancelRefresh();
 		lines.clear();
-		lineOffsets.clear();
-		originalOffsets.clear();
+		pendingLines = null;
 		charCount = 0;
-		originalOffset = 0;
 		originalOffsetDelta = 0;
 		
 		clearStatistics();
+		
+		generation++;
+		worker.reset(createProcessor(), generation);
+	}
+	
+	/**
+	 * Creates a new filter processor for the current expressions and settings.
+	 * 
+	 * @return Filter processor.
+	 */
+	private FilterProcessor createProcessor()
+	{
+		Activator activator = Activator.getDefault();
+		
+		if(ruleSet == null)
+		{
+			return new FilterProcessor(delimiter, matchLength, filterExpressions, statisticsExpressions, notificationExpressions, project, activator.getMatchGuard(), activator.getExpressionProfiler());
+		}
+		
+		return new FilterProcessor(delimiter, matchLength, ruleSet.createFilterRules(), ruleSet.createFilterPrefilter(), statisticsExpressions, notificationExpressions, project, activator.getMatchGuard(), activator.getExpressionProfiler());
+	}
+	
+	/**
+	 * Cancels the running refresh job, if any. Text buffered while the job was
+	 * running is discarded.
+	 */
+	private void cancelRefresh()
+	{
+		if(refreshJob != null)
+		{
+			refreshJob.cancel();
+			refreshJob = null;
+			refreshBuffer = null;
+		}
+	}
+	
+	/**
+	 * Returns whether the specified job is the current refresh job. Must be
+	 * called on the UI thread.
+	 * 
+	 * @param job Refresh job.
+	 * 
+	 * @return <code>true</code> iff the job is the current refresh job.
+	 */
+	boolean isCurrentRefresh(RefreshJob job)
+	{
+		return !disposed && job == refreshJob;
+	}
+	
+	/**
+	 * Replaces the filtered text with the results of a completed refresh job.
+	 * Must be called on the UI thread. Results of obsolete jobs are ignored.
+	 * 
+	 * The job's processor continues filtering text added to the original
+	 * content, starting with text that has been added while the job was
+	 * running.
+	 * 
+	 * @param job Completed refresh job.
+	 */
+	void applyRefresh(RefreshJob job)
+	{
+		if(!isCurrentRefresh(job))
+		{
+			return;
+		}
+		
+		String bufferedText = refreshBuffer.toString();
+		refreshJob = null;
+		refreshBuffer = null;
+		
+		lines.clear();
+		pendingLines = null;
+		charCount = 0;
+		originalOffsetDelta -= job.getStartDelta();
+		clearStatistics();
+		
+		generation++;
+		worker.reset(job.getProcessor(), generation);
+		
+		FilterBatch result = job.getFilterResult();
+		
+		for(StatisticsUpdate update: result.getStatisticsUpdates())
+		{
+			applyStatisticsUpdate(update);
+		}
+		
+		int lineCount = result.getLineCount();
+		
+		for(int i = 0; i < lineCount; i++)
+		{
+			addLine(result.getLine(i), result.getOriginalOffset(i));
+		}
+		
+		removeFirstLines(countExcessLines(0, 0));
+		
+		TextChangedEvent event = new TextChangedEvent(this);
+		
+		for(TextChangeListener listener: listeners)
+		{
+			listener.textSet(event);
+		}
+		
+		if(bufferedText.length() > 0)
+		{
+			worker.enqueue(bufferedText, true, !listeners.isEmpty());
+		}
+	}
+	
+	/**
+	 * Called when a refresh job has been cancelled before completing. Keeps
+	 * the current filter results and continues filtering text added to the
+	 * original content with the previous processor.
+	 * 
+	 * @param job Cancelled refresh job.
+	 */
+	void refreshCancelled(RefreshJob job)
+	{
+		if(!isCurrentRefresh(job))
+		{
+			return;
+		}
+		
+		String bufferedText = refreshBuffer.toString();
+		refreshJob = null;
+		refreshBuffer = null;
+		
+		if(bufferedText.length() > 0)
+		{
+			worker.enqueue(bufferedText, true, !listeners.isEmpty());
+		}
+	}
+	
+	/**
+	 * Returns the number of characters which have been removed from the start
+	 * of the original content since the filtered text was last cleared.
+	 * 
+	 * @return Original offset delta.
+	 */
+	int getOriginalOffsetDelta()
+	{
+		return originalOffsetDelta;
 	}
 	
 	private void clearStatistics()
@@ -323,311 +549,178 @@ public class TextFilter implements TextChangeListener, StyledTextContent, IGrepC
 	}
 	
 	/**
-	 * Handles new text. Checks every complete line of text against the filter
-	 * expressions and updates the filtered text accordingly. Keeps unfinished
-	 * lines in the buffer for later completion.
+	 * Applies the results of the background worker to the filtered text. Must
+	 * be called on the UI thread. Results for previous content are ignored.
 	 * 
-	 * Returns a text changing event if the filtered text has changed. The caller
-	 * is responsible for sending the event to listeners.
+	 * Updates the statistics and triggers notifications immediately. Filtered
+	 * lines are collected and added to the filtered text by the next flush, so
+	 * listeners receive a single change event for all lines filtered within the
+	 * update interval.
 	 * 
-	 * @param s Newly added text. All text is assumed to be added at the end of
-	 * 		the existing text.
-	 * @param notifications Whether to use create notifications for items that
-	 * 		have notifications configured.
-	 * 
-	 * @return Change event, or <code>null</code>.
+	 * @param batch Filter results.
 	 */
-	protected TextChangingEvent handleNewText(String s, boolean notifications)
+	void applyBatch(FilterBatch batch)
 	{
-		TextChangingEvent event = new TextChangingEvent(this);
-		StringBuilder newText = new StringBuilder();
+		if(disposed || batch.getGeneration() != generation)
+		{
+			return;
+		}
 		
-		event.start = charCount;
-		int startIndex = 0;
+		for(StatisticsUpdate update: batch.getStatisticsUpdates())
+		{
+			applyStatisticsUpdate(update);
+		}
 		
-		for(int i = 0; i < s.length(); i++)
+		for(LinkMatch linkMatch: batch.getNotifications())
 		{
-			char c = s.charAt(i);
-			
-			if(delimiter.charAt(bufferedDelimiterIndex) == c)
-			{
-				if(bufferedDelimiterIndex < delimiter.length() - 1)
-				{
-					bufferedDelimiterIndex++;
-				}
-				else
-				{
-					String line = bufferedText.toString() + s.substring(startIndex, i + 1);
-					line = line.substring(0, line.length() - delimiter.length());
-					
-					if(handleNewLine(line, notifications))
-					{
-						event.newCharCount += line.length() + delimiter.length();
-						event.newLineCount++;
-						newText.append(line);
-					}
-					
-					originalOffset += line.length() + delimiter.length();
-					bufferedText = new StringBuilder();
-					bufferedDelimiterIndex = 0;
-					startIndex = i + 1;
-				}
-			}
-			else
-			{
-				bufferedDelimiterIndex = 0;
-			}
+			triggerNotifications(linkMatch);
 		}
 		
-		if(startIndex < s.length())
+		int lineCount = batch.getLineCount();
+		
+		if(lineCount == 0)
 		{
-			bufferedText.append(s.substring(startIndex));
+			return;
 		}
 		
-		if(event.newCharCount == 0)
+		if(pendingLines == null)
 		{
-			return null;
+			pendingLines = batch;
+		}
+		else
+		{
+			for(int i = 0; i < lineCount; i++)
+			{
+				pendingLines.addLine(batch.getLine(i), batch.getOriginalOffset(i));
+			}
 		}
 		
-		event.newText = newText.toString();
-		return event;
+		if(updateInterval <= 0)
+		{
+			flush();
+		}
+		else if(!flushScheduled)
+		{
+			flushScheduled = true;
+			shell.getDisplay().timerExec(updateInterval, flushRunnable);
+		}
 	}
-
+	
 	/**
-	 * Tests a newly added line against the filter expressions and adds it to the
-	 * filtered text if at least one filter expression matches.
-	 * 
-	 * @param line New line of text.
-	 * 
-	 * @return <code>true</code> iff the line was added to the filtered text.
+	 * Adds the pending lines to the filtered text. If the configured line or
+	 * character limits would be exceeded, the oldest lines are evicted first.
+	 * Listeners are informed about the eviction and about the new lines with
+	 * one change event each.
 	 */
-	private boolean handleNewLine(String line, boolean notifications)
+	private void flush()
 	{
-		boolean filter = !listeners.isEmpty();
+		flushScheduled = false;
 		
-		int cutoff = line.length();
+		if(disposed || pendingLines == null)
+		{
+			return;
+		}
+		
+		FilterBatch batch = pendingLines;
+		pendingLines = null;
 		
-		while(cutoff > 0)
+		int lineCount = batch.getLineCount();
+		int newCharCount = 0;
+		
+		for(int i = 0; i < lineCount; i++)
 		{
-			char c = line.charAt(cutoff - 1);
+			newCharCount += batch.getLine(i).getText().length() + delimiter.length();
+		}
+		
+		int evictCount = countExcessLines(lineCount, newCharCount);
+		int skipCount = 0;
+		
+		if(evictCount == lines.size())
+		{
+			// The new lines alone exceed the limits, so the oldest of them are
+			// dropped without ever being shown
+			int remainingLines = lineCount;
+			int remainingChars = newCharCount;
 			
-			if(c == '\n' || c == '\r')
-			{
-				cutoff--;
-			}
-			else
+			while(skipCount < lineCount && ((maxLines > 0 && remainingLines > maxLines) || (maxChars > 0 && remainingChars > maxChars)))
 			{
-				break;
+				remainingChars -= batch.getLine(skipCount).getText().length() + delimiter.length();
+				remainingLines--;
+				skipCount++;
 			}
 		}
 		
-		boolean result = false;
-		LinkedHashSet<GrepExpressionItem> remainingActionItems = null;
+		evictLines(evictCount);
+		
+		if(skipCount == lineCount)
+		{
+			return;
+		}
 		
-		boolean notYetProcessed = originalOffset >= maxProcessedLineOffset;
+		TextChangingEvent changingEvent = new TextChangingEvent(this);
+		StringBuilder newText = new StringBuilder();
+		changingEvent.start = charCount;
+		changingEvent.newLineCount = lineCount - skipCount;
 		
-		if(!statisticsExpressions.isEmpty() || (notifications && notYetProcessed))
+		for(int i = skipCount; i < lineCount; i++)
 		{
-			remainingActionItems = new LinkedHashSet<GrepExpressionItem>(getActionItems(notYetProcessed));
+			newText.append(batch.getLine(i).getText());
+			newText.append(delimiter);
 		}
 		
-		List<GrepExpressionItem> filterExpressions = filter ? this.filterExpressions : Collections.<GrepExpressionItem>emptyList();
-		line = line.substring(0, cutoff);
+		changingEvent.newText = newText.toString();
+		changingEvent.newCharCount = changingEvent.newText.length();
 		
-		for(GrepExpressionItem item: filterExpressions)
+		for(TextChangeListener listener: listeners)
 		{
-			if(remainingActionItems != null)
-			{
-				remainingActionItems.remove(item);
-			}
-			
-			Pattern quickPattern = item.getQuickPattern();
-			String matchLine = (matchLength <= 0 || line.length() <= matchLength) ? line : line.substring(0, matchLength);
-			
-			if(quickPattern != null)
-			{
-				if(!quickPattern.matcher(matchLine).find())
-				{
-					continue;
-				}
-			
-				matchLine = line;
-			}
-			
-			Pattern pattern = item.getPattern();
-			Matcher matcher = pattern.matcher(matchLine);
-			
-			if(!matcher.find())
-			{
-				continue;
-			}
-			
-			Pattern unlessPattern = item.getUnlessPattern();
-			
-			if(unlessPattern != null)
-			{
-				Matcher unlessMatcher = unlessPattern.matcher(matchLine);
-				
-				if(unlessMatcher.find())
-				{
-					continue;
-				}
-			}
-
-			if(remainingActionItems != null)
-			{
-				if(statisticsExpressions.contains(item))
-				{
-					handleMatchedStatisticsItem(item, matchLine, matcher);
-				}
-				
-				if(notYetProcessed && notificationExpressions.contains(item))
-				{
-					handleMatchedNotificationsItem(item, matchLine, matcher);
-				}
-				/*
-				LinkMatch linkMatch = null;
-				boolean isNotificationItem = notificationExpressions.contains(item);
-				boolean autostart = isNotificationItem && item.getAutostartLink() != null;
-				boolean popup = isNotificationItem && item.isPopupNotification();
-				boolean sound = isNotificationItem && item.getSoundNotificationPath() != null;
-				
-				if(autostart || popup)
-				{
-					linkMatch = new LinkMatch(item, item.getAutostartLink(), matcher.toMatchResult(), matcher.start(), line, 0, project);
-				}
-				
-				if(sound)
-				{
-					playSound(item.getSoundNotificationPath());
-				}
-				
-				if(popup)
-				{
-					Notification notification = createNotification(linkMatch);
-					Activator.getDefault().getPopupNotificationManager().addNotification(notification);
-				}
-				
-				if(autostart)
-				{
-					executeLink(linkMatch);
-				}
-				*/
-			}
-			
-			if(item.getRewriteExpression() == null)
-			{
-				addLine(line, false, null);
-			}
-			else
-			{
-				List<int[]> rangeIndices = new LinkedList<int[]>();
-				LinkMatch linkMatch = new LinkMatch(item, item.getAutostartLink(), matcher.toMatchResult(), matcher.start(), line, 0, project);
-				String rewritten = GrepConsoleUtil.replaceParams(item.getRewriteExpression(), matcher.toMatchResult(), line, -1, rangeIndices, project, new GroupParameterResolver(linkMatch));
-				
-				GrepGroup[] groups = item.getRewriteGroups();
-				GrepStyleRange[] ranges;
-				
-				if(groups == null || groups.length == 0)
-				{
-					ranges = null;
-				}
-				else
-				{
-					LinkedList<GrepStyleRange> rangeList = new LinkedList<GrepStyleRange>();
-					
-					if(groups[0] != null && (groups[0].getStyle() != null || groups[0].getLink() != null))
-					{
-						rangeList.add(new GrepStyleRange(item, 0, true, 0, rewritten.length() - 1, groups[0].getStyle(), groups[0].getLink(), matcher, rewritten, 0, project));
-					}
-					
-					int i = 0;
-					
-					for(int[] indices: rangeIndices)
-					{
-						i++;
-						
-						if(groups[i] != null && (groups[i].getStyle() != null || groups[i].getLink() != null))
-						{
-							GrepStyleRange range = new GrepStyleRange(item, 0, false, indices[0], indices[1], groups[i].getStyle(), groups[i].getLink(), matcher, rewritten, -1, project);
-							rangeList.add(range);
-						}
-					}
-					
-					if(rangeList.isEmpty())
-					{
-						ranges = null;
-					}
-					else
-					{
-						ranges = rangeList.toArray(new GrepStyleRange[rangeList.size()]);
-					}
-				}
-				
-				addLine(rewritten, true, ranges);
-			}
-			
-			result = true;
-			break;
+			listener.textChanging(changingEvent);
 		}
-
-		// Here we handle all items remaining after we have already decided that the
-		// line should be shown in Grep View
-		if(remainingActionItems != null && !remainingActionItems.isEmpty())
+		
+		for(int i = skipCount; i < lineCount; i++)
 		{
-			String matchLine = (matchLength <= 0 || line.length() <= matchLength) ? line : line.substring(0, matchLength);
-			
-			for(GrepExpressionItem item: remainingActionItems)
-			{
-				if(statisticsExpressions.contains(item) || notificationExpressions.contains(item))
-				{
-					Pattern quickPattern = item.getQuickPattern();
-					
-					if(quickPattern != null && !quickPattern.matcher(matchLine).find())
-					{
-						continue;
-					}
-					
-					Pattern pattern = item.getPattern();
-					Matcher matcher = pattern.matcher(matchLine);
-					
-					if(matcher.find())
-					{
-						if(statisticsExpressions.contains(item))
-						{
-							handleMatchedStatisticsItem(item, line, matcher);
-						}
-						
-						if(notYetProcessed && notificationExpressions.contains(item))
-						{
-							handleMatchedNotificationsItem(item, line, matcher);
-						}
-					}
-				}
-			}
+			addLine(batch.getLine(i), batch.getOriginalOffset(i));
 		}
+		
+		TextChangedEvent changedEvent = new TextChangedEvent(this);
 
-		return result;
+		for(TextChangeListener listener: listeners)
+		{
+			listener.textChanged(changedEvent);
+		}
 	}
 
 	/**
-	 * @param item
-	 * @param line
-	 * @param matcher
+	 * Triggers the configured notifications for a matched notification item,
+	 * unless the item has already triggered notifications within the current
+	 * coalescing window. Suppressed matches are summarised by a single
+	 * notification when the window ends.
+	 * 
+	 * @param linkMatch Link match.
 	 */
-	private void handleMatchedNotificationsItem(GrepExpressionItem item,
-			String line, Matcher matcher)
+	private void triggerNotifications(LinkMatch linkMatch)
 	{
-		LinkMatch linkMatch;
-		
-		if(item.isPopupNotification() || item.getAutostartLink() != null)
+		if(notificationThrottle.offer(linkMatch.getItem(), linkMatch, currentTimeMillis()))
 		{
-			linkMatch = new LinkMatch(item, item.getAutostartLink(), matcher.toMatchResult(), matcher.start(), line, 0, project);
+			triggerNotifications(linkMatch, 0, 0);
 		}
 		else
 		{
-			linkMatch = null;
+			scheduleThrottle();
 		}
+	}
+
+	/**
+	 * Triggers the configured notifications for a matched notification item.
+	 * 
+	 * @param linkMatch Link match.
+	 * @param coalesced Number of further matches summarised by the
+	 * 		notification.
+	 * @param window Length of the window during which the further matches
+	 * 		occurred, in milliseconds.
+	 */
+	private void triggerNotifications(LinkMatch linkMatch, int coalesced, int window)
+	{
+		GrepExpressionItem item = linkMatch.getItem();
 
 		if(item.getSoundNotificationPath() != null)
 		{
@@ -636,31 +729,85 @@ public class TextFilter implements TextChangeListener, StyledTextContent, IGrepC
 		
 		if(item.isPopupNotification())
 		{
-			Notification notification = createNotification(linkMatch);
-			//Activator.getDefault().getPopupNotificationManager().
+			Notification notification = createNotification(linkMatch, coalesced, window);
 			PopupNotificationManager man = name.schedenig.eclipse.popupnotifications.Activator.getDefault().getManager();
 			man.addNotification(notification);
 		}
 		
 		if(item.getAutostartLink() != null)
 		{
-			executeLink(linkMatch);
+			GrepLinkAdapter adapter = GrepLineStyleListener.createLinkAdapter(linkMatch, shell, project);
+			
+			if(adapter != null)
+			{
+				Activator.getDefault().getAutostartQueue().add(adapter);
+			}
 		}
 	}
 
 	/**
-	 * @param item
-	 * @param matcher 
-	 * @param line 
+	 * Triggers the summarising notifications for all coalescing windows which
+	 * have ended, and schedules the end of the next window.
 	 */
-	private void handleMatchedStatisticsItem(GrepExpressionItem item, String line, Matcher matcher)
+	private void triggerCoalescedNotifications()
 	{
-		if(item.getStatisticsCountLabel() != null)
+		throttleScheduled = false;
+		
+		if(disposed)
+		{
+			return;
+		}
+		
+		for(Summary<LinkMatch> summary: notificationThrottle.poll(currentTimeMillis()))
+		{
+			triggerNotifications(summary.getMatch(), summary.getCount(), summary.getWindow());
+		}
+		
+		scheduleThrottle();
+	}
+
+	/**
+	 * Schedules the end of the next coalescing window, unless already
+	 * scheduled or no window is open.
+	 */
+	private void scheduleThrottle()
+	{
+		long deadline = notificationThrottle.getNextDeadline();
+		
+		if(throttleScheduled || deadline < 0)
+		{
+			return;
+		}
+		
+		throttleScheduled = true;
+		shell.getDisplay().timerExec((int) Math.max(0, deadline - currentTimeMillis()), throttleRunnable);
+	}
+
+	/**
+	 * Returns the current time for the notification throttle. Unaffected by
+	 * changes of the system clock.
+	 * 
+	 * @return Time in milliseconds.
+	 */
+	private static long currentTimeMillis()
+	{
+		return System.nanoTime() / 1000000;
+	}
+
+	/**
+	 * Applies a statistics update to the statistics entries and informs the
+	 * statistics listeners.
+	 * 
+	 * @param update Statistics update.
+	 */
+	private void applyStatisticsUpdate(StatisticsUpdate update)
+	{
+		String label = update.getLabel();
+		StatisticsEntry entry = statisticEntries.get(label);
+		boolean isNew;
+		
+		if(update.getType() == StatisticsEntry.Type.COUNT)
 		{
-			String label = item.getStatisticsCountLabel();
-			StatisticsEntry entry = statisticEntries.get(label);
-			boolean isNew;
-			
 			if(entry == null)
 			{
 				entry = new StatisticsEntry(StatisticsEntry.Type.COUNT, label, 1);
@@ -670,46 +817,26 @@ public class TextFilter implements TextChangeListener, StyledTextContent, IGrepC
 			else
 			{
 				int value = entry.getValue() instanceof Integer ? (Integer) entry.getValue() : 0;
-				entry.setValue(value + 1);//(Integer) (entry.getValue()) + 1);
+				entry.setValue(value + 1);
 				isNew = false;
 			}
-			
-			fireStatisticsUpdated(entry, isNew);
 		}
-		
-		if(item.getStatisticsValueLabel() != null)
+		else
 		{
-			String value;
-
-			if(item.getStatisticsValuePattern() == null)
-			{
-				value = matcher.group(0);
-			}
-			else
-			{
-				List<int[]> rangeIndices = new LinkedList<int[]>();
-				LinkMatch linkMatch = new LinkMatch(item, item.getAutostartLink(), matcher.toMatchResult(), matcher.start(), line, 0, project);
-				value = GrepConsoleUtil.replaceParams(item.getStatisticsValuePattern(), matcher.toMatchResult(), line, -1, rangeIndices, project, new GroupParameterResolver(linkMatch));
-			}
-			
-			String label = item.getStatisticsValueLabel();
-			StatisticsEntry entry = statisticEntries.get(label);
-			boolean isNew;
-			
 			if(entry == null)
 			{
-				entry = new StatisticsEntry(StatisticsEntry.Type.LABEL, label, value);
+				entry = new StatisticsEntry(StatisticsEntry.Type.LABEL, label, update.getValue());
 				statisticEntries.put(label, entry);
 				isNew = true;
 			}
 			else
 			{
-				entry.setValue(value);
+				entry.setValue(update.getValue());
 				isNew = false;
 			}
-			
-			fireStatisticsUpdated(entry, isNew);
 		}
+		
+		fireStatisticsUpdated(entry, isNew);
 	}
 
 	/**
@@ -743,17 +870,29 @@ public class TextFilter implements TextChangeListener, StyledTextContent, IGrepC
 	 * Creates a notification.
 	 * 
 	 * @param linkMatch Link match.
+	 * @param coalesced Number of further matches summarised by the
+	 * 		notification.
+	 * @param window Length of the window during which the further matches
+	 * 		occurred, in milliseconds.
 	 * 
 	 * @return Notification.
 	 */
-	private Notification createNotification(LinkMatch linkMatch)
+	private Notification createNotification(LinkMatch linkMatch, int coalesced, int window)
 	{
 		Notification notification = new GrepConsoleNotification(linkMatch);
 		
 		GrepExpressionItem item = linkMatch.getItem();
 		GroupParameterResolver resolver = new GroupParameterResolver(linkMatch);
+		String message = GrepConsoleUtil.replaceParams(item.getNotificationMessage(), linkMatch, resolver);
+		
+		if(coalesced > 0)
+		{
+			String summary = MessageFormat.format(Messages.TextFilter_coalesced_notifications, coalesced, window / 1000.0);
+			message = message == null || message.length() == 0 ? summary : message + "\n" + summary; //$NON-NLS-1$
+		}
+		
 		notification.setTitle(GrepConsoleUtil.replaceParams(item.getNotificationTitle(), linkMatch, resolver));
-		notification.setMessage(GrepConsoleUtil.replaceParams(item.getNotificationMessage(), linkMatch, resolver));
+		notification.setMessage(message);
 		notification.setStyle(Activator.getDefault().getNotificationStyle());
 		
 		notification.addListener(this);
@@ -762,69 +901,125 @@ public class TextFilter implements TextChangeListener, StyledTextContent, IGrepC
 	}
 	
 	/**
-	 * Returns the set of expression items with notifications or autostart links. 
-	 * Creates it if necessary.
+	 * Executes a link.
 	 * 
-	 * @return Expression items with notifications or autostart links.
+	 * @param linkMatch Link match.
 	 */
-	private Set<GrepExpressionItem> getActionItems(boolean includeNotifications)
+	private void executeLink(LinkMatch linkMatch)
 	{
-		if(actionItems == null)
+		GrepLinkAdapter adapter = GrepLineStyleListener.createLinkAdapter(linkMatch, shell, project);
+		adapter.openLink();
+	}
+
+	/**
+	 * Adds a line to the filtered text. Does not inform listeners.
+	 * 
+	 * @param line New line.
+	 * @param originalOffset Offset of the line in the original content.
+	 */
+	private void addLine(Line line, int originalOffset)
+	{
+		lines.add(line, charCount, originalOffset);
+		charCount += line.getText().length() + delimiter.length();
+	}
+
+	/**
+	 * Calculates how many lines have to be evicted from the start of the
+	 * filtered text to stay within the configured line and character limits
+	 * once the specified amount of new text has been added.
+	 * 
+	 * @param newLineCount Number of lines to be added.
+	 * @param newCharCount Number of characters to be added, including
+	 * 		delimiters.
+	 * 
+	 * @return Number of excess lines, not exceeding the current line count.
+	 */
+	private int countExcessLines(int newLineCount, int newCharCount)
+	{
+		int count = 0;
+		int totalLines = lines.size() + newLineCount;
+		int totalChars = charCount + newCharCount;
+		
+		if(maxLines > 0 && totalLines > maxLines)
 		{
-			actionItems = new LinkedHashSet<GrepExpressionItem>();
-			
-			if(statisticsExpressions != null)
-			{
-				actionItems.addAll(statisticsExpressions);
-			}
-			
-			if(includeNotifications && notificationExpressions != null)
-			{
-				actionItems.addAll(notificationExpressions);
-			}
+			count = totalLines - maxLines;
 		}
 		
-		return actionItems;
+		if(maxChars > 0 && totalChars > maxChars)
+		{
+			// First line starting at or after the point where the remaining text
+			// fits into the character budget
+			int firstKept = lines.indexOfOffset(totalChars - maxChars - 1) + 1;
+			count = Math.max(count, firstKept);
+		}
+		
+		return Math.min(count, lines.size());
 	}
-
+	
 	/**
-	 * Executes a link.
+	 * Removes lines from the start of the filtered text. Does not inform
+	 * listeners.
 	 * 
-	 * @param linkMatch Link match.
+	 * @param count Number of lines to remove.
+	 * 
+	 * @return Number of removed characters, including delimiters.
 	 */
-	private void executeLink(LinkMatch linkMatch)
+	private int removeFirstLines(int count)
 	{
-		GrepLinkAdapter adapter = GrepLineStyleListener.createLinkAdapter(linkMatch, shell, project);
-		adapter.openLink();
+		if(count <= 0)
+		{
+			return 0;
+		}
+		
+		int removedChars = count < lines.size() ? lines.getOffset(count) : charCount;
+		lines.removeFirst(count);
+		charCount -= removedChars;
+		
+		return removedChars;
 	}
-
+	
 	/**
-	 * Adds a line to the filtered text.
+	 * Evicts the oldest lines from the filtered text and informs listeners
+	 * about the removed range.
 	 * 
-	 * @param text New line of text.
-	 * @param rewritten Whether the line has been rewritten.
-	 * @param ranges Optional array of styles assigned to the line.
+	 * @param count Number of lines to evict.
 	 */
-	private void addLine(String text, boolean rewritten, GrepStyleRange[] ranges)
+	private void evictLines(int count)
 	{
-		Line line = new Line(text, rewritten, ranges);
-		lines.add(line);
-		lineOffsets.add(charCount);
-		originalOffsets.add(originalOffset);
-		charCount += text.length() + delimiter.length();
+		if(count <= 0)
+		{
+			return;
+		}
+		
+		TextChangingEvent changingEvent = new TextChangingEvent(this);
+		changingEvent.start = 0;
+		changingEvent.replaceLineCount = count;
+		changingEvent.replaceCharCount = count < lines.size() ? lines.getOffset(count) : charCount;
+		changingEvent.newText = ""; //$NON-NLS-1$
 		
-		maxProcessedLineOffset = Math.max(maxProcessedLineOffset, originalOffset);
+		for(TextChangeListener listener: listeners)
+		{
+			listener.textChanging(changingEvent);
+		}
+		
+		removeFirstLines(count);
+		TextChangedEvent changedEvent = new TextChangedEvent(this);
+		
+		for(TextChangeListener listener: listeners)
+		{
+			listener.textChanged(changedEvent);
+		}
 	}
 
 	/**
-	 * Returns the filtered text as a list of lines.
+	 * Returns the filtered text as a store of lines.
 	 * 
-	 * The returned list is the original list used by the text filter instance.
+	 * The returned store is the original instance used by the text filter.
 	 * Clients should not modify it.
 	 * 
 	 * @return Filtered text lines.
 	 */
-	public LinkedList<Line> getLines()
+	public LineStore getLines()
 	{
 		return lines;
 	}
@@ -840,90 +1035,57 @@ public class TextFilter implements TextChangeListener, StyledTextContent, IGrepC
 	}
 
 	/**
-	 * Handles new text when the text of the original content changes. Deleted
-	 * text is ignored, and all newly added text is assumed to be added at the
-	 * end of the existing content.
+	 * Queues new text for filtering when the text of the original content
+	 * changes. Deleted text is ignored, and all newly added text is assumed to
+	 * be added at the end of the existing content.
 	 * 
-	 * If the new text causes changes to the filtered text, a matching text
-	 * changing event is sent to the listeners.
+	 * Listeners are informed about changes to the filtered text once the
+	 * background worker has processed the new text.
 	 * 
 	 * @see org.eclipse.swt.custom.TextChangeListener#textChanging(org.eclipse.swt.custom.TextChangingEvent)
 	 */
 	@Override
 	public void textChanging(TextChangingEvent event)
 	{
-		boolean clear = event.newCharCount == 0 && event.replaceCharCount == originalOffset;
-//		int eventReplaceCharCount = 0;
-//		int eventReplaceLineCount = 0;
+		boolean clear = event.newCharCount == 0 && event.replaceCharCount == originalContent.getCharCount();
 		
 		if(clear)
 		{
-//			eventReplaceCharCount = getCharCount();
-//			eventReplaceLineCount = getLineCount() - 2; // FIXME
-			
 			// Clearing console
 			clear();
-		}
-		
-		TextChangingEvent newEvent = handleNewText(event.newText, true);
-		
-//		if(clear)
-//		{
-//			if(newEvent == null)
-//			{
-//				newEvent = new TextChangingEvent(this);//(StyledTextContent) event.getSource());
-//			}
-//			
-//			newEvent.replaceCharCount = eventReplaceCharCount;
-//			newEvent.replaceLineCount = eventReplaceLineCount;
-//			newEvent.newText = "";
-//		}
-
-		sentChanging = newEvent != null;
-		
-		if(!clear)
-		{
-			originalOffsetDelta += event.replaceCharCount;
-		}
-
-		if(clear)
-		{
+			
 			for(TextChangeListener listener: listeners)
 			{
 				listener.textSet(new TextChangedEvent(this));
 			}
 		}
+		else
+		{
+			originalOffsetDelta += event.replaceCharCount;
+		}
 		
-		if(sentChanging)
+		if(event.newText != null && event.newText.length() > 0)
 		{
-			for(TextChangeListener listener: listeners)
+			if(refreshJob != null)
 			{
-				listener.textChanging(newEvent);
+				refreshBuffer.append(event.newText);
+			}
+			else
+			{
+				worker.enqueue(event.newText, true, !listeners.isEmpty());
 			}
 		}
 	}
 
 	/**
-	 * After a text change operation of the original content has completed, also
-	 * sends a textChanged event to the listeners if the original text change
-	 * caused the filtered text to be changed as well (in which case a
-	 * textChanging event has already been sent).
+	 * Does nothing. Changes to the filtered text are sent to the listeners when
+	 * the results of the background worker are applied.
 	 *  
 	 * @see org.eclipse.swt.custom.TextChangeListener#textChanged(org.eclipse.swt.custom.TextChangedEvent)
 	 */
 	@Override
 	public void textChanged(TextChangedEvent event)
 	{
-		if(sentChanging)
-		{
-			sentChanging = false;
-			TextChangedEvent newEvent = new TextChangedEvent(this);
-
-			for(TextChangeListener listener: listeners)
-			{
-				listener.textChanged(newEvent);
-			}
-		}
 	}
 
 	/**
@@ -989,22 +1151,7 @@ public class TextFilter implements TextChangeListener, StyledTextContent, IGrepC
 			return lines.size();
 		}
 		
-		int i = lineOffsets.size() - 1;
-		Iterator<Integer> itr = lineOffsets.descendingIterator();
-		
-		while(itr.hasNext())
-		{
-			int lineOffset = itr.next();
-			
-			if(lineOffset <= offset)
-			{
-				break;
-			}
-			
-			i--;
-		}
-		
-		return i;
+		return lines.indexOfOffset(offset);
 	}
 
 	/**
@@ -1040,7 +1187,7 @@ public class TextFilter implements TextChangeListener, StyledTextContent, IGrepC
 			return charCount;
 		}
 		
-		return lineOffsets.get(lineIndex);
+		return lines.getOffset(lineIndex);
 	}
 	
 	/**
@@ -1064,10 +1211,10 @@ public class TextFilter implements TextChangeListener, StyledTextContent, IGrepC
 		}
 		else if(lineIndex >= lines.size())
 		{
-			return originalOffsets.getLast() - originalOffsetDelta;
+			return lines.getOriginalOffset(lines.size() - 1) - originalOffsetDelta;
 		}
 		
-		return originalOffsets.get(lineIndex) - originalOffsetDelta;
+		return lines.getOriginalOffset(lineIndex) - originalOffsetDelta;
 	}
 
 	/**
@@ -1082,7 +1229,7 @@ public class TextFilter implements TextChangeListener, StyledTextContent, IGrepC
 		}
 		
 		int lineIndex = getLineAtOffset(start);
-		int startLineOffset = lineOffsets.get(lineIndex);
+		int startLineOffset = lines.getOffset(lineIndex);
 		int remaining = length;
 		StringBuilder sb = new StringBuilder();
 
@@ -1176,7 +1323,13 @@ public class TextFilter implements TextChangeListener, StyledTextContent, IGrepC
 	@Override
 	public void settingsChanged()
 	{
-		this.matchLength = Activator.getDefault().getFilterMatchLength();
+		Activator activator = Activator.getDefault();
+		this.matchLength = activator.getFilterMatchLength();
+		this.maxLines = activator.getGrepViewMaxLines();
+		this.maxChars = activator.getGrepViewMaxChars();
+		this.updateInterval = activator.getGrepViewUpdateInterval();
+		this.refreshThreads = activator.getRefreshThreads();
+		notificationThrottle.setWindow(activator.getNotificationWindow());
 	}
 
 	/**
@@ -1207,7 +1360,7 @@ public class TextFilter implements TextChangeListener, StyledTextContent, IGrepC
 	public void setFilterExpressions(LinkedList<GrepExpressionItem> filterExpressions)
 	{
 		this.filterExpressions = filterExpressions;
-		actionItems = null;
+		ruleSet = null;
 	}
 	
 	/**
@@ -1220,7 +1373,7 @@ public class TextFilter implements TextChangeListener, StyledTextContent, IGrepC
 	public void setStatisticsExpressions(LinkedHashSet<GrepExpressionItem> statisticsExpressions)
 	{
 		this.statisticsExpressions = statisticsExpressions;
-		actionItems = null;
+		ruleSet = null;
 	}
 	
 	/**
@@ -1234,7 +1387,24 @@ public class TextFilter implements TextChangeListener, StyledTextContent, IGrepC
 			LinkedHashSet<GrepExpressionItem> notificationExpressions)
 	{
 		this.notificationExpressions = notificationExpressions;
-		actionItems = null;
+		ruleSet = null;
+	}
+	
+	/**
+	 * Sets the filter, statistics and notification expressions to those of a
+	 * compiled rule set. Processors created afterwards reuse the rule set's
+	 * compiled filter pattern and prefilter. Does not affect already filtered
+	 * lines. refresh() should be called if previously filtered content should
+	 * be refreshed.
+	 * 
+	 * @param ruleSet Compiled rule set.
+	 */
+	public void setRuleSet(CompiledRuleSet ruleSet)
+	{
+		this.filterExpressions = new LinkedList<GrepExpressionItem>(ruleSet.getFilterItems());
+		this.statisticsExpressions = new LinkedHashSet<GrepExpressionItem>(ruleSet.getStatisticsItems());
+		this.notificationExpressions = new LinkedHashSet<GrepExpressionItem>(ruleSet.getNotificationItems());
+		this.ruleSet = ruleSet;
 	}
 
 	/**
@@ -0,0 +1,155 @@
+/*******************************************************************************
+ * Copyright (c) 2008 - 2014 Marian Schedenig
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marian Schedenig - initial API and implementation
+ *******************************************************************************/
+
+package name.schedenig.eclipse.grepconsole.adapters.links;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import org.eclipse.swt.widgets.Display;
+
+/**
+ * Executes autostart links one at a time on the UI thread.
+ *
+ * The queue is bounded: links added while it is full are dropped. A link is
+ * also dropped if a link with the same resolved target is already waiting
+ * for execution, so a burst of matches starts each command, script, file or
+ * URL only once.
+ *
+ * Must only be used on the UI thread. Shared by all consoles.
+ *
+ * @author msched
+ */
+public class AutostartQueue
+{
+	/** Maximum number of links waiting for execution. */
+	public static final int MAX_PENDING = 10;
+
+	/** Display. */
+	private Display display;
+
+	/** Links waiting for execution, by resolved target. */
+	private LinkedHashMap<String, GrepLinkAdapter> pending = new LinkedHashMap<String, GrepLinkAdapter>();
+
+	/** Whether execution of the next link has been scheduled. */
+	private boolean scheduled;
+
+	/** Number of links dropped since the queue was created. */
+	private int dropped;
+
+	/** Executes the next pending link. */
+	private Runnable executeRunnable = new Runnable()
+	{
+		@Override
+		public void run()
+		{
+			executeNext();
+		}
+	};
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param display Display.
+	 */
+	public AutostartQueue(Display display)
+	{
+		this.display = display;
+	}
+
+	/**
+	 * Adds a link to the queue.
+	 *
+	 * @param adapter Link adapter.
+	 *
+	 * @return <code>true</code> if the link has been queued,
+	 * 		<code>false</code> if it has been dropped.
+	 */
+	public boolean add(GrepLinkAdapter adapter)
+	{
+		String key = getTargetKey(adapter);
+
+		if(pending.containsKey(key) || pending.size() >= MAX_PENDING)
+		{
+			dropped++;
+			return false;
+		}
+
+		pending.put(key, adapter);
+
+		if(!scheduled)
+		{
+			scheduled = true;
+			display.asyncExec(executeRunnable);
+		}
+
+		return true;
+	}
+
+	/**
+	 * Returns the number of links dropped since the queue was created.
+	 *
+	 * @return Number of dropped links.
+	 */
+	public int getDropped()
+	{
+		return dropped;
+	}
+
+	/**
+	 * Executes the oldest pending link and schedules the next one, so the UI
+	 * stays responsive between executions.
+	 */
+	private void executeNext()
+	{
+		scheduled = false;
+		Iterator<GrepLinkAdapter> it = pending.values().iterator();
+
+		if(!it.hasNext())
+		{
+			return;
+		}
+
+		GrepLinkAdapter adapter = it.next();
+		it.remove();
+
+		if(!pending.isEmpty())
+		{
+			scheduled = true;
+			display.asyncExec(executeRunnable);
+		}
+
+		adapter.openLink();
+	}
+
+	/**
+	 * Returns a key identifying the resolved target of a link. Links with the
+	 * same key would have the same effect when executed.
+	 *
+	 * The tool tip text contains the resolved target for most link types.
+	 * Scripts access the whole match, so their key includes the matched line.
+	 *
+	 * @param adapter Link adapter.
+	 *
+	 * @return Key.
+	 */
+	private static String getTargetKey(GrepLinkAdapter adapter)
+	{
+		String key = adapter.getClass().getName() + ':' + adapter.getToolTipText();
+
+		if(adapter instanceof ScriptLinkAdapter)
+		{
+			key += ':' + adapter.getMatch().getWholeLine();
+		}
+
+		return key;
+	}
+}
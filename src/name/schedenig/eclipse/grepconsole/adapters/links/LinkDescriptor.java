@@ -0,0 +1,138 @@
+/*******************************************************************************
+ * Copyright (c) 2008 - 2014 Marian Schedenig
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marian Schedenig - initial API and implementation
+ *******************************************************************************/
+
+package name.schedenig.eclipse.grepconsole.adapters.links;
+
+import name.schedenig.eclipse.grepconsole.adapters.GrepStyleRange;
+
+/**
+ * Identifies the link of a styled segment by the expression item, capture
+ * group and span it originates from. Descriptors are assigned to style ranges
+ * instead of link adapters, so painting does not create adapters. The
+ * adapter is only created when the user actually interacts with the link, by
+ * looking up the matching grep style range.
+ *
+ * @author msched
+ */
+public class LinkDescriptor
+{
+	/** ID of the expression item. */
+	private String itemId;
+
+	/** Index of the capture group. */
+	private int group;
+
+	/** Index of the first character of the linked range. */
+	private int firstIndex;
+
+	/** Index of the last character of the linked range. */
+	private int lastIndex;
+
+	/**
+	 * Creates a new instance for the link of a grep style range.
+	 *
+	 * @param range Grep style range.
+	 */
+	public LinkDescriptor(GrepStyleRange range)
+	{
+		this.itemId = range.getExpressionItem() == null ? null : range.getExpressionItem().getId();
+		this.group = range.getGroup();
+		this.firstIndex = range.getFirstIndex();
+		this.lastIndex = range.getLastIndex();
+	}
+
+	/**
+	 * Returns the ID of the expression item.
+	 *
+	 * @return Item ID.
+	 */
+	public String getItemId()
+	{
+		return itemId;
+	}
+
+	/**
+	 * Returns the capture group index.
+	 *
+	 * @return Capture group index.
+	 */
+	public int getGroup()
+	{
+		return group;
+	}
+
+	/**
+	 * Returns the index of the first character of the linked range.
+	 *
+	 * @return First character index.
+	 */
+	public int getFirstIndex()
+	{
+		return firstIndex;
+	}
+
+	/**
+	 * Returns the index of the last character of the linked range.
+	 *
+	 * @return Last character index.
+	 */
+	public int getLastIndex()
+	{
+		return lastIndex;
+	}
+
+	/**
+	 * Checks whether a grep style range carries the link identified by this
+	 * descriptor.
+	 *
+	 * @param range Grep style range.
+	 *
+	 * @return <code>true</code> if the range matches.
+	 */
+	public boolean matches(GrepStyleRange range)
+	{
+		if(range.getLinkMatch() == null || range.getExpressionItem() == null)
+		{
+			return false;
+		}
+
+		return range.getGroup() == group && range.getFirstIndex() == firstIndex
+				&& range.getLastIndex() == lastIndex
+				&& range.getExpressionItem().getId().equals(itemId);
+	}
+
+	/**
+	 * @see java.lang.Object#hashCode()
+	 */
+	@Override
+	public int hashCode()
+	{
+		return ((itemId == null ? 0 : itemId.hashCode()) * 31 + group) * 31 + firstIndex;
+	}
+
+	/**
+	 * @see java.lang.Object#equals(java.lang.Object)
+	 */
+	@Override
+	public boolean equals(Object obj)
+	{
+		if(!(obj instanceof LinkDescriptor))
+		{
+			return false;
+		}
+
+		LinkDescriptor other = (LinkDescriptor) obj;
+
+		return group == other.group && firstIndex == other.firstIndex
+				&& lastIndex == other.lastIndex
+				&& (itemId == null ? other.itemId == null : itemId.equals(other.itemId));
+	}
+}
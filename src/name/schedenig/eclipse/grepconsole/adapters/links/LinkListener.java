@@ -154,14 +154,14 @@ public class LinkListener implements KeyListener, MouseListener,
 	}
 
 	/**
-	 * Calculates the style at the specified mouse location.
+	 * Finds the link at the specified mouse location and creates its adapter.
 	 * 
 	 * @param x X coordinate.
 	 * @param y Y coordinate.
 	 * 
-	 * @return Style, possibly <code>null</code>.
+	 * @return Link adapter, possibly <code>null</code>.
 	 */
-	private StyleRange getStyleAt(int x, int y)
+	private GrepLinkAdapter getLinkAt(int x, int y)
 	{
 		try
 		{
@@ -201,7 +201,7 @@ public class LinkListener implements KeyListener, MouseListener,
 					{
 						StyleRange styleRange = new StyleRange(); // we don't need the indexes
 						lineStyleListener.collapseStyles(foundStyles, styleRange);
-						return styleRange;
+						return lineStyleListener.resolveLink(styleRange, foundStyles);
 					}
 				}
 			}
@@ -209,7 +209,7 @@ public class LinkListener implements KeyListener, MouseListener,
 
 			String lineText = styledText.getLine(lineIndex);
 
-			return lineStyleListener.lineGetStyleAt(lineOffset, lineText, offset, false, true);
+			return lineStyleListener.getLinkAt(lineOffset, lineText, offset);
 		}
 		catch(IllegalArgumentException ex)
 		{
@@ -248,12 +248,12 @@ public class LinkListener implements KeyListener, MouseListener,
 	 */
 	public void updateLinkCursor()
 	{
-		StyleRange style = getStyleAt(lastX, lastY);
+		GrepLinkAdapter link = getLinkAt(lastX, lastY);
 		
-		if(style != null && style.data instanceof GrepLinkAdapter)
+		if(link != null)
 		{
 			styledText.setCursor(Activator.getDefault().getLinkCursor());
-			styledText.setToolTipText(((GrepLinkAdapter) style.data).getToolTipText());
+			styledText.setToolTipText(link.getToolTipText());
 		}
 		else
 		{
@@ -288,11 +288,10 @@ public class LinkListener implements KeyListener, MouseListener,
 			return;
 		}
 		
-		StyleRange style = getStyleAt(e.x, e.y);
+		GrepLinkAdapter link = getLinkAt(e.x, e.y);
 
-		if(style != null && style.data instanceof GrepLinkAdapter)
+		if(link != null)
 		{
-			GrepLinkAdapter link = ((GrepLinkAdapter) style.data);
 			link.openLink();
 		}
 	}
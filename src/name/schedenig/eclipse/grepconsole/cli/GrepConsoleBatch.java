@@ -0,0 +1,604 @@
+/*******************************************************************************
+ * Copyright (c) 2008 - 2014 Marian Schedenig
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marian Schedenig - initial API and implementation
+ *******************************************************************************/
+
+package name.schedenig.eclipse.grepconsole.cli;
+
+import java.io.BufferedWriter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import name.schedenig.eclipse.grepconsole.adapters.FilterBatch;
+import name.schedenig.eclipse.grepconsole.adapters.FilterBatch.StatisticsUpdate;
+import name.schedenig.eclipse.grepconsole.adapters.FilterProcessor;
+import name.schedenig.eclipse.grepconsole.adapters.StatisticsEntry;
+import name.schedenig.eclipse.grepconsole.engine.ExpressionProfiler;
+import name.schedenig.eclipse.grepconsole.engine.LineMatcher;
+import name.schedenig.eclipse.grepconsole.engine.MatchGuard;
+import name.schedenig.eclipse.grepconsole.engine.MatchGuard.IMatchGuardListener;
+import name.schedenig.eclipse.grepconsole.model.GrepExpressionItem;
+import name.schedenig.eclipse.grepconsole.model.GrepExpressionRootFolder;
+import name.schedenig.eclipse.grepconsole.model.InheritedFlagResolver;
+import name.schedenig.eclipse.grepconsole.model.xml.XmlHandler;
+import name.schedenig.eclipse.grepconsole.model.xml.XmlHandlerException;
+
+/**
+ * Applies Grep Console expressions to log files outside of Eclipse.
+ *
+ * Reads an expressions XML file, as exported from the expression management
+ * dialog, and filters the input files (or standard input) the same way the
+ * Grep View filters a console: every line matched by a filter expression is
+ * written to the output, rewritten if the expression has a rewrite pattern.
+ * Statistics are collected and printed to standard error when done, followed
+ * by the throughput.
+ *
+ * Input is read through large NIO buffers and cut into chunks of complete
+ * lines, which are filtered on several threads. Results are written in the
+ * original line order.
+ *
+ * Neither a workbench nor an OSGi framework is started, and no plug-in or
+ * workbench classes are loaded. Besides the plug-in's own classes, the class
+ * path only needs the following jars (the versions shipped with the target
+ * platform), as the expression model, the rewrite parameter helpers and the
+ * filter results refer to some of their classes:
+ *
+ * <ul>
+ * <li><code>org.eclipse.swt.&lt;ws&gt;.&lt;os&gt;.&lt;arch&gt;</code>
+ * 		(<code>RGB</code>)</li>
+ * <li><code>org.eclipse.jface</code> (<code>IPreferenceStore</code>)</li>
+ * <li><code>org.eclipse.text</code> (<code>BadLocationException</code>)</li>
+ * </ul>
+ *
+ * For example:
+ *
+ * <pre>
+ * java -cp grepconsole.jar:org.eclipse.swt.gtk.linux.x86_64.jar:org.eclipse.jface.jar:org.eclipse.text.jar
+ *     name.schedenig.eclipse.grepconsole.cli.GrepConsoleBatch -e expressions.xml app.log
+ * </pre>
+ *
+ * @author msched
+ */
+public class GrepConsoleBatch
+{
+	/**
+	 * Filters a chunk of complete lines.
+	 *
+	 * @author msched
+	 */
+	private static class ChunkTask implements Callable<FilterBatch>
+	{
+		/** Processor for the chunk. */
+		private FilterProcessor processor;
+
+		/** Chunk text. */
+		private String text;
+
+		/**
+		 * Creates a new instance.
+		 *
+		 * @param processor Processor for the chunk.
+		 * @param text Chunk text.
+		 */
+		public ChunkTask(FilterProcessor processor, String text)
+		{
+			this.processor = processor;
+			this.text = text;
+		}
+
+		/**
+		 * @see java.util.concurrent.Callable#call()
+		 */
+		@Override
+		public FilterBatch call()
+		{
+			FilterBatch batch = new FilterBatch(0);
+			processor.process(text, false, true, batch);
+
+			return batch;
+		}
+	}
+
+	/** Size of the input buffer, in bytes. */
+	private static final int BUFFER_SIZE = 4 * 1024 * 1024;
+
+	/** Minimum number of characters per chunk filtered by a single thread. */
+	private static final int CHUNK_LENGTH = 1024 * 1024;
+
+	/** Number of chunks per thread which may be queued before results are
+	 *  written. Limits memory use while keeping all threads busy. */
+	private static final int CHUNKS_PER_THREAD = 2;
+
+	/** Line delimiter. Carriage returns preceding it are stripped as well. */
+	private static final String DELIMITER = "\n"; //$NON-NLS-1$
+
+	/** Command line usage. */
+	private static final String USAGE =
+			"Usage: GrepConsoleBatch -e <expressions.xml> [options] [<file>...]\n" //$NON-NLS-1$
+			+ "Filters log files with Grep Console expressions. Reads standard input if\n" //$NON-NLS-1$
+			+ "no file (or \"-\") is given.\n\n" //$NON-NLS-1$
+			+ "  -e <file>     Expressions XML file (required)\n" //$NON-NLS-1$
+			+ "  -o <file>     Output file (default: standard output)\n" //$NON-NLS-1$
+			+ "  -t <n>        Number of threads (default: number of processors)\n" //$NON-NLS-1$
+			+ "  -m <n>        Characters matched per line, 0 for all (default: " + LineMatcher.DEFAULT_FILTER_MATCH_LENGTH + ")\n" //$NON-NLS-1$ //$NON-NLS-2$
+			+ "  -l <ms>       Match time limit per expression and line, 0 for none (default: " + MatchGuard.DEFAULT_TIME_LIMIT + ")\n" //$NON-NLS-1$ //$NON-NLS-2$
+			+ "  -c <charset>  Input and output character set (default: UTF-8)\n"; //$NON-NLS-1$
+
+	/** Filter expressions. */
+	private List<GrepExpressionItem> filterExpressions;
+
+	/** Statistics expressions. */
+	private LinkedHashSet<GrepExpressionItem> statisticsExpressions;
+
+	/** Maximum number of characters to match per line. */
+	private int matchLength = LineMatcher.DEFAULT_FILTER_MATCH_LENGTH;
+
+	/** Match guard. */
+	private MatchGuard guard = new MatchGuard(MatchGuard.DEFAULT_TIME_LIMIT);
+
+	/** Number of filter threads. */
+	private int threads = Runtime.getRuntime().availableProcessors();
+
+	/** Character set of input and output. */
+	private Charset charset = Charset.forName("UTF-8"); //$NON-NLS-1$
+
+	/** Output writer. */
+	private Writer out;
+
+	/** Statistics counts by label. */
+	private Map<String, Long> counts = new LinkedHashMap<String, Long>();
+
+	/** Latest statistics values by label. */
+	private Map<String, String> values = new LinkedHashMap<String, String>();
+
+	/** Number of bytes read. */
+	private long bytesRead;
+
+	/** Number of lines written. */
+	private long linesWritten;
+
+	/**
+	 * Entry point.
+	 *
+	 * @param args Command line arguments.
+	 */
+	public static void main(String[] args)
+	{
+		try
+		{
+			System.exit(new GrepConsoleBatch().run(args));
+		}
+		catch(IOException ex)
+		{
+			System.err.println(ex.getLocalizedMessage());
+			System.exit(2);
+		}
+		catch(XmlHandlerException ex)
+		{
+			System.err.println(ex.getLocalizedMessage());
+			System.exit(2);
+		}
+	}
+
+	/**
+	 * Parses the command line and processes all input.
+	 *
+	 * @param args Command line arguments.
+	 *
+	 * @return Exit code.
+	 *
+	 * @throws IOException If reading or writing fails.
+	 * @throws XmlHandlerException If the expressions file is not valid.
+	 */
+	public int run(String[] args) throws IOException, XmlHandlerException
+	{
+		String expressionsFile = null;
+		String outputFile = null;
+		List<String> inputFiles = new ArrayList<String>();
+
+		try
+		{
+			for(int i = 0; i < args.length; i++)
+			{
+				String arg = args[i];
+
+				if(arg.equals("-e")) //$NON-NLS-1$
+				{
+					expressionsFile = args[++i];
+				}
+				else if(arg.equals("-o")) //$NON-NLS-1$
+				{
+					outputFile = args[++i];
+				}
+				else if(arg.equals("-t")) //$NON-NLS-1$
+				{
+					threads = Math.max(1, Integer.parseInt(args[++i]));
+				}
+				else if(arg.equals("-m")) //$NON-NLS-1$
+				{
+					matchLength = Integer.parseInt(args[++i]);
+				}
+				else if(arg.equals("-l")) //$NON-NLS-1$
+				{
+					guard.setTimeLimit(Integer.parseInt(args[++i]));
+				}
+				else if(arg.equals("-c")) //$NON-NLS-1$
+				{
+					charset = Charset.forName(args[++i]);
+				}
+				else if(arg.startsWith("-") && arg.length() > 1) //$NON-NLS-1$
+				{
+					throw new IllegalArgumentException(arg);
+				}
+				else
+				{
+					inputFiles.add(arg);
+				}
+			}
+		}
+		catch(RuntimeException ex)
+		{
+			// Missing values, invalid numbers, unknown options and character sets
+			System.err.print(USAGE);
+			return 1;
+		}
+
+		if(expressionsFile == null)
+		{
+			System.err.print(USAGE);
+			return 1;
+		}
+
+		if(inputFiles.isEmpty())
+		{
+			inputFiles.add("-"); //$NON-NLS-1$
+		}
+
+		readExpressions(expressionsFile);
+
+		guard.addListener(new IMatchGuardListener()
+		{
+			@Override
+			public void expressionSuspended(GrepExpressionItem item)
+			{
+				String name = item.getName() == null ? item.getGrepExpression() : item.getName();
+				System.err.println("Expression suspended after exceeding the time limit repeatedly: " + name); //$NON-NLS-1$
+			}
+		});
+
+		OutputStream outStream = outputFile == null ? System.out : new FileOutputStream(outputFile);
+		out = new BufferedWriter(new OutputStreamWriter(outStream, charset), BUFFER_SIZE);
+		ExecutorService executor = threads > 1 ? createExecutor() : null;
+		long startTime = System.nanoTime();
+
+		try
+		{
+			for(String inputFile: inputFiles)
+			{
+				InputStream in = inputFile.equals("-") ? System.in : new FileInputStream(inputFile); //$NON-NLS-1$
+
+				try
+				{
+					process(Channels.newChannel(in), executor);
+				}
+				finally
+				{
+					if(in != System.in)
+					{
+						in.close();
+					}
+				}
+			}
+		}
+		finally
+		{
+			if(executor != null)
+			{
+				executor.shutdownNow();
+			}
+
+			if(outputFile == null)
+			{
+				out.flush();
+			}
+			else
+			{
+				out.close();
+			}
+		}
+
+		printSummary(System.err, System.nanoTime() - startTime);
+
+		return 0;
+	}
+
+	/**
+	 * Reads the expressions file and collects the filter and statistics items,
+	 * using the items' default flags.
+	 *
+	 * @param fileName Expressions file.
+	 *
+	 * @throws IOException If the file cannot be read.
+	 * @throws XmlHandlerException If the file is not valid.
+	 */
+	private void readExpressions(String fileName) throws IOException, XmlHandlerException
+	{
+		InputStream in = new FileInputStream(fileName);
+		GrepExpressionRootFolder root;
+
+		try
+		{
+			root = new XmlHandler().readExpressions(in);
+		}
+		finally
+		{
+			in.close();
+		}
+
+		filterExpressions = new LinkedList<GrepExpressionItem>();
+		InheritedFlagResolver.FILTER_RESOLVER.collectItems(filterExpressions, root, null);
+
+		statisticsExpressions = new LinkedHashSet<GrepExpressionItem>();
+		InheritedFlagResolver.STATISTICS_RESOLVER.collectItems(statisticsExpressions, root, null);
+	}
+
+	/**
+	 * Creates the executor used for filtering chunks.
+	 *
+	 * @return Executor.
+	 */
+	private ExecutorService createExecutor()
+	{
+		return Executors.newFixedThreadPool(threads, new ThreadFactory()
+		{
+			@Override
+			public Thread newThread(Runnable r)
+			{
+				Thread thread = new Thread(r, "Grep Console batch"); //$NON-NLS-1$
+				thread.setDaemon(true);
+
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Filters an input stream. Complete chunks of lines are filtered in
+	 * parallel if an executor is provided, and their results are written in
+	 * order.
+	 *
+	 * @param channel Input channel.
+	 * @param executor Executor, or <code>null</code> to filter on the calling
+	 * 		thread.
+	 *
+	 * @throws IOException If reading or writing fails.
+	 */
+	private void process(ReadableByteChannel channel, ExecutorService executor) throws IOException
+	{
+		FilterProcessor processor = new FilterProcessor(DELIMITER, matchLength, filterExpressions, statisticsExpressions, new LinkedHashSet<GrepExpressionItem>(), null, guard, new ExpressionProfiler());
+		CharsetDecoder decoder = charset.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+		ByteBuffer bytes = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+		StringBuilder pending = new StringBuilder();
+		int nextCut = CHUNK_LENGTH;
+		LinkedList<Future<FilterBatch>> chunks = new LinkedList<Future<FilterBatch>>();
+		boolean eof = false;
+
+		while(!eof)
+		{
+			int read = channel.read(bytes);
+			eof = read < 0;
+
+			if(read > 0)
+			{
+				bytesRead += read;
+			}
+
+			bytes.flip();
+			CoderResult result;
+
+			do
+			{
+				result = decoder.decode(bytes, chars, eof);
+				drain(chars, pending);
+			}
+			while(result.isOverflow());
+
+			if(eof)
+			{
+				do
+				{
+					result = decoder.flush(chars);
+					drain(chars, pending);
+				}
+				while(result.isOverflow());
+			}
+
+			bytes.compact();
+
+			if(pending.length() < nextCut)
+			{
+				continue;
+			}
+
+			int end = processor.findLastLineEnd(pending);
+
+			if(end == 0)
+			{
+				// Very long line; try again once more text has been read
+				nextCut = pending.length() * 2;
+				continue;
+			}
+
+			// Chunks only contain complete lines, so sequential filtering can reuse
+			// the processor
+			FilterProcessor chunkProcessor = executor == null ? processor : processor.createChunkProcessor(0);
+			ChunkTask task = new ChunkTask(chunkProcessor, pending.substring(0, end));
+			pending.delete(0, end);
+			nextCut = CHUNK_LENGTH;
+
+			if(executor == null)
+			{
+				write(task.call());
+			}
+			else
+			{
+				chunks.add(executor.submit(task));
+
+				while(chunks.size() > threads * CHUNKS_PER_THREAD)
+				{
+					write(chunks.removeFirst());
+				}
+			}
+		}
+
+		while(!chunks.isEmpty())
+		{
+			write(chunks.removeFirst());
+		}
+
+		if(pending.length() > 0)
+		{
+			// Terminate the last line, so it is not kept as an incomplete line
+			pending.append(DELIMITER);
+			write(new ChunkTask(processor, pending.toString()).call());
+		}
+	}
+
+	/**
+	 * Moves decoded characters to the pending text.
+	 *
+	 * @param chars Decoded characters. Cleared afterwards.
+	 * @param pending Pending text.
+	 */
+	private static void drain(CharBuffer chars, StringBuilder pending)
+	{
+		chars.flip();
+		pending.append(chars);
+		chars.clear();
+	}
+
+	/**
+	 * Waits for a chunk to be filtered and writes its results.
+	 *
+	 * @param chunk Chunk.
+	 *
+	 * @throws IOException If writing fails.
+	 */
+	private void write(Future<FilterBatch> chunk) throws IOException
+	{
+		try
+		{
+			write(chunk.get());
+		}
+		catch(InterruptedException ex)
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException(ex.toString());
+		}
+		catch(ExecutionException ex)
+		{
+			Throwable cause = ex.getCause();
+
+			if(cause instanceof RuntimeException)
+			{
+				throw (RuntimeException) cause;
+			}
+
+			throw new IOException(String.valueOf(cause));
+		}
+	}
+
+	/**
+	 * Writes the filtered lines of a batch and adds its statistics updates.
+	 *
+	 * @param batch Batch.
+	 *
+	 * @throws IOException If writing fails.
+	 */
+	private void write(FilterBatch batch) throws IOException
+	{
+		int lineCount = batch.getLineCount();
+
+		for(int i = 0; i < lineCount; i++)
+		{
+			out.write(batch.getLine(i).getText());
+			out.write(DELIMITER);
+		}
+
+		linesWritten += lineCount;
+
+		for(StatisticsUpdate update: batch.getStatisticsUpdates())
+		{
+			if(update.getType() == StatisticsEntry.Type.COUNT)
+			{
+				Long count = counts.get(update.getLabel());
+				counts.put(update.getLabel(), count == null ? 1 : count + 1);
+			}
+			else
+			{
+				values.put(update.getLabel(), update.getValue());
+			}
+		}
+	}
+
+	/**
+	 * Prints the collected statistics and the throughput.
+	 *
+	 * @param stream Target stream.
+	 * @param nanos Processing time, in nanoseconds.
+	 */
+	private void printSummary(PrintStream stream, long nanos)
+	{
+		for(Map.Entry<String, Long> entry: counts.entrySet())
+		{
+			stream.println(entry.getKey() + ": " + entry.getValue()); //$NON-NLS-1$
+		}
+
+		for(Map.Entry<String, String> entry: values.entrySet())
+		{
+			stream.println(entry.getKey() + ": " + entry.getValue()); //$NON-NLS-1$
+		}
+
+		double seconds = nanos / 1000000000.0;
+		double megabytes = bytesRead / (1024.0 * 1024.0);
+
+		stream.println(String.format("%d lines written; %.1f MB read in %.2f s (%.1f MB/s)", //$NON-NLS-1$
+				linesWritten, megabytes, seconds, seconds > 0 ? megabytes / seconds : 0));
+	}
+}
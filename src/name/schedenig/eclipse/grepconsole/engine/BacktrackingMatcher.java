@@ -0,0 +1,120 @@
+/*******************************************************************************
+ * Copyright (c) 2008 - 2014 Marian Schedenig
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marian Schedenig - initial API and implementation
+ *******************************************************************************/
+
+package name.schedenig.eclipse.grepconsole.engine;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Expression matcher using the JDK's backtracking regular expression engine.
+ * Supports the full pattern syntax, but the time needed to match a line may
+ * grow exponentially with the line's length for some expressions.
+ *
+ * @author msched
+ */
+public class BacktrackingMatcher implements ExpressionMatcher
+{
+	/** JDK matcher. */
+	private Matcher matcher;
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param pattern Pattern.
+	 * @param text Text to match.
+	 */
+	public BacktrackingMatcher(Pattern pattern, CharSequence text)
+	{
+		matcher = pattern.matcher(text);
+	}
+
+	/**
+	 * @see name.schedenig.eclipse.grepconsole.engine.ExpressionMatcher#find()
+	 */
+	@Override
+	public boolean find()
+	{
+		return matcher.find();
+	}
+
+	/**
+	 * @see name.schedenig.eclipse.grepconsole.engine.ExpressionMatcher#reset(java.lang.CharSequence)
+	 */
+	@Override
+	public void reset(CharSequence text)
+	{
+		matcher.reset(text);
+	}
+
+	/**
+	 * @see java.util.regex.MatchResult#start()
+	 */
+	@Override
+	public int start()
+	{
+		return matcher.start();
+	}
+
+	/**
+	 * @see java.util.regex.MatchResult#start(int)
+	 */
+	@Override
+	public int start(int group)
+	{
+		return matcher.start(group);
+	}
+
+	/**
+	 * @see java.util.regex.MatchResult#end()
+	 */
+	@Override
+	public int end()
+	{
+		return matcher.end();
+	}
+
+	/**
+	 * @see java.util.regex.MatchResult#end(int)
+	 */
+	@Override
+	public int end(int group)
+	{
+		return matcher.end(group);
+	}
+
+	/**
+	 * @see java.util.regex.MatchResult#group()
+	 */
+	@Override
+	public String group()
+	{
+		return matcher.group();
+	}
+
+	/**
+	 * @see java.util.regex.MatchResult#group(int)
+	 */
+	@Override
+	public String group(int group)
+	{
+		return matcher.group(group);
+	}
+
+	/**
+	 * @see java.util.regex.MatchResult#groupCount()
+	 */
+	@Override
+	public int groupCount()
+	{
+		return matcher.groupCount();
+	}
+}
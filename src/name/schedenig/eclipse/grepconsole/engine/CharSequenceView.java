@@ -0,0 +1,118 @@
+/*******************************************************************************
+ * Copyright (c) 2008 - 2014 Marian Schedenig
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marian Schedenig - initial API and implementation
+ *******************************************************************************/
+
+package name.schedenig.eclipse.grepconsole.engine;
+
+/**
+ * A reusable, read only view of a range of another character sequence. Allows
+ * lines to be matched against regular expressions without copying them into
+ * new strings.
+ *
+ * The view does not copy the underlying text, so it must not be used after
+ * the text has been modified. A string is only created when
+ * {@link #toString()} is called; it is cached until the view is changed.
+ *
+ * @author msched
+ */
+public class CharSequenceView implements CharSequence
+{
+	/** Underlying text. */
+	private CharSequence text;
+
+	/** Start index in the underlying text. */
+	private int start;
+
+	/** End index in the underlying text (exclusive). */
+	private int end;
+
+	/** Cached string representation. Created on demand. */
+	private String string;
+
+	/**
+	 * Makes the view show a range of a character sequence.
+	 *
+	 * @param text Underlying text.
+	 * @param start Start index.
+	 * @param end End index (exclusive).
+	 */
+	public void set(CharSequence text, int start, int end)
+	{
+		this.text = text;
+		this.start = start;
+		this.end = end;
+
+		string = null;
+	}
+
+	/**
+	 * Makes the view show a prefix of another view.
+	 *
+	 * @param view Other view.
+	 * @param length Prefix length. Must not exceed the length of the other view.
+	 */
+	public void setPrefix(CharSequenceView view, int length)
+	{
+		String cached = length == view.length() ? view.string : null;
+
+		set(view.text, view.start, view.start + length);
+		string = cached;
+	}
+
+	/**
+	 * @see java.lang.CharSequence#length()
+	 */
+	@Override
+	public int length()
+	{
+		return end - start;
+	}
+
+	/**
+	 * @see java.lang.CharSequence#charAt(int)
+	 */
+	@Override
+	public char charAt(int index)
+	{
+		return text.charAt(start + index);
+	}
+
+	/**
+	 * Returns the specified range as a string. Unlike views, strings are
+	 * unaffected by later changes, so they can safely be kept, e.g. as matched
+	 * groups.
+	 *
+	 * @see java.lang.CharSequence#subSequence(int, int)
+	 */
+	@Override
+	public CharSequence subSequence(int subStart, int subEnd)
+	{
+		if(string != null)
+		{
+			return string.substring(subStart, subEnd);
+		}
+
+		return text.subSequence(start + subStart, start + subEnd).toString();
+	}
+
+	/**
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString()
+	{
+		if(string == null)
+		{
+			string = text.subSequence(start, end).toString();
+		}
+
+		return string;
+	}
+}
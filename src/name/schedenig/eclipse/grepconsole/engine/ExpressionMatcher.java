@@ -0,0 +1,43 @@
+/*******************************************************************************
+ * Copyright (c) 2008 - 2014 Marian Schedenig
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marian Schedenig - initial API and implementation
+ *******************************************************************************/
+
+package name.schedenig.eclipse.grepconsole.engine;
+
+import java.util.regex.MatchResult;
+
+/**
+ * Matches an expression against a text. Implemented by the JDK's backtracking
+ * engine as well as by the linear time engine, so callers do not need to know
+ * which engine is used for an expression.
+ *
+ * After a successful call of {@link #find()}, the match result methods
+ * describe the match. Their behaviour is undefined otherwise.
+ *
+ * @author msched
+ */
+public interface ExpressionMatcher extends MatchResult
+{
+	/**
+	 * Searches for the next match, starting at the end of the previous match,
+	 * or at the beginning of the text after a reset. Behaves like
+	 * {@link java.util.regex.Matcher#find()}.
+	 *
+	 * @return <code>true</code> if a match has been found.
+	 */
+	public boolean find();
+
+	/**
+	 * Resets the matcher to a new text.
+	 *
+	 * @param text Text.
+	 */
+	public void reset(CharSequence text);
+}
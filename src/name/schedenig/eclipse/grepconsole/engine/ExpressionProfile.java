@@ -0,0 +1,185 @@
+/*******************************************************************************
+ * Copyright (c) 2008 - 2014 Marian Schedenig
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marian Schedenig - initial API and implementation
+ *******************************************************************************/
+
+package name.schedenig.eclipse.grepconsole.engine;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import name.schedenig.eclipse.grepconsole.model.GrepExpressionItem;
+
+/**
+ * Profiling counters for a single expression item.
+ *
+ * Thread safe, as items are matched on the UI thread (styling) as well as on
+ * background threads (filtering).
+ *
+ * @author msched
+ */
+public class ExpressionProfile
+{
+	/**
+	 * Result of testing an item against a line.
+	 *
+	 * @author msched
+	 */
+	public static enum Outcome
+	{
+		/** The quick expression did not match. */
+		QUICK_REJECTED,
+
+		/** The main expression did not match. */
+		NOT_MATCHED,
+
+		/** The main expression matched, but so did the unless expression. */
+		UNLESS_REJECTED,
+
+		/** The item matched. */
+		MATCHED,
+
+		/** Matching exceeded the time limit. */
+		TIMED_OUT
+	}
+
+	/** Item the counters refer to. */
+	private GrepExpressionItem item;
+
+	/** Number of times the item has been tested against a line. */
+	private AtomicLong invocations = new AtomicLong();
+
+	/** Number of lines rejected by the quick expression. */
+	private AtomicLong quickRejections = new AtomicLong();
+
+	/** Number of lines matched by the item. */
+	private AtomicLong matches = new AtomicLong();
+
+	/** Number of lines rejected by the unless expression. */
+	private AtomicLong unlessRejections = new AtomicLong();
+
+	/** Number of tests which exceeded the time limit. */
+	private AtomicLong timeouts = new AtomicLong();
+
+	/** Total time spent testing the item, in nanoseconds. */
+	private AtomicLong nanos = new AtomicLong();
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param item Item the counters refer to.
+	 */
+	public ExpressionProfile(GrepExpressionItem item)
+	{
+		this.item = item;
+	}
+
+	/**
+	 * Records a test of the item against a line.
+	 *
+	 * @param outcome Test result.
+	 * @param startTime Value of {@link System#nanoTime()} when the test started.
+	 */
+	public void record(Outcome outcome, long startTime)
+	{
+		nanos.addAndGet(System.nanoTime() - startTime);
+		invocations.incrementAndGet();
+
+		switch(outcome)
+		{
+			case QUICK_REJECTED:
+				quickRejections.incrementAndGet();
+				break;
+
+			case UNLESS_REJECTED:
+				unlessRejections.incrementAndGet();
+				break;
+
+			case MATCHED:
+				matches.incrementAndGet();
+				break;
+
+			case TIMED_OUT:
+				timeouts.incrementAndGet();
+				break;
+
+			default:
+				break;
+		}
+	}
+
+	/**
+	 * Returns the item the counters refer to.
+	 *
+	 * @return Item.
+	 */
+	public GrepExpressionItem getItem()
+	{
+		return item;
+	}
+
+	/**
+	 * Returns the number of times the item has been tested against a line.
+	 *
+	 * @return Invocation count.
+	 */
+	public long getInvocations()
+	{
+		return invocations.get();
+	}
+
+	/**
+	 * Returns the number of lines rejected by the quick expression.
+	 *
+	 * @return Rejection count.
+	 */
+	public long getQuickRejections()
+	{
+		return quickRejections.get();
+	}
+
+	/**
+	 * Returns the number of lines matched by the item.
+	 *
+	 * @return Match count.
+	 */
+	public long getMatches()
+	{
+		return matches.get();
+	}
+
+	/**
+	 * Returns the number of lines rejected by the unless expression.
+	 *
+	 * @return Rejection count.
+	 */
+	public long getUnlessRejections()
+	{
+		return unlessRejections.get();
+	}
+
+	/**
+	 * Returns the number of tests which exceeded the time limit.
+	 *
+	 * @return Time out count.
+	 */
+	public long getTimeouts()
+	{
+		return timeouts.get();
+	}
+
+	/**
+	 * Returns the total time spent testing the item.
+	 *
+	 * @return Time in nanoseconds.
+	 */
+	public long getNanos()
+	{
+		return nanos.get();
+	}
+}
@@ -0,0 +1,160 @@
+/*******************************************************************************
+ * Copyright (c) 2008 - 2014 Marian Schedenig
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marian Schedenig - initial API and implementation
+ *******************************************************************************/
+
+package name.schedenig.eclipse.grepconsole.engine;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import name.schedenig.eclipse.grepconsole.model.GrepExpressionItem;
+
+/**
+ * Collects profiling counters for expression items.
+ *
+ * Profiling is disabled by default. While it is disabled,
+ * {@link #getProfile(GrepExpressionItem)} returns <code>null</code> after a
+ * single volatile read, so callers can skip taking the time altogether.
+ * Counters are kept per item ID, so all copies of an item share the same
+ * counters.
+ *
+ * Thread safe. Shared by all consoles.
+ *
+ * @author msched
+ */
+public class ExpressionProfiler
+{
+	/** Whether profiling is enabled. */
+	private volatile boolean enabled;
+
+	/** Profiles by item ID. */
+	private ConcurrentMap<String, ExpressionProfile> profiles = new ConcurrentHashMap<String, ExpressionProfile>();
+
+	/**
+	 * Enables or disables profiling. Counters collected so far are kept.
+	 *
+	 * @param enabled Whether profiling should be enabled.
+	 */
+	public void setEnabled(boolean enabled)
+	{
+		this.enabled = enabled;
+	}
+
+	/**
+	 * Returns whether profiling is enabled.
+	 *
+	 * @return <code>true</code> iff profiling is enabled.
+	 */
+	public boolean isEnabled()
+	{
+		return enabled;
+	}
+
+	/**
+	 * Returns the profile for an item, creating it if necessary.
+	 *
+	 * @param item Item.
+	 *
+	 * @return Profile, or <code>null</code> if profiling is disabled.
+	 */
+	public ExpressionProfile getProfile(GrepExpressionItem item)
+	{
+		if(!enabled || item.getId() == null)
+		{
+			return null;
+		}
+
+		ExpressionProfile profile = profiles.get(item.getId());
+
+		if(profile == null)
+		{
+			ExpressionProfile newProfile = new ExpressionProfile(item);
+			profile = profiles.putIfAbsent(item.getId(), newProfile);
+
+			if(profile == null)
+			{
+				profile = newProfile;
+			}
+		}
+
+		return profile;
+	}
+
+	/**
+	 * Returns all profiles collected so far.
+	 *
+	 * @return New list of profiles.
+	 */
+	public List<ExpressionProfile> getProfiles()
+	{
+		return new ArrayList<ExpressionProfile>(profiles.values());
+	}
+
+	/**
+	 * Discards all counters.
+	 */
+	public void reset()
+	{
+		profiles.clear();
+	}
+
+	/**
+	 * Writes a snapshot of all counters as comma separated values, one line per
+	 * item, preceded by a header line.
+	 *
+	 * @param writer Target writer.
+	 *
+	 * @throws IOException If writing fails.
+	 */
+	public void export(Writer writer) throws IOException
+	{
+		writer.write("id,name,expression,invocations,quickRejections,matches,unlessRejections,timeouts,nanos\n"); //$NON-NLS-1$
+
+		for(ExpressionProfile profile: getProfiles())
+		{
+			GrepExpressionItem item = profile.getItem();
+
+			writer.write(quote(item.getId()));
+			writer.write(',');
+			writer.write(quote(item.getName()));
+			writer.write(',');
+			writer.write(quote(item.getGrepExpression()));
+			writer.write(',');
+			writer.write(Long.toString(profile.getInvocations()));
+			writer.write(',');
+			writer.write(Long.toString(profile.getQuickRejections()));
+			writer.write(',');
+			writer.write(Long.toString(profile.getMatches()));
+			writer.write(',');
+			writer.write(Long.toString(profile.getUnlessRejections()));
+			writer.write(',');
+			writer.write(Long.toString(profile.getTimeouts()));
+			writer.write(',');
+			writer.write(Long.toString(profile.getNanos()));
+			writer.write('\n');
+		}
+	}
+
+	/**
+	 * Quotes a value for a comma separated values file.
+	 *
+	 * @param s Value. May be <code>null</code>.
+	 *
+	 * @return Quoted value.
+	 */
+	private static String quote(String s)
+	{
+		return s == null ? "" : '"' + s.replace("\"", "\"\"") + '"'; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+	}
+}
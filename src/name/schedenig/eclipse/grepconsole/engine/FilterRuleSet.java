@@ -0,0 +1,260 @@
+/*******************************************************************************
+ * Copyright (c) 2008 - 2014 Marian Schedenig
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marian Schedenig - initial API and implementation
+ *******************************************************************************/
+
+package name.schedenig.eclipse.grepconsole.engine;
+
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import name.schedenig.eclipse.grepconsole.model.GrepExpressionItem;
+
+/**
+ * A compiled, ordered set of filter expressions.
+ *
+ * The first test of every filter item (the quick expression if it has one,
+ * otherwise the main expression) is combined into a single alternation. A
+ * line which is not matched by the alternation cannot be matched by any of
+ * the combined items, so the whole set can be ruled out with a single pass
+ * over the line. Only lines accepted by the alternation need to be tested
+ * against the individual items, in their original order, which preserves
+ * first-match-wins semantics.
+ *
+ * Expressions which cannot safely be embedded in an alternation (e.g. because
+ * they use back references or named groups, whose meaning would change) are
+ * not combined, and neither are expressions matched by the linear time
+ * engine. Such items are always tested individually.
+ *
+ * Not thread safe, as the matcher for the combined pattern is reused. The
+ * combined pattern itself is immutable, so instances for other threads can be
+ * created with {@link #copy()} without compiling it again.
+ *
+ * @author msched
+ */
+public class FilterRuleSet
+{
+	/** Matches expression constructs which prevent an expression from being
+	 *  combined with others: numbered and named back references, named groups,
+	 *  unterminated quotes and the comments flag, which could swallow the
+	 *  closing parenthesis of the enclosing group. */
+	private static final Pattern UNCOMBINABLE = Pattern.compile("\\\\[1-9]|\\\\k<|\\(\\?<[a-zA-Z]|\\\\Q|\\(\\?[a-zA-Z]*x"); //$NON-NLS-1$
+
+	/** Filter items, in order. */
+	private GrepExpressionItem[] items;
+
+	/** Whether the item at the same index is part of the combined pattern. */
+	private boolean[] combined;
+
+	/** Combined pattern. <code>null</code> if no items could be combined. */
+	private Pattern combinedPattern;
+
+	/** Reused matcher for the combined pattern. */
+	private Matcher combinedMatcher;
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param items Filter items, in order.
+	 */
+	public FilterRuleSet(List<GrepExpressionItem> items)
+	{
+		this.items = items.toArray(new GrepExpressionItem[items.size()]);
+		combined = new boolean[this.items.length];
+
+		StringBuilder sb = new StringBuilder();
+
+		for(int i = 0; i < this.items.length; i++)
+		{
+			GrepExpressionItem item = this.items[i];
+			String expression = getFirstExpression(item);
+
+			if(expression == null || UNCOMBINABLE.matcher(expression).find()
+					|| usesLinearEngine(item))
+			{
+				continue;
+			}
+
+			if(sb.length() > 0)
+			{
+				sb.append('|');
+			}
+
+			sb.append(item.isCaseInsensitive() ? "(?iu:" : "(?:"); //$NON-NLS-1$ //$NON-NLS-2$
+			sb.append(expression);
+			sb.append(')');
+			combined[i] = true;
+		}
+
+		if(sb.length() > 0)
+		{
+			try
+			{
+				combinedPattern = Pattern.compile(sb.toString());
+			}
+			catch(PatternSyntaxException ex)
+			{
+				combinedPattern = null;
+			}
+		}
+
+		if(combinedPattern == null)
+		{
+			combined = new boolean[this.items.length];
+		}
+	}
+
+	/**
+	 * Creates a new instance sharing the items and combined pattern of another
+	 * instance, but with its own matcher.
+	 *
+	 * @param src Instance whose items and combined pattern are shared.
+	 */
+	private FilterRuleSet(FilterRuleSet src)
+	{
+		items = src.items;
+		combined = src.combined;
+		combinedPattern = src.combinedPattern;
+	}
+
+	/**
+	 * Returns a new instance which shares the items and combined pattern of
+	 * this instance, but uses its own matcher.
+	 *
+	 * @return Copy.
+	 */
+	public FilterRuleSet copy()
+	{
+		return new FilterRuleSet(this);
+	}
+
+	/**
+	 * Returns the expression which is tested first for the specified item, i.e.
+	 * its quick expression if it has one, otherwise its main expression.
+	 *
+	 * @param item Filter item.
+	 *
+	 * @return Expression, or <code>null</code> if the expression is not valid.
+	 */
+	static String getFirstExpression(GrepExpressionItem item)
+	{
+		if(item.getQuickPattern() != null)
+		{
+			return item.getQuickGrepExpression();
+		}
+		else if(item.getPattern() != null)
+		{
+			return item.getGrepExpression();
+		}
+		else
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * Checks whether the first expression of an item is matched by the linear
+	 * time engine. Such items are not combined, as the combined pattern is
+	 * matched by the JDK's engine, which would reintroduce the backtracking the
+	 * linear time engine avoids.
+	 *
+	 * @param item Filter item.
+	 *
+	 * @return <code>true</code> if the linear time engine is used.
+	 */
+	static boolean usesLinearEngine(GrepExpressionItem item)
+	{
+		Pattern pattern = item.getQuickPattern() != null ? item.getQuickPattern() : item.getPattern();
+		return MatcherCache.getLinearPattern(pattern, item.getRegexEngine()) != null;
+	}
+
+	/**
+	 * Returns the number of items.
+	 *
+	 * @return Item count.
+	 */
+	public int size()
+	{
+		return items.length;
+	}
+
+	/**
+	 * Returns the item at the specified index.
+	 *
+	 * @param index Item index.
+	 *
+	 * @return Item.
+	 */
+	public GrepExpressionItem get(int index)
+	{
+		return items[index];
+	}
+
+	/**
+	 * Returns whether the item at the specified index is part of the combined
+	 * pattern. If it is, and the combined pattern does not match a line, the
+	 * item does not need to be tested individually.
+	 *
+	 * @param index Item index.
+	 *
+	 * @return <code>true</code> iff the item is combined.
+	 */
+	public boolean isCombined(int index)
+	{
+		return combined[index];
+	}
+
+	/**
+	 * Tests a line against the combined pattern. The line must be the same
+	 * (possibly shortened) text the items' first expressions are tested
+	 * against.
+	 *
+	 * Not thread safe, as the matcher is reused.
+	 *
+	 * @param matchLine Line text. If this is a time limited sequence and the
+	 * 		time limit is exceeded, the combined pattern is disabled, as one of
+	 * 		the items is too expensive to match.
+	 *
+	 * @return <code>false</code> if none of the combined items can match the
+	 * 		line.
+	 */
+	public boolean matchesCombined(CharSequence matchLine)
+	{
+		if(combinedPattern == null)
+		{
+			return false;
+		}
+
+		if(combinedMatcher == null)
+		{
+			combinedMatcher = combinedPattern.matcher(matchLine);
+		}
+		else
+		{
+			combinedMatcher.reset(matchLine);
+		}
+
+		try
+		{
+			return combinedMatcher.find();
+		}
+		catch(MatchTimeoutException ex)
+		{
+			// Items are tested individually from now on, so the expensive one can
+			// be identified and suspended
+			combinedPattern = null;
+			combinedMatcher = null;
+			combined = new boolean[items.length];
+
+			return true;
+		}
+	}
+}
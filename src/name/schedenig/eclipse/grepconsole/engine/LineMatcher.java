@@ -0,0 +1,245 @@
+/*******************************************************************************
+ * Copyright (c) 2008 - 2014 Marian Schedenig
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marian Schedenig - initial API and implementation
+ *******************************************************************************/
+
+package name.schedenig.eclipse.grepconsole.engine;
+
+import java.util.regex.Pattern;
+
+import name.schedenig.eclipse.grepconsole.engine.ExpressionProfile.Outcome;
+import name.schedenig.eclipse.grepconsole.model.GrepExpressionItem;
+import name.schedenig.eclipse.grepconsole.model.GrepExpressionItem.RegexEngine;
+
+/**
+ * Tests expression items against a line of text. This is the single
+ * implementation of the matching rules shared by filtering, statistics,
+ * notifications and styling:
+ *
+ * <ul>
+ * <li>The quick expression (if any) is tested against the match text, i.e.
+ * 		the part of the line which is matched, which may be shorter than the
+ * 		line.</li>
+ * <li>The main and unless expressions are tested against the match text, or
+ * 		against the whole line if the item has a quick expression. Statistics
+ * 		and notification items which are tested after the Grep View has
+ * 		already been decided on are always tested against the match text (see
+ * 		{@link #findInMatchText(GrepExpressionItem)}).</li>
+ * <li>All tests of an item are subject to the match guard's time limit.
+ * 		Suspended items never match.</li>
+ * <li>Outcomes are recorded by the profiler, if it is enabled.</li>
+ * </ul>
+ *
+ * Does not depend on any UI or workbench classes. Not thread safe, as matchers
+ * are reused; each thread needs its own instance.
+ *
+ * @author msched
+ */
+public class LineMatcher
+{
+	/** Default number of characters of a line which are matched when
+	 *  filtering. */
+	public static final int DEFAULT_FILTER_MATCH_LENGTH = 100;
+
+	/** Guard which keeps track of expressions exceeding the time limit. */
+	private MatchGuard guard;
+
+	/** Profiler which collects per expression counters while enabled. */
+	private ExpressionProfiler profiler;
+
+	/** Reusable matchers. */
+	private MatcherCache matchers = new MatcherCache();
+
+	/** Time limited wrapper for the current line. */
+	private TimeLimitedCharSequence guardedLine = new TimeLimitedCharSequence();
+
+	/** Time limited wrapper for the matched part of the current line. */
+	private TimeLimitedCharSequence guardedMatchText = new TimeLimitedCharSequence();
+
+	/** Match guard keys by item. Only used while items are suspended. */
+	private MatchGuard.KeyCache guardKeys = new MatchGuard.KeyCache();
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param guard Match guard.
+	 * @param profiler Expression profiler.
+	 */
+	public LineMatcher(MatchGuard guard, ExpressionProfiler profiler)
+	{
+		this.guard = guard;
+		this.profiler = profiler;
+	}
+
+	/**
+	 * Sets the line subsequent tests refer to.
+	 *
+	 * @param line Whole line, without line delimiter.
+	 * @param matchText Part of the line which is matched. May be the same as
+	 * 		the line.
+	 */
+	public void setLine(CharSequence line, CharSequence matchText)
+	{
+		guardedLine.set(line);
+		guardedMatchText.set(matchText);
+	}
+
+	/**
+	 * Returns the text the main expression of an item is tested against.
+	 * Matcher positions refer to this text.
+	 *
+	 * @param item Item.
+	 * @param line Whole line, as passed to {@link #setLine(CharSequence, CharSequence)}.
+	 * @param matchText Match text, as passed to {@link #setLine(CharSequence, CharSequence)}.
+	 *
+	 * @return Either the line or the match text.
+	 */
+	public static CharSequence getMainText(GrepExpressionItem item,
+			CharSequence line, CharSequence matchText)
+	{
+		return item.getQuickPattern() == null ? matchText : line;
+	}
+
+	/**
+	 * Tests the combined pattern of a rule set against the match text.
+	 *
+	 * @param rules Rule set.
+	 *
+	 * @return <code>false</code> if none of the combined items can match.
+	 */
+	public boolean matchesCombined(FilterRuleSet rules)
+	{
+		guardedMatchText.startTimer(guard.getTimeLimit());
+		return rules.matchesCombined(guardedMatchText);
+	}
+
+	/**
+	 * Tests an item against the current line.
+	 *
+	 * If the time limit is exceeded, the item is treated as not matching and
+	 * the time out is reported to the match guard.
+	 *
+	 * The time limit keeps running after this method returns, so it also
+	 * applies to subsequent calls of {@link ExpressionMatcher#find()} on the returned
+	 * matcher. Callers doing so must handle {@link MatchTimeoutException} and
+	 * pass it to {@link #reportTimeout(GrepExpressionItem)}.
+	 *
+	 * @param item Item.
+	 * @param unless Whether the unless expression should be tested.
+	 *
+	 * @return Matcher positioned at the first match, or <code>null</code> if
+	 * 		the item does not match.
+	 */
+	public ExpressionMatcher find(GrepExpressionItem item, boolean unless)
+	{
+		return find(item, unless, getMainText(item, guardedLine, guardedMatchText));
+	}
+
+	/**
+	 * Tests an item's quick and main expressions against the match text only,
+	 * even if the item has a quick expression, and ignores the unless
+	 * expression. This is how statistics and notification items are tested
+	 * once the line has already been accepted or rejected for the Grep View.
+	 *
+	 * The time limit applies as for {@link #find(GrepExpressionItem, boolean)}.
+	 *
+	 * @param item Item.
+	 *
+	 * @return Matcher positioned at the first match, or <code>null</code> if
+	 * 		the item does not match. Positions refer to the match text.
+	 */
+	public ExpressionMatcher findInMatchText(GrepExpressionItem item)
+	{
+		return find(item, false, guardedMatchText);
+	}
+
+	/**
+	 * Tests an item against the current line.
+	 *
+	 * @param item Item.
+	 * @param unless Whether the unless expression should be tested.
+	 * @param mainText Text the main and unless expressions are tested against.
+	 *
+	 * @return Matcher positioned at the first match, or <code>null</code> if
+	 * 		the item does not match.
+	 */
+	private ExpressionMatcher find(GrepExpressionItem item, boolean unless,
+			CharSequence mainText)
+	{
+		Pattern pattern = item.getPattern();
+
+		if(pattern == null
+				|| (guard.hasSuspendedItems() && guard.isSuspended(item, guardKeys.get(item))))
+		{
+			return null;
+		}
+
+		Pattern quickPattern = item.getQuickPattern();
+		RegexEngine engine = item.getRegexEngine();
+
+		ExpressionProfile profile = profiler.getProfile(item);
+		long startTime = profile == null ? 0 : System.nanoTime();
+		Outcome outcome = Outcome.NOT_MATCHED;
+
+		int timeLimit = guard.getTimeLimit();
+		guardedLine.startTimer(timeLimit);
+		guardedMatchText.startTimer(timeLimit);
+
+		try
+		{
+			if(quickPattern != null && !matchers.get(quickPattern, engine, guardedMatchText).find())
+			{
+				outcome = Outcome.QUICK_REJECTED;
+				return null;
+			}
+
+			ExpressionMatcher matcher = matchers.get(pattern, engine, mainText);
+
+			if(!matcher.find())
+			{
+				return null;
+			}
+
+			Pattern unlessPattern = unless ? item.getUnlessPattern() : null;
+
+			if(unlessPattern != null && matchers.get(unlessPattern, engine, mainText).find())
+			{
+				outcome = Outcome.UNLESS_REJECTED;
+				return null;
+			}
+
+			outcome = Outcome.MATCHED;
+			return matcher;
+		}
+		catch(MatchTimeoutException ex)
+		{
+			outcome = Outcome.TIMED_OUT;
+			guard.reportTimeout(item);
+			return null;
+		}
+		finally
+		{
+			if(profile != null)
+			{
+				profile.record(outcome, startTime);
+			}
+		}
+	}
+
+	/**
+	 * Reports that continuing a match returned by
+	 * {@link #find(GrepExpressionItem, boolean)} has exceeded the time limit.
+	 *
+	 * @param item Item.
+	 */
+	public void reportTimeout(GrepExpressionItem item)
+	{
+		guard.reportTimeout(item);
+	}
+}
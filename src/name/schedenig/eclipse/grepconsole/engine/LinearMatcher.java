@@ -0,0 +1,470 @@
+/*******************************************************************************
+ * Copyright (c) 2008 - 2014 Marian Schedenig
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marian Schedenig - initial API and implementation
+ *******************************************************************************/
+
+package name.schedenig.eclipse.grepconsole.engine;
+
+import java.util.Arrays;
+
+/**
+ * Expression matcher using the linear time engine.
+ *
+ * Executes the program of a {@link LinearPattern} by simulating all possible
+ * paths through the expression in parallel, one character at a time ("Pike
+ * VM"). Each path is a thread with its own capture positions. Threads are
+ * kept in priority order, which reproduces the JDK's choice between
+ * alternatives and between greedy and lazy repetitions, and threads reaching
+ * the same instruction at the same position are merged. Each character is
+ * therefore examined at most once per instruction, so the time needed for a
+ * search is proportional to the text length times the program size.
+ *
+ * Not thread safe.
+ *
+ * @author msched
+ */
+public class LinearMatcher implements ExpressionMatcher
+{
+	/**
+	 * An ordered list of threads at one text position.
+	 *
+	 * @author msched
+	 */
+	private static class ThreadList
+	{
+		/** Instruction indexes of the threads. */
+		private int[] pcs;
+
+		/** Capture positions of the threads. Shared between threads until
+		 *  modified. */
+		private int[][] captures;
+
+		/** Number of threads. */
+		private int size;
+
+		/** Generation used to mark instructions already visited for this list. */
+		private int generation;
+
+		/**
+		 * Creates a new instance.
+		 *
+		 * @param capacity Maximum number of threads.
+		 */
+		private ThreadList(int capacity)
+		{
+			pcs = new int[capacity];
+			captures = new int[capacity][];
+		}
+	}
+
+	/** Pattern. */
+	private LinearPattern pattern;
+
+	/** Text. */
+	private CharSequence text;
+
+	/** Thread lists for the current and the next two positions. A character
+	 *  may be a surrogate pair, so threads can advance by two positions. */
+	private ThreadList[] lists = new ThreadList[3];
+
+	/** Generation by instruction, marking the list an instruction has last
+	 *  been added to. */
+	private int[] marks;
+
+	/** Last generation used. */
+	private int generation;
+
+	/** Work stack of instruction indexes for adding threads. */
+	private int[] stackPcs;
+
+	/** Work stack of capture positions for adding threads. */
+	private int[][] stackCaptures;
+
+	/** Capture positions of a new thread. */
+	private int[] emptyCaptures;
+
+	/** Capture positions of the current match. <code>null</code> if there is
+	 *  no current match. */
+	private int[] match;
+
+	/** Position at which the next search starts. */
+	private int from;
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param pattern Pattern.
+	 * @param text Text to match.
+	 */
+	LinearMatcher(LinearPattern pattern, CharSequence text)
+	{
+		this.pattern = pattern;
+
+		int size = pattern.ops.length;
+
+		for(int i = 0; i < lists.length; i++)
+		{
+			lists[i] = new ThreadList(size);
+		}
+
+		marks = new int[size];
+		stackPcs = new int[size * 2 + 1];
+		stackCaptures = new int[size * 2 + 1][];
+		emptyCaptures = new int[(pattern.groupCount + 1) * 2];
+		Arrays.fill(emptyCaptures, -1);
+
+		reset(text);
+	}
+
+	/**
+	 * @see name.schedenig.eclipse.grepconsole.engine.ExpressionMatcher#reset(java.lang.CharSequence)
+	 */
+	@Override
+	public void reset(CharSequence text)
+	{
+		this.text = text;
+		from = 0;
+		match = null;
+	}
+
+	/**
+	 * @see name.schedenig.eclipse.grepconsole.engine.ExpressionMatcher#find()
+	 */
+	@Override
+	public boolean find()
+	{
+		int end = text.length();
+
+		if(from > end)
+		{
+			match = null;
+			return false;
+		}
+
+		int[] found = null;
+
+		for(ThreadList list: lists)
+		{
+			list.size = 0;
+			list.generation = ++generation;
+		}
+
+		for(int pos = from; ; pos++)
+		{
+			ThreadList current = lists[pos % 3];
+
+			if(found == null)
+			{
+				addThread(current, 0, emptyCaptures, pos);
+			}
+
+			if(current.size == 0 && lists[(pos + 1) % 3].size == 0
+					&& lists[(pos + 2) % 3].size == 0 && (found != null || pos >= end))
+			{
+				break;
+			}
+
+			int ch = pos < end ? Character.codePointAt(text, pos) : -1;
+			int next = ch < 0 ? pos : pos + Character.charCount(ch);
+
+			for(int i = 0; i < current.size; i++)
+			{
+				int pc = current.pcs[i];
+
+				if(pattern.ops[pc] == LinearPattern.OP_MATCH)
+				{
+					// Lower priority threads are cut off
+					found = current.captures[i];
+					break;
+				}
+				else if(ch >= 0 && pattern.predicates[pc].matches(ch))
+				{
+					addThread(lists[next % 3], pc + 1, current.captures[i], next);
+				}
+			}
+
+			current.size = 0;
+			current.generation = ++generation;
+
+			if(pos >= end)
+			{
+				break;
+			}
+		}
+
+		match = found;
+
+		if(found == null)
+		{
+			from = end + 1;
+			return false;
+		}
+
+		from = found[1] == found[0] ? found[1] + 1 : found[1];
+		return true;
+	}
+
+	/**
+	 * Adds a thread and all threads reachable from it without consuming
+	 * characters to a list, in priority order. Instructions already visited
+	 * for the list are skipped, as higher priority threads have already
+	 * reached them.
+	 *
+	 * @param list Thread list.
+	 * @param startPc Instruction index.
+	 * @param startCaptures Capture positions.
+	 * @param pos Text position.
+	 */
+	private void addThread(ThreadList list, int startPc, int[] startCaptures, int pos)
+	{
+		int top = 0;
+		stackPcs[top] = startPc;
+		stackCaptures[top++] = startCaptures;
+
+		while(top > 0)
+		{
+			int pc = stackPcs[--top];
+			int[] captures = stackCaptures[top];
+			stackCaptures[top] = null;
+
+			if(marks[pc] == list.generation)
+			{
+				continue;
+			}
+
+			marks[pc] = list.generation;
+
+			switch(pattern.ops[pc])
+			{
+				case LinearPattern.OP_JUMP:
+					stackPcs[top] = pattern.args1[pc];
+					stackCaptures[top++] = captures;
+					break;
+
+				case LinearPattern.OP_SPLIT:
+					stackPcs[top] = pattern.args2[pc];
+					stackCaptures[top++] = captures;
+					stackPcs[top] = pattern.args1[pc];
+					stackCaptures[top++] = captures;
+					break;
+
+				case LinearPattern.OP_SAVE:
+					captures = captures.clone();
+					captures[pattern.args1[pc]] = pos;
+					stackPcs[top] = pc + 1;
+					stackCaptures[top++] = captures;
+					break;
+
+				case LinearPattern.OP_ASSERT:
+					if(holds(pattern.args1[pc], pos))
+					{
+						stackPcs[top] = pc + 1;
+						stackCaptures[top++] = captures;
+					}
+
+					break;
+
+				default:
+					list.pcs[list.size] = pc;
+					list.captures[list.size++] = captures;
+					break;
+			}
+		}
+	}
+
+	/**
+	 * Checks whether an assertion holds at a text position.
+	 *
+	 * @param assertion Assertion kind.
+	 * @param pos Text position.
+	 *
+	 * @return <code>true</code> if the assertion holds.
+	 */
+	private boolean holds(int assertion, int pos)
+	{
+		int end = text.length();
+
+		switch(assertion)
+		{
+			case LinearPattern.ASSERT_BEGIN:
+				return pos == 0;
+
+			case LinearPattern.ASSERT_END:
+			{
+				// Like the JDK, also matches before a line terminator at the end
+				if(pos == end)
+				{
+					return true;
+				}
+				else if(pos == end - 2)
+				{
+					return text.charAt(pos) == '\r' && text.charAt(pos + 1) == '\n';
+				}
+				else if(pos == end - 1)
+				{
+					char ch = text.charAt(pos);
+
+					if(ch == '\n')
+					{
+						return pos == 0 || text.charAt(pos - 1) != '\r';
+					}
+
+					return ch == '\r' || ch == '\u0085' || (ch | 1) == '\u2029';
+				}
+
+				return false;
+			}
+
+			case LinearPattern.ASSERT_WORD_BOUNDARY:
+				return isWordAt(pos - 1, true) != isWordAt(pos, false);
+
+			case LinearPattern.ASSERT_NOT_WORD_BOUNDARY:
+				return isWordAt(pos - 1, true) == isWordAt(pos, false);
+
+			default:
+				return false;
+		}
+	}
+
+	/**
+	 * Checks whether the character before or at a text position counts as a
+	 * word character for word boundaries. Like the JDK, combining marks count
+	 * as word characters if they follow a letter or digit.
+	 *
+	 * @param index Text position.
+	 * @param before Whether the character ending at the position (rather than
+	 * 		starting at it) is checked.
+	 *
+	 * @return <code>true</code> for word characters.
+	 */
+	private boolean isWordAt(int index, boolean before)
+	{
+		if(index < 0 || index >= text.length())
+		{
+			return false;
+		}
+
+		int ch = before ? Character.codePointBefore(text, index + 1) : Character.codePointAt(text, index);
+
+		if(ch == '_' || Character.isLetterOrDigit(ch))
+		{
+			return true;
+		}
+
+		if(Character.getType(ch) != Character.NON_SPACING_MARK)
+		{
+			return false;
+		}
+
+		for(int i = index - 1; i >= 0; i--)
+		{
+			int base = Character.codePointAt(text, i);
+
+			if(Character.isLetterOrDigit(base))
+			{
+				return true;
+			}
+			else if(Character.getType(base) != Character.NON_SPACING_MARK)
+			{
+				return false;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Checks whether a group index is valid and there is a current match.
+	 *
+	 * @param group Group index.
+	 *
+	 * @throws IllegalStateException If there is no match.
+	 * @throws IndexOutOfBoundsException If there is no such group.
+	 */
+	private void checkGroup(int group)
+	{
+		if(match == null)
+		{
+			throw new IllegalStateException("No match available"); //$NON-NLS-1$
+		}
+
+		if(group < 0 || group > pattern.groupCount)
+		{
+			throw new IndexOutOfBoundsException("No group " + group); //$NON-NLS-1$
+		}
+	}
+
+	/**
+	 * @see java.util.regex.MatchResult#start()
+	 */
+	@Override
+	public int start()
+	{
+		return start(0);
+	}
+
+	/**
+	 * @see java.util.regex.MatchResult#start(int)
+	 */
+	@Override
+	public int start(int group)
+	{
+		checkGroup(group);
+		return match[group * 2];
+	}
+
+	/**
+	 * @see java.util.regex.MatchResult#end()
+	 */
+	@Override
+	public int end()
+	{
+		return end(0);
+	}
+
+	/**
+	 * @see java.util.regex.MatchResult#end(int)
+	 */
+	@Override
+	public int end(int group)
+	{
+		checkGroup(group);
+		return match[group * 2 + 1];
+	}
+
+	/**
+	 * @see java.util.regex.MatchResult#group()
+	 */
+	@Override
+	public String group()
+	{
+		return group(0);
+	}
+
+	/**
+	 * @see java.util.regex.MatchResult#group(int)
+	 */
+	@Override
+	public String group(int group)
+	{
+		checkGroup(group);
+		int start = match[group * 2];
+
+		return start < 0 ? null : text.subSequence(start, match[group * 2 + 1]).toString();
+	}
+
+	/**
+	 * @see java.util.regex.MatchResult#groupCount()
+	 */
+	@Override
+	public int groupCount()
+	{
+		return pattern.groupCount;
+	}
+}
@@ -0,0 +1,1389 @@
+/*******************************************************************************
+ * Copyright (c) 2008 - 2014 Marian Schedenig
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marian Schedenig - initial API and implementation
+ *******************************************************************************/
+
+package name.schedenig.eclipse.grepconsole.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * A regular expression compiled for the linear time engine.
+ *
+ * The expression is compiled into a program for a non-backtracking virtual
+ * machine, which is executed by {@link LinearMatcher}. The time needed to
+ * match a line grows linearly with the line's length, regardless of the
+ * expression, while capture groups and the choice between alternatives
+ * behave as with the JDK's engine. The one exception are capturing groups
+ * inside repeated groups: the JDK's engine may report captures left over
+ * from attempts it has abandoned, whereas only the captures of the successful
+ * match are reported here.
+ *
+ * Only a subset of the JDK's pattern syntax is supported: literals and
+ * escaped characters (including <code>\Q...\E</code>), <code>.</code>,
+ * character classes without nesting or intersections, the predefined classes
+ * <code>\d \D \w \W \s \S</code>, the anchors <code>^ $ \b \B</code>,
+ * capturing, named and non-capturing groups, alternation and greedy or lazy
+ * quantifiers. Back references, look-arounds, atomic groups, possessive
+ * quantifiers, Unicode properties and inline flags are not supported; neither
+ * are characters outside the Basic Multilingual Plane in the pattern.
+ *
+ * Immutable and thread safe.
+ *
+ * @author msched
+ */
+public class LinearPattern
+{
+	/**
+	 * Tests single characters.
+	 *
+	 * @author msched
+	 */
+	static abstract class CharPredicate
+	{
+		/**
+		 * Tests a character.
+		 *
+		 * @param ch Code point.
+		 *
+		 * @return Whether the character matches.
+		 */
+		abstract boolean matches(int ch);
+	}
+
+	/**
+	 * Thrown while parsing an expression which uses unsupported syntax.
+	 *
+	 * @author msched
+	 */
+	private static class UnsupportedException extends Exception
+	{
+		private static final long serialVersionUID = 1L;
+	}
+
+	/**
+	 * Node of the parsed expression tree.
+	 *
+	 * @author msched
+	 */
+	private static class Node
+	{
+		/** Node kind. One of the NODE_* constants. */
+		private int kind;
+
+		/** Character predicate, for character nodes. */
+		private CharPredicate predicate;
+
+		/** Assertion kind, for assertion nodes. One of the ASSERT_* constants. */
+		private int assertion;
+
+		/** Child nodes, for concatenations and alternations. */
+		private List<Node> children;
+
+		/** Child node, for groups and repetitions. */
+		private Node child;
+
+		/** Group index, for capturing groups. */
+		private int group;
+
+		/** Minimum number of repetitions. */
+		private int min;
+
+		/** Maximum number of repetitions. -1 for no limit. */
+		private int max;
+
+		/** Whether a repetition is greedy. */
+		private boolean greedy;
+
+		/**
+		 * Creates a new instance.
+		 *
+		 * @param kind Node kind.
+		 */
+		private Node(int kind)
+		{
+			this.kind = kind;
+		}
+	}
+
+	/** Node kind: matches a single character. */
+	private static final int NODE_CHAR = 0;
+
+	/** Node kind: zero width assertion. */
+	private static final int NODE_ASSERT = 1;
+
+	/** Node kind: concatenation. */
+	private static final int NODE_CONCAT = 2;
+
+	/** Node kind: alternation. */
+	private static final int NODE_ALTERNATION = 3;
+
+	/** Node kind: repetition. */
+	private static final int NODE_REPEAT = 4;
+
+	/** Node kind: capturing group. */
+	private static final int NODE_GROUP = 5;
+
+	/** Instruction: consume a character matching the predicate. */
+	static final int OP_CHAR = 0;
+
+	/** Instruction: the expression has matched. */
+	static final int OP_MATCH = 1;
+
+	/** Instruction: continue at arg1. */
+	static final int OP_JUMP = 2;
+
+	/** Instruction: continue at arg1, or (with lower priority) at arg2. */
+	static final int OP_SPLIT = 3;
+
+	/** Instruction: store the current position in capture slot arg1. */
+	static final int OP_SAVE = 4;
+
+	/** Instruction: continue only if assertion arg1 holds. */
+	static final int OP_ASSERT = 5;
+
+	/** Assertion: beginning of input. */
+	static final int ASSERT_BEGIN = 0;
+
+	/** Assertion: end of input, or before a line terminator at the end. */
+	static final int ASSERT_END = 1;
+
+	/** Assertion: word boundary. */
+	static final int ASSERT_WORD_BOUNDARY = 2;
+
+	/** Assertion: no word boundary. */
+	static final int ASSERT_NOT_WORD_BOUNDARY = 3;
+
+	/** Maximum number of instructions. Protects against huge counted
+	 *  repetitions, which are compiled by copying the repeated expression. */
+	private static final int MAX_PROGRAM_SIZE = 10000;
+
+	/** Matches any character except line terminators. */
+	private static final CharPredicate DOT = new CharPredicate()
+	{
+		@Override
+		boolean matches(int ch)
+		{
+			return ch != '\n' && ch != '\r' && ch != '\u0085' && (ch | 1) != '\u2029';
+		}
+	};
+
+	/** Matches digits, as <code>\d</code>. */
+	private static final CharPredicate DIGIT = new CharPredicate()
+	{
+		@Override
+		boolean matches(int ch)
+		{
+			return ch >= '0' && ch <= '9';
+		}
+	};
+
+	/** Matches word characters, as <code>\w</code>. */
+	private static final CharPredicate WORD = new CharPredicate()
+	{
+		@Override
+		boolean matches(int ch)
+		{
+			return ch >= 'a' && ch <= 'z' || ch >= 'A' && ch <= 'Z' || ch >= '0' && ch <= '9' || ch == '_';
+		}
+	};
+
+	/** Matches whitespace, as <code>\s</code>. */
+	private static final CharPredicate SPACE = new CharPredicate()
+	{
+		@Override
+		boolean matches(int ch)
+		{
+			return ch == ' ' || ch >= '\t' && ch <= '\r';
+		}
+	};
+
+	/** Instruction opcodes. */
+	final int[] ops;
+
+	/** First instruction arguments. */
+	final int[] args1;
+
+	/** Second instruction arguments. */
+	final int[] args2;
+
+	/** Character predicates of OP_CHAR instructions. */
+	final CharPredicate[] predicates;
+
+	/** Number of capturing groups. */
+	final int groupCount;
+
+	/** Whether the expression is prone to catastrophic backtracking. */
+	private boolean backtrackingRisk;
+
+	/** Expression string. */
+	private String expression;
+
+	/** Whether characters are matched case insensitively. */
+	private boolean caseInsensitive;
+
+	/** Parse position. Only used while compiling. */
+	private int pos;
+
+	/** Number of capturing groups parsed so far. Only used while compiling. */
+	private int groups;
+
+	/** Instructions. Only used while compiling. */
+	private List<int[]> instructions;
+
+	/** Predicates by instruction. Only used while compiling. */
+	private List<CharPredicate> instructionPredicates;
+
+	/**
+	 * Compiles a pattern for the linear time engine.
+	 *
+	 * @param pattern JDK pattern.
+	 *
+	 * @return Compiled pattern, or <code>null</code> if the pattern uses
+	 * 		syntax or flags which are not supported.
+	 */
+	public static LinearPattern compile(Pattern pattern)
+	{
+		int flags = pattern.flags();
+		boolean caseInsensitive = (flags & Pattern.CASE_INSENSITIVE) != 0;
+
+		if(flags != 0 && flags != (Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE))
+		{
+			return null;
+		}
+
+		try
+		{
+			LinearPattern linearPattern = new LinearPattern(pattern.pattern(), caseInsensitive);
+
+			// Safety net against differences in group numbering
+			if(linearPattern.groupCount != pattern.matcher("").groupCount()) //$NON-NLS-1$
+			{
+				return null;
+			}
+
+			return linearPattern;
+		}
+		catch(UnsupportedException ex)
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param expression Expression string. Must be a valid JDK pattern.
+	 * @param caseInsensitive Whether characters are matched case
+	 * 		insensitively, using Unicode case folding.
+	 *
+	 * @throws UnsupportedException If the expression uses unsupported syntax.
+	 */
+	private LinearPattern(String expression, boolean caseInsensitive) throws UnsupportedException
+	{
+		this.expression = expression;
+		this.caseInsensitive = caseInsensitive;
+
+		Node root = parseAlternation();
+
+		if(pos < expression.length())
+		{
+			throw new UnsupportedException();
+		}
+
+		backtrackingRisk = isBacktrackingRisk(root);
+
+		instructions = new ArrayList<int[]>();
+		instructionPredicates = new ArrayList<CharPredicate>();
+		emit(OP_SAVE, 0, 0, null);
+		compile(root);
+		emit(OP_SAVE, 1, 0, null);
+		emit(OP_MATCH, 0, 0, null);
+
+		int size = instructions.size();
+		ops = new int[size];
+		args1 = new int[size];
+		args2 = new int[size];
+		predicates = instructionPredicates.toArray(new CharPredicate[size]);
+
+		for(int i = 0; i < size; i++)
+		{
+			int[] instruction = instructions.get(i);
+			ops[i] = instruction[0];
+			args1[i] = instruction[1];
+			args2[i] = instruction[2];
+		}
+
+		groupCount = groups;
+		instructions = null;
+		instructionPredicates = null;
+	}
+
+	/**
+	 * Returns whether the expression is prone to catastrophic backtracking,
+	 * i.e. it repeats a sub-expression which itself contains repetitions or
+	 * alternatives. Such expressions may take exponential time to match with
+	 * the JDK's engine.
+	 *
+	 * @return <code>true</code> if the expression is considered risky.
+	 */
+	public boolean isBacktrackingRisk()
+	{
+		return backtrackingRisk;
+	}
+
+	/**
+	 * Returns the number of capturing groups.
+	 *
+	 * @return Group count.
+	 */
+	public int getGroupCount()
+	{
+		return groupCount;
+	}
+
+	/**
+	 * Creates a matcher for this pattern.
+	 *
+	 * @param text Text to match.
+	 *
+	 * @return Matcher.
+	 */
+	public LinearMatcher matcher(CharSequence text)
+	{
+		return new LinearMatcher(this, text);
+	}
+
+	/**
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString()
+	{
+		return expression;
+	}
+
+	/**
+	 * Returns whether the parser has reached the end of the expression.
+	 *
+	 * @return <code>true</code> at the end.
+	 */
+	private boolean atEnd()
+	{
+		return pos >= expression.length();
+	}
+
+	/**
+	 * Returns the next character of the expression without consuming it.
+	 *
+	 * @return Character, or -1 at the end.
+	 */
+	private int peek()
+	{
+		return atEnd() ? -1 : expression.charAt(pos);
+	}
+
+	/**
+	 * Consumes the next character of the expression.
+	 *
+	 * @return Character.
+	 *
+	 * @throws UnsupportedException At the end of the expression.
+	 */
+	private char next() throws UnsupportedException
+	{
+		if(atEnd())
+		{
+			throw new UnsupportedException();
+		}
+
+		return expression.charAt(pos++);
+	}
+
+	/**
+	 * Parses alternatives separated by <code>|</code>.
+	 *
+	 * @return Node.
+	 *
+	 * @throws UnsupportedException If unsupported syntax is encountered.
+	 */
+	private Node parseAlternation() throws UnsupportedException
+	{
+		Node first = parseConcatenation();
+
+		if(peek() != '|')
+		{
+			return first;
+		}
+
+		Node node = new Node(NODE_ALTERNATION);
+		node.children = new ArrayList<Node>();
+		node.children.add(first);
+
+		while(peek() == '|')
+		{
+			pos++;
+			node.children.add(parseConcatenation());
+		}
+
+		return node;
+	}
+
+	/**
+	 * Parses a sequence of quantified atoms.
+	 *
+	 * @return Node.
+	 *
+	 * @throws UnsupportedException If unsupported syntax is encountered.
+	 */
+	private Node parseConcatenation() throws UnsupportedException
+	{
+		Node node = new Node(NODE_CONCAT);
+		node.children = new ArrayList<Node>();
+
+		while(!atEnd() && peek() != '|' && peek() != ')')
+		{
+			if(expression.startsWith("\\Q", pos)) //$NON-NLS-1$
+			{
+				parseQuoted(node.children);
+				continue;
+			}
+
+			Node atom = parseAtom();
+			node.children.add(parseQuantifier(atom));
+		}
+
+		return node.children.size() == 1 ? node.children.get(0) : node;
+	}
+
+	/**
+	 * Parses a <code>\Q...\E</code> sequence into character nodes.
+	 *
+	 * @param nodes List to which the nodes are added.
+	 *
+	 * @throws UnsupportedException If the sequence is followed by a
+	 * 		quantifier, which only applies to its last character.
+	 */
+	private void parseQuoted(List<Node> nodes) throws UnsupportedException
+	{
+		pos += 2;
+		int end = expression.indexOf("\\E", pos); //$NON-NLS-1$
+
+		if(end < 0)
+		{
+			end = expression.length();
+		}
+
+		while(pos < end)
+		{
+			nodes.add(createCharNode(literal(checkChar(expression.charAt(pos++)))));
+		}
+
+		pos = Math.min(end + 2, expression.length());
+
+		if(isQuantifier(peek()))
+		{
+			throw new UnsupportedException();
+		}
+	}
+
+	/**
+	 * Checks whether a character starts a quantifier.
+	 *
+	 * @param ch Character.
+	 *
+	 * @return <code>true</code> for quantifier characters.
+	 */
+	private static boolean isQuantifier(int ch)
+	{
+		return ch == '*' || ch == '+' || ch == '?' || ch == '{';
+	}
+
+	/**
+	 * Parses an atom: a character, character class, group or assertion.
+	 *
+	 * @return Node.
+	 *
+	 * @throws UnsupportedException If unsupported syntax is encountered.
+	 */
+	private Node parseAtom() throws UnsupportedException
+	{
+		char ch = next();
+
+		switch(ch)
+		{
+			case '(':
+				return parseGroup();
+
+			case '[':
+				return createCharNode(parseClass());
+
+			case '.':
+				return createCharNode(DOT);
+
+			case '^':
+				return createAssertNode(ASSERT_BEGIN);
+
+			case '$':
+				return createAssertNode(ASSERT_END);
+
+			case '\\':
+				return parseEscape();
+
+			case '*':
+			case '+':
+			case '?':
+			case '{':
+				throw new UnsupportedException();
+
+			default:
+				return createCharNode(literal(checkChar(ch)));
+		}
+	}
+
+	/**
+	 * Parses a group. The opening parenthesis has already been consumed.
+	 *
+	 * @return Node.
+	 *
+	 * @throws UnsupportedException If unsupported syntax is encountered.
+	 */
+	private Node parseGroup() throws UnsupportedException
+	{
+		int group = -1;
+
+		if(peek() == '?')
+		{
+			pos++;
+			char ch = next();
+
+			if(ch == '<' && Character.isLetter(peek()))
+			{
+				while(Character.isLetterOrDigit(peek()))
+				{
+					pos++;
+				}
+
+				if(next() != '>')
+				{
+					throw new UnsupportedException();
+				}
+
+				group = ++groups;
+			}
+			else if(ch != ':')
+			{
+				throw new UnsupportedException();
+			}
+		}
+		else
+		{
+			group = ++groups;
+		}
+
+		Node child = parseAlternation();
+
+		if(next() != ')')
+		{
+			throw new UnsupportedException();
+		}
+
+		if(group < 0)
+		{
+			return child;
+		}
+
+		Node node = new Node(NODE_GROUP);
+		node.child = child;
+		node.group = group;
+
+		return node;
+	}
+
+	/**
+	 * Parses an escape sequence outside a character class. The backslash has
+	 * already been consumed.
+	 *
+	 * @return Node.
+	 *
+	 * @throws UnsupportedException If unsupported syntax is encountered.
+	 */
+	private Node parseEscape() throws UnsupportedException
+	{
+		int ch = peek();
+
+		if(ch == 'b')
+		{
+			pos++;
+			return createAssertNode(ASSERT_WORD_BOUNDARY);
+		}
+		else if(ch == 'B')
+		{
+			pos++;
+			return createAssertNode(ASSERT_NOT_WORD_BOUNDARY);
+		}
+
+		CharPredicate predicate = parsePredefinedClass();
+
+		return createCharNode(predicate == null ? literal(parseEscapedChar()) : predicate);
+	}
+
+	/**
+	 * Parses a predefined character class escape, if there is one at the
+	 * current position. The backslash has already been consumed.
+	 *
+	 * @return Predicate, or <code>null</code> if there is no predefined class.
+	 */
+	private CharPredicate parsePredefinedClass()
+	{
+		CharPredicate predicate;
+
+		switch(peek())
+		{
+			case 'd': predicate = DIGIT; break;
+			case 'D': predicate = not(DIGIT); break;
+			case 'w': predicate = WORD; break;
+			case 'W': predicate = not(WORD); break;
+			case 's': predicate = SPACE; break;
+			case 'S': predicate = not(SPACE); break;
+			default: return null;
+		}
+
+		pos++;
+		return predicate;
+	}
+
+	/**
+	 * Parses an escaped character. The backslash has already been consumed.
+	 *
+	 * @return Character.
+	 *
+	 * @throws UnsupportedException If the escape sequence is not supported.
+	 */
+	private char parseEscapedChar() throws UnsupportedException
+	{
+		char ch = next();
+
+		switch(ch)
+		{
+			case 't': return '\t';
+			case 'n': return '\n';
+			case 'r': return '\r';
+			case 'f': return '\f';
+			case 'a': return '\u0007';
+			case 'e': return '\u001B';
+
+			case '0':
+			{
+				int value = 0;
+				int digits = 0;
+
+				while(digits < 3 && peek() >= '0' && peek() <= '7' && value * 8 + peek() - '0' <= 0377)
+				{
+					value = value * 8 + next() - '0';
+					digits++;
+				}
+
+				if(digits == 0)
+				{
+					throw new UnsupportedException();
+				}
+
+				return (char) value;
+			}
+
+			case 'x':
+				if(peek() == '{')
+				{
+					throw new UnsupportedException();
+				}
+
+				return checkChar((char) parseHex(2));
+
+			case 'u':
+				return checkChar((char) parseHex(4));
+
+			case 'c':
+				return (char) (next() ^ 64);
+
+			default:
+				if(ch < 128 && Character.isLetterOrDigit(ch))
+				{
+					throw new UnsupportedException();
+				}
+
+				return checkChar(ch);
+		}
+	}
+
+	/**
+	 * Parses a fixed number of hex digits.
+	 *
+	 * @param digits Number of digits.
+	 *
+	 * @return Value.
+	 *
+	 * @throws UnsupportedException If a character is not a hex digit.
+	 */
+	private int parseHex(int digits) throws UnsupportedException
+	{
+		int value = 0;
+
+		for(int i = 0; i < digits; i++)
+		{
+			int digit = Character.digit(next(), 16);
+
+			if(digit < 0)
+			{
+				throw new UnsupportedException();
+			}
+
+			value = value * 16 + digit;
+		}
+
+		return value;
+	}
+
+	/**
+	 * Parses a character class. The opening bracket has already been
+	 * consumed.
+	 *
+	 * @return Predicate.
+	 *
+	 * @throws UnsupportedException If unsupported syntax is encountered.
+	 */
+	private CharPredicate parseClass() throws UnsupportedException
+	{
+		boolean negated = false;
+
+		if(peek() == '^')
+		{
+			pos++;
+			negated = true;
+		}
+
+		if(peek() == ']')
+		{
+			throw new UnsupportedException();
+		}
+
+		final List<CharPredicate> members = new ArrayList<CharPredicate>();
+
+		while(true)
+		{
+			char ch = next();
+
+			if(ch == ']')
+			{
+				break;
+			}
+			else if(ch == '[' || ch == '&' && peek() == '&')
+			{
+				throw new UnsupportedException();
+			}
+
+			int from;
+
+			if(ch == '\\')
+			{
+				CharPredicate predicate = parsePredefinedClass();
+
+				if(predicate != null)
+				{
+					members.add(predicate);
+					continue;
+				}
+
+				if(peek() == 'Q' || peek() == 'b' || peek() == 'B')
+				{
+					throw new UnsupportedException();
+				}
+
+				from = parseEscapedChar();
+			}
+			else
+			{
+				from = checkChar(ch);
+			}
+
+			if(peek() == '-' && pos + 1 < expression.length() && expression.charAt(pos + 1) != ']')
+			{
+				pos++;
+				char toChar = next();
+				int to;
+
+				if(toChar == '\\')
+				{
+					if(peek() == 'Q' || parsePredefinedClass() != null)
+					{
+						throw new UnsupportedException();
+					}
+
+					to = parseEscapedChar();
+				}
+				else if(toChar == '[')
+				{
+					throw new UnsupportedException();
+				}
+				else
+				{
+					to = checkChar(toChar);
+				}
+
+				if(to < from)
+				{
+					throw new UnsupportedException();
+				}
+
+				members.add(range(from, to));
+			}
+			else
+			{
+				members.add(literal(from));
+			}
+		}
+
+		final CharPredicate[] array = members.toArray(new CharPredicate[members.size()]);
+		CharPredicate union = new CharPredicate()
+		{
+			@Override
+			boolean matches(int ch)
+			{
+				for(CharPredicate predicate: array)
+				{
+					if(predicate.matches(ch))
+					{
+						return true;
+					}
+				}
+
+				return false;
+			}
+		};
+
+		return negated ? not(union) : union;
+	}
+
+	/**
+	 * Parses an optional quantifier following an atom.
+	 *
+	 * @param atom Atom.
+	 *
+	 * @return Either the atom or a repetition node.
+	 *
+	 * @throws UnsupportedException If unsupported syntax is encountered.
+	 */
+	private Node parseQuantifier(Node atom) throws UnsupportedException
+	{
+		int ch = peek();
+		int min;
+		int max;
+
+		switch(ch)
+		{
+			case '*': min = 0; max = -1; pos++; break;
+			case '+': min = 1; max = -1; pos++; break;
+			case '?': min = 0; max = 1; pos++; break;
+
+			case '{':
+			{
+				pos++;
+				min = parseNumber();
+				max = min;
+
+				if(peek() == ',')
+				{
+					pos++;
+					max = peek() == '}' ? -1 : parseNumber();
+				}
+
+				if(next() != '}' || max >= 0 && max < min)
+				{
+					throw new UnsupportedException();
+				}
+
+				break;
+			}
+
+			default:
+				return atom;
+		}
+
+		if(atom.kind == NODE_ASSERT)
+		{
+			throw new UnsupportedException();
+		}
+
+		Node node = new Node(NODE_REPEAT);
+		node.child = atom;
+		node.min = min;
+		node.max = max;
+		node.greedy = true;
+
+		if(peek() == '?')
+		{
+			pos++;
+			node.greedy = false;
+		}
+		else if(peek() == '+')
+		{
+			throw new UnsupportedException();
+		}
+
+		if(isQuantifier(peek()))
+		{
+			throw new UnsupportedException();
+		}
+
+		// The JDK's engine has special rules for iterations matching the empty
+		// string, which are not replicated
+		if((max < 0 || max > 1) && isNullable(atom))
+		{
+			throw new UnsupportedException();
+		}
+
+		return node;
+	}
+
+	/**
+	 * Parses a decimal number.
+	 *
+	 * @return Value.
+	 *
+	 * @throws UnsupportedException If there is no number, or it is too large.
+	 */
+	private int parseNumber() throws UnsupportedException
+	{
+		int start = pos;
+
+		while(peek() >= '0' && peek() <= '9')
+		{
+			pos++;
+		}
+
+		if(pos == start || pos - start > 4)
+		{
+			throw new UnsupportedException();
+		}
+
+		return Integer.parseInt(expression.substring(start, pos));
+	}
+
+	/**
+	 * Rejects surrogate characters, which would require the JDK's handling of
+	 * supplementary characters to be replicated.
+	 *
+	 * @param ch Character.
+	 *
+	 * @return The character.
+	 *
+	 * @throws UnsupportedException If the character is a surrogate.
+	 */
+	private static char checkChar(char ch) throws UnsupportedException
+	{
+		if(Character.isSurrogate(ch))
+		{
+			throw new UnsupportedException();
+		}
+
+		return ch;
+	}
+
+	/**
+	 * Creates a predicate matching a single character, observing case
+	 * insensitivity.
+	 *
+	 * @param c Character.
+	 *
+	 * @return Predicate.
+	 */
+	private CharPredicate literal(final int c)
+	{
+		if(!caseInsensitive || fold(c) == c && Character.toUpperCase(c) == c)
+		{
+			return new CharPredicate()
+			{
+				@Override
+				boolean matches(int ch)
+				{
+					return ch == c;
+				}
+			};
+		}
+
+		final int folded = fold(c);
+
+		return new CharPredicate()
+		{
+			@Override
+			boolean matches(int ch)
+			{
+				return ch == c || fold(ch) == folded;
+			}
+		};
+	}
+
+	/**
+	 * Creates a predicate matching a range of characters, observing case
+	 * insensitivity.
+	 *
+	 * @param from First character.
+	 * @param to Last character.
+	 *
+	 * @return Predicate.
+	 */
+	private CharPredicate range(final int from, final int to)
+	{
+		if(!caseInsensitive)
+		{
+			return new CharPredicate()
+			{
+				@Override
+				boolean matches(int ch)
+				{
+					return ch >= from && ch <= to;
+				}
+			};
+		}
+
+		return new CharPredicate()
+		{
+			@Override
+			boolean matches(int ch)
+			{
+				if(ch >= from && ch <= to)
+				{
+					return true;
+				}
+
+				int upper = Character.toUpperCase(ch);
+
+				if(upper >= from && upper <= to)
+				{
+					return true;
+				}
+
+				int lower = Character.toLowerCase(ch);
+
+				return lower >= from && lower <= to;
+			}
+		};
+	}
+
+	/**
+	 * Creates a predicate negating another predicate.
+	 *
+	 * @param predicate Predicate.
+	 *
+	 * @return Negated predicate.
+	 */
+	private static CharPredicate not(final CharPredicate predicate)
+	{
+		return new CharPredicate()
+		{
+			@Override
+			boolean matches(int ch)
+			{
+				return !predicate.matches(ch);
+			}
+		};
+	}
+
+	/**
+	 * Folds the case of a character the same way the JDK does for case
+	 * insensitive Unicode matching.
+	 *
+	 * @param ch Character.
+	 *
+	 * @return Folded character.
+	 */
+	private static int fold(int ch)
+	{
+		return Character.toLowerCase(Character.toUpperCase(ch));
+	}
+
+	/**
+	 * Creates a character node.
+	 *
+	 * @param predicate Predicate.
+	 *
+	 * @return Node.
+	 */
+	private static Node createCharNode(CharPredicate predicate)
+	{
+		Node node = new Node(NODE_CHAR);
+		node.predicate = predicate;
+
+		return node;
+	}
+
+	/**
+	 * Creates an assertion node.
+	 *
+	 * @param assertion Assertion kind.
+	 *
+	 * @return Node.
+	 */
+	private static Node createAssertNode(int assertion)
+	{
+		Node node = new Node(NODE_ASSERT);
+		node.assertion = assertion;
+
+		return node;
+	}
+
+	/**
+	 * Checks whether a node can match the empty string.
+	 *
+	 * @param node Node.
+	 *
+	 * @return <code>true</code> if the node can match the empty string.
+	 */
+	private static boolean isNullable(Node node)
+	{
+		switch(node.kind)
+		{
+			case NODE_CHAR:
+				return false;
+
+			case NODE_CONCAT:
+				for(Node child: node.children)
+				{
+					if(!isNullable(child))
+					{
+						return false;
+					}
+				}
+
+				return true;
+
+			case NODE_ALTERNATION:
+				for(Node child: node.children)
+				{
+					if(isNullable(child))
+					{
+						return true;
+					}
+				}
+
+				return false;
+
+			case NODE_REPEAT:
+				return node.min == 0 || isNullable(node.child);
+
+			case NODE_GROUP:
+				return isNullable(node.child);
+
+			default:
+				return true;
+		}
+	}
+
+	/**
+	 * Checks whether a node contains alternatives or variable repetitions.
+	 *
+	 * @param node Node.
+	 *
+	 * @return <code>true</code> if the node can match in more than one way.
+	 */
+	private static boolean isAmbiguous(Node node)
+	{
+		if(node.kind == NODE_ALTERNATION || node.kind == NODE_REPEAT && node.min != node.max)
+		{
+			return true;
+		}
+
+		if(node.children != null)
+		{
+			for(Node child: node.children)
+			{
+				if(isAmbiguous(child))
+				{
+					return true;
+				}
+			}
+		}
+
+		return node.child != null && isAmbiguous(node.child);
+	}
+
+	/**
+	 * Checks whether a node repeats an ambiguous sub-expression.
+	 *
+	 * @param node Node.
+	 *
+	 * @return <code>true</code> if the node is prone to catastrophic
+	 * 		backtracking.
+	 */
+	private static boolean isBacktrackingRisk(Node node)
+	{
+		if(node.kind == NODE_REPEAT && (node.max < 0 || node.max > 1) && isAmbiguous(node.child))
+		{
+			return true;
+		}
+
+		if(node.children != null)
+		{
+			for(Node child: node.children)
+			{
+				if(isBacktrackingRisk(child))
+				{
+					return true;
+				}
+			}
+		}
+
+		return node.child != null && isBacktrackingRisk(node.child);
+	}
+
+	/**
+	 * Appends an instruction.
+	 *
+	 * @param op Opcode.
+	 * @param arg1 First argument.
+	 * @param arg2 Second argument.
+	 * @param predicate Predicate, for OP_CHAR.
+	 *
+	 * @return Index of the instruction.
+	 *
+	 * @throws UnsupportedException If the program grows too large.
+	 */
+	private int emit(int op, int arg1, int arg2, CharPredicate predicate) throws UnsupportedException
+	{
+		if(instructions.size() >= MAX_PROGRAM_SIZE)
+		{
+			throw new UnsupportedException();
+		}
+
+		instructions.add(new int[]{op, arg1, arg2});
+		instructionPredicates.add(predicate);
+
+		return instructions.size() - 1;
+	}
+
+	/**
+	 * Sets the arguments of an already emitted instruction.
+	 *
+	 * @param index Instruction index.
+	 * @param arg1 First argument.
+	 * @param arg2 Second argument.
+	 */
+	private void patch(int index, int arg1, int arg2)
+	{
+		int[] instruction = instructions.get(index);
+		instruction[1] = arg1;
+		instruction[2] = arg2;
+	}
+
+	/**
+	 * Compiles a node into instructions.
+	 *
+	 * @param node Node.
+	 *
+	 * @throws UnsupportedException If the program grows too large.
+	 */
+	private void compile(Node node) throws UnsupportedException
+	{
+		switch(node.kind)
+		{
+			case NODE_CHAR:
+				emit(OP_CHAR, 0, 0, node.predicate);
+				break;
+
+			case NODE_ASSERT:
+				emit(OP_ASSERT, node.assertion, 0, null);
+				break;
+
+			case NODE_CONCAT:
+				for(Node child: node.children)
+				{
+					compile(child);
+				}
+
+				break;
+
+			case NODE_ALTERNATION:
+			{
+				List<Integer> jumps = new ArrayList<Integer>();
+				int last = node.children.size() - 1;
+
+				for(int i = 0; i < last; i++)
+				{
+					int split = emit(OP_SPLIT, 0, 0, null);
+					compile(node.children.get(i));
+					jumps.add(emit(OP_JUMP, 0, 0, null));
+					patch(split, split + 1, instructions.size());
+				}
+
+				compile(node.children.get(last));
+
+				for(int jump: jumps)
+				{
+					patch(jump, instructions.size(), 0);
+				}
+
+				break;
+			}
+
+			case NODE_GROUP:
+				emit(OP_SAVE, node.group * 2, 0, null);
+				compile(node.child);
+				emit(OP_SAVE, node.group * 2 + 1, 0, null);
+				break;
+
+			case NODE_REPEAT:
+				compileRepeat(node);
+				break;
+		}
+	}
+
+	/**
+	 * Compiles a repetition node. Counted repetitions are compiled by copying
+	 * the repeated expression.
+	 *
+	 * @param node Node.
+	 *
+	 * @throws UnsupportedException If the program grows too large.
+	 */
+	private void compileRepeat(Node node) throws UnsupportedException
+	{
+		for(int i = 0; i < node.min; i++)
+		{
+			compile(node.child);
+		}
+
+		if(node.max < 0)
+		{
+			int split = emit(OP_SPLIT, 0, 0, null);
+			compile(node.child);
+			emit(OP_JUMP, split, 0, null);
+			int end = instructions.size();
+			patch(split, node.greedy ? split + 1 : end, node.greedy ? end : split + 1);
+		}
+		else
+		{
+			List<Integer> splits = new ArrayList<Integer>();
+
+			for(int i = node.min; i < node.max; i++)
+			{
+				splits.add(emit(OP_SPLIT, 0, 0, null));
+				compile(node.child);
+			}
+
+			int end = instructions.size();
+
+			for(int split: splits)
+			{
+				patch(split, node.greedy ? split + 1 : end, node.greedy ? end : split + 1);
+			}
+		}
+	}
+}
@@ -0,0 +1,678 @@
+/*******************************************************************************
+ * Copyright (c) 2008 - 2014 Marian Schedenig
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marian Schedenig - initial API and implementation
+ *******************************************************************************/
+
+package name.schedenig.eclipse.grepconsole.engine;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * Analyses regular expressions (in java.util.regex syntax) and extracts
+ * literal strings which every match of an expression must contain.
+ *
+ * The analysis is conservative: if an expression uses a construct the
+ * extractor does not understand (e.g. embedded flags), no literals are
+ * reported. The result is a set of alternatives: every match contains at least
+ * one of the returned strings.
+ *
+ * @author msched
+ */
+public class LiteralExtractor
+{
+	/**
+	 * Thrown internally when the expression contains an unsupported construct.
+	 */
+	private static class UnsupportedException extends Exception
+	{
+		private static final long serialVersionUID = 1L;
+	}
+
+	/** Expression being analysed. */
+	private String regex;
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param regex Expression.
+	 */
+	private LiteralExtractor(String regex)
+	{
+		this.regex = regex;
+	}
+
+	/**
+	 * Extracts the literals which every match of the specified expression must
+	 * contain.
+	 *
+	 * @param regex Expression. Must be valid.
+	 *
+	 * @return Literal alternatives (every match contains at least one of
+	 * 		them), or <code>null</code> if no literals could be determined.
+	 */
+	public static String[] extract(String regex)
+	{
+		if(regex == null)
+		{
+			return null;
+		}
+
+		try
+		{
+			List<String> literals = new LiteralExtractor(regex).parseAlternation(0, regex.length());
+			return literals == null ? null : literals.toArray(new String[literals.size()]);
+		}
+		catch(UnsupportedException ex)
+		{
+			return null;
+		}
+		catch(IndexOutOfBoundsException ex)
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * Analyses an alternation, i.e. a list of sequences separated by '|'.
+	 *
+	 * @param start Start index.
+	 * @param end End index (exclusive).
+	 *
+	 * @return Literal alternatives, or <code>null</code>.
+	 *
+	 * @throws UnsupportedException If an unsupported construct is found.
+	 */
+	private List<String> parseAlternation(int start, int end) throws UnsupportedException
+	{
+		LinkedHashSet<String> result = new LinkedHashSet<String>();
+		int branchStart = start;
+		int i = start;
+
+		while(i <= end)
+		{
+			if(i == end || regex.charAt(i) == '|')
+			{
+				List<String> branch = parseSequence(branchStart, i);
+
+				if(branch == null)
+				{
+					return null;
+				}
+
+				result.addAll(branch);
+				branchStart = i + 1;
+				i++;
+			}
+			else
+			{
+				i = skipAtom(i, end);
+			}
+		}
+
+		return new ArrayList<String>(result);
+	}
+
+	/**
+	 * Analyses a sequence of atoms and returns the best literal set found in
+	 * it.
+	 *
+	 * @param start Start index.
+	 * @param end End index (exclusive).
+	 *
+	 * @return Literal alternatives, or <code>null</code>.
+	 *
+	 * @throws UnsupportedException If an unsupported construct is found.
+	 */
+	private List<String> parseSequence(int start, int end) throws UnsupportedException
+	{
+		List<String> best = null;
+		StringBuilder run = new StringBuilder();
+		int i = start;
+
+		while(i < end)
+		{
+			char c = regex.charAt(i);
+			String literal = null;
+			List<String> groupLiterals = null;
+			int atomEnd;
+
+			if(c == '\\')
+			{
+				char d = regex.charAt(i + 1);
+
+				if(d == 'Q')
+				{
+					int quoteEnd = regex.indexOf("\\E", i + 2); //$NON-NLS-1$
+
+					if(quoteEnd < 0 || quoteEnd > end)
+					{
+						literal = regex.substring(i + 2, end);
+						atomEnd = end;
+					}
+					else
+					{
+						literal = regex.substring(i + 2, quoteEnd);
+						atomEnd = quoteEnd + 2;
+					}
+				}
+				else if(Character.isLetterOrDigit(d))
+				{
+					char escaped = getEscapedChar(d);
+
+					if(escaped != 0)
+					{
+						literal = String.valueOf(escaped);
+					}
+
+					atomEnd = skipEscape(i);
+				}
+				else
+				{
+					literal = String.valueOf(d);
+					atomEnd = i + 2;
+				}
+			}
+			else if(c == '[')
+			{
+				atomEnd = skipClass(i);
+			}
+			else if(c == '(')
+			{
+				int close = findGroupEnd(i);
+				int contentStart = getGroupContentStart(i);
+
+				if(contentStart >= 0)
+				{
+					groupLiterals = parseAlternation(contentStart, close);
+				}
+
+				atomEnd = close + 1;
+			}
+			else if(c == '.' || c == '^' || c == '$')
+			{
+				atomEnd = i + 1;
+			}
+			else if(c == ')' || c == '|' || c == '*' || c == '+' || c == '?' || c == '{')
+			{
+				throw new UnsupportedException();
+			}
+			else
+			{
+				literal = String.valueOf(c);
+				atomEnd = i + 1;
+			}
+
+			int minRepetitions = 1;
+			int next = atomEnd;
+
+			if(atomEnd < end)
+			{
+				int quantifierEnd = skipQuantifier(atomEnd, end);
+
+				if(quantifierEnd > atomEnd)
+				{
+					minRepetitions = getMinRepetitions(atomEnd);
+					next = quantifierEnd;
+				}
+			}
+
+			if(literal != null)
+			{
+				if(next == atomEnd)
+				{
+					run.append(literal);
+				}
+				else
+				{
+					// A quantifier only applies to the last character of a literal
+					run.append(literal, 0, minRepetitions == 0 ? literal.length() - 1 : literal.length());
+					best = choose(best, run);
+					run.setLength(0);
+				}
+			}
+			else
+			{
+				best = choose(best, run);
+				run.setLength(0);
+
+				if(groupLiterals != null && minRepetitions > 0)
+				{
+					best = choose(best, groupLiterals);
+				}
+			}
+
+			i = next;
+		}
+
+		return choose(best, run);
+	}
+
+	/**
+	 * Chooses the better of a literal set and a single literal.
+	 *
+	 * @param best Current best literal set. May be <code>null</code>.
+	 * @param run Literal run.
+	 *
+	 * @return Better literal set.
+	 */
+	private static List<String> choose(List<String> best, StringBuilder run)
+	{
+		if(run.length() == 0)
+		{
+			return best;
+		}
+
+		List<String> candidate = new ArrayList<String>(1);
+		candidate.add(run.toString());
+
+		return choose(best, candidate);
+	}
+
+	/**
+	 * Chooses the better of two literal sets. A set is better if its shortest
+	 * literal is longer, or, for equal lengths, if it has fewer alternatives.
+	 *
+	 * @param a First set. May be <code>null</code>.
+	 * @param b Second set. May be <code>null</code>.
+	 *
+	 * @return Better set.
+	 */
+	private static List<String> choose(List<String> a, List<String> b)
+	{
+		if(a == null || a.isEmpty())
+		{
+			return b == null || b.isEmpty() ? null : b;
+		}
+		else if(b == null || b.isEmpty())
+		{
+			return a;
+		}
+
+		int minA = getMinLength(a);
+		int minB = getMinLength(b);
+
+		if(minA != minB)
+		{
+			return minA > minB ? a : b;
+		}
+
+		return a.size() <= b.size() ? a : b;
+	}
+
+	/**
+	 * Returns the length of the shortest string in a list.
+	 *
+	 * @param literals List of strings.
+	 *
+	 * @return Minimum length.
+	 */
+	private static int getMinLength(List<String> literals)
+	{
+		int min = Integer.MAX_VALUE;
+
+		for(String literal: literals)
+		{
+			min = Math.min(min, literal.length());
+		}
+
+		return min;
+	}
+
+	/**
+	 * Returns the character represented by a simple alphanumeric escape
+	 * sequence.
+	 *
+	 * @param c Character following the backslash.
+	 *
+	 * @return Escaped character, or 0 if the escape sequence does not represent
+	 * 		a single fixed character.
+	 */
+	private static char getEscapedChar(char c)
+	{
+		switch(c)
+		{
+			case 't':
+				return '\t';
+
+			case 'n':
+				return '\n';
+
+			case 'r':
+				return '\r';
+
+			case 'f':
+				return '\f';
+
+			case 'a':
+				return '\u0007';
+
+			case 'e':
+				return '\u001B';
+
+			default:
+				return 0;
+		}
+	}
+
+	/**
+	 * Skips an alphanumeric escape sequence.
+	 *
+	 * @param i Index of the backslash.
+	 *
+	 * @return Index following the escape sequence.
+	 */
+	private int skipEscape(int i)
+	{
+		char c = regex.charAt(i + 1);
+		int j = i + 2;
+
+		switch(c)
+		{
+			case 'p':
+			case 'P':
+			case 'x':
+			case 'N':
+				if(j < regex.length() && regex.charAt(j) == '{')
+				{
+					return regex.indexOf('}', j) + 1;
+				}
+
+				return c == 'x' ? j + 2 : (c == 'N' ? j : j + 1);
+
+			case 'u':
+				return j + 4;
+
+			case 'c':
+				return j + 1;
+
+			case 'k':
+				return regex.indexOf('>', j) + 1;
+
+			case '0':
+				for(int k = 0; k < 3 && j < regex.length() && regex.charAt(j) >= '0' && regex.charAt(j) <= '7'; k++)
+				{
+					j++;
+				}
+
+				return j;
+
+			default:
+				if(c >= '1' && c <= '9')
+				{
+					while(j < regex.length() && Character.isDigit(regex.charAt(j)))
+					{
+						j++;
+					}
+				}
+
+				return j;
+		}
+	}
+
+	/**
+	 * Skips a character class.
+	 *
+	 * @param i Index of the opening bracket.
+	 *
+	 * @return Index following the closing bracket.
+	 *
+	 * @throws UnsupportedException If the class cannot be parsed.
+	 */
+	private int skipClass(int i) throws UnsupportedException
+	{
+		int j = i + 1;
+
+		if(regex.charAt(j) == '^')
+		{
+			j++;
+		}
+
+		if(regex.charAt(j) == ']')
+		{
+			j++;
+		}
+
+		while(j < regex.length())
+		{
+			char c = regex.charAt(j);
+
+			if(c == '\\')
+			{
+				if(regex.charAt(j + 1) == 'Q')
+				{
+					throw new UnsupportedException();
+				}
+
+				j = Character.isLetterOrDigit(regex.charAt(j + 1)) ? skipEscape(j) : j + 2;
+			}
+			else if(c == '[')
+			{
+				j = skipClass(j);
+			}
+			else if(c == ']')
+			{
+				return j + 1;
+			}
+			else
+			{
+				j++;
+			}
+		}
+
+		throw new UnsupportedException();
+	}
+
+	/**
+	 * Finds the closing parenthesis of a group.
+	 *
+	 * @param i Index of the opening parenthesis.
+	 *
+	 * @return Index of the closing parenthesis.
+	 *
+	 * @throws UnsupportedException If the group cannot be parsed.
+	 */
+	private int findGroupEnd(int i) throws UnsupportedException
+	{
+		int j = i + 1;
+
+		while(j < regex.length())
+		{
+			char c = regex.charAt(j);
+
+			if(c == ')')
+			{
+				return j;
+			}
+
+			j = skipAtom(j, regex.length());
+		}
+
+		throw new UnsupportedException();
+	}
+
+	/**
+	 * Skips a single atom or quantifier character.
+	 *
+	 * @param i Start index.
+	 * @param end End index (exclusive).
+	 *
+	 * @return Index following the atom.
+	 *
+	 * @throws UnsupportedException If the atom cannot be parsed.
+	 */
+	private int skipAtom(int i, int end) throws UnsupportedException
+	{
+		char c = regex.charAt(i);
+
+		if(c == '\\')
+		{
+			char d = regex.charAt(i + 1);
+
+			if(d == 'Q')
+			{
+				int quoteEnd = regex.indexOf("\\E", i + 2); //$NON-NLS-1$
+				return quoteEnd < 0 ? end : quoteEnd + 2;
+			}
+
+			return Character.isLetterOrDigit(d) ? skipEscape(i) : i + 2;
+		}
+		else if(c == '[')
+		{
+			return skipClass(i);
+		}
+		else if(c == '(')
+		{
+			return findGroupEnd(i) + 1;
+		}
+		else
+		{
+			return i + 1;
+		}
+	}
+
+	/**
+	 * Returns the index at which the content of a group starts, for groups
+	 * whose content has to be matched.
+	 *
+	 * @param i Index of the opening parenthesis.
+	 *
+	 * @return Content start index, or -1 for lookaround groups, which do not
+	 * 		consume any characters.
+	 *
+	 * @throws UnsupportedException For groups which change flags.
+	 */
+	private int getGroupContentStart(int i) throws UnsupportedException
+	{
+		if(regex.charAt(i + 1) != '?')
+		{
+			return i + 1;
+		}
+
+		char c = regex.charAt(i + 2);
+
+		if(c == ':' || c == '>')
+		{
+			return i + 3;
+		}
+		else if(c == '=' || c == '!')
+		{
+			return -1;
+		}
+		else if(c == '<')
+		{
+			char d = regex.charAt(i + 3);
+
+			if(d == '=' || d == '!')
+			{
+				return -1;
+			}
+
+			int nameEnd = regex.indexOf('>', i + 3);
+
+			if(nameEnd < 0)
+			{
+				throw new UnsupportedException();
+			}
+
+			return nameEnd + 1;
+		}
+		else
+		{
+			// Embedded flags
+			throw new UnsupportedException();
+		}
+	}
+
+	/**
+	 * Skips a quantifier, including a lazy or possessive suffix.
+	 *
+	 * @param i Start index.
+	 * @param end End index (exclusive).
+	 *
+	 * @return Index following the quantifier, or <code>i</code> if there is no
+	 * 		quantifier.
+	 *
+	 * @throws UnsupportedException If the quantifier cannot be parsed.
+	 */
+	private int skipQuantifier(int i, int end) throws UnsupportedException
+	{
+		char c = regex.charAt(i);
+		int j;
+
+		if(c == '*' || c == '+' || c == '?')
+		{
+			j = i + 1;
+		}
+		else if(c == '{')
+		{
+			j = regex.indexOf('}', i);
+
+			if(j < 0 || j >= end)
+			{
+				throw new UnsupportedException();
+			}
+
+			j++;
+		}
+		else
+		{
+			return i;
+		}
+
+		if(j < end && (regex.charAt(j) == '?' || regex.charAt(j) == '+'))
+		{
+			j++;
+		}
+
+		return j;
+	}
+
+	/**
+	 * Returns the minimum number of repetitions of a quantifier.
+	 *
+	 * @param i Index of the quantifier.
+	 *
+	 * @return Minimum repetitions.
+	 *
+	 * @throws UnsupportedException If the quantifier cannot be parsed.
+	 */
+	private int getMinRepetitions(int i) throws UnsupportedException
+	{
+		char c = regex.charAt(i);
+
+		if(c == '+')
+		{
+			return 1;
+		}
+		else if(c == '{')
+		{
+			int j = i + 1;
+			int min = 0;
+
+			while(Character.isDigit(regex.charAt(j)))
+			{
+				min = Math.min(min * 10 + (regex.charAt(j) - '0'), 1000);
+				j++;
+			}
+
+			if(j == i + 1)
+			{
+				throw new UnsupportedException();
+			}
+
+			return min;
+		}
+		else
+		{
+			return 0;
+		}
+	}
+}
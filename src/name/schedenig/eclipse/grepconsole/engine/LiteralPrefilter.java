@@ -0,0 +1,366 @@
+/*******************************************************************************
+ * Copyright (c) 2008 - 2014 Marian Schedenig
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marian Schedenig - initial API and implementation
+ *******************************************************************************/
+
+package name.schedenig.eclipse.grepconsole.engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import name.schedenig.eclipse.grepconsole.model.GrepExpressionItem;
+
+/**
+ * Rules out expression items for a line before their regular expressions are
+ * evaluated.
+ *
+ * For every item, the literals which any match of its first expression (the
+ * quick expression if it has one, otherwise the main expression) must contain
+ * are extracted with a {@link LiteralExtractor}. All literals are compiled into
+ * a single Aho-Corasick automaton, so a line can be checked for all literals
+ * of all items in one pass. An item whose literals do not occur in a line
+ * cannot match it. Items for which no literals could be extracted are always
+ * candidates.
+ *
+ * Literals are compared case-insensitively, so the prefilter works for case
+ * sensitive and case insensitive items alike and may only produce false
+ * positives, which are ruled out by the regular expression.
+ *
+ * Items may be edited after the prefilter has been created. An item whose
+ * expression has changed since then is treated as a candidate for every line.
+ *
+ * Not thread safe, as the scan results are stored in the instance. The
+ * automaton itself is never modified after construction, so instances for
+ * other threads can be created with {@link #copy()} without analysing the
+ * items again.
+ *
+ * @author msched
+ */
+public class LiteralPrefilter
+{
+	/**
+	 * A node of the Aho-Corasick automaton.
+	 *
+	 * @author msched
+	 */
+	private static class Node
+	{
+		/** Sorted transition characters. */
+		private char[] keys = new char[0];
+
+		/** Transition targets, in the same order as the keys. */
+		private Node[] targets = new Node[0];
+
+		/** Failure link. */
+		private Node fail;
+
+		/** Indexes of the items with a literal ending at this node, including
+		 *  those reachable through failure links. */
+		private int[] outputs = new int[0];
+
+		/**
+		 * Returns the transition target for a character.
+		 *
+		 * @param c Character.
+		 *
+		 * @return Target node, or <code>null</code>.
+		 */
+		private Node get(char c)
+		{
+			int index = Arrays.binarySearch(keys, c);
+			return index < 0 ? null : targets[index];
+		}
+
+		/**
+		 * Returns the transition target for a character, creating it if
+		 * necessary.
+		 *
+		 * @param c Character.
+		 *
+		 * @return Target node.
+		 */
+		private Node getOrCreate(char c)
+		{
+			int index = Arrays.binarySearch(keys, c);
+
+			if(index >= 0)
+			{
+				return targets[index];
+			}
+
+			index = -index - 1;
+			Node node = new Node();
+
+			char[] newKeys = new char[keys.length + 1];
+			System.arraycopy(keys, 0, newKeys, 0, index);
+			System.arraycopy(keys, index, newKeys, index + 1, keys.length - index);
+			newKeys[index] = c;
+
+			Node[] newTargets = new Node[targets.length + 1];
+			System.arraycopy(targets, 0, newTargets, 0, index);
+			System.arraycopy(targets, index, newTargets, index + 1, targets.length - index);
+			newTargets[index] = node;
+
+			keys = newKeys;
+			targets = newTargets;
+
+			return node;
+		}
+
+		/**
+		 * Adds an output index, unless it is already present.
+		 *
+		 * @param index Item index.
+		 */
+		private void addOutput(int index)
+		{
+			for(int output: outputs)
+			{
+				if(output == index)
+				{
+					return;
+				}
+			}
+
+			outputs = Arrays.copyOf(outputs, outputs.length + 1);
+			outputs[outputs.length - 1] = index;
+		}
+	}
+
+	/** Maps items to their indexes. */
+	private Map<GrepExpressionItem, Integer> indexes;
+
+	/** Expression analysed for the item at the same index. */
+	private String[] expressions;
+
+	/** Whether the item at the same index has literals, i.e. can be ruled out. */
+	private boolean[] hasLiterals;
+
+	/** Scan number in which the item at the same index was last hit. */
+	private int[] hits;
+
+	/** Current scan number. */
+	private int scan;
+
+	/** Root node of the automaton. <code>null</code> if no item has literals. */
+	private Node root;
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param items Items which should be prefiltered. Items contained more than
+	 * 		once are only analysed once.
+	 */
+	public LiteralPrefilter(Collection<GrepExpressionItem> items)
+	{
+		indexes = new IdentityHashMap<GrepExpressionItem, Integer>();
+		List<String> expressionList = new ArrayList<String>();
+		List<String[]> literals = new ArrayList<String[]>();
+
+		for(GrepExpressionItem item: items)
+		{
+			if(!indexes.containsKey(item))
+			{
+				String expression = FilterRuleSet.getFirstExpression(item);
+
+				indexes.put(item, literals.size());
+				expressionList.add(expression);
+				literals.add(LiteralExtractor.extract(expression));
+			}
+		}
+
+		expressions = expressionList.toArray(new String[expressionList.size()]);
+		hasLiterals = new boolean[literals.size()];
+		hits = new int[literals.size()];
+
+		for(int i = 0; i < literals.size(); i++)
+		{
+			String[] itemLiterals = literals.get(i);
+
+			if(itemLiterals == null)
+			{
+				continue;
+			}
+
+			if(root == null)
+			{
+				root = new Node();
+			}
+
+			for(String literal: itemLiterals)
+			{
+				Node node = root;
+
+				for(int j = 0; j < literal.length(); j++)
+				{
+					node = node.getOrCreate(fold(literal.charAt(j)));
+				}
+
+				node.addOutput(i);
+			}
+
+			hasLiterals[i] = true;
+		}
+
+		if(root != null)
+		{
+			buildFailureLinks();
+		}
+	}
+
+	/**
+	 * Creates a new instance sharing the automaton of another instance, but
+	 * with its own scan results.
+	 *
+	 * @param src Instance whose automaton is shared.
+	 */
+	private LiteralPrefilter(LiteralPrefilter src)
+	{
+		indexes = src.indexes;
+		expressions = src.expressions;
+		hasLiterals = src.hasLiterals;
+		root = src.root;
+		hits = new int[src.hits.length];
+	}
+
+	/**
+	 * Returns a new instance which shares the automaton of this instance, but
+	 * stores its own scan results.
+	 *
+	 * @return Copy.
+	 */
+	public LiteralPrefilter copy()
+	{
+		return new LiteralPrefilter(this);
+	}
+
+	/**
+	 * Computes the failure links of all nodes and merges the outputs reachable
+	 * through them, using a breadth first traversal.
+	 */
+	private void buildFailureLinks()
+	{
+		LinkedList<Node> queue = new LinkedList<Node>();
+
+		for(Node child: root.targets)
+		{
+			child.fail = root;
+			queue.add(child);
+		}
+
+		while(!queue.isEmpty())
+		{
+			Node node = queue.removeFirst();
+
+			for(int i = 0; i < node.keys.length; i++)
+			{
+				char c = node.keys[i];
+				Node child = node.targets[i];
+				Node fail = node.fail;
+
+				while(fail != null && fail.get(c) == null)
+				{
+					fail = fail.fail;
+				}
+
+				child.fail = fail == null ? root : fail.get(c);
+
+				for(int output: child.fail.outputs)
+				{
+					child.addOutput(output);
+				}
+
+				queue.add(child);
+			}
+		}
+	}
+
+	/**
+	 * Folds a character for case insensitive comparison.
+	 *
+	 * @param c Character.
+	 *
+	 * @return Folded character.
+	 */
+	private static char fold(char c)
+	{
+		return Character.toLowerCase(Character.toUpperCase(c));
+	}
+
+	/**
+	 * Scans a line for the literals of all items. Afterwards,
+	 * {@link #mayMatch(GrepExpressionItem)} can be used to check whether an item
+	 * may match the line.
+	 *
+	 * @param text Line text. Must be the same text the items' first expressions
+	 * 		are tested against.
+	 */
+	public void scan(CharSequence text)
+	{
+		scan++;
+
+		if(scan == 0)
+		{
+			Arrays.fill(hits, 0);
+			scan = 1;
+		}
+
+		if(root == null)
+		{
+			return;
+		}
+
+		Node node = root;
+
+		for(int i = 0; i < text.length(); i++)
+		{
+			char c = fold(text.charAt(i));
+			Node next = node.get(c);
+
+			while(next == null && node != root)
+			{
+				node = node.fail;
+				next = node.get(c);
+			}
+
+			node = next == null ? root : next;
+
+			for(int output: node.outputs)
+			{
+				hits[output] = scan;
+			}
+		}
+	}
+
+	/**
+	 * Checks whether an item may match the line passed to the last call of
+	 * {@link #scan(CharSequence)}.
+	 *
+	 * @param item Item.
+	 *
+	 * @return <code>false</code> if the item definitely does not match the line.
+	 */
+	public boolean mayMatch(GrepExpressionItem item)
+	{
+		Integer index = indexes.get(item);
+
+		if(index == null || !hasLiterals[index]
+				|| FilterRuleSet.getFirstExpression(item) != expressions[index])
+		{
+			return true;
+		}
+
+		return hits[index] == scan;
+	}
+}
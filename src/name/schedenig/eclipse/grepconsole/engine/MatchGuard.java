@@ -0,0 +1,395 @@
+/*******************************************************************************
+ * Copyright (c) 2008 - 2014 Marian Schedenig
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marian Schedenig - initial API and implementation
+ *******************************************************************************/
+
+package name.schedenig.eclipse.grepconsole.engine;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.regex.Pattern;
+
+import name.schedenig.eclipse.grepconsole.model.AbstractGrepModelElement;
+import name.schedenig.eclipse.grepconsole.model.GrepExpressionFolder;
+import name.schedenig.eclipse.grepconsole.model.GrepExpressionItem;
+import name.schedenig.eclipse.grepconsole.model.GrepExpressionItem.RegexEngine;
+
+/**
+ * Keeps track of expressions whose matches exceed the configured time limit.
+ *
+ * Expressions which time out repeatedly are suspended: they are no longer
+ * evaluated, neither for styling nor for filtering, statistics or
+ * notifications. Expressions are identified by item ID, expression text and
+ * regex engine, so a suspension applies to all copies of an item and is
+ * lifted as soon as the expression or its engine is changed. Changing the time
+ * limit lifts all suspensions.
+ *
+ * Checking for suspensions does not lock and, if the caller keeps the
+ * expression keys in a {@link KeyCache}, does not allocate, so it can be done
+ * for every item and line.
+ *
+ * Thread safe. Shared by all consoles.
+ *
+ * @author msched
+ */
+public class MatchGuard
+{
+	/**
+	 * Interface for listeners which want to be informed when expressions are
+	 * suspended.
+	 *
+	 * @author msched
+	 */
+	public static interface IMatchGuardListener
+	{
+		/**
+		 * Called when an expression has been suspended. May be called on any
+		 * thread.
+		 *
+		 * @param item Suspended item.
+		 */
+		public void expressionSuspended(GrepExpressionItem item);
+	}
+
+	/**
+	 * Caches the expression keys of items (see
+	 * {@link MatchGuard#createKey(GrepExpressionItem)}). Items compile new
+	 * patterns whenever their expressions change, so a key is created again if
+	 * any of the item's patterns or its regex engine differs from those it has
+	 * been created for.
+	 *
+	 * Not thread safe. Each matching component keeps its own cache.
+	 *
+	 * @author msched
+	 */
+	public static class KeyCache
+	{
+		/**
+		 * Key of an item, together with the patterns and regex engine it has been
+		 * created for.
+		 *
+		 * @author msched
+		 */
+		private static class Entry
+		{
+			/** Main pattern. */
+			private Pattern pattern;
+
+			/** Quick pattern. */
+			private Pattern quickPattern;
+
+			/** Unless pattern. */
+			private Pattern unlessPattern;
+
+			/** Regex engine. */
+			private RegexEngine engine;
+
+			/** Key. */
+			private String key;
+		}
+
+		/** Maximum number of cached keys. When exceeded, the cache is cleared,
+		 *  which discards keys of items that are no longer used. */
+		private static final int MAX_KEYS = 256;
+
+		/** Entries by item. */
+		private Map<GrepExpressionItem, Entry> entries = new IdentityHashMap<GrepExpressionItem, Entry>();
+
+		/**
+		 * Returns the key for an item, creating it if the item's patterns or
+		 * regex engine have changed since it was last created.
+		 *
+		 * @param item Item.
+		 *
+		 * @return Key.
+		 */
+		public String get(GrepExpressionItem item)
+		{
+			Pattern pattern = item.getPattern();
+			Pattern quickPattern = item.getQuickPattern();
+			Pattern unlessPattern = item.getUnlessPattern();
+			RegexEngine engine = item.getRegexEngine();
+			Entry entry = entries.get(item);
+
+			if(entry == null)
+			{
+				if(entries.size() >= MAX_KEYS)
+				{
+					entries.clear();
+				}
+
+				entry = new Entry();
+				entries.put(item, entry);
+			}
+			else if(entry.pattern == pattern && entry.quickPattern == quickPattern
+					&& entry.unlessPattern == unlessPattern && entry.engine == engine)
+			{
+				return entry.key;
+			}
+
+			entry.pattern = pattern;
+			entry.quickPattern = quickPattern;
+			entry.unlessPattern = unlessPattern;
+			entry.engine = engine;
+			entry.key = createKey(item);
+
+			return entry.key;
+		}
+	}
+
+	/**
+	 * Time out statistics for an expression.
+	 *
+	 * @author msched
+	 */
+	private static class Record
+	{
+		/** Expression key the record refers to. */
+		private String key;
+
+		/** Number of time outs. */
+		private int timeouts;
+
+		/** Whether the expression has been suspended. */
+		private boolean suspended;
+	}
+
+	/** Number of time outs after which an expression is suspended. */
+	public static final int MAX_TIMEOUTS = 3;
+
+	/** Default time limit per expression and line, in milliseconds. */
+	public static final int DEFAULT_TIME_LIMIT = 250;
+
+	/** Time limit per expression and line, in milliseconds. 0 for no limit. */
+	private volatile int timeLimit;
+
+	/** Records by item ID. */
+	private Map<String, Record> records = new HashMap<String, Record>();
+
+	/** Expression keys of suspended items, by item ID. Never modified, but
+	 *  replaced whenever an item is suspended or a suspension is lifted, so it
+	 *  can be read without locking. */
+	private volatile Map<String, String> suspendedKeys = Collections.emptyMap();
+
+	/** Registered listeners. */
+	private List<IMatchGuardListener> listeners = new CopyOnWriteArrayList<IMatchGuardListener>();
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param timeLimit Time limit per expression and line, in milliseconds. 0
+	 * 		for no limit.
+	 */
+	public MatchGuard(int timeLimit)
+	{
+		this.timeLimit = timeLimit;
+	}
+
+	/**
+	 * Returns the time limit.
+	 *
+	 * @return Time limit per expression and line, in milliseconds. 0 for no
+	 * 		limit.
+	 */
+	public int getTimeLimit()
+	{
+		return timeLimit;
+	}
+
+	/**
+	 * Sets the time limit. If the limit changes, all suspensions are lifted.
+	 *
+	 * @param timeLimit Time limit per expression and line, in milliseconds. 0
+	 * 		for no limit.
+	 */
+	public synchronized void setTimeLimit(int timeLimit)
+	{
+		if(this.timeLimit != timeLimit)
+		{
+			this.timeLimit = timeLimit;
+			records.clear();
+			suspendedKeys = Collections.emptyMap();
+		}
+	}
+
+	/**
+	 * Lifts the suspensions of items which no longer exist in an expression
+	 * tree or whose expressions have been edited. Must be called whenever the
+	 * expressions change, as suspensions are otherwise only lifted when an
+	 * item's new expressions time out too.
+	 *
+	 * @param root Root of the expression tree.
+	 */
+	public synchronized void liftEditedSuspensions(GrepExpressionFolder root)
+	{
+		if(suspendedKeys.isEmpty())
+		{
+			return;
+		}
+
+		Map<String, String> newSuspendedKeys = new HashMap<String, String>(suspendedKeys);
+
+		for(Iterator<Map.Entry<String, String>> it = newSuspendedKeys.entrySet().iterator(); it.hasNext();)
+		{
+			Map.Entry<String, String> entry = it.next();
+			AbstractGrepModelElement element = root == null ? null : root.findById(entry.getKey());
+
+			if(!(element instanceof GrepExpressionItem)
+					|| !createKey((GrepExpressionItem) element).equals(entry.getValue()))
+			{
+				records.remove(entry.getKey());
+				it.remove();
+			}
+		}
+
+		if(newSuspendedKeys.size() < suspendedKeys.size())
+		{
+			suspendedKeys = newSuspendedKeys.isEmpty() ? Collections.<String, String>emptyMap() : newSuspendedKeys;
+		}
+	}
+
+	/**
+	 * Adds a listener.
+	 *
+	 * @param listener Listener.
+	 */
+	public void addListener(IMatchGuardListener listener)
+	{
+		listeners.add(listener);
+	}
+
+	/**
+	 * Removes a listener.
+	 *
+	 * @param listener Listener.
+	 */
+	public void removeListener(IMatchGuardListener listener)
+	{
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Checks whether any items are currently suspended.
+	 *
+	 * @return <code>true</code> if at least one item is suspended.
+	 */
+	public boolean hasSuspendedItems()
+	{
+		return !suspendedKeys.isEmpty();
+	}
+
+	/**
+	 * Checks whether an item has been suspended.
+	 *
+	 * @param item Item.
+	 *
+	 * @return <code>true</code> iff the item's expressions must not be
+	 * 		evaluated.
+	 */
+	public boolean isSuspended(GrepExpressionItem item)
+	{
+		return hasSuspendedItems() && isSuspended(item, createKey(item));
+	}
+
+	/**
+	 * Checks whether an item has been suspended, using a previously created
+	 * key for the item's expressions.
+	 *
+	 * @param item Item.
+	 * @param key Key of the item's current expressions, as returned by
+	 * 		{@link #createKey(GrepExpressionItem)}.
+	 *
+	 * @return <code>true</code> iff the item's expressions must not be
+	 * 		evaluated.
+	 */
+	public boolean isSuspended(GrepExpressionItem item, String key)
+	{
+		Map<String, String> suspendedKeys = this.suspendedKeys;
+
+		if(suspendedKeys.isEmpty() || item.getId() == null)
+		{
+			return false;
+		}
+
+		String suspendedKey = suspendedKeys.get(item.getId());
+		return suspendedKey != null && suspendedKey.equals(key);
+	}
+
+	/**
+	 * Records that matching an item has exceeded the time limit. Suspends the
+	 * item if this has happened too often.
+	 *
+	 * @param item Item.
+	 */
+	public void reportTimeout(GrepExpressionItem item)
+	{
+		if(item.getId() == null)
+		{
+			return;
+		}
+
+		String key = createKey(item);
+
+		synchronized(this)
+		{
+			Record record = records.get(item.getId());
+
+			if(record == null || !record.key.equals(key))
+			{
+				if(record != null && record.suspended)
+				{
+					// The expressions have been edited since the item was suspended
+					Map<String, String> newSuspendedKeys = new HashMap<String, String>(suspendedKeys);
+					newSuspendedKeys.remove(item.getId());
+					suspendedKeys = newSuspendedKeys;
+				}
+
+				record = new Record();
+				record.key = key;
+				records.put(item.getId(), record);
+			}
+
+			record.timeouts++;
+
+			if(record.suspended || record.timeouts < MAX_TIMEOUTS)
+			{
+				return;
+			}
+
+			record.suspended = true;
+
+			Map<String, String> newSuspendedKeys = new HashMap<String, String>(suspendedKeys);
+			newSuspendedKeys.put(item.getId(), key);
+			suspendedKeys = newSuspendedKeys;
+		}
+
+		for(IMatchGuardListener listener: listeners)
+		{
+			listener.expressionSuspended(item);
+		}
+	}
+
+	/**
+	 * Creates the key which identifies the expressions of an item. Callers
+	 * checking items repeatedly should keep the keys in a {@link KeyCache}.
+	 *
+	 * @param item Item.
+	 *
+	 * @return Key.
+	 */
+	public static String createKey(GrepExpressionItem item)
+	{
+		return item.getGrepExpression() + '\n' + item.getQuickGrepExpression() + '\n' + item.getUnlessGrepExpression() + '\n' + item.isCaseInsensitive() + '\n' + item.getRegexEngine();
+	}
+}
@@ -0,0 +1,138 @@
+/*******************************************************************************
+ * Copyright (c) 2008 - 2014 Marian Schedenig
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marian Schedenig - initial API and implementation
+ *******************************************************************************/
+
+package name.schedenig.eclipse.grepconsole.engine;
+
+import java.util.regex.MatchResult;
+
+/**
+ * An immutable copy of the state of a successful match. Unlike
+ * <code>Matcher.toMatchResult()</code>, only the group boundaries are copied,
+ * and the text is shared if it is already a string.
+ *
+ * Used for match results which outlive the matcher they were created from,
+ * e.g. in link matches, as matchers are reused for subsequent lines.
+ *
+ * @author msched
+ */
+public class MatchSnapshot implements MatchResult
+{
+	/** Matched text. */
+	private String text;
+
+	/** Start and end indexes of all groups, including group 0. -1 for groups
+	 *  which did not participate in the match. */
+	private int[] bounds;
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param match Match result. Must represent a successful match.
+	 * @param text The text the match was made on, or a longer text starting
+	 * 		with it.
+	 */
+	public MatchSnapshot(MatchResult match, CharSequence text)
+	{
+		this.text = text.toString();
+
+		int groupCount = match.groupCount();
+		bounds = new int[(groupCount + 1) * 2];
+
+		for(int i = 0; i <= groupCount; i++)
+		{
+			bounds[i * 2] = match.start(i);
+			bounds[i * 2 + 1] = match.end(i);
+		}
+	}
+
+	/**
+	 * Checks whether a group index is valid.
+	 *
+	 * @param group Group index.
+	 *
+	 * @throws IndexOutOfBoundsException If there is no such group.
+	 */
+	private void checkGroup(int group)
+	{
+		if(group < 0 || group > groupCount())
+		{
+			throw new IndexOutOfBoundsException("No group " + group); //$NON-NLS-1$
+		}
+	}
+
+	/**
+	 * @see java.util.regex.MatchResult#start()
+	 */
+	@Override
+	public int start()
+	{
+		return bounds[0];
+	}
+
+	/**
+	 * @see java.util.regex.MatchResult#start(int)
+	 */
+	@Override
+	public int start(int group)
+	{
+		checkGroup(group);
+		return bounds[group * 2];
+	}
+
+	/**
+	 * @see java.util.regex.MatchResult#end()
+	 */
+	@Override
+	public int end()
+	{
+		return bounds[1];
+	}
+
+	/**
+	 * @see java.util.regex.MatchResult#end(int)
+	 */
+	@Override
+	public int end(int group)
+	{
+		checkGroup(group);
+		return bounds[group * 2 + 1];
+	}
+
+	/**
+	 * @see java.util.regex.MatchResult#group()
+	 */
+	@Override
+	public String group()
+	{
+		return group(0);
+	}
+
+	/**
+	 * @see java.util.regex.MatchResult#group(int)
+	 */
+	@Override
+	public String group(int group)
+	{
+		checkGroup(group);
+		int start = bounds[group * 2];
+
+		return start < 0 ? null : text.substring(start, bounds[group * 2 + 1]);
+	}
+
+	/**
+	 * @see java.util.regex.MatchResult#groupCount()
+	 */
+	@Override
+	public int groupCount()
+	{
+		return bounds.length / 2 - 1;
+	}
+}
@@ -0,0 +1,35 @@
+/*******************************************************************************
+ * Copyright (c) 2008 - 2014 Marian Schedenig
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marian Schedenig - initial API and implementation
+ *******************************************************************************/
+
+package name.schedenig.eclipse.grepconsole.engine;
+
+/**
+ * Thrown by a {@link TimeLimitedCharSequence} when a regular expression match
+ * exceeds its time limit.
+ *
+ * @author msched
+ */
+public class MatchTimeoutException extends RuntimeException
+{
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The exception is only used for unwinding the matcher and may be thrown
+	 * frequently, so no stack trace is filled in.
+	 *
+	 * @see java.lang.Throwable#fillInStackTrace()
+	 */
+	@Override
+	public synchronized Throwable fillInStackTrace()
+	{
+		return this;
+	}
+}
@@ -0,0 +1,121 @@
+/*******************************************************************************
+ * Copyright (c) 2008 - 2014 Marian Schedenig
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marian Schedenig - initial API and implementation
+ *******************************************************************************/
+
+package name.schedenig.eclipse.grepconsole.engine;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import name.schedenig.eclipse.grepconsole.model.GrepExpressionItem.RegexEngine;
+
+/**
+ * Keeps one reusable matcher per pattern, so matching a line does not create
+ * new matcher state for every expression.
+ *
+ * Matchers are keyed by pattern identity. As expression items compile a new
+ * pattern whenever their expression or regular expression engine changes,
+ * edited items automatically get new matchers. The engine is chosen when a
+ * matcher is created, so the linear time engine's program is only compiled
+ * once per pattern and cache.
+ *
+ * Not thread safe. Every thread which matches lines (the filter worker, each
+ * refresh thread, the UI thread) uses its own cache. A matcher returned by
+ * {@link #get(Pattern, RegexEngine, CharSequence)} is only valid until the same pattern is
+ * requested again; results which have to be kept must be copied, e.g. into a
+ * {@link MatchSnapshot}.
+ *
+ * @author msched
+ */
+public class MatcherCache
+{
+	/** Maximum number of cached matchers. When exceeded, the cache is cleared,
+	 *  which discards matchers for patterns that are no longer used. */
+	private static final int MAX_SIZE = 256;
+
+	/** Matchers by pattern. */
+	private Map<Pattern, ExpressionMatcher> matchers = new IdentityHashMap<Pattern, ExpressionMatcher>();
+
+	/**
+	 * Returns a matcher for the specified pattern, reset to the specified text.
+	 *
+	 * @param pattern Pattern.
+	 * @param engine Regular expression engine requested for the pattern.
+	 * @param text Text to match.
+	 *
+	 * @return Matcher.
+	 */
+	public ExpressionMatcher get(Pattern pattern, RegexEngine engine, CharSequence text)
+	{
+		ExpressionMatcher matcher = matchers.get(pattern);
+
+		if(matcher == null)
+		{
+			if(matchers.size() >= MAX_SIZE)
+			{
+				matchers.clear();
+			}
+
+			matcher = createMatcher(pattern, engine, text);
+			matchers.put(pattern, matcher);
+		}
+		else
+		{
+			matcher.reset(text);
+		}
+
+		return matcher;
+	}
+
+	/**
+	 * Creates a matcher for the specified pattern, using the linear time engine
+	 * if it supports the pattern and is either requested explicitly or chosen
+	 * automatically because the pattern is prone to excessive backtracking.
+	 * Otherwise, the JDK's engine is used.
+	 *
+	 * @param pattern Pattern.
+	 * @param engine Regular expression engine requested for the pattern.
+	 * @param text Text to match.
+	 *
+	 * @return Matcher.
+	 */
+	public static ExpressionMatcher createMatcher(Pattern pattern, RegexEngine engine, CharSequence text)
+	{
+		LinearPattern linearPattern = getLinearPattern(pattern, engine);
+		return linearPattern == null ? new BacktrackingMatcher(pattern, text) : linearPattern.matcher(text);
+	}
+
+	/**
+	 * Returns the linear time program to use for the specified pattern.
+	 *
+	 * @param pattern Pattern.
+	 * @param engine Regular expression engine requested for the pattern.
+	 *
+	 * @return Linear time program, or <code>null</code> if the JDK's engine is
+	 * 		to be used.
+	 */
+	public static LinearPattern getLinearPattern(Pattern pattern, RegexEngine engine)
+	{
+		if(engine == RegexEngine.BACKTRACKING)
+		{
+			return null;
+		}
+
+		LinearPattern linearPattern = LinearPattern.compile(pattern);
+
+		if(linearPattern == null || (engine == RegexEngine.AUTOMATIC && !linearPattern.isBacktrackingRisk()))
+		{
+			return null;
+		}
+
+		return linearPattern;
+	}
+}
@@ -0,0 +1,270 @@
+/*******************************************************************************
+ * Copyright (c) 2008 - 2014 Marian Schedenig
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marian Schedenig - initial API and implementation
+ *******************************************************************************/
+
+package name.schedenig.eclipse.grepconsole.engine;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import name.schedenig.eclipse.grepconsole.model.GrepExpressionItem;
+
+/**
+ * Limits the rate of notifications per expression.
+ *
+ * The first match of an expression is passed through immediately and opens a
+ * coalescing window for that expression. Further matches within the window
+ * are only counted. When the window ends, the counted matches are summarised
+ * by a single notification and a new window is opened, so an expression
+ * matching continuously causes at most one notification per window.
+ *
+ * Expressions are identified by item ID. Not thread safe.
+ *
+ * @param <T> Type of the matches which trigger notifications.
+ *
+ * @author msched
+ */
+public class NotificationThrottle<T>
+{
+	/**
+	 * Summary of the matches suppressed during a coalescing window.
+	 *
+	 * @param <T> Match type.
+	 *
+	 * @author msched
+	 */
+	public static class Summary<T>
+	{
+		/** Latest suppressed match. */
+		private T match;
+
+		/** Number of suppressed matches. */
+		private int count;
+
+		/** Window length, in milliseconds. */
+		private int window;
+
+		/**
+		 * Creates a new instance.
+		 *
+		 * @param match Latest suppressed match.
+		 * @param count Number of suppressed matches.
+		 * @param window Window length, in milliseconds.
+		 */
+		private Summary(T match, int count, int window)
+		{
+			this.match = match;
+			this.count = count;
+			this.window = window;
+		}
+
+		/**
+		 * Returns the latest suppressed match.
+		 *
+		 * @return Match.
+		 */
+		public T getMatch()
+		{
+			return match;
+		}
+
+		/**
+		 * Returns the number of suppressed matches.
+		 *
+		 * @return Count.
+		 */
+		public int getCount()
+		{
+			return count;
+		}
+
+		/**
+		 * Returns the length of the window during which the matches were
+		 * suppressed.
+		 *
+		 * @return Window length, in milliseconds.
+		 */
+		public int getWindow()
+		{
+			return window;
+		}
+	}
+
+	/**
+	 * Coalescing window of an expression.
+	 *
+	 * @param <T> Match type.
+	 *
+	 * @author msched
+	 */
+	private static class Window<T>
+	{
+		/** End of the window, in milliseconds. */
+		private long end;
+
+		/** Latest match suppressed during the window. */
+		private T match;
+
+		/** Number of matches suppressed during the window. */
+		private int count;
+	}
+
+	/** Window length, in milliseconds. 0 to disable throttling. */
+	private int window;
+
+	/** Open windows by item ID, ordered by end time. */
+	private Map<String, Window<T>> windows = new LinkedHashMap<String, Window<T>>();
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param window Window length, in milliseconds. 0 to disable throttling.
+	 */
+	public NotificationThrottle(int window)
+	{
+		this.window = window;
+	}
+
+	/**
+	 * Sets the window length. Closes all open windows, discarding suppressed
+	 * matches.
+	 *
+	 * @param window Window length, in milliseconds. 0 to disable throttling.
+	 */
+	public void setWindow(int window)
+	{
+		if(window != this.window)
+		{
+			this.window = window;
+			windows.clear();
+		}
+	}
+
+	/**
+	 * Returns the window length.
+	 *
+	 * @return Window length, in milliseconds.
+	 */
+	public int getWindow()
+	{
+		return window;
+	}
+
+	/**
+	 * Offers a match for notification.
+	 *
+	 * @param item Matched item.
+	 * @param match Match.
+	 * @param now Current time, in milliseconds.
+	 *
+	 * @return <code>true</code> if a notification should be triggered for the
+	 * 		match immediately, <code>false</code> if it has been suppressed.
+	 */
+	public boolean offer(GrepExpressionItem item, T match, long now)
+	{
+		if(window <= 0)
+		{
+			return true;
+		}
+
+		String key = item.getId();
+		Window<T> w = windows.get(key);
+
+		if(w == null || w.end <= now && w.count == 0)
+		{
+			w = new Window<T>();
+			w.end = now + window;
+
+			windows.remove(key);
+			windows.put(key, w);
+
+			return true;
+		}
+
+		w.match = match;
+		w.count++;
+
+		return false;
+	}
+
+	/**
+	 * Closes all windows which have ended. Windows with suppressed matches are
+	 * reopened, so the matches' summary counts against the rate limit as well.
+	 *
+	 * @param now Current time, in milliseconds.
+	 *
+	 * @return Summaries of the suppressed matches, in the order the windows
+	 * 		ended. Empty if there are none.
+	 */
+	public List<Summary<T>> poll(long now)
+	{
+		List<Summary<T>> summaries = new ArrayList<Summary<T>>();
+		List<String> reopened = null;
+
+		for(Iterator<Map.Entry<String, Window<T>>> it = windows.entrySet().iterator(); it.hasNext();)
+		{
+			Map.Entry<String, Window<T>> entry = it.next();
+			Window<T> w = entry.getValue();
+
+			if(w.end > now)
+			{
+				break;
+			}
+
+			it.remove();
+
+			if(w.count > 0)
+			{
+				summaries.add(new Summary<T>(w.match, w.count, window));
+
+				if(reopened == null)
+				{
+					reopened = new ArrayList<String>();
+				}
+
+				reopened.add(entry.getKey());
+			}
+		}
+
+		if(reopened != null)
+		{
+			for(String key: reopened)
+			{
+				Window<T> w = new Window<T>();
+				w.end = now + window;
+				windows.put(key, w);
+			}
+		}
+
+		return summaries;
+	}
+
+	/**
+	 * Returns the time at which the next window ends.
+	 *
+	 * @return Time in milliseconds, or -1 if no window is open.
+	 */
+	public long getNextDeadline()
+	{
+		Iterator<Window<T>> it = windows.values().iterator();
+		return it.hasNext() ? it.next().end : -1;
+	}
+
+	/**
+	 * Closes all windows, discarding suppressed matches.
+	 */
+	public void clear()
+	{
+		windows.clear();
+	}
+}
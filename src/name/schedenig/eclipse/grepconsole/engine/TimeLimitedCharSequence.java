@@ -0,0 +1,111 @@
+/*******************************************************************************
+ * Copyright (c) 2008 - 2014 Marian Schedenig
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marian Schedenig - initial API and implementation
+ *******************************************************************************/
+
+package name.schedenig.eclipse.grepconsole.engine;
+
+/**
+ * A reusable character sequence wrapper which aborts regular expression
+ * matches exceeding a time limit.
+ *
+ * java.util.regex matchers cannot be interrupted, but they read their input
+ * through {@link #charAt(int)}. The wrapper checks the clock every few
+ * accesses and throws a {@link MatchTimeoutException} once the deadline has
+ * passed, which unwinds the matcher. This protects against expressions with
+ * catastrophic backtracking, which could otherwise block a thread (including
+ * the UI thread) practically forever.
+ *
+ * @author msched
+ */
+public class TimeLimitedCharSequence implements CharSequence
+{
+	/** Number of character accesses between clock checks. */
+	private static final int CHECK_INTERVAL = 1024;
+
+	/** Wrapped text. */
+	private CharSequence text;
+
+	/** Whether a time limit is active. */
+	private boolean limited;
+
+	/** Deadline, as returned by <code>System.nanoTime()</code>. */
+	private long deadline;
+
+	/** Remaining character accesses until the next clock check. */
+	private int countdown;
+
+	/**
+	 * Sets the wrapped text.
+	 *
+	 * @param text Text.
+	 */
+	public void set(CharSequence text)
+	{
+		this.text = text;
+	}
+
+	/**
+	 * Starts a new time limit for all subsequent accesses.
+	 *
+	 * @param timeLimit Time limit in milliseconds. 0 for no limit.
+	 */
+	public void startTimer(int timeLimit)
+	{
+		limited = timeLimit > 0;
+		deadline = System.nanoTime() + timeLimit * 1000000L;
+		countdown = CHECK_INTERVAL;
+	}
+
+	/**
+	 * @see java.lang.CharSequence#length()
+	 */
+	@Override
+	public int length()
+	{
+		return text.length();
+	}
+
+	/**
+	 * @see java.lang.CharSequence#charAt(int)
+	 */
+	@Override
+	public char charAt(int index)
+	{
+		if(limited && --countdown <= 0)
+		{
+			countdown = CHECK_INTERVAL;
+
+			if(System.nanoTime() - deadline > 0)
+			{
+				throw new MatchTimeoutException();
+			}
+		}
+
+		return text.charAt(index);
+	}
+
+	/**
+	 * @see java.lang.CharSequence#subSequence(int, int)
+	 */
+	@Override
+	public CharSequence subSequence(int start, int end)
+	{
+		return text.subSequence(start, end);
+	}
+
+	/**
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString()
+	{
+		return text.toString();
+	}
+}
@@ -126,6 +126,11 @@ public class Messages extends NLS
 	public static String ExpressionDialog_filter_default;
 	public static String ExpressionDialog_statistics_default;
 	public static String ExpressionDialog_case_sensitive;
+	public static String ExpressionDialog_regex_engine;
+	public static String ExpressionDialog_regex_engine_tooltip;
+	public static String ExpressionDialog_regex_engine_automatic;
+	public static String ExpressionDialog_regex_engine_backtracking;
+	public static String ExpressionDialog_regex_engine_linear;
 	public static String ExpressionDialog_remove_original_style;
 
 	public static String ExpressionDialog_rewrite;
@@ -182,6 +187,7 @@ public class Messages extends NLS
 	public static String ItemLabelProvider_no_statistics;
 	public static String ItemLabelProvider_notifications;
 	public static String ItemLabelProvider_no_notifications;
+	public static String ItemLabelProvider_suspended;
 	
 	public static String ItemsAndStylesDialog_check_boxes_global;
 	public static String ItemsAndStylesDialog_check_boxes_launch_config;
@@ -193,6 +199,18 @@ public class Messages extends NLS
 
 	public static String StatisticsView_value;
 
+	public static String ExpressionProfilerView_expression;
+	public static String ExpressionProfilerView_invocations;
+	public static String ExpressionProfilerView_quick_rejections;
+	public static String ExpressionProfilerView_matches;
+	public static String ExpressionProfilerView_unless_rejections;
+	public static String ExpressionProfilerView_timeouts;
+	public static String ExpressionProfilerView_total_time;
+	public static String ExpressionProfilerView_average_time;
+	public static String ExpressionProfilerView_reset;
+	public static String ExpressionProfilerView_export;
+	public static String ExpressionProfilerView_could_not_export;
+
 	public static String StreamGobbler_failed_to_read_external_process_output;
 
 	public static String StyleAssignmentsGroupLabelProvider_group_0;
@@ -243,17 +261,26 @@ public class Messages extends NLS
 
 
 	public static String GrepConsoleSettingsPreferencePage_filter_match_length_label;
+	public static String GrepConsoleSettingsPreferencePage_match_time_limit_label;
+	public static String GrepConsoleSettingsPreferencePage_style_cache_size_label;
+	public static String GrepConsoleSettingsPreferencePage_precompute_styles_label;
+	public static String GrepConsoleSettingsPreferencePage_styling_budget_label;
 
 	public static String GrepConsoleSettingsPreferencePage_title_grep_view;
 	public static String GrepConsoleSettingsPreferencePage_title_popup_notifications;
 	public static String GrepConsoleSettingsPreferencePage_background;
 	public static String GrepConsoleSettingsPreferencePage_foreground;
+	public static String GrepConsoleSettingsPreferencePage_grep_view_max_lines_label;
+	public static String GrepConsoleSettingsPreferencePage_grep_view_max_chars_label;
+	public static String GrepConsoleSettingsPreferencePage_grep_view_update_interval_label;
+	public static String GrepConsoleSettingsPreferencePage_refresh_threads_label;
 	public static String GrepConsoleSettingsPreferencePage_style_match_length_label;
 	public static String GrepConsoleSettingsPreferencePage_link_modifier_key_label;
 	public static String GrepConsoleSettingsPreferencePage_link_modifier_ctrl;
 	public static String GrepConsoleSettingsPreferencePage_link_modifier_alt;
 	public static String GrepConsoleSettingsPreferencePage_link_modifier_shift;
 	public static String GrepConsoleSettingsPreferencePage_link_modifier_command;
+	public static String GrepConsoleSettingsPreferencePage_notification_window_label;
 	public static String GrepConsoleSettingsPreferencePage_popup_notification_background_color;
 	public static String GrepConsoleSettingsPreferencePage_popup_notification_foreground_color;
 	public static String GrepConsoleSettingsPreferencePage_title_font;
@@ -315,6 +342,10 @@ public class Messages extends NLS
 
 	public static String StyleAssignmentsLinkLabelProvider_linkname_detail;
 
+	public static String RefreshJob_name;
+	public static String MatchGuard_expression_suspended;
+	public static String TextFilter_coalesced_notifications;
+
 	static
 	{
 		// initialize resource bundle
@@ -24,6 +24,26 @@ import name.schedenig.eclipse.grepconsole.model.links.IGrepLink;
  */
 public class GrepExpressionItem extends AbstractGrepModelElement
 {
+	/**
+	 * Regular expression engines which can be used to match an item's
+	 * expressions.
+	 *
+	 * @author msched
+	 */
+	public static enum RegexEngine
+	{
+		/** Uses the linear time engine for expressions which are prone to
+		 *  excessive backtracking, if it supports them, otherwise the JDK's
+		 *  engine. */
+		AUTOMATIC,
+		
+		/** Always uses the JDK's backtracking engine. */
+		BACKTRACKING,
+		
+		/** Uses the linear time engine whenever it supports the expressions. */
+		LINEAR
+	}
+	
 	/** Regular expression string. */
 	private String grepExpression;
 	
@@ -50,6 +70,9 @@ public class GrepExpressionItem extends AbstractGrepModelElement
 	/** Whether the patterns should be case insensitive. */
 	private boolean caseInsensitive;
 	
+	/** Regular expression engine used for the patterns. */
+	private RegexEngine regexEngine = RegexEngine.AUTOMATIC;
+	
 	/** Whether to remove any original style the matched line may have. */
 	private boolean removeOriginalStyle;
 
@@ -162,6 +185,7 @@ public class GrepExpressionItem extends AbstractGrepModelElement
 		}
 		
 		caseInsensitive = item.caseInsensitive;
+		regexEngine = item.regexEngine;
 		removeOriginalStyle = item.removeOriginalStyle;
 		autostartLink = item.autostartLink == null ? null : item.autostartLink.copy();
 		
@@ -371,6 +395,35 @@ public class GrepExpressionItem extends AbstractGrepModelElement
 		}
 	}
 	
+	/**
+	 * Returns the regular expression engine used for this item's expressions.
+	 * 
+	 * @return Regular expression engine.
+	 */
+	public RegexEngine getRegexEngine()
+	{
+		return regexEngine;
+	}
+
+	/**
+	 * Sets the regular expression engine used for this item's expressions.
+	 * 
+	 * Matchers are cached by pattern, so the patterns are discarded and
+	 * recompiled on demand to make the change take effect.
+	 * 
+	 * @param regexEngine Regular expression engine.
+	 */
+	public void setRegexEngine(RegexEngine regexEngine)
+	{
+		if(regexEngine != this.regexEngine)
+		{
+			this.regexEngine = regexEngine;
+			this.pattern = null;
+			this.unlessPattern = null;
+			this.quickPattern = null;
+		}
+	}
+	
 	/**
 	 * Returns whether to remove any original style the matched line may have.
 	 * 
@@ -11,6 +11,7 @@
 
 package name.schedenig.eclipse.grepconsole.model;
 
+import java.util.Collection;
 import java.util.Map;
 
 /**
@@ -215,6 +216,44 @@ public abstract class InheritedFlagResolver
 		return enabled;
 	}
 
+	/**
+	 * Recursively collects all items on which the flag is set. Unlike
+	 * {@link #getFlag(AbstractGrepModelElement, Map)}, the flag of the root
+	 * folder is ignored.
+	 * 
+	 * @param items Collection of items. Found items are added in tree order.
+	 * @param element Element to search.
+	 * @param inheritanceMap Map of flag settings by element ID, or
+	 * 		<code>null</code>. Elements not found in the map use their default
+	 * 		value.
+	 */
+	public void collectItems(Collection<GrepExpressionItem> items, AbstractGrepModelElement element, Map<String, Boolean> inheritanceMap)
+	{
+		Boolean set = inheritanceMap == null ? null : inheritanceMap.get(element.getId());
+		
+		if(set == null)
+		{
+			set = getDefaultValue(element);
+		}
+		
+		if(!(element instanceof GrepExpressionRootFolder) && !set)
+		{
+			return;
+		}
+		
+		if(element instanceof GrepExpressionItem)
+		{
+			items.add((GrepExpressionItem) element);
+		}
+		else if(element instanceof GrepExpressionFolder)
+		{
+			for(AbstractGrepModelElement child: ((GrepExpressionFolder) element).getChildren())
+			{
+				collectItems(items, child, inheritanceMap);
+			}
+		}
+	}
+
 	/**
 	 * Reads the flag's default value from the specified element.
 	 * 
@@ -32,6 +32,7 @@ import javax.xml.transform.stream.StreamResult;
 import name.schedenig.eclipse.grepconsole.model.AbstractGrepModelElement;
 import name.schedenig.eclipse.grepconsole.model.GrepExpressionFolder;
 import name.schedenig.eclipse.grepconsole.model.GrepExpressionItem;
+import name.schedenig.eclipse.grepconsole.model.GrepExpressionItem.RegexEngine;
 import name.schedenig.eclipse.grepconsole.model.GrepExpressionRootFolder;
 import name.schedenig.eclipse.grepconsole.model.GrepGroup;
 import name.schedenig.eclipse.grepconsole.model.GrepStyle;
@@ -89,6 +90,7 @@ public class XmlHandler
 	private static final String XML_STATISTICS = "statistics"; //$NON-NLS-1$
 	private static final String XML_NOTIFICATIONS = "notifications"; //$NON-NLS-1$
 	private static final String XML_CASE_INSENSITIVE = "caseInsensitive"; //$NON-NLS-1$
+	private static final String XML_REGEX_ENGINE = "regexEngine"; //$NON-NLS-1$
 	private static final String XML_REMOVE_ORIGINAL_STYLE = "removeOriginalStyle"; //$NON-NLS-1$
 	private static final String XML_GROUP = "group"; //$NON-NLS-1$
 	private static final String XML_URL_LINK = "urlLink"; //$NON-NLS-1$
@@ -368,6 +370,11 @@ public class XmlHandler
 			setAttribute(element, XML_CASE_INSENSITIVE, item.isCaseInsensitive());
 		}
 		
+		if(item.getRegexEngine() != RegexEngine.AUTOMATIC)
+		{
+			setAttribute(element, XML_REGEX_ENGINE, item.getRegexEngine());
+		}
+		
 		if(item.isRemoveOriginalStyle())
 		{
 			setAttribute(element, XML_REMOVE_ORIGINAL_STYLE, item.isRemoveOriginalStyle());
@@ -999,6 +1006,8 @@ public class XmlHandler
 			item.setCaseInsensitive(caseInsensitive);
 		}
 		
+		item.setRegexEngine(getRegexEngineAttribute(element, XML_REGEX_ENGINE, RegexEngine.AUTOMATIC));
+		
 		Boolean removeOriginalStyle = getBooleanAttribute(element, XML_REMOVE_ORIGINAL_STYLE, false);
 		
 		if(removeOriginalStyle != null)
@@ -1279,6 +1288,36 @@ public class XmlHandler
 		}
 	}
 	
+	/**
+	 * Reads a regular expression engine attribute. Unknown values (e.g. engines
+	 * added by later versions) are replaced by the default value, as the
+	 * engine does not affect which lines are matched.
+	 * 
+	 * @param element Element.
+	 * @param attribute Attribute name.
+	 * @param defaultValue Default value.
+	 * 
+	 * @return Regular expression engine.
+	 */
+	private RegexEngine getRegexEngineAttribute(Element element, String attribute, RegexEngine defaultValue)
+	{
+		String s = getAttribute(element, attribute, null);
+		
+		if(s == null)
+		{
+			return defaultValue;
+		}
+		
+		try
+		{
+			return RegexEngine.valueOf(s);
+		}
+		catch(IllegalArgumentException ex)
+		{
+			return defaultValue;
+		}
+	}
+	
 	/**
 	 * Rebuilds the model tree's set of styles. Clears the existing style set
 	 * and recalculates it by collecting all styles used by its elements.
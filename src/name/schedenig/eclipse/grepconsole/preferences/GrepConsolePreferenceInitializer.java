@@ -32,5 +32,14 @@ public class GrepConsolePreferenceInitializer extends AbstractPreferenceInitiali
 		IPreferenceStore store = Activator.getDefault().getPreferenceStore();
 		store.setDefault(Activator.PREFS_STYLE_MATCH_LENGTH, Activator.DEFAULT_STYLE_MATCH_LENGTH);
 		store.setDefault(Activator.PREFS_FILTER_MATCH_LENGTH, Activator.DEFAULT_FILTER_MATCH_LENGTH);
+		store.setDefault(Activator.PREFS_GREP_VIEW_MAX_LINES, Activator.DEFAULT_GREP_VIEW_MAX_LINES);
+		store.setDefault(Activator.PREFS_GREP_VIEW_MAX_CHARS, Activator.DEFAULT_GREP_VIEW_MAX_CHARS);
+		store.setDefault(Activator.PREFS_GREP_VIEW_UPDATE_INTERVAL, Activator.DEFAULT_GREP_VIEW_UPDATE_INTERVAL);
+		store.setDefault(Activator.PREFS_REFRESH_THREADS, Activator.DEFAULT_REFRESH_THREADS);
+		store.setDefault(Activator.PREFS_MATCH_TIME_LIMIT, Activator.DEFAULT_MATCH_TIME_LIMIT);
+		store.setDefault(Activator.PREFS_NOTIFICATION_WINDOW, Activator.DEFAULT_NOTIFICATION_WINDOW);
+		store.setDefault(Activator.PREFS_STYLE_CACHE_SIZE, Activator.DEFAULT_STYLE_CACHE_SIZE);
+		store.setDefault(Activator.PREFS_PRECOMPUTE_STYLES, Activator.DEFAULT_PRECOMPUTE_STYLES);
+		store.setDefault(Activator.PREFS_STYLING_BUDGET, Activator.DEFAULT_STYLING_BUDGET);
 	}
 }
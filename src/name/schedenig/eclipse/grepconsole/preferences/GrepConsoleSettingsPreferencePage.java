@@ -17,6 +17,7 @@ import name.schedenig.eclipse.grepconsole.util.GrepConsoleUtil;
 import name.schedenig.eclipse.popupnotifications.preferences.ColorPickerFieldEditor;
 import name.schedenig.eclipse.popupnotifications.preferences.FontPickerFieldEditor;
 
+import org.eclipse.jface.preference.BooleanFieldEditor;
 import org.eclipse.jface.preference.ComboFieldEditor;
 import org.eclipse.jface.preference.FieldEditorPreferencePage;
 import org.eclipse.jface.preference.IntegerFieldEditor;
@@ -60,6 +61,33 @@ public class GrepConsoleSettingsPreferencePage extends FieldEditorPreferencePage
 		feFilterMatchLength.setValidRange(0, Integer.MAX_VALUE);
 		addField(feFilterMatchLength);
 		
+		IntegerFieldEditor feMatchTimeLimit = new IntegerFieldEditor(
+				Activator.PREFS_MATCH_TIME_LIMIT, 
+				Messages.GrepConsoleSettingsPreferencePage_match_time_limit_label, 
+				getFieldEditorParent());
+		feMatchTimeLimit.setValidRange(0, 60000);
+		addField(feMatchTimeLimit);
+		
+		IntegerFieldEditor feStyleCacheSize = new IntegerFieldEditor(
+				Activator.PREFS_STYLE_CACHE_SIZE, 
+				Messages.GrepConsoleSettingsPreferencePage_style_cache_size_label, 
+				getFieldEditorParent());
+		feStyleCacheSize.setValidRange(0, 1048576);
+		addField(feStyleCacheSize);
+		
+		BooleanFieldEditor fePrecomputeStyles = new BooleanFieldEditor(
+				Activator.PREFS_PRECOMPUTE_STYLES, 
+				Messages.GrepConsoleSettingsPreferencePage_precompute_styles_label, 
+				getFieldEditorParent());
+		addField(fePrecomputeStyles);
+		
+		IntegerFieldEditor feStylingBudget = new IntegerFieldEditor(
+				Activator.PREFS_STYLING_BUDGET, 
+				Messages.GrepConsoleSettingsPreferencePage_styling_budget_label, 
+				getFieldEditorParent());
+		feStylingBudget.setValidRange(0, 1000);
+		addField(feStylingBudget);
+		
 		ComboFieldEditor feLinkModifierKey = new ComboFieldEditor(
 				Activator.PREFS_LINK_MODIFIER_KEY,
 				Messages.GrepConsoleSettingsPreferencePage_link_modifier_key_label,
@@ -90,9 +118,44 @@ public class GrepConsoleSettingsPreferencePage extends FieldEditorPreferencePage
 				getFieldEditorParent());
 		addField(feBackgroundColor);
 		
+		IntegerFieldEditor feGrepViewMaxLines = new IntegerFieldEditor(
+				Activator.PREFS_GREP_VIEW_MAX_LINES, 
+				Messages.GrepConsoleSettingsPreferencePage_grep_view_max_lines_label, 
+				getFieldEditorParent());
+		feGrepViewMaxLines.setValidRange(0, Integer.MAX_VALUE);
+		addField(feGrepViewMaxLines);
+		
+		IntegerFieldEditor feGrepViewMaxChars = new IntegerFieldEditor(
+				Activator.PREFS_GREP_VIEW_MAX_CHARS, 
+				Messages.GrepConsoleSettingsPreferencePage_grep_view_max_chars_label, 
+				getFieldEditorParent());
+		feGrepViewMaxChars.setValidRange(0, Integer.MAX_VALUE);
+		addField(feGrepViewMaxChars);
+		
+		IntegerFieldEditor feGrepViewUpdateInterval = new IntegerFieldEditor(
+				Activator.PREFS_GREP_VIEW_UPDATE_INTERVAL, 
+				Messages.GrepConsoleSettingsPreferencePage_grep_view_update_interval_label, 
+				getFieldEditorParent());
+		feGrepViewUpdateInterval.setValidRange(0, 10000);
+		addField(feGrepViewUpdateInterval);
+		
+		IntegerFieldEditor feRefreshThreads = new IntegerFieldEditor(
+				Activator.PREFS_REFRESH_THREADS, 
+				Messages.GrepConsoleSettingsPreferencePage_refresh_threads_label, 
+				getFieldEditorParent());
+		feRefreshThreads.setValidRange(0, 64);
+		addField(feRefreshThreads);
+		
 		GrepConsoleUtil.createPreferenceLabel(getFieldEditorParent(), 
 				Messages.GrepConsoleSettingsPreferencePage_title_popup_notifications);
 		
+		IntegerFieldEditor feNotificationWindow = new IntegerFieldEditor(
+				Activator.PREFS_NOTIFICATION_WINDOW, 
+				Messages.GrepConsoleSettingsPreferencePage_notification_window_label, 
+				getFieldEditorParent());
+		feNotificationWindow.setValidRange(0, 3600000);
+		addField(feNotificationWindow);
+		
 		ColorPickerFieldEditor feNotificationForegroundColor = new ColorPickerFieldEditor(
 				Activator.PREFS_NOTIFICATION_FOREGROUND_COLOR, 
 				Messages.GrepConsoleSettingsPreferencePage_popup_notification_foreground_color, 
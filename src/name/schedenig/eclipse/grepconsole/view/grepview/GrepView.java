@@ -72,6 +72,10 @@ public class GrepView extends GrepConsoleView implements TextChangeListener, ICo
 	/** Whether the displayed console is scroll locked. */
 	private boolean scrollLock = false;
 	
+	/** Whether the current text change adds text, in which case the view is
+	 *  scrolled to the end once the change is complete. */
+	private boolean textAdded;
+	
 	/** Scroll lock action instance. */
 	private ScrollLockAction scrollLockAction;
 	
@@ -358,15 +362,23 @@ public class GrepView extends GrepConsoleView implements TextChangeListener, ICo
 	@Override
 	public void textChanging(TextChangingEvent event)
 	{
+		textAdded = event.newCharCount > 0;
 	}
 
 	/**
+	 * Scrolls to the end if text has been added. Changes which only remove old
+	 * lines do not cause scrolling.
+	 * 
 	 * @see org.eclipse.swt.custom.TextChangeListener#textChanged(org.eclipse.swt.custom.TextChangedEvent)
 	 */
 	@Override
 	public void textChanged(TextChangedEvent event)
 	{
-		autoScroll();
+		if(textAdded)
+		{
+			textAdded = false;
+			autoScroll();
+		}
 	}
 
 	/**
@@ -31,6 +31,7 @@ import name.schedenig.eclipse.grepconsole.Activator;
 import name.schedenig.eclipse.grepconsole.adapters.GrepLineStyleListener;
 import name.schedenig.eclipse.grepconsole.i18n.Messages;
 import name.schedenig.eclipse.grepconsole.model.GrepExpressionItem;
+import name.schedenig.eclipse.grepconsole.model.GrepExpressionItem.RegexEngine;
 import name.schedenig.eclipse.grepconsole.model.GrepGroup;
 import name.schedenig.eclipse.grepconsole.model.GrepStyle;
 import name.schedenig.eclipse.grepconsole.model.links.IGrepLink;
@@ -49,15 +50,18 @@ import org.eclipse.core.runtime.IStatus;
 import org.eclipse.jface.dialogs.IDialogSettings;
 import org.eclipse.jface.dialogs.MessageDialog;
 import org.eclipse.jface.resource.JFaceResources;
+import org.eclipse.jface.viewers.ArrayContentProvider;
 import org.eclipse.jface.viewers.CellEditor;
 import org.eclipse.jface.viewers.ColumnViewerEditor;
 import org.eclipse.jface.viewers.ColumnViewerEditorActivationEvent;
 import org.eclipse.jface.viewers.ColumnViewerEditorActivationStrategy;
 import org.eclipse.jface.viewers.ColumnViewerToolTipSupport;
+import org.eclipse.jface.viewers.ComboViewer;
 import org.eclipse.jface.viewers.EditingSupport;
 import org.eclipse.jface.viewers.FocusCellOwnerDrawHighlighter;
 import org.eclipse.jface.viewers.ISelectionChangedListener;
 import org.eclipse.jface.viewers.IStructuredSelection;
+import org.eclipse.jface.viewers.LabelProvider;
 import org.eclipse.jface.viewers.SelectionChangedEvent;
 import org.eclipse.jface.viewers.StructuredSelection;
 import org.eclipse.jface.viewers.TableViewer;
@@ -89,6 +93,7 @@ import org.eclipse.swt.layout.GridData;
 import org.eclipse.swt.layout.GridLayout;
 import org.eclipse.swt.program.Program;
 import org.eclipse.swt.widgets.Button;
+import org.eclipse.swt.widgets.Combo;
 import org.eclipse.swt.widgets.Composite;
 import org.eclipse.swt.widgets.Control;
 import org.eclipse.swt.widgets.FileDialog;
@@ -174,6 +179,7 @@ public class ExpressionDialog extends DefaultSizeDialog implements IStylesListen
 	private Button cbActiveByDefault;
 	private Button cbFilterDefault;
 	private Button cbCaseSensitive;
+	private ComboViewer viewerRegexEngine;
 	private MenuItem miLoadDefault;
 	private MenuItem miSaveDefault;
 	private TableViewerColumn colLink;
@@ -876,6 +882,52 @@ public class ExpressionDialog extends DefaultSizeDialog implements IStylesListen
 			}
 		});
 		
+		Label labelRegexEngine = new Label(composite, SWT.NONE);
+		labelRegexEngine.setText(Messages.ExpressionDialog_regex_engine);
+		labelRegexEngine.setLayoutData(new GridData(SWT.BEGINNING, SWT.CENTER, false, false));
+		
+		Combo comboRegexEngine = new Combo(composite, SWT.READ_ONLY);
+		comboRegexEngine.setLayoutData(new GridData(SWT.BEGINNING, SWT.CENTER, false, false));
+		comboRegexEngine.setToolTipText(Messages.ExpressionDialog_regex_engine_tooltip);
+		
+		viewerRegexEngine = new ComboViewer(comboRegexEngine);
+		viewerRegexEngine.setContentProvider(new ArrayContentProvider());
+		viewerRegexEngine.setLabelProvider(new LabelProvider()
+		{
+			@Override
+			public String getText(Object element)
+			{
+				switch((RegexEngine) element)
+				{
+					case BACKTRACKING:
+						return Messages.ExpressionDialog_regex_engine_backtracking;
+						
+					case LINEAR:
+						return Messages.ExpressionDialog_regex_engine_linear;
+						
+					default:
+						return Messages.ExpressionDialog_regex_engine_automatic;
+				}
+			}
+		});
+		
+		viewerRegexEngine.setInput(RegexEngine.values());
+		
+		viewerRegexEngine.addSelectionChangedListener(new ISelectionChangedListener()
+		{
+			@Override
+			public void selectionChanged(SelectionChangedEvent event)
+			{
+				RegexEngine engine = (RegexEngine) ((IStructuredSelection) event.getSelection()).getFirstElement();
+				
+				if(engine != null)
+				{
+					workItem.setRegexEngine(engine);
+					refreshPreview();
+				}
+			}
+		});
+		
 		labelPatternHelp = new Link(composite, SWT.NONE);
 		labelPatternHelp.setText("<a>" + Messages.ExpressionDialog_pattern_help + "</a>"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
 		labelPatternHelp.setLayoutData(new GridData(SWT.END, SWT.CENTER, false, false, 2, 1));
@@ -1729,6 +1781,7 @@ public class ExpressionDialog extends DefaultSizeDialog implements IStylesListen
 		cbStatisticsDefault.setSelection(workItem.isDefaultStatistics());
 		cbNotificationsDefault.setSelection(workItem.isDefaultNotifications());
 		cbCaseSensitive.setSelection(!workItem.isCaseInsensitive());
+		viewerRegexEngine.setSelection(new StructuredSelection(workItem.getRegexEngine()));
 		cbRemoveOriginalStyle.setSelection(workItem.isRemoveOriginalStyle());
 		stPreview.setText(previewText == null ? "" : previewText); //$NON-NLS-1$
 		
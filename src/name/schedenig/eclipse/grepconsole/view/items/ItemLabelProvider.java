@@ -43,6 +43,8 @@ import org.eclipse.swt.graphics.TextLayout;
 import org.eclipse.swt.graphics.TextStyle;
 import org.eclipse.swt.widgets.Display;
 import org.eclipse.swt.widgets.Event;
+import org.eclipse.ui.ISharedImages;
+import org.eclipse.ui.PlatformUI;
 
 /**
  * A label provider for model trees. Displays style thumbnails and item labels.
@@ -174,6 +176,26 @@ public class ItemLabelProvider extends OwnerDrawLabelProvider implements ILabelP
 		return styleImageRegistry.getColorImage(new StyleImageRegistry.RgbPair(foreground, background));
 	}
 
+	/**
+	 * Returns the warning image for items which have been suspended because
+	 * their expressions take too long to match.
+	 * 
+	 * @param element Element.
+	 * 
+	 * @return Shared warning image, or <code>null</code> if the element is not
+	 * 		a suspended item.
+	 */
+	private Image getWarningImage(Object element)
+	{
+		if(!(element instanceof GrepExpressionItem)
+				|| !Activator.getDefault().getMatchGuard().isSuspended((GrepExpressionItem) element))
+		{
+			return null;
+		}
+		
+		return PlatformUI.getWorkbench().getSharedImages().getImage(ISharedImages.IMG_OBJS_WARN_TSK);
+	}
+
 	/**
 	 * @see org.eclipse.jface.viewers.OwnerDrawLabelProvider#measure(org.eclipse.swt.widgets.Event, java.lang.Object)
 	 */
@@ -204,6 +226,16 @@ public class ItemLabelProvider extends OwnerDrawLabelProvider implements ILabelP
 			size.y = Math.max(size.y, imageBounds.height);
 		}
 		
+		Image warningImage = getWarningImage(element);
+		
+		if(warningImage != null)
+		{
+			Rectangle imageBounds = warningImage.getBounds();
+			
+			size.x += imageBounds.width + SPACE;
+			size.y = Math.max(size.y, imageBounds.height);
+		}
+		
 		event.setBounds(new Rectangle(event.x, event.y, size.x, size.y));
 	}
 
@@ -248,6 +280,15 @@ public class ItemLabelProvider extends OwnerDrawLabelProvider implements ILabelP
 			x += imageWidth;
 		}
 		
+		Image warningImage = getWarningImage(element);
+		
+		if(warningImage != null)
+		{
+			Rectangle imageBounds = warningImage.getBounds();
+			event.gc.drawImage(warningImage, x, event.y + (event.height - imageBounds.height) / 2);
+			x += imageBounds.width + SPACE;
+		}
+		
 		Device device = event.gc.getDevice();
 		TextLayout layout = new TextLayout(device);
 
@@ -413,6 +454,12 @@ public class ItemLabelProvider extends OwnerDrawLabelProvider implements ILabelP
 		String notificationsText = (notifications.isSet() ? Messages.ItemLabelProvider_notifications : Messages.ItemLabelProvider_no_notifications) + (notifications.isInherited() ? " " + Messages.ItemLabelProvider_inherited : ""); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
 		
 		String s = name + " - " + enabledText + ", " + filteredText + ", " + statisticsText + "," + notificationsText + "."; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+		
+		if(getWarningImage(element) != null)
+		{
+			s += " " + Messages.ItemLabelProvider_suspended; //$NON-NLS-1$
+		}
+		
 		return s;
 	}
 }
@@ -16,8 +16,10 @@ import java.util.Map;
 import java.util.Set;
 
 import name.schedenig.eclipse.grepconsole.Activator;
+import name.schedenig.eclipse.grepconsole.engine.MatchGuard.IMatchGuardListener;
 import name.schedenig.eclipse.grepconsole.model.AbstractGrepModelElement;
 import name.schedenig.eclipse.grepconsole.model.GrepExpressionFolder;
+import name.schedenig.eclipse.grepconsole.model.GrepExpressionItem;
 import name.schedenig.eclipse.grepconsole.model.GrepExpressionsWithSelection;
 import name.schedenig.eclipse.grepconsole.model.InheritedFlagResolver;
 
@@ -33,6 +35,8 @@ import org.eclipse.jface.viewers.TreeViewerColumn;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.events.ControlAdapter;
 import org.eclipse.swt.events.ControlEvent;
+import org.eclipse.swt.events.DisposeEvent;
+import org.eclipse.swt.events.DisposeListener;
 import org.eclipse.swt.layout.FillLayout;
 import org.eclipse.swt.widgets.Composite;
 import org.eclipse.swt.widgets.Tree;
@@ -89,6 +93,27 @@ public class ItemsTreePanel extends Composite
 
 	/** Set of listeners. */
 	private LinkedHashSet<IItemTreeListener> listeners = new LinkedHashSet<ItemsTreePanel.IItemTreeListener>();
+
+	/** Refreshes the tree when an expression is suspended, so the warning
+	 *  decoration is shown. */
+	private IMatchGuardListener matchGuardListener = new IMatchGuardListener()
+	{
+		@Override
+		public void expressionSuspended(GrepExpressionItem item)
+		{
+			getDisplay().asyncExec(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					if(!tree.isDisposed())
+					{
+						viewer.refresh();
+					}
+				}
+			});
+		}
+	};
 	
 	/** Style flags for the tree. */
 	private int treeStyle;
@@ -175,6 +200,17 @@ public class ItemsTreePanel extends Composite
 		
 		ColumnViewerToolTipSupport.enableFor(viewer); 
 		
+		Activator.getDefault().getMatchGuard().addListener(matchGuardListener);
+		
+		addDisposeListener(new DisposeListener()
+		{
+			@Override
+			public void widgetDisposed(DisposeEvent e)
+			{
+				Activator.getDefault().getMatchGuard().removeListener(matchGuardListener);
+			}
+		});
+		
 		colLabel = new TreeViewerColumn(viewer, SWT.NONE);
 		colLabel.setLabelProvider(new ItemLabelProvider());
 		
@@ -0,0 +1,312 @@
+/*******************************************************************************
+ * Copyright (c) 2008 - 2014 Marian Schedenig
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marian Schedenig - initial API and implementation
+ *******************************************************************************/
+
+package name.schedenig.eclipse.grepconsole.view.profiler;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+import java.text.MessageFormat;
+
+import name.schedenig.eclipse.grepconsole.Activator;
+import name.schedenig.eclipse.grepconsole.engine.ExpressionProfile;
+import name.schedenig.eclipse.grepconsole.engine.ExpressionProfiler;
+import name.schedenig.eclipse.grepconsole.i18n.Messages;
+
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.jface.action.Action;
+import org.eclipse.jface.action.IToolBarManager;
+import org.eclipse.jface.dialogs.MessageDialog;
+import org.eclipse.jface.viewers.ArrayContentProvider;
+import org.eclipse.jface.viewers.CellLabelProvider;
+import org.eclipse.jface.viewers.TableViewer;
+import org.eclipse.jface.viewers.TableViewerColumn;
+import org.eclipse.jface.viewers.Viewer;
+import org.eclipse.jface.viewers.ViewerCell;
+import org.eclipse.jface.viewers.ViewerComparator;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.events.SelectionAdapter;
+import org.eclipse.swt.events.SelectionEvent;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.FileDialog;
+import org.eclipse.swt.widgets.Table;
+import org.eclipse.swt.widgets.TableColumn;
+import org.eclipse.ui.ISharedImages;
+import org.eclipse.ui.IViewSite;
+import org.eclipse.ui.PartInitException;
+import org.eclipse.ui.PlatformUI;
+import org.eclipse.ui.part.ViewPart;
+
+/**
+ * Shows the profiling counters of all expressions, across all consoles.
+ *
+ * Profiling is enabled while the view is open, and disabled again when it is
+ * closed, so the counters cost nothing while nobody looks at them. The table
+ * is refreshed periodically and can be sorted by clicking a column header.
+ *
+ * @author msched
+ */
+public class ExpressionProfilerView extends ViewPart
+{
+	/** Interval in which the table is refreshed, in milliseconds. */
+	private static final int REFRESH_INTERVAL = 1000;
+
+	/**
+	 * Sorts profiles by a column.
+	 *
+	 * @author msched
+	 */
+	private static class ProfileComparator extends ViewerComparator
+	{
+		/** Sort column. */
+		private ProfileColumn column = ProfileColumn.TOTAL_TIME;
+
+		/** Whether to sort in descending order. */
+		private boolean descending = true;
+
+		/* (non-Javadoc)
+		 * @see org.eclipse.jface.viewers.ViewerComparator#compare(org.eclipse.jface.viewers.Viewer, java.lang.Object, java.lang.Object)
+		 */
+		@Override
+		public int compare(Viewer viewer, Object e1, Object e2)
+		{
+			int result = column.compare((ExpressionProfile) e1, (ExpressionProfile) e2);
+			return descending ? -result : result;
+		}
+	}
+
+	/**
+	 * Displays the value of a column.
+	 *
+	 * @author msched
+	 */
+	private static class ProfileLabelProvider extends CellLabelProvider
+	{
+		/** Displayed column. */
+		private ProfileColumn column;
+
+		/**
+		 * Creates a new instance.
+		 *
+		 * @param column Displayed column.
+		 */
+		public ProfileLabelProvider(ProfileColumn column)
+		{
+			this.column = column;
+		}
+
+		/* (non-Javadoc)
+		 * @see org.eclipse.jface.viewers.CellLabelProvider#update(org.eclipse.jface.viewers.ViewerCell)
+		 */
+		@Override
+		public void update(ViewerCell cell)
+		{
+			cell.setText(column.getText((ExpressionProfile) cell.getElement()));
+		}
+	}
+
+	private Table table;
+	private TableViewer viewer;
+	private ProfileComparator comparator = new ProfileComparator();
+
+	/** Shared profiler. */
+	private ExpressionProfiler profiler = Activator.getDefault().getExpressionProfiler();
+
+	/** Periodically refreshes the table while the view is open. */
+	private Runnable refreshRunnable = new Runnable()
+	{
+		@Override
+		public void run()
+		{
+			if(!table.isDisposed())
+			{
+				refresh();
+				table.getDisplay().timerExec(REFRESH_INTERVAL, this);
+			}
+		}
+	};
+
+	/**
+	 * @see org.eclipse.ui.part.ViewPart#init(org.eclipse.ui.IViewSite)
+	 */
+	@Override
+	public void init(IViewSite site) throws PartInitException
+	{
+		super.init(site);
+
+		ISharedImages images = PlatformUI.getWorkbench().getSharedImages();
+		IToolBarManager toolbar = site.getActionBars().getToolBarManager();
+
+		Action resetAction = new Action(Messages.ExpressionProfilerView_reset)
+		{
+			@Override
+			public void run()
+			{
+				profiler.reset();
+				refresh();
+			}
+		};
+
+		resetAction.setImageDescriptor(images.getImageDescriptor(ISharedImages.IMG_ETOOL_CLEAR));
+		toolbar.add(resetAction);
+
+		Action exportAction = new Action(Messages.ExpressionProfilerView_export)
+		{
+			@Override
+			public void run()
+			{
+				doExport();
+			}
+		};
+
+		exportAction.setImageDescriptor(images.getImageDescriptor(ISharedImages.IMG_ETOOL_SAVE_EDIT));
+		toolbar.add(exportAction);
+	}
+
+	/* (non-Javadoc)
+	 * @see org.eclipse.ui.part.WorkbenchPart#createPartControl(org.eclipse.swt.widgets.Composite)
+	 */
+	@Override
+	public void createPartControl(Composite parent)
+	{
+		table = new Table(parent, SWT.FULL_SELECTION);
+		table.setHeaderVisible(true);
+
+		viewer = new TableViewer(table);
+
+		for(final ProfileColumn column: ProfileColumn.values())
+		{
+			TableViewerColumn viewerColumn = new TableViewerColumn(viewer, column == ProfileColumn.EXPRESSION ? SWT.LEFT : SWT.RIGHT);
+			viewerColumn.getColumn().setText(column.getTitle());
+			viewerColumn.getColumn().setWidth(column.getWidth());
+			viewerColumn.setLabelProvider(new ProfileLabelProvider(column));
+
+			viewerColumn.getColumn().addSelectionListener(new SelectionAdapter()
+			{
+				@Override
+				public void widgetSelected(SelectionEvent e)
+				{
+					setSortColumn(column, (TableColumn) e.widget);
+				}
+			});
+
+			if(column == comparator.column)
+			{
+				table.setSortColumn(viewerColumn.getColumn());
+				table.setSortDirection(SWT.DOWN);
+			}
+		}
+
+		viewer.setContentProvider(ArrayContentProvider.getInstance());
+		viewer.setComparator(comparator);
+
+		profiler.setEnabled(true);
+		refreshRunnable.run();
+	}
+
+	/**
+	 * @see org.eclipse.ui.part.WorkbenchPart#dispose()
+	 */
+	@Override
+	public void dispose()
+	{
+		profiler.setEnabled(false);
+
+		super.dispose();
+	}
+
+	/**
+	 * Sorts the table by a column. If the table is already sorted by that
+	 * column, the sort direction is reversed.
+	 *
+	 * @param column Sort column.
+	 * @param tableColumn Corresponding table column.
+	 */
+	private void setSortColumn(ProfileColumn column, TableColumn tableColumn)
+	{
+		if(comparator.column == column)
+		{
+			comparator.descending = !comparator.descending;
+		}
+		else
+		{
+			comparator.column = column;
+			comparator.descending = column != ProfileColumn.EXPRESSION;
+		}
+
+		table.setSortColumn(tableColumn);
+		table.setSortDirection(comparator.descending ? SWT.DOWN : SWT.UP);
+		viewer.refresh();
+	}
+
+	/**
+	 * Refreshes the table with the current profiles.
+	 */
+	private void refresh()
+	{
+		viewer.setInput(profiler.getProfiles());
+	}
+
+	/**
+	 * Asks for a file name and writes a snapshot of the current counters to it.
+	 */
+	protected void doExport()
+	{
+		FileDialog dlg = new FileDialog(getSite().getShell(), SWT.SAVE);
+		dlg.setFilterExtensions(new String[]{"*.csv"}); //$NON-NLS-1$
+		dlg.setOverwrite(true);
+		String fileName = dlg.open();
+
+		if(fileName == null)
+		{
+			return;
+		}
+
+		BufferedWriter writer = null;
+
+		try
+		{
+			writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(fileName), Charset.forName("UTF-8"))); //$NON-NLS-1$
+			profiler.export(writer);
+		}
+		catch(IOException ex)
+		{
+			String message = MessageFormat.format(Messages.ExpressionProfilerView_could_not_export, ex.getLocalizedMessage());
+			Activator.getDefault().log(IStatus.ERROR, message, ex);
+			MessageDialog.openError(getSite().getShell(), Messages.ExpressionProfilerView_export, message);
+		}
+		finally
+		{
+			if(writer != null)
+			{
+				try
+				{
+					writer.close();
+				}
+				catch(IOException ex)
+				{
+					Activator.getDefault().log(IStatus.WARNING, ex);
+				}
+			}
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see org.eclipse.ui.part.WorkbenchPart#setFocus()
+	 */
+	@Override
+	public void setFocus()
+	{
+		table.setFocus();
+	}
+}
@@ -0,0 +1,213 @@
+/*******************************************************************************
+ * Copyright (c) 2008 - 2014 Marian Schedenig
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marian Schedenig - initial API and implementation
+ *******************************************************************************/
+
+package name.schedenig.eclipse.grepconsole.view.profiler;
+
+import java.text.NumberFormat;
+
+import name.schedenig.eclipse.grepconsole.engine.ExpressionProfile;
+import name.schedenig.eclipse.grepconsole.i18n.Messages;
+import name.schedenig.eclipse.grepconsole.model.GrepExpressionItem;
+
+/**
+ * Columns of the expression profiler view. Each column knows how to display
+ * and compare its value.
+ *
+ * @author msched
+ */
+public enum ProfileColumn
+{
+	EXPRESSION(Messages.ExpressionProfilerView_expression, 200)
+	{
+		@Override
+		public String getText(ExpressionProfile profile)
+		{
+			GrepExpressionItem item = profile.getItem();
+			String name = item.getName();
+
+			return name == null || name.length() == 0 ? item.getGrepExpression() : name;
+		}
+
+		@Override
+		public int compare(ExpressionProfile profile1, ExpressionProfile profile2)
+		{
+			return String.valueOf(getText(profile1)).compareToIgnoreCase(String.valueOf(getText(profile2)));
+		}
+	},
+
+	INVOCATIONS(Messages.ExpressionProfilerView_invocations, 90)
+	{
+		@Override
+		protected double getValue(ExpressionProfile profile)
+		{
+			return profile.getInvocations();
+		}
+	},
+
+	QUICK_REJECTIONS(Messages.ExpressionProfilerView_quick_rejections, 90)
+	{
+		@Override
+		protected double getValue(ExpressionProfile profile)
+		{
+			return profile.getQuickRejections();
+		}
+	},
+
+	MATCHES(Messages.ExpressionProfilerView_matches, 90)
+	{
+		@Override
+		protected double getValue(ExpressionProfile profile)
+		{
+			return profile.getMatches();
+		}
+	},
+
+	UNLESS_REJECTIONS(Messages.ExpressionProfilerView_unless_rejections, 90)
+	{
+		@Override
+		protected double getValue(ExpressionProfile profile)
+		{
+			return profile.getUnlessRejections();
+		}
+	},
+
+	TIMEOUTS(Messages.ExpressionProfilerView_timeouts, 70)
+	{
+		@Override
+		protected double getValue(ExpressionProfile profile)
+		{
+			return profile.getTimeouts();
+		}
+	},
+
+	TOTAL_TIME(Messages.ExpressionProfilerView_total_time, 90)
+	{
+		@Override
+		protected double getValue(ExpressionProfile profile)
+		{
+			return profile.getNanos() / 1000000.0;
+		}
+
+		@Override
+		public String getText(ExpressionProfile profile)
+		{
+			return formatDecimal(getValue(profile));
+		}
+	},
+
+	AVERAGE_TIME(Messages.ExpressionProfilerView_average_time, 90)
+	{
+		@Override
+		protected double getValue(ExpressionProfile profile)
+		{
+			long invocations = profile.getInvocations();
+			return invocations == 0 ? 0 : profile.getNanos() / 1000.0 / invocations;
+		}
+
+		@Override
+		public String getText(ExpressionProfile profile)
+		{
+			return formatDecimal(getValue(profile));
+		}
+	};
+
+	/** Column title. */
+	private String title;
+
+	/** Initial column width. */
+	private int width;
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param title Column title.
+	 * @param width Initial column width.
+	 */
+	private ProfileColumn(String title, int width)
+	{
+		this.title = title;
+		this.width = width;
+	}
+
+	/**
+	 * Returns the column title.
+	 *
+	 * @return Title.
+	 */
+	public String getTitle()
+	{
+		return title;
+	}
+
+	/**
+	 * Returns the initial column width.
+	 *
+	 * @return Width.
+	 */
+	public int getWidth()
+	{
+		return width;
+	}
+
+	/**
+	 * Returns the numeric value of the column for a profile. Not used by text
+	 * columns.
+	 *
+	 * @param profile Profile.
+	 *
+	 * @return Value.
+	 */
+	protected double getValue(ExpressionProfile profile)
+	{
+		return 0;
+	}
+
+	/**
+	 * Returns the displayed text of the column for a profile.
+	 *
+	 * @param profile Profile.
+	 *
+	 * @return Text.
+	 */
+	public String getText(ExpressionProfile profile)
+	{
+		return NumberFormat.getIntegerInstance().format((long) getValue(profile));
+	}
+
+	/**
+	 * Compares the column values of two profiles.
+	 *
+	 * @param profile1 First profile.
+	 * @param profile2 Second profile.
+	 *
+	 * @return Comparison result, as in {@link Comparable#compareTo(Object)}.
+	 */
+	public int compare(ExpressionProfile profile1, ExpressionProfile profile2)
+	{
+		return Double.compare(getValue(profile1), getValue(profile2));
+	}
+
+	/**
+	 * Formats a decimal value with three fraction digits.
+	 *
+	 * @param value Value.
+	 *
+	 * @return Formatted value.
+	 */
+	private static String formatDecimal(double value)
+	{
+		NumberFormat format = NumberFormat.getNumberInstance();
+		format.setMinimumFractionDigits(3);
+		format.setMaximumFractionDigits(3);
+
+		return format.format(value);
+	}
+}
@@ -0,0 +1,502 @@
+/*******************************************************************************
+ * Copyright (c) 2008 - 2014 Marian Schedenig
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marian Schedenig - initial API and implementation
+ *******************************************************************************/
+
+package name.schedenig.eclipse.grepconsole.adapters;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+import name.schedenig.eclipse.grepconsole.adapters.links.LinkDescriptor;
+import name.schedenig.eclipse.grepconsole.engine.BacktrackingMatcher;
+import name.schedenig.eclipse.grepconsole.model.GrepExpressionItem;
+import name.schedenig.eclipse.grepconsole.model.GrepStyle;
+import name.schedenig.eclipse.grepconsole.model.links.UrlLink;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.custom.StyleRange;
+
+/**
+ * Compares GrepLineStyleListener.convertStyles() with the implementation it
+ * replaced on randomly generated lines. The old implementation sorted the
+ * active grep style ranges at every index of the line and is kept here as the
+ * reference. Both implementations collapse the segments through the same
+ * collapseStyles() method, so any difference comes from the way the line is
+ * split into segments and from the order of the active ranges.
+ *
+ * The generated styles only use flags because colours cannot be created
+ * without a display. The order of the ranges is still visible in the results:
+ * the first link of a segment determines its data, and the first original
+ * style range determines its rise.
+ *
+ * Usage: ConvertStylesEquivalence [cases [seed]]
+ *
+ * Exits with status 1 if any case produces different style ranges.
+ *
+ * @author msched
+ */
+public class ConvertStylesEquivalence
+{
+	/** Default number of random cases. */
+	private static final int DEFAULT_CASES = 200000;
+
+	/** Default random seed. */
+	private static final long DEFAULT_SEED = 42;
+
+	/** Maximum number of mismatches that are printed. */
+	private static final int MAX_REPORTED = 10;
+
+	/** Old comparator for re-sorting the active ranges at each index. */
+	private static final Comparator<GrepStyleRange> STYLE_RANGE_COMPARATOR_SUB_BEFORE_WHOLE = new Comparator<GrepStyleRange>()
+	{
+		@Override
+		public int compare(GrepStyleRange a, GrepStyleRange b)
+		{
+			if(a.isWholeLine() != b.isWholeLine())
+			{
+				return a.isWholeLine() ? +1 : -1;
+			}
+
+			return 0;
+		}
+	};
+
+	/** Old comparator for sorting all ranges of a line. */
+	private static final Comparator<GrepStyleRange> STYLE_RANGE_COMPARATOR = new Comparator<GrepStyleRange>()
+	{
+		@Override
+		public int compare(GrepStyleRange a, GrepStyleRange b)
+		{
+			if(a.getFirstIndex() != b.getFirstIndex())
+			{
+				return a.getFirstIndex() < b.getFirstIndex() ? -1 : +1;
+			}
+
+			if(a.getStyleRange() != b.getStyleRange())
+			{
+				if(a.getStyleRange() == null)
+				{
+					return -1;
+				}
+				else if(b.getStyleRange() == null)
+				{
+					return +1;
+				}
+			}
+
+			if(a.isWholeLine() != b.isWholeLine())
+			{
+				return a.isWholeLine() ? +1 : -1;
+			}
+
+			if(a.getExpressionIndex() != b.getExpressionIndex())
+			{
+				return a.getExpressionIndex() < b.getExpressionIndex() ? -1 : +1;
+			}
+
+			return 0;
+		}
+	};
+
+	/** Random number generator. */
+	private Random random;
+
+	/** Listener under test. */
+	private GrepLineStyleListener listener = new GrepLineStyleListener(null, null, null);
+
+	/** Link assigned to the generated ranges which have one. */
+	private UrlLink link = new UrlLink();
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param seed Random seed.
+	 */
+	public ConvertStylesEquivalence(long seed)
+	{
+		random = new Random(seed);
+	}
+
+	/**
+	 * Runs the comparison.
+	 *
+	 * @param args Optional number of cases and random seed.
+	 */
+	public static void main(String[] args)
+	{
+		int cases = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_CASES;
+		long seed = args.length > 1 ? Long.parseLong(args[1]) : DEFAULT_SEED;
+
+		int mismatches = new ConvertStylesEquivalence(seed).run(cases);
+		System.out.println(cases + " cases, " + mismatches + " mismatches"); //$NON-NLS-1$ //$NON-NLS-2$
+
+		if(mismatches > 0)
+		{
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Compares both implementations on a number of random lines.
+	 *
+	 * @param cases Number of cases.
+	 *
+	 * @return Number of cases with different results.
+	 */
+	public int run(int cases)
+	{
+		int mismatches = 0;
+
+		for(int i = 0; i < cases; i++)
+		{
+			int lineLength = 1 + random.nextInt(40);
+			int lineOffset = random.nextInt(3) * 50;
+			String lineText = createText(lineLength);
+			List<GrepStyleRange> ranges = createRanges(lineText);
+			StyleRange[] originalRanges = random.nextInt(3) == 0 ? null : createOriginalRanges(lineOffset, lineLength);
+
+			StyleRange[] expected = convertStylesReference(lineOffset, lineText,
+					originalRanges, new LinkedList<GrepStyleRange>(ranges));
+			StyleRange[] actual = listener.convertStyles(lineOffset, lineText,
+					originalRanges, new LinkedList<GrepStyleRange>(ranges));
+
+			if(!equalRanges(expected, actual))
+			{
+				if(mismatches < MAX_REPORTED)
+				{
+					System.out.println("Case " + i + ":"); //$NON-NLS-1$ //$NON-NLS-2$
+					System.out.println("  expected " + toString(expected)); //$NON-NLS-1$
+					System.out.println("  actual   " + toString(actual)); //$NON-NLS-1$
+				}
+
+				mismatches++;
+			}
+		}
+
+		return mismatches;
+	}
+
+	/**
+	 * Creates a line of text.
+	 *
+	 * @param length Line length.
+	 *
+	 * @return Line text.
+	 */
+	private String createText(int length)
+	{
+		StringBuilder sb = new StringBuilder(length);
+
+		for(int i = 0; i < length; i++)
+		{
+			sb.append((char) ('a' + random.nextInt(26)));
+		}
+
+		return sb.toString();
+	}
+
+	/**
+	 * Creates a random list of grep style ranges for a line. Expression indexes
+	 * are drawn from a small range so that ranges which are equal for the
+	 * comparator occur frequently.
+	 *
+	 * @param lineText Line text.
+	 *
+	 * @return Grep style ranges.
+	 */
+	private List<GrepStyleRange> createRanges(String lineText)
+	{
+		int lineLength = lineText.length();
+		int count = random.nextInt(9);
+		List<GrepStyleRange> ranges = new LinkedList<GrepStyleRange>();
+
+		BacktrackingMatcher matcher = new BacktrackingMatcher(Pattern.compile(".+"), lineText); //$NON-NLS-1$
+		matcher.find();
+
+		for(int i = 0; i < count; i++)
+		{
+			GrepExpressionItem item = new GrepExpressionItem("item" + i); //$NON-NLS-1$
+			item.setRemoveOriginalStyle(random.nextInt(10) == 0);
+
+			boolean wholeLine = random.nextInt(3) == 0;
+			int first;
+			int last;
+
+			if(wholeLine && random.nextBoolean())
+			{
+				first = 0;
+				last = lineLength - 1;
+			}
+			else
+			{
+				first = random.nextInt(lineLength);
+				last = first + random.nextInt(lineLength - first);
+			}
+
+			GrepStyle style = random.nextInt(4) == 0 ? null : createStyle();
+
+			ranges.add(new GrepStyleRange(item, random.nextInt(4), wholeLine,
+					first, last, style, random.nextInt(5) < 2 ? link : null,
+					matcher, lineText, lineText, random.nextInt(3), null));
+		}
+
+		return ranges;
+	}
+
+	/**
+	 * Creates a style with random flags.
+	 *
+	 * @return Style.
+	 */
+	private GrepStyle createStyle()
+	{
+		GrepStyle style = new GrepStyle();
+		style.setBold(random.nextInt(4) == 0);
+		style.setItalic(random.nextInt(4) == 0);
+		style.setUnderline(random.nextInt(4) == 0);
+		style.setStrikeout(random.nextInt(4) == 0);
+		style.setBorder(random.nextInt(4) == 0);
+
+		return style;
+	}
+
+	/**
+	 * Creates random original style ranges, some of which are partially or
+	 * completely outside of the line. Each range gets a distinct rise and some
+	 * of them carry data, so that the range chosen for a segment can be told
+	 * apart.
+	 *
+	 * @param lineOffset Offset of the line's first character.
+	 * @param lineLength Line length.
+	 *
+	 * @return Original style ranges.
+	 */
+	private StyleRange[] createOriginalRanges(int lineOffset, int lineLength)
+	{
+		StyleRange[] ranges = new StyleRange[random.nextInt(4)];
+
+		for(int i = 0; i < ranges.length; i++)
+		{
+			StyleRange range = new StyleRange();
+			range.start = lineOffset - 5 + random.nextInt(lineLength + 10);
+			range.length = 1 + random.nextInt(lineLength + 5);
+			range.rise = i + 1;
+			range.fontStyle = random.nextBoolean() ? SWT.BOLD : SWT.NORMAL;
+			range.data = random.nextBoolean() ? "original" + i : null; //$NON-NLS-1$
+			ranges[i] = range;
+		}
+
+		return ranges;
+	}
+
+	/**
+	 * Reference implementation: GrepLineStyleListener.convertStyles() as it
+	 * was before the single sweep was introduced.
+	 *
+	 * @param lineOffset Offset of the line's first character.
+	 * @param lineText Full text of the line.
+	 * @param originalStyleRanges Optional array of StyleRanges already set on
+	 * 		the line.
+	 * @param grepStyleRanges Grep style ranges for the line.
+	 *
+	 * @return StyleRange array.
+	 */
+	private StyleRange[] convertStylesReference(int lineOffset, String lineText,
+			StyleRange[] originalStyleRanges, LinkedList<GrepStyleRange> grepStyleRanges)
+	{
+		if(grepStyleRanges == null || grepStyleRanges.isEmpty())
+		{
+			return null;
+		}
+
+		if(originalStyleRanges != null)
+		{
+			boolean useExistingStyleRanges = true;
+
+			for(GrepStyleRange range: grepStyleRanges)
+			{
+				if(range.getExpressionItem() != null
+						&& range.getExpressionItem().isRemoveOriginalStyle())
+				{
+					useExistingStyleRanges = false;
+					break;
+				}
+			}
+
+			if(useExistingStyleRanges)
+			{
+				int lineLength = lineText.length();
+
+				for(StyleRange range: originalStyleRanges)
+				{
+					if(range.start + range.length <= lineOffset
+							|| range.start >= lineOffset + lineLength)
+					{
+						continue;
+					}
+
+					int rangeStart = Math.max(range.start - lineOffset, 0);
+					int rangeEnd = Math.min(range.start + range.length - lineOffset, lineLength);
+					grepStyleRanges.add(new GrepStyleRange(rangeStart, rangeEnd, range));
+				}
+			}
+		}
+
+		Collections.sort(grepStyleRanges, STYLE_RANGE_COMPARATOR);
+
+		TreeSet<Integer> indexes = new TreeSet<Integer>();
+
+		for(GrepStyleRange range: grepStyleRanges)
+		{
+			indexes.add(range.getFirstIndex());
+			indexes.add(range.getLastIndex() + 1);
+		}
+
+		List<StyleRange> styleRanges = new LinkedList<StyleRange>();
+		List<GrepStyleRange> activeGrepStyleRanges = new LinkedList<GrepStyleRange>();
+
+		int currentIndex = indexes.pollFirst();
+
+		while(!indexes.isEmpty())
+		{
+			boolean activeStylesChanged = false;
+
+			Integer nextIndex = indexes.pollFirst();
+			LinkedList<GrepStyleRange> removeActive = new LinkedList<GrepStyleRange>();
+
+			for(GrepStyleRange range: activeGrepStyleRanges)
+			{
+				if(range.getLastIndex() < currentIndex)
+				{
+					removeActive.add(range);
+					activeStylesChanged = true;
+				}
+			}
+
+			activeGrepStyleRanges.removeAll(removeActive);
+
+			while(!grepStyleRanges.isEmpty() && grepStyleRanges.getFirst().getFirstIndex() == currentIndex)
+			{
+				activeGrepStyleRanges.add(grepStyleRanges.removeFirst());
+				activeStylesChanged = true;
+			}
+
+			if(activeStylesChanged)
+			{
+				Collections.sort(activeGrepStyleRanges, STYLE_RANGE_COMPARATOR_SUB_BEFORE_WHOLE);
+			}
+
+			StyleRange styleRange = new StyleRange();
+			styleRange.start = lineOffset + currentIndex;
+			styleRange.length = nextIndex - currentIndex;
+
+			if(!activeGrepStyleRanges.isEmpty())
+			{
+				listener.collapseStyles(activeGrepStyleRanges, styleRange);
+				styleRanges.add(styleRange);
+			}
+
+			currentIndex = nextIndex;
+		}
+
+		return styleRanges.isEmpty() ? null : styleRanges.toArray(new StyleRange[]{});
+	}
+
+	/**
+	 * Checks whether two arrays of style ranges are equal.
+	 *
+	 * @param a First array.
+	 * @param b Second array.
+	 *
+	 * @return Whether both arrays are equal.
+	 */
+	private static boolean equalRanges(StyleRange[] a, StyleRange[] b)
+	{
+		if(a == null || b == null)
+		{
+			return a == b;
+		}
+
+		if(a.length != b.length)
+		{
+			return false;
+		}
+
+		for(int i = 0; i < a.length; i++)
+		{
+			if(!toString(a[i]).equals(toString(b[i])))
+			{
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Returns a string containing all compared fields of style ranges.
+	 *
+	 * @param ranges Style ranges.
+	 *
+	 * @return String representation.
+	 */
+	private static String toString(StyleRange[] ranges)
+	{
+		if(ranges == null)
+		{
+			return "null"; //$NON-NLS-1$
+		}
+
+		StringBuilder sb = new StringBuilder();
+
+		for(StyleRange range: ranges)
+		{
+			sb.append(toString(range));
+		}
+
+		return sb.toString();
+	}
+
+	/**
+	 * Returns a string containing all compared fields of a style range.
+	 *
+	 * @param range Style range.
+	 *
+	 * @return String representation.
+	 */
+	private static String toString(StyleRange range)
+	{
+		String data;
+
+		if(range.data instanceof LinkDescriptor)
+		{
+			LinkDescriptor descriptor = (LinkDescriptor) range.data;
+			data = "link:" + descriptor.getItemId() + "/" + descriptor.getGroup() //$NON-NLS-1$ //$NON-NLS-2$
+					+ "/" + descriptor.getFirstIndex() + "-" + descriptor.getLastIndex(); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		else
+		{
+			data = String.valueOf(range.data);
+		}
+
+		return "[" + range.start + "+" + range.length //$NON-NLS-1$ //$NON-NLS-2$
+				+ " font=" + range.fontStyle //$NON-NLS-1$
+				+ " u=" + range.underline //$NON-NLS-1$
+				+ " s=" + range.strikeout //$NON-NLS-1$
+				+ " b=" + range.borderStyle //$NON-NLS-1$
+				+ " rise=" + range.rise //$NON-NLS-1$
+				+ " data=" + data + "]"; //$NON-NLS-1$ //$NON-NLS-2$
+	}
+}